@@ -0,0 +1,32 @@
+package com.lambdalogic.test.booking.model;
+
+import java.math.BigDecimal;
+
+
+/**
+ * Receives the raw amounts of a {@link Booking} or a {@link Price}, see {@link Booking#accumulateInto(AmountAccumulator)}.
+ * 
+ * The values are passed as they are stored, nothing is computed or rounded. 
+ * So it is up to the implementation not to mix-up gross and net amounts and not to add up rounding errors.
+ */
+public interface AmountAccumulator {
+
+	/**
+	 * Add the amount of a price.
+	 * 
+	 * @param amount The amount, gross if <code>gross</code> is true, otherwise net. Never null.
+	 * @param taxRateDiv100Add1 The tax rate divided by 100 plus 1. If the tax rate is 19, the value is 1.19.
+	 * @param gross Defines if the amount is gross (true) or net (false).
+	 */
+	void addPrice(BigDecimal amount, BigDecimal taxRateDiv100Add1, boolean gross);
+	
+	
+	/**
+	 * Add the paid amount of a booking, which is always gross.
+	 * It is not called for bookings without paid amount.
+	 * 
+	 * @param paidAmount
+	 */
+	void addPaidAmount(BigDecimal paidAmount);
+	
+}
@@ -225,10 +225,20 @@ public class Booking {
     }    
 
     
+    /**
+     * Return the main price, which can be changed.
+     * A missing price is created, a frozen price (see Price.freeze()) is replaced by a mutable copy,
+     * so prices shared with other bookings are never changed. The same applies to the other price getters.
+     * Use getPrices() to read the prices without creating or copying them.
+     * @return
+     */
     public Price getMainPrice() {
 		if (mainPrice == null) {
 			mainPrice = new Price();
 		}
+		else if (mainPrice.isFrozen()) {
+			mainPrice = mainPrice.toMutable();
+		}
 		return mainPrice;
     }
     
@@ -242,6 +252,9 @@ public class Booking {
 		if (add1Price == null) {
 			add1Price = new Price();
 		}
+		else if (add1Price.isFrozen()) {
+			add1Price = add1Price.toMutable();
+		}
 		return add1Price;
     }
     
@@ -255,6 +268,9 @@ public class Booking {
 		if (add2Price == null) {
 			add2Price = new Price();
 		}
+		else if (add2Price.isFrozen()) {
+			add2Price = add2Price.toMutable();
+		}
 		return add2Price;
     }
     
@@ -268,6 +284,9 @@ public class Booking {
 		if (cancelFeePrice == null) {
 			cancelFeePrice = new Price();
 		}
+		else if (cancelFeePrice.isFrozen()) {
+			cancelFeePrice = cancelFeePrice.toMutable();
+		}
 		return cancelFeePrice;
     }
     
@@ -373,7 +392,7 @@ public class Booking {
      * @return
      */
     public String getCurrency() {
-    	return getMainPrice().getCurrency();
+    	return mainPrice != null ? mainPrice.getCurrency() : getMainPrice().getCurrency();
     }
     
     
@@ -381,15 +400,15 @@ public class Booking {
     	getMainPrice().setCurrency(currency);
     	
     	if (add1Price != null) {
-    		add1Price.setCurrency(currency);
+    		getAdd1Price().setCurrency(currency);
     	}
     	
     	if (add2Price != null) {
-    		add2Price.setCurrency(currency);
+    		getAdd2Price().setCurrency(currency);
     	}
     	
     	if (cancelFeePrice != null) {
-    		cancelFeePrice.setCurrency(currency);
+    		getCancelFeePrice().setCurrency(currency);
     	}
     }
     
@@ -400,7 +419,7 @@ public class Booking {
      * @return
      */
     public boolean isGross() {
-    	return getMainPrice().isGross();
+    	return mainPrice != null ? mainPrice.isGross() : getMainPrice().isGross();
     }
     
     
@@ -408,15 +427,15 @@ public class Booking {
     	getMainPrice().setGross(gross);
     	
     	if (add1Price != null) {
-    		add1Price.setGross(gross);
+    		getAdd1Price().setGross(gross);
     	}
     	
     	if (add2Price != null) {
-    		add2Price.setGross(gross);
+    		getAdd2Price().setGross(gross);
     	}
     	
     	if (cancelFeePrice != null) {
-    		cancelFeePrice.setGross(gross);
+    		getCancelFeePrice().setGross(gross);
     	}
     }
 
@@ -437,6 +456,45 @@ public class Booking {
     	return openAmount;
     }
 
+    
+    /**
+     * Pass the raw values of all prices and the paid amount to an accumulator.
+     * Unlike getTotalAmountGross() and getOpenAmount() nothing is computed or rounded,
+     * so no temporary objects are created. Prices that are not set are skipped, just like a paid amount that is not set.
+     * @param accumulator
+     */
+    public void accumulateInto(AmountAccumulator accumulator) {
+    	if (mainPrice != null) {
+    		mainPrice.accumulateInto(accumulator);
+    	}
+    	
+    	if (add1Price != null) {
+    		add1Price.accumulateInto(accumulator);
+    	}
+    	
+    	if (add2Price != null) {
+    		add2Price.accumulateInto(accumulator);
+    	}
+    	
+    	if (cancelFeePrice != null) {
+    		cancelFeePrice.accumulateInto(accumulator);
+    	}
+    	
+    	if (paidAmount != null) {
+    		accumulator.addPaidAmount(paidAmount);
+    	}
+    }
+
+    
+    /**
+     * Return the main price, additional price 1, additional price 2 and the cancel fee price in this order.
+     * Unlike the getters, prices that are not set are not created but returned as null.
+     * @return a new array of 4 prices
+     */
+    public Price[] getPrices() {
+    	return new Price[] {mainPrice, add1Price, add2Price, cancelFeePrice};
+    }
+
     // *
 	// * Convenience Methods and Delegate Methods
 	// **************************************************************************
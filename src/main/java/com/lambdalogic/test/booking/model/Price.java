@@ -49,6 +49,11 @@ public class Price {
      */
     protected boolean gross = true;
     
+    /**
+     * Defines if the price is immutable (true), see freeze().
+     */
+    protected boolean frozen = false;
+    
     
     public Price() {
     	setAmount(ZERO);
@@ -96,6 +101,7 @@ public class Price {
      * Initialize all values but currency and gross. 
      */
     public void init() {
+    	checkNotFrozen();
     	setAmount(ZERO);
     	setTaxRate(ZERO);
     }
@@ -150,9 +156,49 @@ public class Price {
      * Invert the signum of the amount.
      */
     public void negate() {
+    		checkNotFrozen();
     		amount = amount.negate();
     }
     
+    
+    /**
+     * Make this price immutable, so it can be shared by several bookings.
+     * Afterwards all methods that change the price throw an UnsupportedOperationException.
+     * A frozen price cannot be unfrozen, use toMutable() instead.
+     * The price getters of Booking do that for the prices of a booking.
+     * @return this price
+     */
+    public Price freeze() {
+    	frozen = true;
+    	return this;
+    }
+    
+    
+    public boolean isFrozen() {
+    	return frozen;
+    }
+    
+    
+    /**
+     * Return a price that can be changed: this price if it is not frozen, otherwise a mutable copy of it.
+     * @return this price or a new one with the same values
+     */
+    public Price toMutable() {
+    	if (!frozen) {
+    		return this;
+    	}
+    	Price copy = new Price();
+    	copy.copyFrom(this);
+    	return copy;
+    }
+    
+    
+    private void checkNotFrozen() {
+    	if (frozen) {
+    		throw new UnsupportedOperationException("The price is frozen and must not be changed.");
+    	}
+    }
+    
 
     // *************************************************************************
     // * Getter / Setter
@@ -164,6 +210,7 @@ public class Price {
 
     
 	public void setAmount(BigDecimal amount) {
+		checkNotFrozen();
 		if (amount == null) {
 			this.amount = ZERO;
 		}
@@ -185,6 +232,7 @@ public class Price {
 
     
 	public void setCurrency(String currency) {
+		checkNotFrozen();
 		this.currency = currency;
 	}
     
@@ -203,6 +251,7 @@ public class Price {
 
     
 	public void setTaxRate(BigDecimal taxRate) {
+		checkNotFrozen();
 		if (taxRate == null) {
 			this.taxRate = ZERO;
 			taxRateDiv100 = ZERO;
@@ -228,6 +277,7 @@ public class Price {
     
     
 	public void setGross(boolean brutto) {
+		checkNotFrozen();
 		this.gross = brutto;
 	}
 
@@ -329,6 +379,18 @@ public class Price {
 	public boolean isZero() {
 		return amount.signum() == 0;
 	}
+	
+	
+	/**
+	 * Pass the amount, the tax rate divided by 100 plus 1 and the gross flag to an accumulator.
+	 * Nothing is computed, so no temporary objects are created.
+	 * @param accumulator
+	 */
+	public void accumulateInto(AmountAccumulator accumulator) {
+		if (amount != null) {
+			accumulator.addPrice(amount, taxRateDiv100Add1, gross);
+		}
+	}
     
     // *
     // * Additional Getter
@@ -0,0 +1,118 @@
+package io.github.samasend.lambdalogic.test.booking;
+
+import com.lambdalogic.test.booking.model.Booking;
+
+import java.util.Arrays;
+import java.util.Date;
+
+/**
+ * The buckets of a receivables aging: ranges of the age of a {@link Booking} in days, measured from its booking date
+ * to a reference date.
+ * <p>
+ * The buckets are defined by their upper bounds, which are included. The bounds 30, 60 and 90 define the buckets
+ * 0 - 30, 31 - 60, 61 - 90 and 90+ days, see {@link #DEFAULT}. Bookings dated after the reference date belong to the
+ * first bucket, bookings without booking date to the last one.
+ * <p>
+ * A day is a period of 24 hours, time zones are not taken into account.
+ * <p>
+ * Instances are immutable.
+ */
+public final class AgingBuckets {
+
+    /**
+     * 0 - 30, 31 - 60, 61 - 90 and 90+ days
+     */
+    public static final AgingBuckets DEFAULT = new AgingBuckets(30, 60, 90);
+
+    private static final long DAY_MILLIS = 86_400_000L;
+
+    private final int[] upperBounds;
+
+    /**
+     * @param upperBounds the upper bounds of all but the last bucket in days, in ascending order
+     */
+    public AgingBuckets(final int... upperBounds) {
+        if (upperBounds.length == 0) {
+            throw new IllegalArgumentException("Parameter 'upperBounds' must not be empty.");
+        }
+        for (int i = 0; i < upperBounds.length; i++) {
+            if (upperBounds[i] < 0 || (i > 0 && upperBounds[i] <= upperBounds[i - 1])) {
+                throw new IllegalArgumentException(
+                        "Parameter 'upperBounds' must be non-negative and ascending: " + Arrays.toString(upperBounds));
+            }
+        }
+        this.upperBounds = upperBounds.clone();
+    }
+
+    /**
+     * @return the number of buckets, one more than the number of upper bounds
+     */
+    public int getBucketCount() {
+        return upperBounds.length + 1;
+    }
+
+    /**
+     * @return a copy of the upper bounds in days
+     */
+    public int[] getUpperBounds() {
+        return upperBounds.clone();
+    }
+
+    /**
+     * @param ageDays the age in days
+     * @return the index of the bucket of the age
+     */
+    public int bucketOf(final long ageDays) {
+        for (int i = 0; i < upperBounds.length; i++) {
+            if (ageDays <= upperBounds[i]) {
+                return i;
+            }
+        }
+        return upperBounds.length;
+    }
+
+    /**
+     * @param bookingDate   the booking date, may be null
+     * @param referenceTime the reference date in milliseconds since the epoch
+     * @return the index of the bucket of a booking date
+     */
+    public int bucketOf(final Date bookingDate, final long referenceTime) {
+        if (bookingDate == null) {
+            return upperBounds.length;
+        }
+        return bucketOf(Math.floorDiv(referenceTime - bookingDate.getTime(), DAY_MILLIS));
+    }
+
+    /**
+     * @param bucket the index of a bucket
+     * @return the range of days of the bucket, e.g. "31-60" or "90+"
+     */
+    public String getLabel(final int bucket) {
+        if (bucket < 0 || bucket > upperBounds.length) {
+            throw new IndexOutOfBoundsException("bucket " + bucket + ", buckets " + getBucketCount());
+        }
+        if (bucket == upperBounds.length) {
+            return upperBounds[bucket - 1] + "+";
+        }
+        return (bucket == 0 ? 0 : upperBounds[bucket - 1] + 1) + "-" + upperBounds[bucket];
+    }
+
+    @Override
+    public boolean equals(final Object other) {
+        return other instanceof AgingBuckets && Arrays.equals(upperBounds, ((AgingBuckets) other).upperBounds);
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(upperBounds);
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder result = new StringBuilder();
+        for (int i = 0; i < getBucketCount(); i++) {
+            result.append(i == 0 ? "" : ", ").append(getLabel(i));
+        }
+        return result.toString();
+    }
+}
@@ -0,0 +1,272 @@
+package io.github.samasend.lambdalogic.test.booking;
+
+import com.lambdalogic.test.booking.model.AmountAccumulator;
+import com.lambdalogic.test.booking.model.Booking;
+import com.lambdalogic.test.booking.model.Price;
+
+import java.math.BigDecimal;
+
+/**
+ * Helper methods to read the amounts of a {@link Booking} without adding up rounding errors.
+ * <p>
+ * Unlike {@link Price#getAmountGross()} the gross amount of a net price is not rounded here,
+ * so the sum of many bookings is only rounded once, when it is turned into a
+ * {@link com.lambdalogic.test.booking.model.CurrencyAmount}.
+ * <p>
+ * The rules of {@link BookingsCurrencyAmountsEvaluator} are implemented once, by {@link Reader}; everything that adds
+ * up bookings reads them with a {@link Reader}. None of the methods change the prices or amounts of the given
+ * bookings, and missing prices and paid amounts are not created.
+ */
+public final class BookingAmounts {
+
+    /**
+     * Reads the amounts of a booking with {@link Booking#accumulateInto(AmountAccumulator)} and decides whether the
+     * booking is relevant.
+     * <p>
+     * A booking is relevant if the amount of one of its prices is not 0 or if it has been paid, see
+     * {@link #isPayment(BigDecimal)}. Subclasses decide how the amounts are added up; the gross amount of a net
+     * price is its amount multiplied with the tax rate factor and must not be rounded.
+     * <p>
+     * A reader can be reused for any number of bookings, it is not thread-safe.
+     */
+    public abstract static class Reader implements AmountAccumulator {
+
+        private boolean zero = true;
+
+        private boolean paid = false;
+
+        /**
+         * Read the amounts of a booking, the amounts of the booking read before are forgotten
+         *
+         * @param booking the booking
+         * @return {@code true} if the booking is relevant
+         */
+        public boolean read(final Booking booking) {
+            start();
+            booking.accumulateInto(this);
+            return isRelevant();
+        }
+
+        /**
+         * Read the amounts of a booking that is not at hand as {@link Booking}
+         *
+         * @param prices     the prices of the booking, each may be null
+         * @param paidAmount the paid amount of the booking, null if it has none
+         * @return {@code true} if the booking is relevant
+         */
+        public boolean read(final Price[] prices, final BigDecimal paidAmount) {
+            start();
+            for (final Price price : prices) {
+                if (price != null) {
+                    price.accumulateInto(this);
+                }
+            }
+            if (paidAmount != null) {
+                addPaidAmount(paidAmount);
+            }
+            return isRelevant();
+        }
+
+        private void start() {
+            zero = true;
+            paid = false;
+            reset();
+        }
+
+        @Override
+        public final void addPrice(final BigDecimal amount, final BigDecimal taxRateDiv100Add1, final boolean gross) {
+            if (amount.signum() != 0) {
+                zero = false;
+            }
+            if (gross || taxRateDiv100Add1 == null) {
+                addGrossAmount(amount);
+            }
+            else {
+                addNetAmount(amount, taxRateDiv100Add1);
+            }
+        }
+
+        @Override
+        public final void addPaidAmount(final BigDecimal paidAmount) {
+            paid = isPayment(paidAmount);
+            setPaidAmount(paidAmount);
+        }
+
+        /**
+         * @return {@code false} if the amounts and the paid amount of the booking read last are all 0
+         */
+        public boolean isRelevant() {
+            return !zero || paid;
+        }
+
+        /**
+         * @param paidAmount another paid amount of the booking read last, may be null
+         * @return {@code true} if the booking would be relevant with the given paid amount
+         */
+        public boolean isRelevant(final BigDecimal paidAmount) {
+            return !zero || isPayment(paidAmount);
+        }
+
+        /**
+         * Forget the amounts of the booking read before
+         */
+        protected abstract void reset();
+
+        /**
+         * @param amount the amount of a gross price
+         */
+        protected abstract void addGrossAmount(BigDecimal amount);
+
+        /**
+         * @param amount            the amount of a net price
+         * @param taxRateDiv100Add1 the factor of the tax rate, the product is the unrounded gross amount
+         */
+        protected abstract void addNetAmount(BigDecimal amount, BigDecimal taxRateDiv100Add1);
+
+        /**
+         * @param paidAmount the paid amount, it is only called for bookings that have one
+         */
+        protected abstract void setPaidAmount(BigDecimal paidAmount);
+    }
+
+    /**
+     * A {@link Reader} that adds up the amounts of a booking as exact {@link BigDecimal}s
+     */
+    public static final class DecimalReader extends Reader {
+
+        private BigDecimal totalAmountGross = BigDecimal.ZERO;
+
+        private BigDecimal paidAmount;
+
+        @Override
+        protected void reset() {
+            totalAmountGross = BigDecimal.ZERO;
+            paidAmount = null;
+        }
+
+        @Override
+        protected void addGrossAmount(final BigDecimal amount) {
+            totalAmountGross = totalAmountGross.add(amount);
+        }
+
+        @Override
+        protected void addNetAmount(final BigDecimal amount, final BigDecimal taxRateDiv100Add1) {
+            totalAmountGross = totalAmountGross.add(amount.multiply(taxRateDiv100Add1));
+        }
+
+        @Override
+        protected void setPaidAmount(final BigDecimal paidAmount) {
+            this.paidAmount = paidAmount;
+        }
+
+        /**
+         * @return the unrounded sum of the gross amounts of all prices of the booking read last
+         */
+        public BigDecimal getTotalAmountGross() {
+            return totalAmountGross;
+        }
+
+        /**
+         * @return the paid amount of the booking read last, null if it has none
+         */
+        public BigDecimal getPaidAmount() {
+            return paidAmount;
+        }
+
+        /**
+         * @return the paid amount of the booking read last, 0 if it has none
+         */
+        public BigDecimal getPaidAmountOrZero() {
+            return paidAmount == null ? BigDecimal.ZERO : paidAmount;
+        }
+    }
+
+    private BookingAmounts() {
+    }
+
+    /**
+     * Check if a paid amount counts as payment.
+     * <p>
+     * Like in {@link BookingsCurrencyAmountsEvaluator} only an unscaled 0 is no payment, {@code 0.00} is one.
+     *
+     * @param paidAmount the paid amount, may be null
+     * @return {@code true} if the amount is not null and not an unscaled 0
+     */
+    public static boolean isPayment(final BigDecimal paidAmount) {
+        return paidAmount != null && !paidAmount.equals(BigDecimal.ZERO);
+    }
+
+    /**
+     * Return the currency of a booking without creating a missing main price like {@link Booking#getCurrency()}
+     *
+     * @param booking the booking
+     * @return the currency of the main price, null if the booking has no main price
+     */
+    public static String getCurrency(final Booking booking) {
+        final Price mainPrice = booking.getPrices()[0];
+        return mainPrice == null ? null : mainPrice.getCurrency();
+    }
+
+    /**
+     * Check if a booking is relevant for the calculation of totals
+     *
+     * <p>
+     * Bookings whose amount and paid amount are both 0 are not relevant are therefore ignored.
+     * </p>
+     *
+     * @param booking the booking to check
+     * @return {@code true} if the booking has a non zero price or a non zero paid amount
+     */
+    public static boolean isRelevant(final Booking booking) {
+        return new DecimalReader().read(booking);
+    }
+
+    /**
+     * Check if a booking belongs to the given invoice recipient and is relevant for the calculation of totals
+     *
+     * @param booking            the booking to check
+     * @param invoiceRecipientID the PK of the invoice recipient
+     * @return {@code true} if the booking has to be added up for the invoice recipient
+     * @see #isRelevant(Booking)
+     */
+    public static boolean isRelevant(final Booking booking, final long invoiceRecipientID) {
+        final Long invoiceRecipientPK = booking.getInvoiceRecipientPK();
+        return invoiceRecipientPK != null && invoiceRecipientPK == invoiceRecipientID && isRelevant(booking);
+    }
+
+    /**
+     * Return the unrounded gross amount of a single price
+     *
+     * @param price the price
+     * @return the amount if the price is gross, otherwise the amount multiplied with the tax rate (not rounded)
+     */
+    public static BigDecimal getAmountGross(final Price price) {
+        final DecimalReader reader = new DecimalReader();
+        reader.read(new Price[]{price}, null);
+        return reader.getTotalAmountGross();
+    }
+
+    /**
+     * Return the unrounded total gross amount of all prices of a booking
+     *
+     * @param booking the booking
+     * @return the sum of the unrounded gross amounts of all prices
+     */
+    public static BigDecimal getTotalAmountGross(final Booking booking) {
+        final DecimalReader reader = new DecimalReader();
+        reader.read(booking);
+        return reader.getTotalAmountGross();
+    }
+
+    /**
+     * Return the unrounded open amount of a booking, which is the unrounded total gross amount minus the paid amount
+     *
+     * @param booking the booking
+     * @return the amount that has to be paid yet
+     */
+    public static BigDecimal getOpenAmount(final Booking booking) {
+        final DecimalReader reader = new DecimalReader();
+        reader.read(booking);
+        return reader.getTotalAmountGross().subtract(reader.getPaidAmountOrZero());
+    }
+}
@@ -4,15 +4,25 @@ import com.lambdalogic.test.booking.IBookingsCurrencyAmountsEvaluator;
 import com.lambdalogic.test.booking.exception.InconsistentCurrenciesException;
 import com.lambdalogic.test.booking.model.Booking;
 import com.lambdalogic.test.booking.model.CurrencyAmount;
-import com.lambdalogic.test.booking.model.Price;
+import io.github.samasend.lambdalogic.test.booking.jfr.CalculateEvent;
+import io.github.samasend.lambdalogic.test.booking.jfr.CurrencyCheckEvent;
+import io.github.samasend.lambdalogic.test.booking.jfr.EvaluatorEvent;
+import io.github.samasend.lambdalogic.test.booking.jfr.FilterEvent;
+import io.github.samasend.lambdalogic.test.booking.jfr.SumEvent;
+import io.github.samasend.lambdalogic.test.booking.metrics.EvaluationListener;
 
 import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Iterator;
 import java.util.List;
 import java.util.SortedSet;
+import java.util.Spliterator;
+import java.util.Spliterators;
 import java.util.TreeSet;
-import java.util.function.Consumer;
-import java.util.function.Function;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 /**
  * Implementations of this interface are intended for adding up the total amount, the paid amount and open amount of a
@@ -27,37 +37,17 @@ import java.util.stream.Collectors;
  * <p>
  * Care is taken not to add amounts of different currencies.
  * An {@link InconsistentCurrenciesException} is thrown, if relevant bookings have different currencies.
+ * <p>
+ * Besides lists, the bookings can also be given as {@link Stream}, {@link Iterator} or {@link Spliterator}.
+ * These are read in a single pass without keeping any booking, see {@link #calculate(Iterator, Long)}.
+ * <p>
+ * Optionally the open amount is also split by the age of the bookings, see {@link #setAging(AgingBuckets, Date)}.
+ * <p>
+ * The metrics of every calculation can be observed with an {@link EvaluationListener}.
+ * The calculation and its phases are also recorded as Flight Recorder events, see {@link EvaluatorEvent}.
  */
 public class BookingsCurrencyAmountsEvaluator implements IBookingsCurrencyAmountsEvaluator {
 
-    private static class MonkeyPatchingPrice extends Price {
-
-        protected MonkeyPatchingPrice(Price price) {
-            super(price.getAmount(), price.getCurrency(), price.getTaxRate(), price.isGross());
-        }
-
-        /**
-         * Return the amount gross (which is a rounded value if gross == false).
-         *
-         * <p>
-         * Programmatically comment line no 264 on Price.java
-         *
-         * @return
-         */
-        public BigDecimal getAmountGross() {
-            BigDecimal amountGross = null;
-
-            if (amount != null) {
-                amountGross = amount;
-                if (!gross && taxRateDiv100Add1 != null) {
-                    amountGross = amountGross.multiply(taxRateDiv100Add1);
-                }
-            }
-
-            return amountGross;
-        }
-    }
-
     /**
      * a non-thread safe storage of {@link #calculate} result
      * for subsequent access through {@link #getTotalAmount()}
@@ -76,6 +66,101 @@ public class BookingsCurrencyAmountsEvaluator implements IBookingsCurrencyAmount
      */
     private CurrencyAmount totalOpenAmount = null;
 
+    /**
+     * receives the metrics of every {@link #calculate} call
+     */
+    private final EvaluationListener listener;
+
+    /**
+     * number of bookings read by the last {@link #calculate} call
+     */
+    private int scannedBookings = 0;
+
+    /**
+     * number of bookings of the invoice recipient seen by the last {@link #filterBookings(List, long)} call,
+     * including the zero bookings
+     */
+    private int matchedBookings = 0;
+
+    /**
+     * number of bookings returned by the last {@link #filterBookings(List, long)} call,
+     * or added by the last {@link #calculate(Iterator, Long)} call
+     */
+    private int relevantBookings = 0;
+
+    /**
+     * running totals of the relevant bookings, reused by every {@link #calculate} call
+     */
+    private final TotalsAccumulator accumulator = new TotalsAccumulator();
+
+    /**
+     * the buckets of the aging of the open amount, null if the aging is disabled
+     */
+    private AgingBuckets agingBuckets = null;
+
+    /**
+     * the date the age of the bookings is measured from, null for the time of the calculation
+     */
+    private Date agingReferenceDate = null;
+
+    /**
+     * running totals of the relevant bookings per bucket of {@link #agingBuckets}
+     */
+    private TotalsAccumulator[] agingAccumulators = new TotalsAccumulator[0];
+
+    /**
+     * a non-thread safe storage of {@link #calculate} result
+     * for subsequent access through {@link #getAgedOpenAmounts()}
+     */
+    private List<CurrencyAmount> agedOpenAmounts = null;
+
+    /**
+     * Create an evaluator without instrumentation
+     */
+    public BookingsCurrencyAmountsEvaluator() {
+        this(EvaluationListener.NONE);
+    }
+
+    /**
+     * Create an evaluator that reports the metrics of every calculation
+     *
+     * @param listener the listener to notify after every {@link #calculate} call,
+     *                 {@link EvaluationListener#NONE} disables the instrumentation
+     */
+    public BookingsCurrencyAmountsEvaluator(final EvaluationListener listener) {
+        if (listener == null) {
+            throw new IllegalArgumentException("Parameter 'listener' must not be null.");
+        }
+        this.listener = listener;
+    }
+
+    /**
+     * Split the open amount of the following calculations by the age of the bookings.
+     * <p>
+     * The age of a booking is the time from its booking date to the reference date, see {@link AgingBuckets}.
+     * The open amounts per bucket are added up in the same pass as the totals and can be retrieved by
+     * {@link #getAgedOpenAmounts()}.
+     *
+     * @param buckets       the buckets of the aging, null disables the aging
+     * @param referenceDate the date the age is measured from, null for the time of each calculation
+     */
+    public void setAging(final AgingBuckets buckets, final Date referenceDate) {
+        this.agingBuckets = buckets;
+        this.agingReferenceDate = referenceDate == null ? null : new Date(referenceDate.getTime());
+        this.agingAccumulators = new TotalsAccumulator[buckets == null ? 0 : buckets.getBucketCount()];
+        for (int i = 0; i < agingAccumulators.length; i++) {
+            agingAccumulators[i] = new TotalsAccumulator();
+        }
+        this.agedOpenAmounts = null;
+    }
+
+    /**
+     * @return the buckets of the aging, null if the aging is disabled
+     */
+    public AgingBuckets getAgingBuckets() {
+        return agingBuckets;
+    }
+
     /**
      * Add up the total amount, the paid amount and open amount of a list of {@link Booking}s.
      * <p>
@@ -98,45 +183,298 @@ public class BookingsCurrencyAmountsEvaluator implements IBookingsCurrencyAmount
      */
     @Override
     public void calculate(List<Booking> bookingList, Long invoiceRecipientID) throws InconsistentCurrenciesException {
+        // without listener there is nothing to measure
+        if (listener == EvaluationListener.NONE) {
+            doCalculate(bookingList, invoiceRecipientID);
+            return;
+        }
+
+        final long start = System.nanoTime();
+        boolean inconsistentCurrencies = false;
+        try {
+            doCalculate(bookingList, invoiceRecipientID);
+        }
+        catch (InconsistentCurrenciesException e) {
+            inconsistentCurrencies = true;
+            throw e;
+        }
+        finally {
+            notifyListener(start, inconsistentCurrencies);
+        }
+    }
+
+    /**
+     * Report the booking counters of the last calculation to the {@link #listener}
+     *
+     * @param start                  the {@link System#nanoTime()} when the calculation started
+     * @param inconsistentCurrencies whether the calculation ended with an {@link InconsistentCurrenciesException}
+     */
+    private void notifyListener(final long start, final boolean inconsistentCurrencies) {
+        listener.evaluated(
+                scannedBookings,
+                matchedBookings,
+                matchedBookings - relevantBookings,
+                inconsistentCurrencies,
+                System.nanoTime() - start);
+    }
+
+    /**
+     * The implementation of {@link #calculate(List, Long)} without listener.
+     * <p>
+     * The calculation and each of its phases is recorded as Flight Recorder event,
+     * if these events are enabled in a running recording.
+     */
+    private void doCalculate(List<Booking> bookingList, Long invoiceRecipientID) throws InconsistentCurrenciesException {
+        final CalculateEvent calculateEvent = CalculateEvent.beginCalculate();
+        String outcome = EvaluatorEvent.ERROR;
+        try {
+            outcome = evaluate(bookingList, invoiceRecipientID);
+        }
+        catch (InconsistentCurrenciesException e) {
+            outcome = EvaluatorEvent.INCONSISTENT_CURRENCY;
+            throw e;
+        }
+        finally {
+            calculateEvent.finish(invoiceRecipientID, bookingList.size(), relevantBookings, outcome);
+        }
+    }
+
+    /**
+     * Filter the bookings, check their currencies and add up their amounts
+     *
+     * @return the outcome of the calculation for the Flight Recorder events,
+     * {@link EvaluatorEvent#SUCCESS} or {@link EvaluatorEvent#EMPTY}
+     */
+    private String evaluate(List<Booking> bookingList, Long invoiceRecipientID) throws InconsistentCurrenciesException {
         // Might hold calculation to a previous calculation
         resetAllFields();
 
         // Filter the booking by price and currency, cache it (might be expensive)
+        scannedBookings = bookingList.size();
+        final FilterEvent filterEvent = FilterEvent.beginFilter();
         final List<Booking> filteredBookings = filterBookings(bookingList, invoiceRecipientID);
+        relevantBookings = filteredBookings.size();
 
         // is the filteredBooking is empty, nothing to do here, just bail
         if (filteredBookings.isEmpty()) {
-            return;
+            filterEvent.finish(invoiceRecipientID, bookingList.size(), relevantBookings, EvaluatorEvent.EMPTY);
+            return EvaluatorEvent.EMPTY;
         }
+        filterEvent.finish(invoiceRecipientID, bookingList.size(), relevantBookings, EvaluatorEvent.SUCCESS);
 
         // Get a distinct currencies sorted set for a given booking
+        final CurrencyCheckEvent currencyCheckEvent = CurrencyCheckEvent.beginCurrencyCheck();
         final SortedSet<String> currencies = getDistinctCurrencies(filteredBookings);
 
         // if currencies contains multiple values, throw an exception
         if (containsMultipleCurrencies(currencies)) {
+            currencyCheckEvent.finish(invoiceRecipientID, relevantBookings, relevantBookings,
+                    EvaluatorEvent.INCONSISTENT_CURRENCY);
             throw new InconsistentCurrenciesException(currencies.first(), currencies.last());
         }
+        currencyCheckEvent.finish(invoiceRecipientID, relevantBookings, relevantBookings, EvaluatorEvent.SUCCESS);
 
         // get the booking list currency
         final String currency = currencies.first();
 
-        // sum the total gross amount
-        sum(filteredBookings, Booking::getTotalAmountGross, this::setTotalAmount, currency);
+        final SumEvent sumEvent = SumEvent.beginSum();
+
+        // sum the total gross amount and the paid amount, the open amount is their difference
+        resetAccumulators();
+        final long referenceTime = getAgingReferenceTime();
+        for (final Booking booking : filteredBookings) {
+            addToTotals(booking, referenceTime);
+        }
+        setTotals(accumulator.toResult());
+
+        sumEvent.finish(invoiceRecipientID, relevantBookings, relevantBookings, EvaluatorEvent.SUCCESS);
+        return EvaluatorEvent.SUCCESS;
+    }
+
+    /**
+     * Add up the total amount, the paid amount and open amount of a stream of {@link Booking}s.
+     * <p>
+     * The stream is consumed lazily, it is not closed.
+     *
+     * @param bookings           - a stream of {@link Booking}s
+     * @param invoiceRecipientID - the PK of the person who is the booking's invoice recipient
+     * @throws InconsistentCurrenciesException if any two relevant bookings have different currencies
+     * @see #calculate(Iterator, Long)
+     */
+    public void calculate(Stream<Booking> bookings, Long invoiceRecipientID) throws InconsistentCurrenciesException {
+        calculate(bookings.iterator(), invoiceRecipientID);
+    }
+
+    /**
+     * Add up the total amount, the paid amount and open amount of the {@link Booking}s of a spliterator.
+     *
+     * @param bookings           - a spliterator of {@link Booking}s
+     * @param invoiceRecipientID - the PK of the person who is the booking's invoice recipient
+     * @throws InconsistentCurrenciesException if any two relevant bookings have different currencies
+     * @see #calculate(Iterator, Long)
+     */
+    public void calculate(Spliterator<Booking> bookings, Long invoiceRecipientID) throws InconsistentCurrenciesException {
+        calculate(Spliterators.iterator(bookings), invoiceRecipientID);
+    }
+
+    /**
+     * Add up the total amount, the paid amount and open amount of the {@link Booking}s of an iterator.
+     * <p>
+     * Unlike {@link #calculate(List, Long)} the bookings are read in a single pass and added to running totals,
+     * no booking is kept. Reading stops at the first relevant booking with a different currency,
+     * because the result is proven then.
+     * <p>
+     * Otherwise the results are the same as the ones of {@link #calculate(List, Long)} for a list of the same bookings,
+     * they can be retrieved by the methods {@link #getTotalAmount()}, {@link #getTotalOpenAmount()} and
+     * {@link #getTotalPaidAmount()}.
+     * <p>
+     * The calculation is recorded as a single Flight Recorder event, it has no separate phases.
+     *
+     * @param bookings           - an iterator of {@link Booking}s
+     * @param invoiceRecipientID - the PK of the person who is the booking's invoice recipient
+     * @throws InconsistentCurrenciesException if any two relevant bookings have different currencies
+     */
+    public void calculate(Iterator<Booking> bookings, Long invoiceRecipientID) throws InconsistentCurrenciesException {
+        // without listener there is nothing to measure
+        if (listener == EvaluationListener.NONE) {
+            doCalculate(bookings, invoiceRecipientID);
+            return;
+        }
 
-        // sum the total paid amount
-        sum(filteredBookings, Booking::getPaidAmount, this::setTotalPaidAmount, currency);
+        final long start = System.nanoTime();
+        boolean inconsistentCurrencies = false;
+        try {
+            doCalculate(bookings, invoiceRecipientID);
+        }
+        catch (InconsistentCurrenciesException e) {
+            inconsistentCurrencies = true;
+            throw e;
+        }
+        finally {
+            notifyListener(start, inconsistentCurrencies);
+        }
+    }
 
-        // sum the total open amount
-        sum(filteredBookings, Booking::getOpenAmount, this::setTotalOpenAmount, currency);
+    /**
+     * The implementation of {@link #calculate(Iterator, Long)} without listener.
+     */
+    private void doCalculate(Iterator<Booking> bookings, Long invoiceRecipientID) throws InconsistentCurrenciesException {
+        final CalculateEvent calculateEvent = CalculateEvent.beginCalculate();
+        String outcome = EvaluatorEvent.ERROR;
+        try {
+            outcome = evaluate(bookings, invoiceRecipientID);
+        }
+        catch (InconsistentCurrenciesException e) {
+            outcome = EvaluatorEvent.INCONSISTENT_CURRENCY;
+            throw e;
+        }
+        finally {
+            calculateEvent.finish(invoiceRecipientID, scannedBookings, relevantBookings, outcome);
+        }
     }
 
     /**
-     * Set {@link #totalAmount}, {@link #totalPaidAmount} and {@link #totalOpenAmount} instance fields to {@code null}
+     * Filter the bookings, check their currencies and add them up in a single pass
+     *
+     * @return the outcome of the calculation for the Flight Recorder events,
+     * {@link EvaluatorEvent#SUCCESS} or {@link EvaluatorEvent#EMPTY}
+     */
+    private String evaluate(Iterator<Booking> bookings, long invoiceRecipientID) throws InconsistentCurrenciesException {
+        // Might hold calculation to a previous calculation
+        resetAllFields();
+        resetAccumulators();
+        final long referenceTime = getAgingReferenceTime();
+
+        while (bookings.hasNext()) {
+            final Booking booking = bookings.next();
+            scannedBookings++;
+
+            // same filter as filterBookings(List, long)
+            if ((long) booking.getInvoiceRecipientPK() != invoiceRecipientID) {
+                continue;
+            }
+            matchedBookings++;
+
+            // throws at the first conflicting currency, the remaining bookings are not read
+            if (addToTotals(booking, referenceTime)) {
+                relevantBookings++;
+            }
+        }
+
+        if (accumulator.getBookingCount() == 0) {
+            return EvaluatorEvent.EMPTY;
+        }
+
+        setTotals(accumulator.toResult());
+        return EvaluatorEvent.SUCCESS;
+    }
+
+    /**
+     * Add a relevant booking to the totals and, if the aging is enabled, to the totals of its bucket
+     *
+     * @param booking       a booking of the invoice recipient
+     * @param referenceTime the time the age of the booking is measured from
+     * @return {@code true} if the booking was relevant and has been added
+     */
+    private boolean addToTotals(final Booking booking, final long referenceTime) throws InconsistentCurrenciesException {
+        if (agingBuckets == null) {
+            return accumulator.add(booking);
+        }
+        final int bucket = agingBuckets.bucketOf(booking.getBookingDate(), referenceTime);
+        return accumulator.add(booking, agingAccumulators[bucket]);
+    }
+
+    /**
+     * @return the time the age of the bookings is measured from
+     */
+    private long getAgingReferenceTime() {
+        return agingReferenceDate == null ? System.currentTimeMillis() : agingReferenceDate.getTime();
+    }
+
+    /**
+     * Forget the running totals of the previous calculation
+     */
+    private void resetAccumulators() {
+        accumulator.reset();
+        for (final TotalsAccumulator agingAccumulator : agingAccumulators) {
+            agingAccumulator.reset();
+        }
+    }
+
+    /**
+     * Set {@link #totalAmount}, {@link #totalPaidAmount}, {@link #totalOpenAmount} and {@link #agedOpenAmounts}
+     * instance fields to {@code null} and the booking counters to 0
      */
     private void resetAllFields() {
+        scannedBookings = 0;
+        matchedBookings = 0;
+        relevantBookings = 0;
         setTotalAmount(null);
         setTotalPaidAmount(null);
         setTotalOpenAmount(null);
+        agedOpenAmounts = null;
+    }
+
+    /**
+     * Set {@link #totalAmount}, {@link #totalPaidAmount}, {@link #totalOpenAmount} and {@link #agedOpenAmounts}
+     * instance fields
+     *
+     * @param result the totals of the relevant bookings
+     */
+    private void setTotals(final EvaluationResult result) {
+        setTotalAmount(result.getTotalAmount());
+        setTotalPaidAmount(result.getTotalPaidAmount());
+        setTotalOpenAmount(result.getTotalOpenAmount());
+
+        if (agingBuckets != null) {
+            final List<CurrencyAmount> openAmounts = new ArrayList<>(agingAccumulators.length);
+            for (final TotalsAccumulator agingAccumulator : agingAccumulators) {
+                openAmounts.add(agingAccumulator.getBookingCount() == 0
+                        ? new CurrencyAmount(BigDecimal.ZERO, accumulator.getCurrency())
+                        : agingAccumulator.toResult().getTotalOpenAmount());
+            }
+            agedOpenAmounts = Collections.unmodifiableList(openAmounts);
+        }
     }
 
     /**
@@ -179,22 +517,20 @@ public class BookingsCurrencyAmountsEvaluator implements IBookingsCurrencyAmount
      * @return a filtered booking unmodifiable list for the current calculation
      */
     private List<Booking> filterBookings(final List<Booking> bookings, long invoiceRecipientID) {
-        return bookings.stream()
+        Stream<Booking> matchingBookings = bookings.stream()
 
                 // filter bookings matching invoice recipient ID
-                .filter(booking -> (long) booking.getInvoiceRecipientPK() == invoiceRecipientID)
+                .filter(booking -> (long) booking.getInvoiceRecipientPK() == invoiceRecipientID);
+
+        // count them for the listener, before the zero amounts are dropped
+        if (listener != EvaluationListener.NONE) {
+            matchingBookings = matchingBookings.peek(booking -> matchedBookings++);
+        }
 
-                // filter non zero amounts
-                // could also user a method reference {Booking::isZero} with a Predicate.negate()
-                .filter(booking -> !booking.isZero() || !booking.getPaidAmount().equals(BigDecimal.ZERO))
+        return matchingBookings
 
-                // monkey patching:- Line 264 on Price.java
-                .peek(booking -> {
-                    booking.setMainPrice(new MonkeyPatchingPrice(booking.getMainPrice()));
-                    booking.setAdd1Price(new MonkeyPatchingPrice(booking.getAdd1Price()));
-                    booking.setAdd2Price(new MonkeyPatchingPrice(booking.getAdd2Price()));
-                    booking.setCancelFeePrice(new MonkeyPatchingPrice(booking.getCancelFeePrice()));
-                })
+                // filter non zero amounts, without creating the missing prices of the bookings
+                .filter(accumulator::isRelevant)
 
                 // collect it to unmodifiable list
                 .collect(Collectors.toUnmodifiableList());
@@ -237,44 +573,6 @@ public class BookingsCurrencyAmountsEvaluator implements IBookingsCurrencyAmount
         return currencies.size() > 1;
     }
 
-    /**
-     * A map-reduce style total (gross, paid or open) amount calculator
-     * <p>
-     * It will pluck the given amount for each {@link Booking} using the {@code plucker}
-     * Then sum it up using a {@link BigDecimal#add(BigDecimal)} as a reducer
-     * Then create a CurrencyAmount instance using the sum and {@code currency}
-     * And Finally set it to {@code this} it using the given {@code setter}
-     *
-     * @param bookings a list of booking we want to calculate on
-     * @param plucker  a mapper to pluck the appropriate amount from a {@link Booking}.
-     *                 <p>
-     *                 Appropriate mappers might be {@link Booking#getTotalAmount()},
-     *                 {@link Booking#getPaidAmount()} or {@link Booking#getOpenAmount()}
-     * @param setter   a setter to store the calculated sum.
-     *                 <p>
-     *                 Appropriate setters might be {@link #setTotalAmount(CurrencyAmount)},
-     *                 {@link #setTotalPaidAmount(CurrencyAmount)} or {@link #setTotalOpenAmount(CurrencyAmount)}
-     * @param currency the single currency use for a given booking
-     */
-    private void sum(final List<Booking> bookings,
-                     final Function<Booking, BigDecimal> plucker,
-                     final Consumer<CurrencyAmount> setter,
-                     final String currency) {
-
-        bookings.stream()
-
-                // pluck the appropriate getter (from the Booking class) for a given amount
-                .map(plucker)
-
-                // Sum it up
-                .reduce(BigDecimal::add)
-
-                // If any value is present
-                // create a new CurrencyAmount using the sum and currency
-                // pass it to the setter
-                .ifPresent(sum -> setter.accept(new CurrencyAmount(sum, currency)));
-    }
-
     /**
      * After successful calling of {@link #calculate(List, Long)} this method returns the total amount gross of all
      * {@link Booking}s. In case of an {@link InconsistentCurrenciesException} or any other error the result is null.
@@ -307,4 +605,21 @@ public class BookingsCurrencyAmountsEvaluator implements IBookingsCurrencyAmount
     public CurrencyAmount getTotalOpenAmount() {
         return totalOpenAmount;
     }
+
+    /**
+     * After successful calling {@link #calculate(List, Long)} with enabled aging this method returns the open amount
+     * of the {@link Booking}s per bucket of {@link #getAgingBuckets()}, in the order of the buckets. Buckets without
+     * bookings have an open amount of 0.
+     * <p>
+     * Each bucket is rounded on its own, so the sum of the buckets may differ from {@link #getTotalOpenAmount()}
+     * by the rounding.
+     * <p>
+     * If the aging is disabled, there are no relevant bookings, or in case of an
+     * {@link InconsistentCurrenciesException} or any other error the result is null.
+     *
+     * @return an unmodifiable list of one open amount per bucket
+     */
+    public List<CurrencyAmount> getAgedOpenAmounts() {
+        return agedOpenAmounts;
+    }
 }
@@ -0,0 +1,115 @@
+package io.github.samasend.lambdalogic.test.booking;
+
+import com.lambdalogic.test.booking.IBookingsCurrencyAmountsEvaluator;
+import com.lambdalogic.test.booking.model.CurrencyAmount;
+
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * The immutable result of a successful {@link IBookingsCurrencyAmountsEvaluator#calculate(List, Long)} call:
+ * the total amount, the total paid amount and the total open amount.
+ * <p>
+ * All three amounts are null if there were no relevant bookings, see {@link #EMPTY}.
+ * <p>
+ * {@link CurrencyAmount} is mutable, so the amounts are copied when the result is created and when they are returned.
+ */
+public final class EvaluationResult {
+
+    /**
+     * The result of a calculation without relevant bookings
+     */
+    public static final EvaluationResult EMPTY = new EvaluationResult(null, null, null);
+
+    private final CurrencyAmount totalAmount;
+
+    private final CurrencyAmount totalPaidAmount;
+
+    private final CurrencyAmount totalOpenAmount;
+
+    public EvaluationResult(final CurrencyAmount totalAmount,
+                            final CurrencyAmount totalPaidAmount,
+                            final CurrencyAmount totalOpenAmount) {
+        this.totalAmount = copy(totalAmount);
+        this.totalPaidAmount = copy(totalPaidAmount);
+        this.totalOpenAmount = copy(totalOpenAmount);
+    }
+
+    /**
+     * Take the results of an evaluator after a successful call of its
+     * {@link IBookingsCurrencyAmountsEvaluator#calculate(List, Long)} method
+     *
+     * @param evaluator the evaluator
+     * @return a result holding copies of the evaluator's amounts
+     */
+    public static EvaluationResult of(final IBookingsCurrencyAmountsEvaluator evaluator) {
+        if (evaluator.getTotalAmount() == null) {
+            return EMPTY;
+        }
+        return new EvaluationResult(
+                evaluator.getTotalAmount(),
+                evaluator.getTotalPaidAmount(),
+                evaluator.getTotalOpenAmount());
+    }
+
+    private static CurrencyAmount copy(final CurrencyAmount currencyAmount) {
+        return currencyAmount == null ? null : new CurrencyAmount(currencyAmount.getAmount(), currencyAmount.getCurrency());
+    }
+
+    /**
+     * @return {@code true} if there were no relevant bookings
+     */
+    public boolean isEmpty() {
+        return totalAmount == null;
+    }
+
+    /**
+     * @return the total amount gross of all relevant bookings or null if there were none
+     */
+    public CurrencyAmount getTotalAmount() {
+        return copy(totalAmount);
+    }
+
+    /**
+     * @return the total paid amount of all relevant bookings or null if there were none
+     */
+    public CurrencyAmount getTotalPaidAmount() {
+        return copy(totalPaidAmount);
+    }
+
+    /**
+     * @return the total open amount of all relevant bookings or null if there were none
+     */
+    public CurrencyAmount getTotalOpenAmount() {
+        return copy(totalOpenAmount);
+    }
+
+    @Override
+    public boolean equals(final Object other) {
+        if (this == other) {
+            return true;
+        }
+        if (!(other instanceof EvaluationResult)) {
+            return false;
+        }
+        final EvaluationResult otherResult = (EvaluationResult) other;
+        return Objects.equals(totalAmount, otherResult.totalAmount)
+                && Objects.equals(totalPaidAmount, otherResult.totalPaidAmount)
+                && Objects.equals(totalOpenAmount, otherResult.totalOpenAmount);
+    }
+
+    @Override
+    public int hashCode() {
+        // CurrencyAmount does not override hashCode, but its amounts always have a scale of 2
+        return Objects.hash(
+                totalAmount == null ? null : totalAmount.getAmount(),
+                totalAmount == null ? null : totalAmount.getCurrency(),
+                totalPaidAmount == null ? null : totalPaidAmount.getAmount(),
+                totalOpenAmount == null ? null : totalOpenAmount.getAmount());
+    }
+
+    @Override
+    public String toString() {
+        return "total: " + totalAmount + ", paid: " + totalPaidAmount + ", open: " + totalOpenAmount;
+    }
+}
@@ -0,0 +1,122 @@
+package io.github.samasend.lambdalogic.test.booking;
+
+import java.math.BigDecimal;
+
+/**
+ * Helper methods to handle amounts as scaled {@code long}s (fixed point numbers) instead of {@link BigDecimal}s.
+ * <p>
+ * An amount of 1.19 with a scale of 6 is the long 1190000. Adding scaled longs of the same scale is exact and does
+ * not create any objects, which makes them suitable to add up large numbers of amounts.
+ * <p>
+ * Not every {@link BigDecimal} fits into a scaled long. In that case {@link #NOT_SCALED} is returned and the caller
+ * has to fall back to {@link BigDecimal} arithmetic.
+ */
+public final class ScaledAmounts {
+
+    /**
+     * returned by {@link #toScaled(BigDecimal, int)} if a value cannot be represented as scaled long
+     */
+    public static final long NOT_SCALED = Long.MIN_VALUE;
+
+    /**
+     * the largest scale supported by {@link #toScaled(BigDecimal, int)}
+     */
+    public static final int MAX_SCALE = 18;
+
+    /**
+     * scaled values have at most this many digits, so they fit into a long
+     */
+    private static final int MAX_DIGITS = 18;
+
+    /**
+     * a double represents every integer with up to 15 digits exactly
+     */
+    private static final int MAX_DOUBLE_DIGITS = 15;
+
+    private static final long[] LONG_POWERS_OF_TEN = new long[MAX_SCALE + 1];
+
+    private static final double[] DOUBLE_POWERS_OF_TEN = new double[MAX_SCALE + 1];
+
+    static {
+        long power = 1;
+        for (int i = 0; i <= MAX_SCALE; i++) {
+            LONG_POWERS_OF_TEN[i] = power;
+            DOUBLE_POWERS_OF_TEN[i] = power;
+            power *= 10;
+        }
+    }
+
+    private ScaledAmounts() {
+    }
+
+    /**
+     * Convert a value into a scaled long without creating any objects
+     *
+     * <p>
+     * The value is converted exactly or not at all. It is not converted if its scale is negative or larger than the
+     * given scale, or if it has too many digits.
+     * </p>
+     *
+     * @param value the value to convert
+     * @param scale the scale of the result, between 0 and {@link #MAX_SCALE}
+     * @return the value multiplied with 10^scale, or {@link #NOT_SCALED}
+     */
+    public static long toScaled(final BigDecimal value, final int scale) {
+        final int valueScale = value.scale();
+        if (valueScale < 0 || valueScale > scale || scale > MAX_SCALE) {
+            return NOT_SCALED;
+        }
+
+        final int precision = value.precision();
+        if (precision > MAX_DOUBLE_DIGITS || precision + scale - valueScale > MAX_DIGITS) {
+            return NOT_SCALED;
+        }
+
+        /*
+         * BigDecimal offers no allocation free access to its unscaled value, but doubleValue() computes
+         * unscaled / 10^valueScale without creating objects. With at most 15 digits the relative error of the
+         * division and of the multiplication back is too small to change the rounded result, so it is exact.
+         */
+        final long unscaled = Math.round(value.doubleValue() * DOUBLE_POWERS_OF_TEN[valueScale]);
+        return unscaled * LONG_POWERS_OF_TEN[scale - valueScale];
+    }
+
+    /**
+     * Convert a scaled long back into a {@link BigDecimal}
+     *
+     * @param scaled the scaled value
+     * @param scale  the scale of the value
+     * @return the value divided by 10^scale
+     */
+    public static BigDecimal toBigDecimal(final long scaled, final int scale) {
+        return BigDecimal.valueOf(scaled, scale);
+    }
+
+    /**
+     * Check if the sum of two longs overflows
+     *
+     * @return {@code true} if {@code a + b} does not fit into a long
+     */
+    public static boolean overflows(final long a, final long b) {
+        final long sum = a + b;
+        return ((a ^ sum) & (b ^ sum)) < 0;
+    }
+
+    /**
+     * Multiply two scaled longs if the product is guaranteed to fit into a long
+     *
+     * @return the product, whose scale is the sum of both scales, or {@link #NOT_SCALED} if it might overflow
+     */
+    public static long multiply(final long a, final long b) {
+        if (a == NOT_SCALED || b == NOT_SCALED) {
+            return NOT_SCALED;
+        }
+
+        final long high = Math.multiplyHigh(a, b);
+        final long low = a * b;
+        if ((high == 0 && low >= 0) || (high == -1 && low < 0)) {
+            return low == NOT_SCALED ? NOT_SCALED : low;
+        }
+        return NOT_SCALED;
+    }
+}
@@ -0,0 +1,219 @@
+package io.github.samasend.lambdalogic.test.booking;
+
+import com.lambdalogic.test.booking.model.Booking;
+import com.lambdalogic.test.booking.model.CurrencyAmount;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Finds the invoice recipients with the largest open amount of a list of {@link Booking}s.
+ * <p>
+ * The open amount of every invoice recipient ( {@link Booking#getInvoiceRecipientPK()} ) is added up in a single pass
+ * over the bookings. Afterwards only the top N recipients are selected with a bounded heap, instead of sorting all of
+ * them.
+ * <p>
+ * Care is taken not to add amounts of different currencies, so the recipients are grouped per currency.
+ * A recipient with bookings of more than one currency therefore appears in each of these groups.
+ * <p>
+ * The open amounts are not rounded before they are added up, just like in {@link BookingsCurrencyAmountsEvaluator}.
+ * Bookings without invoice recipient or whose amount and paid amount are both 0 are ignored,
+ * as well as recipients who have nothing left to pay.
+ * <p>
+ * The implementation is not thread-safe, but multiple calls lead to correct results.
+ */
+public class TopDebtorsEvaluator {
+
+    /**
+     * An invoice recipient together with the open amount of all of its bookings
+     */
+    public static final class Debtor {
+
+        private final long invoiceRecipientPK;
+
+        private final CurrencyAmount openAmount;
+
+        public Debtor(final long invoiceRecipientPK, final CurrencyAmount openAmount) {
+            this.invoiceRecipientPK = invoiceRecipientPK;
+            this.openAmount = openAmount;
+        }
+
+        public long getInvoiceRecipientPK() {
+            return invoiceRecipientPK;
+        }
+
+        public CurrencyAmount getOpenAmount() {
+            return openAmount;
+        }
+
+        public String toString() {
+            return invoiceRecipientPK + ": " + openAmount;
+        }
+    }
+
+    /**
+     * The unrounded open amounts of all recipients of a single currency.
+     * <p>
+     * Every recipient gets a slot, the heap used for the selection only holds slot numbers.
+     */
+    private static final class CurrencyGroup {
+
+        private final Map<Long, Integer> slots = new HashMap<>();
+
+        private long[] recipients = new long[16];
+
+        private BigDecimal[] openAmounts = new BigDecimal[16];
+
+        private int size = 0;
+
+        private void add(final long invoiceRecipientPK, final BigDecimal openAmount) {
+            final Integer slot = slots.get(invoiceRecipientPK);
+
+            if (slot != null) {
+                openAmounts[slot] = openAmounts[slot].add(openAmount);
+                return;
+            }
+
+            if (size == recipients.length) {
+                recipients = Arrays.copyOf(recipients, size * 2);
+                openAmounts = Arrays.copyOf(openAmounts, size * 2);
+            }
+
+            slots.put(invoiceRecipientPK, size);
+            recipients[size] = invoiceRecipientPK;
+            openAmounts[size] = openAmount;
+            size++;
+        }
+
+        /**
+         * Order two slots by open amount, the smaller recipient PK wins a tie
+         *
+         * @return a positive number if slot {@code a} ranks higher than slot {@code b}
+         */
+        private int compare(final int a, final int b) {
+            final int result = openAmounts[a].compareTo(openAmounts[b]);
+            return result != 0 ? result : Long.compare(recipients[b], recipients[a]);
+        }
+
+        /**
+         * Select the {@code limit} slots with the largest positive open amount, using a min-heap of slot numbers
+         *
+         * @param limit the maximum number of slots to return
+         * @return the selected slots, the largest open amount first
+         */
+        private int[] select(final int limit) {
+            final int[] heap = new int[Math.min(limit, size)];
+            int heapSize = 0;
+
+            for (int slot = 0; slot < size; slot++) {
+                // recipients who have nothing left to pay are no debtors
+                if (openAmounts[slot].signum() <= 0) {
+                    continue;
+                }
+
+                if (heapSize < heap.length) {
+                    heap[heapSize] = slot;
+                    siftUp(heap, heapSize++);
+                }
+                else if (heap.length > 0 && compare(slot, heap[0]) > 0) {
+                    heap[0] = slot;
+                    siftDown(heap, heapSize);
+                }
+            }
+
+            // drain the heap, the smallest remaining slot goes to the end of the result
+            final int[] result = new int[heapSize];
+            for (int i = heapSize - 1; i >= 0; i--) {
+                result[i] = heap[0];
+                heap[0] = heap[i];
+                siftDown(heap, i);
+            }
+            return result;
+        }
+
+        private void siftUp(final int[] heap, int index) {
+            final int slot = heap[index];
+            while (index > 0) {
+                final int parent = (index - 1) >>> 1;
+                if (compare(slot, heap[parent]) >= 0) {
+                    break;
+                }
+                heap[index] = heap[parent];
+                index = parent;
+            }
+            heap[index] = slot;
+        }
+
+        private void siftDown(final int[] heap, final int heapSize) {
+            if (heapSize == 0) {
+                return;
+            }
+
+            final int slot = heap[0];
+            int index = 0;
+            int child;
+            while ((child = 2 * index + 1) < heapSize) {
+                if (child + 1 < heapSize && compare(heap[child + 1], heap[child]) < 0) {
+                    child++;
+                }
+                if (compare(slot, heap[child]) <= 0) {
+                    break;
+                }
+                heap[index] = heap[child];
+                index = child;
+            }
+            heap[index] = slot;
+        }
+    }
+
+    /**
+     * Find the invoice recipients with the largest open amount.
+     *
+     * @param bookingList - a list of {@link Booking}s of any invoice recipients
+     * @param limit       - the maximum number of recipients to return per currency
+     * @return the debtors per currency, each list is ordered by open amount, the largest first.
+     * The currencies appear in the order of their first relevant booking.
+     */
+    public Map<String, List<Debtor>> calculate(final List<Booking> bookingList, final int limit) {
+        if (limit < 0) {
+            throw new IllegalArgumentException("Parameter 'limit' must not be negative.");
+        }
+
+        // add up the open amounts per currency and recipient in a single pass
+        final Map<String, CurrencyGroup> groups = new LinkedHashMap<>();
+        final BookingAmounts.DecimalReader reader = new BookingAmounts.DecimalReader();
+        for (final Booking booking : bookingList) {
+            final Long invoiceRecipientPK = booking.getInvoiceRecipientPK();
+
+            if (invoiceRecipientPK == null || !reader.read(booking)) {
+                continue;
+            }
+
+            final BigDecimal openAmount = reader.getTotalAmountGross().subtract(reader.getPaidAmountOrZero());
+            groups.computeIfAbsent(BookingAmounts.getCurrency(booking), currency -> new CurrencyGroup())
+                    .add(invoiceRecipientPK, openAmount);
+        }
+
+        // select the top recipients of each currency
+        final Map<String, List<Debtor>> result = new LinkedHashMap<>();
+        groups.forEach((currency, group) -> {
+            final int[] slots = group.select(limit);
+            final List<Debtor> debtors = new ArrayList<>(slots.length);
+
+            for (final int slot : slots) {
+                debtors.add(new Debtor(group.recipients[slot], new CurrencyAmount(group.openAmounts[slot], currency)));
+            }
+
+            if (!debtors.isEmpty()) {
+                result.put(currency, Collections.unmodifiableList(debtors));
+            }
+        });
+        return result;
+    }
+}
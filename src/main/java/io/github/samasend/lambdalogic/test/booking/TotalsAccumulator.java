@@ -0,0 +1,303 @@
+package io.github.samasend.lambdalogic.test.booking;
+
+import com.lambdalogic.test.booking.exception.InconsistentCurrenciesException;
+import com.lambdalogic.test.booking.model.Booking;
+import com.lambdalogic.test.booking.model.CurrencyAmount;
+
+import java.math.BigDecimal;
+import java.util.Comparator;
+import java.util.Objects;
+
+import static io.github.samasend.lambdalogic.test.booking.ScaledAmounts.NOT_SCALED;
+
+/**
+ * Running totals of {@link Booking}s that are added one by one.
+ * <p>
+ * The total amount gross and the paid amount are kept unrounded, they are only rounded when the result is taken,
+ * so rounding errors are not added up. The open amount is the difference of both.
+ * <p>
+ * Bookings whose amount and paid amount are both 0 are ignored. The invoice recipient is not checked,
+ * that is up to the caller.
+ * <p>
+ * The bookings are read with a {@link BookingAmounts.Reader} and added up as scaled longs
+ * (see {@link ScaledAmounts}), so adding a booking does not create any objects apart from the short-lived array of
+ * {@link Booking#getPrices()} that holds the currency. Only amounts that do not fit
+ * (more than {@value #SCALE} decimal places or very large values) are added up as {@link BigDecimal}s.
+ * <p>
+ * The accumulator is not thread-safe.
+ */
+public class TotalsAccumulator {
+
+    /**
+     * the scale of the scaled longs: 2 decimal places of the amounts plus 4 of the tax rate factor
+     */
+    public static final int SCALE = 6;
+
+    /**
+     * orders the currencies of an {@link InconsistentCurrenciesException}
+     */
+    private static final Comparator<String> CURRENCY_ORDER = Comparator.nullsFirst(Comparator.naturalOrder());
+
+    /**
+     * A scaled long together with the part of the sum that did not fit into it
+     */
+    private static final class Sum {
+
+        private long scaled = 0;
+
+        private BigDecimal rest = BigDecimal.ZERO;
+
+        private void add(final BigDecimal value) {
+            add(ScaledAmounts.toScaled(value, SCALE), value);
+        }
+
+        /**
+         * @param scaled the value as scaled long or {@link ScaledAmounts#NOT_SCALED}
+         * @param value  the value, only used if the scaled long does not fit
+         */
+        private void add(final long scaled, final BigDecimal value) {
+            if (scaled == NOT_SCALED) {
+                rest = rest.add(value);
+            }
+            else {
+                add(scaled);
+            }
+        }
+
+        private void add(final long scaled) {
+            if (ScaledAmounts.overflows(this.scaled, scaled)) {
+                rest = rest.add(ScaledAmounts.toBigDecimal(this.scaled, SCALE));
+                this.scaled = scaled;
+            }
+            else {
+                this.scaled += scaled;
+            }
+        }
+
+        private void add(final Sum other) {
+            add(other.scaled);
+            if (other.rest.signum() != 0) {
+                rest = rest.add(other.rest);
+            }
+        }
+
+        private BigDecimal toBigDecimal() {
+            final BigDecimal result = ScaledAmounts.toBigDecimal(scaled, SCALE);
+            return rest.signum() == 0 ? result : result.add(rest);
+        }
+
+        private void reset() {
+            scaled = 0;
+            rest = BigDecimal.ZERO;
+        }
+    }
+
+    /**
+     * Receives the amounts of a single booking as scaled longs, before it is known whether the booking is relevant
+     */
+    private static final class StagedBooking extends BookingAmounts.Reader {
+
+        private final Sum totalAmount = new Sum();
+
+        private final Sum paidAmount = new Sum();
+
+        /**
+         * the unscaled paid amount, null if the booking has none
+         */
+        private BigDecimal rawPaidAmount;
+
+        @Override
+        protected void reset() {
+            totalAmount.reset();
+            paidAmount.reset();
+            rawPaidAmount = null;
+        }
+
+        @Override
+        protected void addGrossAmount(final BigDecimal amount) {
+            totalAmount.add(amount);
+        }
+
+        @Override
+        protected void addNetAmount(final BigDecimal amount, final BigDecimal taxRateDiv100Add1) {
+            final long scaled = ScaledAmounts.multiply(
+                    ScaledAmounts.toScaled(amount, 2),
+                    ScaledAmounts.toScaled(taxRateDiv100Add1, SCALE - 2));
+            if (scaled == NOT_SCALED) {
+                totalAmount.add(amount.multiply(taxRateDiv100Add1));
+            }
+            else {
+                totalAmount.add(scaled);
+            }
+        }
+
+        @Override
+        protected void setPaidAmount(final BigDecimal paidAmount) {
+            this.paidAmount.add(paidAmount);
+            rawPaidAmount = paidAmount;
+        }
+    }
+
+    private final StagedBooking stagedBooking = new StagedBooking();
+
+    private String currency = null;
+
+    private final Sum totalAmount = new Sum();
+
+    private final Sum paidAmount = new Sum();
+
+    private int bookingCount = 0;
+
+    /**
+     * Add a booking to the totals
+     *
+     * @param booking the booking to add
+     * @return {@code true} if the booking was relevant and has been added,
+     * {@code false} if its amount and paid amount are both 0
+     * @throws InconsistentCurrenciesException if the booking's currency differs from the one of the bookings added
+     *                                         before, the totals are not changed in that case
+     */
+    public boolean add(final Booking booking) throws InconsistentCurrenciesException {
+        return add(booking, null);
+    }
+
+    /**
+     * Add a booking to the totals and to the totals of a part of the bookings, e.g. a bucket of an aging.
+     * <p>
+     * The booking is read only once for both.
+     *
+     * @param booking the booking to add
+     * @param part    the totals of the part the booking belongs to, may be null
+     * @return {@code true} if the booking was relevant and has been added,
+     * {@code false} if its amount and paid amount are both 0
+     * @throws InconsistentCurrenciesException if the booking's currency differs from the one of the bookings added
+     *                                         before, the totals are not changed in that case
+     */
+    boolean add(final Booking booking, final TotalsAccumulator part) throws InconsistentCurrenciesException {
+        if (!stagedBooking.read(booking)) {
+            return false;
+        }
+
+        final String bookingCurrency = BookingAmounts.getCurrency(booking);
+        checkCurrency(bookingCurrency);
+        add(stagedBooking);
+
+        if (part != null) {
+            part.checkCurrency(bookingCurrency);
+            part.add(stagedBooking);
+        }
+        return true;
+    }
+
+    /**
+     * Add the amounts of a relevant booking whose currency has been checked
+     */
+    private void add(final StagedBooking booking) {
+        totalAmount.add(booking.totalAmount);
+        paidAmount.add(booking.paidAmount);
+        bookingCount++;
+    }
+
+    /**
+     * Add the totals of another accumulator, as if its bookings were added to this one
+     *
+     * @param other the accumulator to add, it is not changed
+     * @throws InconsistentCurrenciesException if the currency of the other accumulator's bookings differs from the
+     *                                         one of the bookings added before, the totals are not changed in that case
+     */
+    public void merge(final TotalsAccumulator other) throws InconsistentCurrenciesException {
+        if (other.bookingCount == 0) {
+            return;
+        }
+
+        checkCurrency(other.currency);
+
+        totalAmount.add(other.totalAmount);
+        paidAmount.add(other.paidAmount);
+        bookingCount += other.bookingCount;
+    }
+
+    /**
+     * Check if a booking would be added, without adding it
+     *
+     * <p>
+     * Unlike {@link BookingAmounts#isRelevant(Booking)} this does not
+     * create the missing prices of the booking.
+     * </p>
+     *
+     * @param booking the booking to check
+     * @return {@code true} if the booking has a non zero price or a non zero paid amount
+     */
+    public boolean isRelevant(final Booking booking) {
+        return stagedBooking.read(booking);
+    }
+
+    /**
+     * Check that a currency matches the currency of the bookings added so far
+     *
+     * @param bookingCurrency the currency of a new relevant booking
+     * @throws InconsistentCurrenciesException if both currencies differ
+     */
+    private void checkCurrency(final String bookingCurrency) throws InconsistentCurrenciesException {
+        if (bookingCount == 0) {
+            currency = bookingCurrency;
+        }
+        else if (!Objects.equals(currency, bookingCurrency)) {
+            // same order as the sorted currencies of BookingsCurrencyAmountsEvaluator
+            if (CURRENCY_ORDER.compare(currency, bookingCurrency) < 0) {
+                throw new InconsistentCurrenciesException(currency, bookingCurrency);
+            }
+            throw new InconsistentCurrenciesException(bookingCurrency, currency);
+        }
+    }
+
+    /**
+     * Return the paid amount of the booking read last by {@link #add(Booking)} or {@link #isRelevant(Booking)},
+     * without creating a missing one like {@link Booking#getPaidAmount()}
+     *
+     * @return the paid amount as it is stored in the booking, null if the booking has none
+     */
+    public BigDecimal getLastPaidAmount() {
+        return stagedBooking.rawPaidAmount;
+    }
+
+    /**
+     * @return the number of relevant bookings added so far
+     */
+    public int getBookingCount() {
+        return bookingCount;
+    }
+
+    /**
+     * @return the currency of the bookings added so far, null if there are none
+     */
+    public String getCurrency() {
+        return currency;
+    }
+
+    /**
+     * @return the rounded totals of all bookings added so far, {@link EvaluationResult#EMPTY} if there are none
+     */
+    public EvaluationResult toResult() {
+        if (bookingCount == 0) {
+            return EvaluationResult.EMPTY;
+        }
+
+        final BigDecimal total = totalAmount.toBigDecimal();
+        final BigDecimal paid = paidAmount.toBigDecimal();
+        return new EvaluationResult(
+                new CurrencyAmount(total, currency),
+                new CurrencyAmount(paid, currency),
+                new CurrencyAmount(total.subtract(paid), currency));
+    }
+
+    /**
+     * Forget all bookings added so far
+     */
+    public void reset() {
+        currency = null;
+        totalAmount.reset();
+        paidAmount.reset();
+        bookingCount = 0;
+    }
+}
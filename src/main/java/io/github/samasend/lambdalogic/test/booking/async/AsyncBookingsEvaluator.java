@@ -0,0 +1,277 @@
+package io.github.samasend.lambdalogic.test.booking.async;
+
+import com.lambdalogic.test.booking.IBookingsCurrencyAmountsEvaluator;
+import com.lambdalogic.test.booking.exception.InconsistentCurrenciesException;
+import com.lambdalogic.test.booking.model.Booking;
+import io.github.samasend.lambdalogic.test.booking.BookingsCurrencyAmountsEvaluator;
+import io.github.samasend.lambdalogic.test.booking.EvaluationResult;
+
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Evaluates lists of {@link Booking}s in the background and returns the results as {@link CompletableFuture}s.
+ * <p>
+ * Concurrent requests for the same booking list instance and the same invoice recipient are coalesced:
+ * as long as the first request is queued or running, further identical requests get its result instead of being
+ * calculated again. Once a request has been completed the next identical request is calculated again,
+ * so changes of the bookings are picked up.
+ * <p>
+ * Every worker thread uses its own {@link IBookingsCurrencyAmountsEvaluator}, because evaluators are not thread-safe.
+ * The booking lists must not be modified while they are evaluated.
+ * <p>
+ * This class is thread-safe.
+ */
+public class AsyncBookingsEvaluator implements AutoCloseable {
+
+    /**
+     * Identifies a request by the identity of the booking list and the invoice recipient.
+     * <p>
+     * Comparing the contents of the lists would be as expensive as the calculation itself.
+     */
+    private static final class RequestKey {
+
+        private final List<Booking> bookingList;
+
+        private final Long invoiceRecipientID;
+
+        private RequestKey(final List<Booking> bookingList, final Long invoiceRecipientID) {
+            this.bookingList = bookingList;
+            this.invoiceRecipientID = invoiceRecipientID;
+        }
+
+        @Override
+        public boolean equals(final Object other) {
+            if (!(other instanceof RequestKey)) {
+                return false;
+            }
+            final RequestKey otherKey = (RequestKey) other;
+            return bookingList == otherKey.bookingList && Objects.equals(invoiceRecipientID, otherKey.invoiceRecipientID);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * System.identityHashCode(bookingList) + Objects.hashCode(invoiceRecipientID);
+        }
+    }
+
+    /**
+     * A queued or running request
+     */
+    private final class EvaluationTask implements Runnable {
+
+        private final RequestKey key;
+
+        private final CompletableFuture<EvaluationResult> future = new CompletableFuture<>();
+
+        private EvaluationTask(final RequestKey key) {
+            this.key = key;
+        }
+
+        @Override
+        public void run() {
+            try {
+                final IBookingsCurrencyAmountsEvaluator evaluator = evaluators.get();
+                evaluator.calculate(key.bookingList, key.invoiceRecipientID);
+                final EvaluationResult result = EvaluationResult.of(evaluator);
+                requests.remove(key, this);
+                future.complete(result);
+            }
+            catch (InconsistentCurrenciesException | RuntimeException e) {
+                reject(e);
+            }
+            catch (Error e) {
+                // otherwise identical requests would be coalesced with a future that never completes
+                reject(e);
+                throw e;
+            }
+        }
+
+        private void reject(final Throwable e) {
+            requests.remove(key, this);
+            future.completeExceptionally(e);
+        }
+    }
+
+    /**
+     * The queued and running requests
+     */
+    private final ConcurrentMap<RequestKey, EvaluationTask> requests = new ConcurrentHashMap<>();
+
+    /**
+     * One evaluator per thread
+     */
+    private final ThreadLocal<IBookingsCurrencyAmountsEvaluator> evaluators;
+
+    private final Executor executor;
+
+    /**
+     * the executor created by this instance, it is shut down by {@link #close()}
+     */
+    private final ExecutorService ownExecutor;
+
+    /**
+     * Create an asynchronous evaluator with its own thread pool
+     *
+     * @param threads          the number of worker threads
+     * @param queueCapacity    the maximum number of requests waiting for a worker thread
+     * @param rejectionPolicy  what to do with new requests when the queue is full
+     */
+    public AsyncBookingsEvaluator(final int threads, final int queueCapacity, final RejectionPolicy rejectionPolicy) {
+        this(threads, queueCapacity, rejectionPolicy, BookingsCurrencyAmountsEvaluator::new);
+    }
+
+    /**
+     * Create an asynchronous evaluator with its own thread pool
+     *
+     * @param threads          the number of worker threads
+     * @param queueCapacity    the maximum number of requests waiting for a worker thread
+     * @param rejectionPolicy  what to do with new requests when the queue is full
+     * @param evaluatorFactory creates the evaluator of each worker thread
+     */
+    public AsyncBookingsEvaluator(final int threads,
+                                  final int queueCapacity,
+                                  final RejectionPolicy rejectionPolicy,
+                                  final Supplier<? extends IBookingsCurrencyAmountsEvaluator> evaluatorFactory) {
+        if (rejectionPolicy == null) {
+            throw new IllegalArgumentException("Parameter 'rejectionPolicy' must not be null.");
+        }
+        this.ownExecutor = new ThreadPoolExecutor(
+                threads, threads,
+                0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                new WorkerThreadFactory(),
+                rejectionHandler(rejectionPolicy));
+        this.executor = ownExecutor;
+        this.evaluators = ThreadLocal.withInitial(evaluatorFactory);
+    }
+
+    /**
+     * Create an asynchronous evaluator running on the given executor.
+     * <p>
+     * If the executor rejects a request by throwing a {@link RejectedExecutionException}, the request fails with it.
+     * The executor is not shut down by {@link #close()}.
+     *
+     * @param executor         the executor to run the calculations on
+     * @param evaluatorFactory creates the evaluator of each thread
+     */
+    public AsyncBookingsEvaluator(final Executor executor,
+                                  final Supplier<? extends IBookingsCurrencyAmountsEvaluator> evaluatorFactory) {
+        if (executor == null) {
+            throw new IllegalArgumentException("Parameter 'executor' must not be null.");
+        }
+        this.ownExecutor = null;
+        this.executor = executor;
+        this.evaluators = ThreadLocal.withInitial(evaluatorFactory);
+    }
+
+    /**
+     * Add up the total amount, the paid amount and open amount of a list of {@link Booking}s in the background.
+     *
+     * @param bookingList        - a list of {@link Booking}s
+     * @param invoiceRecipientID - the PK of the person who is the booking's invoice recipient
+     * @return a future of the result, which completes exceptionally with an {@link InconsistentCurrenciesException}
+     * if relevant bookings have different currencies or with a {@link RejectedExecutionException} if the request
+     * has been rejected
+     * @see IBookingsCurrencyAmountsEvaluator#calculate(List, Long)
+     */
+    public CompletableFuture<EvaluationResult> calculate(final List<Booking> bookingList, final Long invoiceRecipientID) {
+        final RequestKey key = new RequestKey(bookingList, invoiceRecipientID);
+        final EvaluationTask task = new EvaluationTask(key);
+
+        // coalesce with an identical request that is queued or running
+        final EvaluationTask inFlight = requests.putIfAbsent(key, task);
+        if (inFlight != null) {
+            return inFlight.future.copy();
+        }
+
+        try {
+            executor.execute(task);
+        }
+        catch (RejectedExecutionException e) {
+            task.reject(e);
+        }
+
+        // callers must not be able to complete or cancel the future shared by coalesced requests
+        return task.future.copy();
+    }
+
+    /**
+     * @return the number of distinct requests that are queued or running
+     */
+    public int getInFlightRequests() {
+        return requests.size();
+    }
+
+    /**
+     * Shut down the own thread pool, queued requests are still completed
+     */
+    @Override
+    public void close() {
+        if (ownExecutor != null) {
+            ownExecutor.shutdown();
+        }
+    }
+
+    private static RejectedExecutionHandler rejectionHandler(final RejectionPolicy rejectionPolicy) {
+        switch (rejectionPolicy) {
+            case CALLER_RUNS:
+                // unlike ThreadPoolExecutor.CallerRunsPolicy this does not silently drop the task after close()
+                return (task, executor) -> {
+                    checkNotShutdown(executor);
+                    task.run();
+                };
+            case DISCARD_OLDEST:
+                return (task, executor) -> {
+                    checkNotShutdown(executor);
+                    final Runnable oldest = executor.getQueue().poll();
+                    if (oldest instanceof EvaluationTask) {
+                        ((EvaluationTask) oldest).reject(
+                                new RejectedExecutionException("Discarded in favour of a newer request."));
+                    }
+                    executor.execute(task);
+                };
+            default:
+                return new ThreadPoolExecutor.AbortPolicy();
+        }
+    }
+
+    private static void checkNotShutdown(final ThreadPoolExecutor executor) {
+        if (executor.isShutdown()) {
+            throw new RejectedExecutionException("The evaluator has been closed.");
+        }
+    }
+
+    /**
+     * Creates named daemon threads, so a forgotten {@link #close()} does not keep the JVM alive
+     */
+    private static final class WorkerThreadFactory implements ThreadFactory {
+
+        private static final AtomicInteger POOL_NUMBER = new AtomicInteger();
+
+        private final int poolNumber = POOL_NUMBER.incrementAndGet();
+
+        private final AtomicInteger threadNumber = new AtomicInteger();
+
+        @Override
+        public Thread newThread(final Runnable runnable) {
+            final Thread thread = new Thread(
+                    runnable, "booking-evaluator-" + poolNumber + "-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package io.github.samasend.lambdalogic.test.booking.async;
+
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Defines what {@link AsyncBookingsEvaluator} does with a new request when its queue is full.
+ * <p>
+ * Whatever the policy, the future of every request is completed eventually.
+ */
+public enum RejectionPolicy {
+
+    /**
+     * The new request fails with a {@link RejectedExecutionException}.
+     */
+    ABORT,
+
+    /**
+     * The new request is evaluated on the calling thread, which slows down the caller.
+     */
+    CALLER_RUNS,
+
+    /**
+     * The oldest queued request fails with a {@link RejectedExecutionException} and the new one is queued instead.
+     */
+    DISCARD_OLDEST
+
+}
@@ -0,0 +1,266 @@
+package io.github.samasend.lambdalogic.test.booking.cache;
+
+import com.lambdalogic.test.booking.IBookingsCurrencyAmountsEvaluator;
+import com.lambdalogic.test.booking.exception.InconsistentCurrenciesException;
+import com.lambdalogic.test.booking.model.Booking;
+import com.lambdalogic.test.booking.model.CurrencyAmount;
+import io.github.samasend.lambdalogic.test.booking.EvaluationResult;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * An {@link IBookingsCurrencyAmountsEvaluator} that remembers the results of another evaluator.
+ * <p>
+ * Only calculations of a {@link VersionedBookingList} are cached, keyed by the list and the invoice recipient.
+ * As soon as the version of a list changes, all cached results of that list are dropped.
+ * Other lists are always passed to the other evaluator.
+ * <p>
+ * The number of cached results is bounded, the least recently used result is evicted first.
+ * Calculations that end with an {@link InconsistentCurrenciesException} are not cached.
+ * <p>
+ * The implementation is not thread-safe, but multiple calls lead to correct results.
+ */
+public class CachingBookingsCurrencyAmountsEvaluator implements IBookingsCurrencyAmountsEvaluator {
+
+    /**
+     * Identifies a cached result by the id of the booking list and the invoice recipient
+     */
+    private static final class CacheKey {
+
+        private final long listId;
+
+        private final Long invoiceRecipientID;
+
+        private CacheKey(final long listId, final Long invoiceRecipientID) {
+            this.listId = listId;
+            this.invoiceRecipientID = invoiceRecipientID;
+        }
+
+        @Override
+        public boolean equals(final Object other) {
+            if (!(other instanceof CacheKey)) {
+                return false;
+            }
+            final CacheKey otherKey = (CacheKey) other;
+            return listId == otherKey.listId && Objects.equals(invoiceRecipientID, otherKey.invoiceRecipientID);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * Long.hashCode(listId) + Objects.hashCode(invoiceRecipientID);
+        }
+    }
+
+    /**
+     * The version of a booking list the cached results belong to, and the keys of these results
+     */
+    private static final class ListState {
+
+        private final long version;
+
+        private final Set<CacheKey> keys = new HashSet<>();
+
+        private ListState(final long version) {
+            this.version = version;
+        }
+    }
+
+    private final IBookingsCurrencyAmountsEvaluator delegate;
+
+    private final int maxEntries;
+
+    /**
+     * the cached results in access order, the least recently used first
+     */
+    private final LinkedHashMap<CacheKey, EvaluationResult> results;
+
+    private final Map<Long, ListState> lists = new HashMap<>();
+
+    private long hitCount = 0;
+
+    private long missCount = 0;
+
+    private long evictionCount = 0;
+
+    private long invalidationCount = 0;
+
+    /**
+     * the result of the last {@link #calculate} call, null after a failure
+     */
+    private EvaluationResult result = null;
+
+    /**
+     * @param delegate   the evaluator doing the actual calculations
+     * @param maxEntries the maximum number of cached results
+     */
+    public CachingBookingsCurrencyAmountsEvaluator(final IBookingsCurrencyAmountsEvaluator delegate, final int maxEntries) {
+        if (delegate == null) {
+            throw new IllegalArgumentException("Parameter 'delegate' must not be null.");
+        }
+        if (maxEntries < 1) {
+            throw new IllegalArgumentException("Parameter 'maxEntries' must be positive.");
+        }
+
+        this.delegate = delegate;
+        this.maxEntries = maxEntries;
+        this.results = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<CacheKey, EvaluationResult> eldest) {
+                if (size() <= CachingBookingsCurrencyAmountsEvaluator.this.maxEntries) {
+                    return false;
+                }
+                forgetKey(eldest.getKey());
+                evictionCount++;
+                return true;
+            }
+        };
+    }
+
+    /**
+     * Add up the total amount, the paid amount and open amount of a list of {@link Booking}s,
+     * or take them from the cache if the list is a {@link VersionedBookingList} that has not been changed since.
+     *
+     * @see IBookingsCurrencyAmountsEvaluator#calculate(List, Long)
+     */
+    @Override
+    public void calculate(final List<Booking> bookingList, final Long invoiceRecipientID)
+            throws InconsistentCurrenciesException {
+
+        result = null;
+
+        if (!(bookingList instanceof VersionedBookingList)) {
+            result = calculateWithDelegate(bookingList, invoiceRecipientID);
+            return;
+        }
+
+        final VersionedBookingList versionedList = (VersionedBookingList) bookingList;
+        final CacheKey key = new CacheKey(versionedList.getId(), invoiceRecipientID);
+        ListState listState = getCurrentListState(versionedList);
+
+        final EvaluationResult cached = results.get(key);
+        if (cached != null) {
+            hitCount++;
+            result = cached;
+            return;
+        }
+
+        missCount++;
+        result = calculateWithDelegate(bookingList, invoiceRecipientID);
+
+        // only lists with cached results have a state, so it is created after the delegate has succeeded
+        if (listState == null) {
+            listState = new ListState(versionedList.getVersion());
+            lists.put(versionedList.getId(), listState);
+        }
+
+        // register the key first, evicting an older result of the same list must not drop the list state
+        listState.keys.add(key);
+        results.put(key, result);
+    }
+
+    /**
+     * Return the state of the current version of a list, all cached results of an older version of the list are
+     * dropped together with its state
+     *
+     * @return the state, null if there are no cached results of the current version
+     */
+    private ListState getCurrentListState(final VersionedBookingList versionedList) {
+        final ListState listState = lists.get(versionedList.getId());
+
+        if (listState != null && listState.version != versionedList.getVersion()) {
+            invalidationCount += listState.keys.size();
+            results.keySet().removeAll(listState.keys);
+            lists.remove(versionedList.getId());
+            return null;
+        }
+        return listState;
+    }
+
+    private void forgetKey(final CacheKey key) {
+        final ListState listState = lists.get(key.listId);
+        if (listState != null) {
+            listState.keys.remove(key);
+            if (listState.keys.isEmpty()) {
+                lists.remove(key.listId);
+            }
+        }
+    }
+
+    private EvaluationResult calculateWithDelegate(final List<Booking> bookingList, final Long invoiceRecipientID)
+            throws InconsistentCurrenciesException {
+
+        delegate.calculate(bookingList, invoiceRecipientID);
+        return EvaluationResult.of(delegate);
+    }
+
+    /**
+     * Drop all cached results, the counters are kept
+     */
+    public void clear() {
+        results.clear();
+        lists.clear();
+    }
+
+    /**
+     * @return the number of cached results
+     */
+    public int size() {
+        return results.size();
+    }
+
+    /**
+     * @return the number of lists with cached results
+     */
+    int getListCount() {
+        return lists.size();
+    }
+
+    /**
+     * @return the number of calculations answered from the cache
+     */
+    public long getHitCount() {
+        return hitCount;
+    }
+
+    /**
+     * @return the number of calculations of {@link VersionedBookingList}s that had to be done by the delegate
+     */
+    public long getMissCount() {
+        return missCount;
+    }
+
+    /**
+     * @return the number of results dropped because the cache was full
+     */
+    public long getEvictionCount() {
+        return evictionCount;
+    }
+
+    /**
+     * @return the number of results dropped because their booking list has been changed
+     */
+    public long getInvalidationCount() {
+        return invalidationCount;
+    }
+
+    @Override
+    public CurrencyAmount getTotalAmount() {
+        return result == null ? null : result.getTotalAmount();
+    }
+
+    @Override
+    public CurrencyAmount getTotalPaidAmount() {
+        return result == null ? null : result.getTotalPaidAmount();
+    }
+
+    @Override
+    public CurrencyAmount getTotalOpenAmount() {
+        return result == null ? null : result.getTotalOpenAmount();
+    }
+}
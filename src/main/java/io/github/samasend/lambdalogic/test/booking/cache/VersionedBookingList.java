@@ -0,0 +1,104 @@
+package io.github.samasend.lambdalogic.test.booking.cache;
+
+import com.lambdalogic.test.booking.model.Booking;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A list of {@link Booking}s that counts its modifications.
+ * <p>
+ * Every structural change of the list increases its version. The bookings themselves cannot notice their changes,
+ * so whoever modifies a booking of the list (e.g. {@link Booking#setPaidAmount(java.math.BigDecimal)}) has to call
+ * {@link #markModified()} afterwards.
+ * <p>
+ * Together with its unique {@link #getId() id} the version identifies the content of the list,
+ * which allows to cache the results of calculations, see {@link CachingBookingsCurrencyAmountsEvaluator}.
+ * <p>
+ * The list is not thread-safe.
+ */
+public class VersionedBookingList extends AbstractList<Booking> implements RandomAccess {
+
+    private static final AtomicLong NEXT_ID = new AtomicLong();
+
+    private final long id = NEXT_ID.incrementAndGet();
+
+    private final List<Booking> bookings;
+
+    private long version = 0;
+
+    public VersionedBookingList() {
+        this.bookings = new ArrayList<>();
+    }
+
+    /**
+     * @param bookings the initial bookings, they are copied into the new list
+     */
+    public VersionedBookingList(final Collection<Booking> bookings) {
+        this.bookings = new ArrayList<>(bookings);
+    }
+
+    /**
+     * @return the id of this list, which is unique within the JVM
+     */
+    public long getId() {
+        return id;
+    }
+
+    /**
+     * @return the number of modifications of this list
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * Increase the version after bookings of this list have been modified
+     */
+    public void markModified() {
+        version++;
+    }
+
+    @Override
+    public Booking get(final int index) {
+        return bookings.get(index);
+    }
+
+    @Override
+    public int size() {
+        return bookings.size();
+    }
+
+    @Override
+    public Booking set(final int index, final Booking booking) {
+        final Booking previous = bookings.set(index, booking);
+        markModified();
+        return previous;
+    }
+
+    @Override
+    public void add(final int index, final Booking booking) {
+        bookings.add(index, booking);
+        modCount++;
+        markModified();
+    }
+
+    @Override
+    public Booking remove(final int index) {
+        final Booking previous = bookings.remove(index);
+        modCount++;
+        markModified();
+        return previous;
+    }
+
+    @Override
+    public void clear() {
+        bookings.clear();
+        modCount++;
+        markModified();
+    }
+}
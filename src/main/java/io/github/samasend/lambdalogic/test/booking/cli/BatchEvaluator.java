@@ -0,0 +1,418 @@
+package io.github.samasend.lambdalogic.test.booking.cli;
+
+import com.lambdalogic.test.booking.IBookingsCurrencyAmountsEvaluator;
+import com.lambdalogic.test.booking.exception.InconsistentCurrenciesException;
+import com.lambdalogic.test.booking.model.Booking;
+import com.lambdalogic.test.booking.model.CurrencyAmount;
+import io.github.samasend.lambdalogic.test.booking.BookingsCurrencyAmountsEvaluator;
+import io.github.samasend.lambdalogic.test.booking.EvaluationResult;
+import io.github.samasend.lambdalogic.test.booking.codec.BookingCodec;
+import io.github.samasend.lambdalogic.test.booking.generator.BookingCsv;
+import io.github.samasend.lambdalogic.test.booking.metrics.AggregatingEvaluationListener;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+
+/**
+ * Computes the totals of all invoice recipients of a booking file from the command line and reports the throughput.
+ * <p>
+ * Usage: {@code java -jar <jar> --input <file> [--format csv|binary] [--output <file>] [--runs <n>]
+ * [--recipient <PK>]}
+ * <ul>
+ * <li>{@code --input}: the booking file, either written by {@link BookingCsv} or a sequence of
+ * {@link BookingCodec} records</li>
+ * <li>{@code --format}: the format of the input, by default {@code csv} for files ending with {@code .csv}
+ * and {@code binary} otherwise</li>
+ * <li>{@code --output}: the result file, by default the results are not written</li>
+ * <li>{@code --runs}: the number of times the totals are computed, for capacity tests, by default 1</li>
+ * <li>{@code --recipient}: compute the totals of this invoice recipient only; the bookings of other recipients are
+ * skipped while the file is read, before they are decoded or parsed</li>
+ * </ul>
+ * The bookings are grouped by invoice recipient in the order of the file, and every group is evaluated by a
+ * {@link BookingsCurrencyAmountsEvaluator}, which gives the same results as evaluating the whole file for each
+ * recipient. Bookings without invoice recipient are counted, but not evaluated.
+ * <p>
+ * The result file has a header and one line per recipient in ascending order:
+ * {@code invoiceRecipientPK;totalAmount;totalPaidAmount;totalOpenAmount;currency}, or
+ * {@code invoiceRecipientPK;error;<message>} if the bookings of the recipient have different currencies.
+ * <p>
+ * The report on the standard output contains the time of every phase, the bookings per second of the evaluation, the
+ * relevant bookings and currency conflicts of one run and the peak heap usage. The heap usage is sampled every
+ * {@value #HEAP_SAMPLE_MILLIS} ms, so the actual peak may be a little higher. The exit code is 0 on success, 1 if a file cannot be read or written and 2 for invalid
+ * arguments.
+ */
+public final class BatchEvaluator {
+
+    /**
+     * the interval in which the heap usage is sampled
+     */
+    private static final long HEAP_SAMPLE_MILLIS = 10;
+
+    public static final String RESULT_HEADER =
+            "invoiceRecipientPK;totalAmount;totalPaidAmount;totalOpenAmount;currency";
+
+    private static final String SEPARATOR = ";";
+
+    private static final String USAGE =
+            "Usage: --input <file> [--format csv|binary] [--output <file>] [--runs <n>] [--recipient <PK>]";
+
+    /**
+     * The size of the buffer binary files are read with, it grows for larger records
+     */
+    private static final int READ_BUFFER_SIZE = 1 << 20;
+
+    private final PrintStream out;
+
+    /**
+     * the phases and their durations in nanoseconds, in the order they ran
+     */
+    private final Map<String, Long> phases = new LinkedHashMap<>();
+
+    private BatchEvaluator(final PrintStream out) {
+        this.out = out;
+    }
+
+    public static void main(final String[] args) {
+        final int exitCode = run(args, System.out, System.err);
+        if (exitCode != 0) {
+            System.exit(exitCode);
+        }
+    }
+
+    /**
+     * Run the command
+     *
+     * @param args the command line arguments
+     * @param out  the stream of the report
+     * @param err  the stream of errors and the usage
+     * @return the exit code
+     */
+    public static int run(final String[] args, final PrintStream out, final PrintStream err) {
+        Path input = null;
+        Path output = null;
+        String format = null;
+        int runs = 1;
+        Long recipientPK = null;
+        try {
+            for (int i = 0; i < args.length; i++) {
+                final String option = args[i];
+                if ("--help".equals(option)) {
+                    out.println(USAGE);
+                    return 0;
+                }
+                if (i + 1 >= args.length) {
+                    throw new IllegalArgumentException("Missing value of " + option);
+                }
+                final String value = args[++i];
+                switch (option) {
+                    case "--input":
+                        input = Paths.get(value);
+                        break;
+                    case "--output":
+                        output = Paths.get(value);
+                        break;
+                    case "--format":
+                        if (!"csv".equals(value) && !"binary".equals(value)) {
+                            throw new IllegalArgumentException("Unknown format " + value);
+                        }
+                        format = value;
+                        break;
+                    case "--runs":
+                        runs = Integer.parseInt(value);
+                        if (runs < 1) {
+                            throw new IllegalArgumentException("--runs must be positive: " + value);
+                        }
+                        break;
+                    case "--recipient":
+                        try {
+                            recipientPK = Long.valueOf(value);
+                        }
+                        catch (NumberFormatException e) {
+                            throw new IllegalArgumentException("--recipient must be a number: " + value);
+                        }
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Unknown option " + option);
+                }
+            }
+            if (input == null) {
+                throw new IllegalArgumentException("Missing --input");
+            }
+        }
+        catch (IllegalArgumentException e) {
+            err.println(e.getMessage());
+            err.println(USAGE);
+            return 2;
+        }
+        if (format == null) {
+            format = input.getFileName().toString().toLowerCase(Locale.ROOT).endsWith(".csv") ? "csv" : "binary";
+        }
+
+        try {
+            new BatchEvaluator(out).evaluate(input, "csv".equals(format), recipientPK, output, runs);
+            return 0;
+        }
+        catch (IOException | IllegalArgumentException e) {
+            err.println("Failed: " + e.getMessage());
+            return 1;
+        }
+    }
+
+    private void evaluate(final Path input, final boolean csv, final Long recipientPK, final Path output,
+                          final int runs) throws IOException {
+        try (HeapSampler heapSampler = new HeapSampler()) {
+            evaluate(input, csv, recipientPK, output, runs, heapSampler);
+        }
+    }
+
+    private void evaluate(final Path input, final boolean csv, final Long recipientPK, final Path output,
+                          final int runs, final HeapSampler heapSampler) throws IOException {
+        final long start = System.nanoTime();
+
+        long phaseStart = System.nanoTime();
+        final List<Booking> bookings = csv ? readCsv(input, recipientPK) : readBinary(input, recipientPK);
+        phases.put("read", System.nanoTime() - phaseStart);
+
+        phaseStart = System.nanoTime();
+        final Map<Long, List<Booking>> recipientBookings = new TreeMap<>();
+        long unassigned = 0;
+        for (final Booking booking : bookings) {
+            final Long bookingRecipientPK = booking.getInvoiceRecipientPK();
+            if (bookingRecipientPK == null) {
+                unassigned++;
+            }
+            else {
+                recipientBookings.computeIfAbsent(bookingRecipientPK, pk -> new ArrayList<>()).add(booking);
+            }
+        }
+        if (recipientPK != null) {
+            // a recipient without bookings gets empty totals
+            recipientBookings.putIfAbsent(recipientPK, new ArrayList<>());
+        }
+        phases.put("group", System.nanoTime() - phaseStart);
+
+        phaseStart = System.nanoTime();
+        final AggregatingEvaluationListener listener = new AggregatingEvaluationListener();
+        final IBookingsCurrencyAmountsEvaluator evaluator = new BookingsCurrencyAmountsEvaluator(listener);
+        final Map<Long, Object> results = new TreeMap<>();
+        for (int run = 0; run < runs; run++) {
+            // the report shows the counts of one run
+            listener.reset();
+            for (final Map.Entry<Long, List<Booking>> entry : recipientBookings.entrySet()) {
+                try {
+                    evaluator.calculate(entry.getValue(), entry.getKey());
+                    results.put(entry.getKey(), EvaluationResult.of(evaluator));
+                }
+                catch (InconsistentCurrenciesException e) {
+                    results.put(entry.getKey(), e);
+                }
+            }
+        }
+        final long evaluateNanos = System.nanoTime() - phaseStart;
+        phases.put("evaluate", evaluateNanos);
+
+        if (output != null) {
+            phaseStart = System.nanoTime();
+            try (Writer writer = Files.newBufferedWriter(output, StandardCharsets.UTF_8)) {
+                writeResults(results, writer);
+            }
+            phases.put("write", System.nanoTime() - phaseStart);
+        }
+        final long totalNanos = System.nanoTime() - start;
+
+        final long evaluated = (bookings.size() - unassigned) * (long) runs;
+        out.printf(Locale.ROOT, "bookings: %d (%d without invoice recipient), recipients: %d, runs: %d%n",
+                bookings.size(), unassigned, recipientBookings.size(), runs);
+        out.printf(Locale.ROOT, "relevant bookings: %d, currency conflicts: %d%n",
+                listener.getMatchedBookings() - listener.getZeroSkippedBookings(), listener.getCurrencyConflicts());
+        for (final Map.Entry<String, Long> phase : phases.entrySet()) {
+            out.printf(Locale.ROOT, "%-8s %10.1f ms%n", phase.getKey(), phase.getValue() / 1e6);
+        }
+        out.printf(Locale.ROOT, "%-8s %10.1f ms%n", "total", totalNanos / 1e6);
+        out.printf(Locale.ROOT, "throughput: %.0f bookings/s (evaluation), %.0f bookings/s (total)%n",
+                perSecond(evaluated, evaluateNanos), perSecond(bookings.size(), totalNanos));
+        out.printf(Locale.ROOT, "peak heap: %.1f MiB%n", heapSampler.getPeak() / (1024.0 * 1024.0));
+    }
+
+    /**
+     * Read a file of {@link BookingCsv} lines
+     *
+     * @param recipientPK the PK of the only invoice recipient whose lines are parsed, null for all bookings
+     */
+    private static List<Booking> readCsv(final Path input, final Long recipientPK) throws IOException {
+        if (recipientPK == null) {
+            return BookingCsv.read(input);
+        }
+        try (BufferedReader reader = Files.newBufferedReader(input, StandardCharsets.UTF_8)) {
+            return BookingCsv.read(reader, recipientPK).collect(Collectors.toList());
+        }
+        catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Read a file of {@link BookingCodec} records in chunks, without mapping or loading the whole file
+     *
+     * @param recipientPK the PK of the only invoice recipient whose records are decoded, null for all bookings
+     */
+    private static List<Booking> readBinary(final Path input, final Long recipientPK) throws IOException {
+        final List<Booking> bookings = new ArrayList<>();
+        final BookingCodec codec = new BookingCodec();
+        ByteBuffer buffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+        try (FileChannel channel = FileChannel.open(input, StandardOpenOption.READ)) {
+            boolean end = false;
+            while (!end) {
+                end = channel.read(buffer) < 0;
+                buffer.flip();
+                while (buffer.hasRemaining()) {
+                    try {
+                        if (recipientPK == null) {
+                            bookings.add(codec.decode(buffer));
+                        }
+                        else {
+                            final Booking booking = codec.decode(buffer, recipientPK);
+                            if (booking != null) {
+                                bookings.add(booking);
+                            }
+                        }
+                    }
+                    catch (BufferUnderflowException e) {
+                        break;
+                    }
+                }
+                if (end && buffer.hasRemaining()) {
+                    throw new IOException("The last record of " + input + " is incomplete.");
+                }
+                if (buffer.position() == 0 && buffer.limit() == buffer.capacity()) {
+                    // a record larger than the buffer
+                    final ByteBuffer larger = ByteBuffer.allocate(buffer.capacity() * 2);
+                    larger.put(buffer);
+                    buffer = larger;
+                }
+                else {
+                    buffer.compact();
+                }
+            }
+        }
+        return bookings;
+    }
+
+    private static void writeResults(final Map<Long, Object> results, final Writer writer) throws IOException {
+        writer.write(RESULT_HEADER);
+        writer.write('\n');
+        final StringBuilder line = new StringBuilder(64);
+        for (final Map.Entry<Long, Object> entry : results.entrySet()) {
+            line.setLength(0);
+            line.append(entry.getKey()).append(SEPARATOR);
+            if (entry.getValue() instanceof InconsistentCurrenciesException) {
+                line.append("error").append(SEPARATOR)
+                        .append(((InconsistentCurrenciesException) entry.getValue()).getMessage());
+            }
+            else {
+                final EvaluationResult result = (EvaluationResult) entry.getValue();
+                if (result.isEmpty()) {
+                    line.append(SEPARATOR).append(SEPARATOR).append(SEPARATOR);
+                }
+                else {
+                    append(line, result.getTotalAmount()).append(SEPARATOR);
+                    append(line, result.getTotalPaidAmount()).append(SEPARATOR);
+                    append(line, result.getTotalOpenAmount()).append(SEPARATOR);
+                    if (result.getTotalAmount().getCurrency() != null) {
+                        line.append(result.getTotalAmount().getCurrency());
+                    }
+                }
+            }
+            line.append('\n');
+            writer.append(line);
+        }
+    }
+
+    private static StringBuilder append(final StringBuilder line, final CurrencyAmount amount) {
+        return line.append(amount.getAmount().toPlainString());
+    }
+
+    private static double perSecond(final long count, final long nanos) {
+        return nanos == 0 ? 0 : count * 1e9 / nanos;
+    }
+
+    /**
+     * Samples the used heap memory in a daemon thread until it is closed
+     */
+    private static final class HeapSampler implements AutoCloseable {
+
+        private final MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+
+        private final Thread thread;
+
+        /**
+         * the largest sample so far
+         */
+        private long peak;
+
+        private HeapSampler() {
+            sample();
+            thread = new Thread(this::run, "heap-sampler");
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        private void run() {
+            try {
+                while (!Thread.currentThread().isInterrupted()) {
+                    sample();
+                    Thread.sleep(HEAP_SAMPLE_MILLIS);
+                }
+            }
+            catch (InterruptedException e) {
+                // closed
+            }
+        }
+
+        private synchronized void sample() {
+            final long used = memory.getHeapMemoryUsage().getUsed();
+            if (used > peak) {
+                peak = used;
+            }
+        }
+
+        /**
+         * @return the largest sampled heap usage so far, including the current one, in bytes
+         */
+        private synchronized long getPeak() {
+            sample();
+            return peak;
+        }
+
+        @Override
+        public void close() {
+            thread.interrupt();
+            try {
+                thread.join();
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
@@ -0,0 +1,687 @@
+package io.github.samasend.lambdalogic.test.booking.codec;
+
+import com.lambdalogic.test.booking.model.AmountAccumulator;
+import com.lambdalogic.test.booking.model.Booking;
+import com.lambdalogic.test.booking.model.CurrencyAmount;
+import com.lambdalogic.test.booking.model.Price;
+import io.github.samasend.lambdalogic.test.booking.ScaledAmounts;
+import io.github.samasend.lambdalogic.test.booking.intern.PriceInterner;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.BufferOverflowException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import static io.github.samasend.lambdalogic.test.booking.ScaledAmounts.NOT_SCALED;
+
+/**
+ * A compact binary encoding of {@link Booking}s, {@link Price}s and {@link CurrencyAmount}s that reads and writes
+ * {@link ByteBuffer}s directly.
+ * <p>
+ * Amounts are written as scale and unscaled value, the latter as variable length long, so typical amounts take 3 or
+ * 4 bytes. Only values with more than 15 digits fall back to the bytes of their {@link BigInteger}. Tax rates in
+ * common use are written as a single code byte, see {@link #TAX_RATES}, dates as milliseconds since the epoch, PKs as
+ * variable length longs. Decoding restores equal values including the scales of the amounts, so a round trip is
+ * exact.
+ * <p>
+ * A booking is written as a record with a length prefix, so records can be skipped without decoding them. The record
+ * starts with the invoice recipient PK and the currency of the main price, which a reader can filter on before
+ * decoding the rest, see {@link #decode(ByteBuffer, long)} and {@link #peekCurrency(ByteBuffer)}. Its layout:
+ * <pre>
+ * int      length of the rest of the record
+ * byte     flags: which of the nullable fields are set
+ * byte     which of the prices are set, in the order of {@link Booking#getPrices()}
+ * varlong  invoice recipient PK, if set
+ * string   currency of the main price, if the main price is set; strings are written as length + 1 and UTF-8
+ *          bytes, null as length 0
+ * varlong  ID, offering PK, if set
+ * decimal  paid amount, if set
+ * long     booking date, cancelation date, if set
+ * varint   number of benefit recipients, followed by their PKs as varlongs
+ * price    main price, additional prices 1 and 2, cancel fee price, if set
+ * </pre>
+ * The benefit recipients are read with {@link Booking#getBenefitRecipientPKs()}, so a booking without list is
+ * decoded with an empty one, just as the getter returns it. Missing prices and paid amounts are not created.
+ * <p>
+ * A codec can share the decoded prices between bookings, see {@link #BookingCodec(PriceInterner)}.
+ * <p>
+ * Currencies are few, so the codec keeps the encoded form of the last ones it has seen and does not create strings
+ * or byte arrays for them again. Therefore a codec is not thread-safe, use one per thread.
+ */
+public final class BookingCodec {
+
+    /**
+     * the tax rates that are written as a single byte, with their scales as they are typically created
+     */
+    static final BigDecimal[] TAX_RATES = {
+            Price.ZERO, BigDecimal.ZERO,
+            new BigDecimal("19"), new BigDecimal("7"), new BigDecimal("19.00"), new BigDecimal("7.00"),
+            new BigDecimal("5"), new BigDecimal("10"), new BigDecimal("16"), new BigDecimal("20"),
+            new BigDecimal("21"), new BigDecimal("25")
+    };
+
+    /**
+     * the code of a tax rate that is not in {@link #TAX_RATES} but written as decimal
+     */
+    private static final byte TAX_RATE_DECIMAL = -1;
+
+    /**
+     * the scale byte of a decimal whose unscaled value is written as bytes of a {@link BigInteger}
+     */
+    private static final byte DECIMAL_BIG = -128;
+
+    private static final int ID = 1;
+    private static final int INVOICE_RECIPIENT = 1 << 1;
+    private static final int OFFERING = 1 << 2;
+    private static final int PAID_AMOUNT = 1 << 3;
+    private static final int BOOKING_DATE = 1 << 4;
+    private static final int CANCELATION_DATE = 1 << 5;
+
+    private static final int PRICE_GROSS = 1;
+    private static final int PRICE_NO_CURRENCY = 1 << 1;
+    private static final int PRICE_BOOKING_CURRENCY = 1 << 2;
+
+    /**
+     * the number of bytes of the length prefix of a booking record
+     */
+    public static final int LENGTH_BYTES = Integer.BYTES;
+
+    /**
+     * The encoded form of recently used strings, a small cache with round-robin replacement
+     */
+    private static final class StringTable {
+
+        private static final int SIZE = 16;
+
+        private final String[] strings = new String[SIZE];
+
+        private final byte[][] bytes = new byte[SIZE][];
+
+        private int next = 0;
+
+        private byte[] encode(final String string) {
+            for (int i = 0; i < SIZE && strings[i] != null; i++) {
+                if (strings[i].equals(string)) {
+                    return bytes[i];
+                }
+            }
+            final byte[] encoded = string.getBytes(StandardCharsets.UTF_8);
+            put(string, encoded);
+            return encoded;
+        }
+
+        /**
+         * Read a string of the given length at the position of the buffer
+         */
+        private String decode(final ByteBuffer buffer, final int length) {
+            final int position = buffer.position();
+            for (int i = 0; i < SIZE && strings[i] != null; i++) {
+                if (matches(bytes[i], buffer, position, length)) {
+                    buffer.position(position + length);
+                    return strings[i];
+                }
+            }
+            final byte[] encoded = new byte[length];
+            buffer.get(encoded);
+            final String string = new String(encoded, StandardCharsets.UTF_8);
+            put(string, encoded);
+            return string;
+        }
+
+        private static boolean matches(final byte[] encoded, final ByteBuffer buffer, final int position, final int length) {
+            if (encoded.length != length) {
+                return false;
+            }
+            for (int i = 0; i < length; i++) {
+                if (encoded[i] != buffer.get(position + i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private void put(final String string, final byte[] encoded) {
+            strings[next] = string;
+            bytes[next] = encoded;
+            next = (next + 1) % SIZE;
+        }
+    }
+
+    /**
+     * Reads the paid amount of a booking without creating it, see {@link Booking#getPaidAmount()}
+     */
+    private static final class PaidAmountReader implements AmountAccumulator {
+
+        private BigDecimal paidAmount;
+
+        @Override
+        public void addPrice(final BigDecimal amount, final BigDecimal taxRateDiv100Add1, final boolean gross) {
+        }
+
+        @Override
+        public void addPaidAmount(final BigDecimal paidAmount) {
+            this.paidAmount = paidAmount;
+        }
+
+        private BigDecimal read(final Booking booking) {
+            paidAmount = null;
+            booking.accumulateInto(this);
+            return paidAmount;
+        }
+    }
+
+    private final StringTable encodedStrings = new StringTable();
+
+    private final StringTable decodedStrings = new StringTable();
+
+    private final PaidAmountReader paidAmountReader = new PaidAmountReader();
+
+    /**
+     * shares the prices of the decoded bookings, null if they are not shared
+     */
+    private final PriceInterner interner;
+
+    /**
+     * Create a codec that decodes every price as a new instance
+     */
+    public BookingCodec() {
+        this(null);
+    }
+
+    /**
+     * Create a codec that shares equal prices of the decoded bookings, they are frozen then
+     *
+     * @param interner the interner of the prices, null if they are not shared
+     */
+    public BookingCodec(final PriceInterner interner) {
+        this.interner = interner;
+    }
+
+    // *************************************************************************
+    // * Booking
+    // *
+
+    /**
+     * Write a booking as record at the position of a buffer
+     *
+     * @param booking the booking
+     * @param buffer  the buffer
+     * @return the number of bytes written
+     * @throws BufferOverflowException  if the record does not fit into the buffer, its position is not changed in that
+     *                                  case
+     * @throws IllegalArgumentException if a benefit recipient PK is null
+     */
+    public int encode(final Booking booking, final ByteBuffer buffer) {
+        final int start = buffer.position();
+        try {
+            buffer.putInt(0);
+
+            final Price[] prices = booking.getPrices();
+            final BigDecimal paidAmount = paidAmountReader.read(booking);
+            int flags = 0;
+            flags |= booking.getID() != null ? ID : 0;
+            flags |= booking.getInvoiceRecipientPK() != null ? INVOICE_RECIPIENT : 0;
+            flags |= booking.getOfferingPK() != null ? OFFERING : 0;
+            flags |= paidAmount != null ? PAID_AMOUNT : 0;
+            flags |= booking.getBookingDate() != null ? BOOKING_DATE : 0;
+            flags |= booking.getCancelationDate() != null ? CANCELATION_DATE : 0;
+            int priceFlags = 0;
+            for (int i = 0; i < prices.length; i++) {
+                priceFlags |= prices[i] != null ? 1 << i : 0;
+            }
+            buffer.put((byte) flags);
+            buffer.put((byte) priceFlags);
+
+            if (booking.getInvoiceRecipientPK() != null) {
+                putVarLong(buffer, booking.getInvoiceRecipientPK());
+            }
+            final String currency = prices[0] == null ? null : prices[0].getCurrency();
+            if (prices[0] != null) {
+                putString(buffer, currency);
+            }
+            if (booking.getID() != null) {
+                putVarLong(buffer, booking.getID());
+            }
+            if (booking.getOfferingPK() != null) {
+                putVarLong(buffer, booking.getOfferingPK());
+            }
+            if (paidAmount != null) {
+                putDecimal(buffer, paidAmount);
+            }
+            if (booking.getBookingDate() != null) {
+                buffer.putLong(booking.getBookingDate().getTime());
+            }
+            if (booking.getCancelationDate() != null) {
+                buffer.putLong(booking.getCancelationDate().getTime());
+            }
+
+            final List<Long> benefitRecipientPKs = booking.getBenefitRecipientPKs();
+            putVarLong(buffer, benefitRecipientPKs.size());
+            for (final Long benefitRecipientPK : benefitRecipientPKs) {
+                if (benefitRecipientPK == null) {
+                    throw new IllegalArgumentException("benefit recipient PKs must not be null");
+                }
+                putVarLong(buffer, benefitRecipientPK);
+            }
+
+            for (final Price price : prices) {
+                if (price != null) {
+                    putPrice(buffer, price, currency, true);
+                }
+            }
+
+            buffer.putInt(start, buffer.position() - start - LENGTH_BYTES);
+            return buffer.position() - start;
+        }
+        catch (BufferOverflowException | IllegalArgumentException e) {
+            buffer.position(start);
+            throw e;
+        }
+    }
+
+    /**
+     * Read a booking record at the position of a buffer
+     *
+     * @param buffer the buffer, its position is moved behind the record
+     * @return the booking
+     * @throws BufferUnderflowException if the buffer does not contain the whole record, its position is not changed in
+     *                                  that case
+     */
+    public Booking decode(final ByteBuffer buffer) {
+        final int end = checkRecord(buffer);
+        buffer.position(buffer.position() + LENGTH_BYTES);
+
+        final int flags = buffer.get();
+        final int priceFlags = buffer.get();
+
+        final Long invoiceRecipientPK = (flags & INVOICE_RECIPIENT) != 0 ? getVarLong(buffer) : null;
+        final String currency = (priceFlags & 1) != 0 ? getString(buffer) : null;
+        final Long id = (flags & ID) != 0 ? getVarLong(buffer) : null;
+        final Long offeringPK = (flags & OFFERING) != 0 ? getVarLong(buffer) : null;
+        final BigDecimal paidAmount = (flags & PAID_AMOUNT) != 0 ? getDecimal(buffer) : null;
+        final Date bookingDate = (flags & BOOKING_DATE) != 0 ? new Date(buffer.getLong()) : null;
+        final Date cancelationDate = (flags & CANCELATION_DATE) != 0 ? new Date(buffer.getLong()) : null;
+
+        final int benefitRecipientCount = (int) getVarLong(buffer);
+        final List<Long> benefitRecipientPKs = new ArrayList<>(benefitRecipientCount);
+        for (int i = 0; i < benefitRecipientCount; i++) {
+            benefitRecipientPKs.add(getVarLong(buffer));
+        }
+
+        final Price[] prices = new Price[4];
+        for (int i = 0; i < prices.length; i++) {
+            if ((priceFlags & 1 << i) != 0) {
+                prices[i] = getPrice(buffer, currency);
+                if (interner != null) {
+                    prices[i] = interner.intern(prices[i]);
+                }
+            }
+        }
+
+        if (buffer.position() != end) {
+            throw new IllegalArgumentException("invalid record length");
+        }
+        return new Booking(id, prices[0], prices[1], prices[2], prices[3], paidAmount,
+                bookingDate, cancelationDate, benefitRecipientPKs, invoiceRecipientPK, offeringPK);
+    }
+
+    /**
+     * Read the invoice recipient PK of the booking record at the position of a buffer, without moving its position
+     *
+     * @param buffer the buffer
+     * @return the PK of the invoice recipient, null if the booking has none
+     * @throws BufferUnderflowException if the buffer does not contain the whole record
+     */
+    public Long peekInvoiceRecipientPK(final ByteBuffer buffer) {
+        checkRecord(buffer);
+        final int start = buffer.position();
+        try {
+            buffer.position(start + LENGTH_BYTES);
+            final int flags = buffer.get();
+            buffer.get();
+            return (flags & INVOICE_RECIPIENT) != 0 ? getVarLong(buffer) : null;
+        }
+        finally {
+            buffer.position(start);
+        }
+    }
+
+    /**
+     * Read the booking record at the position of a buffer if it belongs to an invoice recipient.
+     * <p>
+     * The invoice recipient PK is compared in its encoded form, so the records of other recipients are skipped without
+     * decoding anything.
+     *
+     * @param buffer             the buffer, its position is moved behind the record
+     * @param invoiceRecipientPK the PK of the invoice recipient
+     * @return the booking, null if it belongs to another invoice recipient or has none
+     * @throws BufferUnderflowException if the buffer does not contain the whole record, its position is not changed in
+     *                                  that case
+     */
+    public Booking decode(final ByteBuffer buffer, final long invoiceRecipientPK) {
+        final int end = checkRecord(buffer);
+        final int start = buffer.position() + LENGTH_BYTES;
+        if (end - start < 2
+                || (buffer.get(start) & INVOICE_RECIPIENT) == 0
+                || !matchesVarLong(buffer, start + 2, end, invoiceRecipientPK)) {
+            buffer.position(end);
+            return null;
+        }
+        return decode(buffer);
+    }
+
+    /**
+     * Read the bookings of an invoice recipient from the position to the limit of a buffer lazily,
+     * see {@link #decode(ByteBuffer, long)}. The iterator uses this codec, so the codec must not be used for anything
+     * else until the iterator is done.
+     *
+     * @param buffer             the buffer of complete booking records, its position is moved while the bookings
+     *                           are read
+     * @param invoiceRecipientPK the PK of the invoice recipient
+     * @return the bookings of the invoice recipient in the order of the buffer, e.g. for
+     * {@link io.github.samasend.lambdalogic.test.booking.BookingsCurrencyAmountsEvaluator#calculate(Iterator, Long)}
+     */
+    public Iterator<Booking> decodeAll(final ByteBuffer buffer, final long invoiceRecipientPK) {
+        return new Iterator<Booking>() {
+
+            private Booking next;
+
+            @Override
+            public boolean hasNext() {
+                while (next == null && buffer.hasRemaining()) {
+                    next = decode(buffer, invoiceRecipientPK);
+                }
+                return next != null;
+            }
+
+            @Override
+            public Booking next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                final Booking booking = next;
+                next = null;
+                return booking;
+            }
+        };
+    }
+
+    /**
+     * Read the currency of the main price of the booking record at the position of a buffer, without moving its
+     * position
+     *
+     * @param buffer the buffer
+     * @return the currency, null if the booking has no main price or its main price has no currency
+     * @throws BufferUnderflowException if the buffer does not contain the whole record
+     */
+    public String peekCurrency(final ByteBuffer buffer) {
+        checkRecord(buffer);
+        final int start = buffer.position();
+        try {
+            buffer.position(start + LENGTH_BYTES);
+            final int flags = buffer.get();
+            final int priceFlags = buffer.get();
+            if ((flags & INVOICE_RECIPIENT) != 0) {
+                getVarLong(buffer);
+            }
+            return (priceFlags & 1) != 0 ? getString(buffer) : null;
+        }
+        finally {
+            buffer.position(start);
+        }
+    }
+
+    /**
+     * Skip the booking record at the position of a buffer
+     *
+     * @param buffer the buffer, its position is moved behind the record
+     * @throws BufferUnderflowException if the buffer does not contain the whole record
+     */
+    public void skip(final ByteBuffer buffer) {
+        buffer.position(checkRecord(buffer));
+    }
+
+    /**
+     * @return whether the bytes at a position of a buffer are the encoded form of a value,
+     * see {@link #putVarLong(ByteBuffer, long)}
+     */
+    private static boolean matchesVarLong(final ByteBuffer buffer, final int position, final int end, final long value) {
+        long zigZag = (value << 1) ^ (value >> 63);
+        int current = position;
+        while ((zigZag & ~0x7FL) != 0) {
+            if (current >= end || buffer.get(current++) != (byte) ((zigZag & 0x7F) | 0x80)) {
+                return false;
+            }
+            zigZag >>>= 7;
+        }
+        return current < end && buffer.get(current) == (byte) zigZag;
+    }
+
+    /**
+     * @return the end of the record at the position of the buffer
+     * @throws BufferUnderflowException if the buffer does not contain the whole record
+     */
+    private static int checkRecord(final ByteBuffer buffer) {
+        if (buffer.remaining() < LENGTH_BYTES) {
+            throw new BufferUnderflowException();
+        }
+        final int length = buffer.getInt(buffer.position());
+        if (length < 0) {
+            throw new IllegalArgumentException("invalid record length " + length);
+        }
+        if (buffer.remaining() - LENGTH_BYTES < length) {
+            throw new BufferUnderflowException();
+        }
+        return buffer.position() + LENGTH_BYTES + length;
+    }
+
+    // *************************************************************************
+    // * Price and CurrencyAmount
+    // *
+
+    /**
+     * Write a price at the position of a buffer
+     *
+     * @param price  the price
+     * @param buffer the buffer
+     * @throws BufferOverflowException if the price does not fit into the buffer
+     */
+    public void encode(final Price price, final ByteBuffer buffer) {
+        putPrice(buffer, price, null, false);
+    }
+
+    /**
+     * Read a price written by {@link #encode(Price, ByteBuffer)}
+     *
+     * @param buffer the buffer
+     * @return the price
+     * @throws BufferUnderflowException if the buffer does not contain the whole price
+     */
+    public Price decodePrice(final ByteBuffer buffer) {
+        return getPrice(buffer, null);
+    }
+
+    /**
+     * Write a currency amount at the position of a buffer
+     *
+     * @param currencyAmount the currency amount
+     * @param buffer         the buffer
+     * @throws BufferOverflowException if the currency amount does not fit into the buffer
+     */
+    public void encode(final CurrencyAmount currencyAmount, final ByteBuffer buffer) {
+        putDecimal(buffer, currencyAmount.getAmount());
+        putString(buffer, currencyAmount.getCurrency());
+    }
+
+    /**
+     * Read a currency amount written by {@link #encode(CurrencyAmount, ByteBuffer)}
+     *
+     * @param buffer the buffer
+     * @return the currency amount
+     * @throws BufferUnderflowException if the buffer does not contain the whole currency amount
+     */
+    public CurrencyAmount decodeCurrencyAmount(final ByteBuffer buffer) {
+        final BigDecimal amount = getDecimal(buffer);
+        return new CurrencyAmount(amount, getString(buffer));
+    }
+
+    /**
+     * @param bookingCurrency    the currency of the booking, which is not written again
+     * @param hasBookingCurrency whether the price belongs to a booking record that contains the booking currency
+     */
+    private void putPrice(final ByteBuffer buffer, final Price price, final String bookingCurrency,
+                          final boolean hasBookingCurrency) {
+        final String currency = price.getCurrency();
+        int flags = price.isGross() ? PRICE_GROSS : 0;
+        if (currency == null) {
+            flags |= PRICE_NO_CURRENCY;
+        }
+        else if (hasBookingCurrency && currency.equals(bookingCurrency)) {
+            flags |= PRICE_BOOKING_CURRENCY;
+        }
+        buffer.put((byte) flags);
+        putDecimal(buffer, price.getAmount());
+        putTaxRate(buffer, price.getTaxRate());
+        if ((flags & (PRICE_NO_CURRENCY | PRICE_BOOKING_CURRENCY)) == 0) {
+            putString(buffer, currency);
+        }
+    }
+
+    private Price getPrice(final ByteBuffer buffer, final String bookingCurrency) {
+        final int flags = buffer.get();
+        final BigDecimal amount = getDecimal(buffer);
+        final BigDecimal taxRate = getTaxRate(buffer);
+        final String currency;
+        if ((flags & PRICE_NO_CURRENCY) != 0) {
+            currency = null;
+        }
+        else if ((flags & PRICE_BOOKING_CURRENCY) != 0) {
+            currency = bookingCurrency;
+        }
+        else {
+            currency = getString(buffer);
+        }
+        return new Price(amount, currency, taxRate, (flags & PRICE_GROSS) != 0);
+    }
+
+    // *************************************************************************
+    // * Values
+    // *
+
+    private static void putTaxRate(final ByteBuffer buffer, final BigDecimal taxRate) {
+        for (int i = 0; i < TAX_RATES.length; i++) {
+            // equals, not compareTo: the scale is restored as well
+            if (TAX_RATES[i].equals(taxRate)) {
+                buffer.put((byte) i);
+                return;
+            }
+        }
+        buffer.put(TAX_RATE_DECIMAL);
+        putDecimal(buffer, taxRate);
+    }
+
+    private static BigDecimal getTaxRate(final ByteBuffer buffer) {
+        final byte code = buffer.get();
+        if (code == TAX_RATE_DECIMAL) {
+            return getDecimal(buffer);
+        }
+        if (code < 0 || code >= TAX_RATES.length) {
+            throw new IllegalArgumentException("invalid tax rate code " + code);
+        }
+        return TAX_RATES[code];
+    }
+
+    /**
+     * Write a decimal as scale byte and unscaled value, without creating objects if it fits into a long
+     */
+    public static void putDecimal(final ByteBuffer buffer, final BigDecimal value) {
+        final int scale = value.scale();
+        final long unscaled = scale >= 0 && scale <= ScaledAmounts.MAX_SCALE
+                ? ScaledAmounts.toScaled(value, scale)
+                : NOT_SCALED;
+        if (unscaled != NOT_SCALED) {
+            buffer.put((byte) scale);
+            putVarLong(buffer, unscaled);
+            return;
+        }
+
+        final byte[] bytes = value.unscaledValue().toByteArray();
+        buffer.put(DECIMAL_BIG);
+        buffer.putInt(scale);
+        putVarLong(buffer, bytes.length);
+        buffer.put(bytes);
+    }
+
+    /**
+     * Read a decimal written by {@link #putDecimal(ByteBuffer, BigDecimal)}, with its scale
+     */
+    public static BigDecimal getDecimal(final ByteBuffer buffer) {
+        final byte scale = buffer.get();
+        if (scale != DECIMAL_BIG) {
+            return BigDecimal.valueOf(getVarLong(buffer), scale);
+        }
+
+        final int bigScale = buffer.getInt();
+        final byte[] bytes = new byte[(int) getVarLong(buffer)];
+        buffer.get(bytes);
+        return new BigDecimal(new BigInteger(bytes), bigScale);
+    }
+
+    /**
+     * Write a string as its length plus 1 and its UTF-8 bytes, null as length 0
+     */
+    private void putString(final ByteBuffer buffer, final String string) {
+        if (string == null) {
+            putVarLong(buffer, 0);
+            return;
+        }
+        final byte[] bytes = encodedStrings.encode(string);
+        putVarLong(buffer, bytes.length + 1);
+        buffer.put(bytes);
+    }
+
+    private String getString(final ByteBuffer buffer) {
+        final int length = (int) getVarLong(buffer) - 1;
+        if (length == -1) {
+            return null;
+        }
+        if (length < 0 || length > buffer.remaining()) {
+            throw new BufferUnderflowException();
+        }
+        return decodedStrings.decode(buffer, length);
+    }
+
+    /**
+     * Write a long with 7 bits per byte, zig-zag encoded, so small negative values are short as well
+     */
+    public static void putVarLong(final ByteBuffer buffer, final long value) {
+        long zigZag = (value << 1) ^ (value >> 63);
+        while ((zigZag & ~0x7FL) != 0) {
+            buffer.put((byte) ((zigZag & 0x7F) | 0x80));
+            zigZag >>>= 7;
+        }
+        buffer.put((byte) zigZag);
+    }
+
+    /**
+     * Read a long written by {@link #putVarLong(ByteBuffer, long)}
+     */
+    public static long getVarLong(final ByteBuffer buffer) {
+        long zigZag = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            final byte b = buffer.get();
+            zigZag |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return (zigZag >>> 1) ^ -(zigZag & 1);
+            }
+        }
+        throw new IllegalArgumentException("invalid variable length long");
+    }
+}
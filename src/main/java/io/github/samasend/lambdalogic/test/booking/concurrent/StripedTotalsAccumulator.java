@@ -0,0 +1,195 @@
+package io.github.samasend.lambdalogic.test.booking.concurrent;
+
+import com.lambdalogic.test.booking.exception.InconsistentCurrenciesException;
+import com.lambdalogic.test.booking.model.Booking;
+import io.github.samasend.lambdalogic.test.booking.BookingAmounts;
+import io.github.samasend.lambdalogic.test.booking.BookingsCurrencyAmountsEvaluator;
+import io.github.samasend.lambdalogic.test.booking.EvaluationResult;
+import io.github.samasend.lambdalogic.test.booking.TotalsAccumulator;
+
+import java.util.Comparator;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Adds up the bookings of an invoice recipient that are pushed by several threads at once.
+ * <p>
+ * The bookings are added to one of several stripes, each an unrounded {@link TotalsAccumulator} with its own lock,
+ * so threads that add bookings at the same time rarely wait for each other. {@link #snapshot()} merges the stripes
+ * and rounds the totals only then, so the result is the same as the one of {@link BookingsCurrencyAmountsEvaluator}
+ * for a list of the same bookings, in whatever order they have been added.
+ * <p>
+ * The currencies are checked by a guard that is shared by all stripes: the first relevant booking sets the currency.
+ * The first booking with a different currency is rejected, and the conflicting pair of currencies is recorded.
+ * From then on {@link #snapshot()} throws an {@link InconsistentCurrenciesException} with that pair,
+ * like the evaluator does for a list that contains both.
+ * <p>
+ * This class is thread-safe.
+ */
+public class StripedTotalsAccumulator {
+
+    /**
+     * the currency of the guard before the first relevant booking, null is a valid currency
+     */
+    private static final Object NO_CURRENCY = new Object();
+
+    private static final Comparator<String> CURRENCY_ORDER = Comparator.nullsFirst(Comparator.naturalOrder());
+
+    /**
+     * A pair of conflicting currencies, in the order of the arguments of {@link InconsistentCurrenciesException}
+     */
+    private static final class Conflict {
+
+        private final String first;
+
+        private final String second;
+
+        private Conflict(final String currency, final String otherCurrency) {
+            final boolean ordered = CURRENCY_ORDER.compare(currency, otherCurrency) <= 0;
+            first = ordered ? currency : otherCurrency;
+            second = ordered ? otherCurrency : currency;
+        }
+
+        private InconsistentCurrenciesException toException() {
+            return new InconsistentCurrenciesException(first, second);
+        }
+    }
+
+    private final Long invoiceRecipientID;
+
+    /**
+     * the stripes, their number is a power of 2, every stripe is locked while it is used
+     */
+    private final TotalsAccumulator[] stripes;
+
+    private final AtomicReference<Object> currency = new AtomicReference<>(NO_CURRENCY);
+
+    private final AtomicReference<Conflict> conflict = new AtomicReference<>();
+
+    /**
+     * Create an accumulator with one stripe per available processor
+     *
+     * @param invoiceRecipientID the PK of the invoice recipient whose bookings are added up
+     */
+    public StripedTotalsAccumulator(final Long invoiceRecipientID) {
+        this(invoiceRecipientID, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @param invoiceRecipientID the PK of the invoice recipient whose bookings are added up
+     * @param stripes            the minimal number of stripes, it is rounded up to a power of 2
+     */
+    public StripedTotalsAccumulator(final Long invoiceRecipientID, final int stripes) {
+        if (stripes < 1 || stripes > 1 << 16) {
+            throw new IllegalArgumentException("stripes must be between 1 and 65536: " + stripes);
+        }
+        this.invoiceRecipientID = Objects.requireNonNull(invoiceRecipientID, "invoiceRecipientID");
+
+        final int count = Integer.highestOneBit(stripes - 1) << 1;
+        this.stripes = new TotalsAccumulator[Math.max(count, 1)];
+        for (int i = 0; i < this.stripes.length; i++) {
+            this.stripes[i] = new TotalsAccumulator();
+        }
+    }
+
+    /**
+     * Add a booking to the totals, if it belongs to the invoice recipient
+     *
+     * @param booking the booking
+     * @return {@code true} if the booking was relevant and has been added, {@code false} if it belongs to another
+     * invoice recipient or its amount and paid amount are both 0
+     * @throws InconsistentCurrenciesException if the booking is relevant and its currency differs from the one of the
+     *                                         bookings added before, the booking is not added in that case
+     */
+    public boolean add(final Booking booking) throws InconsistentCurrenciesException {
+        // same filter as BookingsCurrencyAmountsEvaluator
+        if (booking.getInvoiceRecipientPK().longValue() != invoiceRecipientID) {
+            return false;
+        }
+
+        final TotalsAccumulator stripe = stripes[stripeIndex()];
+        synchronized (stripe) {
+            if (!stripe.isRelevant(booking)) {
+                return false;
+            }
+            checkCurrency(BookingAmounts.getCurrency(booking));
+            return stripe.add(booking);
+        }
+    }
+
+    /**
+     * @return the stripe of the current thread
+     */
+    private int stripeIndex() {
+        // spread the thread IDs, which are usually consecutive, over all stripes
+        final long id = Thread.currentThread().getId() * 0x9E3779B97F4A7C15L;
+        return (int) (id >>> 32) & (stripes.length - 1);
+    }
+
+    private void checkCurrency(final String bookingCurrency) throws InconsistentCurrenciesException {
+        final Object current = currency.get();
+        if (current == NO_CURRENCY && currency.compareAndSet(NO_CURRENCY, bookingCurrency)) {
+            return;
+        }
+
+        final String expected = (String) currency.get();
+        if (!Objects.equals(expected, bookingCurrency)) {
+            final Conflict newConflict = new Conflict(expected, bookingCurrency);
+            conflict.compareAndSet(null, newConflict);
+            throw newConflict.toException();
+        }
+    }
+
+    /**
+     * Merge the stripes into rounded totals.
+     * <p>
+     * Every stripe is read consistently, but bookings that are added while the snapshot is taken might be contained
+     * or not.
+     *
+     * @return the totals of all bookings added so far, {@link EvaluationResult#EMPTY} if there are none
+     * @throws InconsistentCurrenciesException with the first conflicting pair of currencies, if a booking has been
+     *                                         rejected because of its currency
+     */
+    public EvaluationResult snapshot() throws InconsistentCurrenciesException {
+        final TotalsAccumulator totals = new TotalsAccumulator();
+        for (final TotalsAccumulator stripe : stripes) {
+            synchronized (stripe) {
+                totals.merge(stripe);
+            }
+        }
+
+        final Conflict firstConflict = conflict.get();
+        if (firstConflict != null) {
+            throw firstConflict.toException();
+        }
+        return totals.toResult();
+    }
+
+    /**
+     * @return the conflicting pair of currencies as exception, or null if there was no conflict
+     */
+    public InconsistentCurrenciesException getConflict() {
+        final Conflict firstConflict = conflict.get();
+        return firstConflict == null ? null : firstConflict.toException();
+    }
+
+    /**
+     * @return the number of relevant bookings added so far
+     */
+    public int getBookingCount() {
+        int count = 0;
+        for (final TotalsAccumulator stripe : stripes) {
+            synchronized (stripe) {
+                count += stripe.getBookingCount();
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @return the number of stripes
+     */
+    public int getStripeCount() {
+        return stripes.length;
+    }
+}
@@ -0,0 +1,257 @@
+package io.github.samasend.lambdalogic.test.booking.event;
+
+import com.lambdalogic.test.booking.model.AmountAccumulator;
+import com.lambdalogic.test.booking.model.Booking;
+import com.lambdalogic.test.booking.model.Price;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * A change in the life of a {@link Booking}, as it is written to a {@link BookingEventLog}.
+ * <p>
+ * An event holds only the values that matter for the totals of an invoice recipient: the invoice recipient, the
+ * prices and the paid amount. Its prices are frozen copies (see {@link Price#freeze()}), so events are immutable and
+ * can be shared.
+ */
+public final class BookingEvent {
+
+    /**
+     * The kind of an event
+     */
+    public enum Type {
+
+        /**
+         * A booking has been created with its invoice recipient, prices and paid amount
+         */
+        CREATED,
+
+        /**
+         * One price of a booking has been replaced or removed
+         */
+        PRICE_CHANGED,
+
+        /**
+         * An amount has been paid for a booking, a negative amount is a reversal
+         */
+        PAID,
+
+        /**
+         * A booking has been cancelled: the amount of the main price becomes 0, the additional prices are removed
+         * and the cancel fee price is set, like the cancelled bookings of the
+         * {@link io.github.samasend.lambdalogic.test.booking.generator.BookingGenerator}
+         */
+        CANCELLED,
+
+        /**
+         * A booking has been moved to another invoice recipient
+         */
+        RECIPIENT_REASSIGNED
+    }
+
+    /**
+     * The prices of a booking, in the order of {@link Booking#getPrices()}
+     */
+    public enum PriceSlot {
+        MAIN, ADD1, ADD2, CANCEL_FEE
+    }
+
+    private static final Price[] NO_PRICES = new Price[0];
+
+    private final Type type;
+
+    private final long bookingID;
+
+    private final Long invoiceRecipientPK;
+
+    private final PriceSlot priceSlot;
+
+    private final Price price;
+
+    private final Price[] prices;
+
+    private final BigDecimal amount;
+
+    private BookingEvent(final Type type, final long bookingID, final Long invoiceRecipientPK,
+                         final PriceSlot priceSlot, final Price price, final Price[] prices, final BigDecimal amount) {
+        this.type = type;
+        this.bookingID = bookingID;
+        this.invoiceRecipientPK = invoiceRecipientPK;
+        this.priceSlot = priceSlot;
+        this.price = price;
+        this.prices = prices;
+        this.amount = amount;
+    }
+
+    /**
+     * @param booking the created booking, it is not changed and missing prices are not created
+     * @return the event
+     * @throws IllegalArgumentException if the booking has no ID
+     */
+    public static BookingEvent created(final Booking booking) {
+        if (booking.getID() == null) {
+            throw new IllegalArgumentException("Bookings without ID cannot be logged.");
+        }
+        // the paid amount is read without creating it
+        final BigDecimal[] paidAmount = new BigDecimal[1];
+        booking.accumulateInto(new AmountAccumulator() {
+            @Override
+            public void addPrice(final BigDecimal amount, final BigDecimal taxRateDiv100Add1, final boolean gross) {
+            }
+
+            @Override
+            public void addPaidAmount(final BigDecimal amount) {
+                paidAmount[0] = amount;
+            }
+        });
+        return created(booking.getID(), booking.getInvoiceRecipientPK(), booking.getPrices(), paidAmount[0]);
+    }
+
+    /**
+     * @param bookingID          the ID of the created booking
+     * @param invoiceRecipientPK the PK of the invoice recipient, may be null
+     * @param prices             the main price, additional price 1, additional price 2 and cancel fee price, each may
+     *                           be null
+     * @param paidAmount         the paid amount, may be null
+     * @return the event
+     */
+    public static BookingEvent created(final long bookingID, final Long invoiceRecipientPK, final Price[] prices,
+                                       final BigDecimal paidAmount) {
+        if (prices.length != PriceSlot.values().length) {
+            throw new IllegalArgumentException("Parameter 'prices' must contain " + PriceSlot.values().length + " prices.");
+        }
+        final Price[] frozenPrices = new Price[prices.length];
+        for (int i = 0; i < prices.length; i++) {
+            frozenPrices[i] = frozen(prices[i]);
+        }
+        return new BookingEvent(Type.CREATED, bookingID, invoiceRecipientPK, null, null, frozenPrices, paidAmount);
+    }
+
+    /**
+     * @param bookingID the ID of the booking
+     * @param priceSlot the changed price
+     * @param price     the new price, null to remove the price
+     * @return the event
+     */
+    public static BookingEvent priceChanged(final long bookingID, final PriceSlot priceSlot, final Price price) {
+        return new BookingEvent(Type.PRICE_CHANGED, bookingID, null,
+                Objects.requireNonNull(priceSlot, "priceSlot"), frozen(price), NO_PRICES, null);
+    }
+
+    /**
+     * @param bookingID the ID of the booking
+     * @param amount    the paid amount, it is added to the paid amount of the booking
+     * @return the event
+     */
+    public static BookingEvent paid(final long bookingID, final BigDecimal amount) {
+        return new BookingEvent(Type.PAID, bookingID, null, null, null, NO_PRICES,
+                Objects.requireNonNull(amount, "amount"));
+    }
+
+    /**
+     * @param bookingID      the ID of the booking
+     * @param cancelFeePrice the cancel fee price, may be null
+     * @return the event
+     */
+    public static BookingEvent cancelled(final long bookingID, final Price cancelFeePrice) {
+        return new BookingEvent(Type.CANCELLED, bookingID, null, PriceSlot.CANCEL_FEE, frozen(cancelFeePrice),
+                NO_PRICES, null);
+    }
+
+    /**
+     * @param bookingID          the ID of the booking
+     * @param invoiceRecipientPK the PK of the new invoice recipient, may be null
+     * @return the event
+     */
+    public static BookingEvent recipientReassigned(final long bookingID, final Long invoiceRecipientPK) {
+        return new BookingEvent(Type.RECIPIENT_REASSIGNED, bookingID, invoiceRecipientPK, null, null, NO_PRICES,
+                null);
+    }
+
+    private static Price frozen(final Price price) {
+        if (price == null || price.isFrozen()) {
+            return price;
+        }
+        final Price copy = new Price();
+        copy.copyFrom(price);
+        return copy.freeze();
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public long getBookingID() {
+        return bookingID;
+    }
+
+    /**
+     * @return the invoice recipient of a {@link Type#CREATED} or {@link Type#RECIPIENT_REASSIGNED} event,
+     * may be null
+     */
+    public Long getInvoiceRecipientPK() {
+        return invoiceRecipientPK;
+    }
+
+    /**
+     * @return the changed price of a {@link Type#PRICE_CHANGED} event, {@link PriceSlot#CANCEL_FEE} for a
+     * {@link Type#CANCELLED} event, null for the other events
+     */
+    public PriceSlot getPriceSlot() {
+        return priceSlot;
+    }
+
+    /**
+     * @return the new price of a {@link Type#PRICE_CHANGED} event or the cancel fee price of a
+     * {@link Type#CANCELLED} event, may be null
+     */
+    public Price getPrice() {
+        return price;
+    }
+
+    /**
+     * @return the four prices of a {@link Type#CREATED} event, in the order of {@link Booking#getPrices()},
+     * an empty array for the other events
+     */
+    public Price[] getPrices() {
+        return prices.clone();
+    }
+
+    /**
+     * @return the paid amount of a {@link Type#CREATED} event or the payment of a {@link Type#PAID} event,
+     * may be null
+     */
+    public BigDecimal getAmount() {
+        return amount;
+    }
+
+    @Override
+    public boolean equals(final Object other) {
+        if (this == other) {
+            return true;
+        }
+        if (!(other instanceof BookingEvent)) {
+            return false;
+        }
+        final BookingEvent otherEvent = (BookingEvent) other;
+        return type == otherEvent.type
+                && bookingID == otherEvent.bookingID
+                && Objects.equals(invoiceRecipientPK, otherEvent.invoiceRecipientPK)
+                && priceSlot == otherEvent.priceSlot
+                && Objects.equals(price, otherEvent.price)
+                && Arrays.equals(prices, otherEvent.prices)
+                && Objects.equals(amount, otherEvent.amount);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(type, bookingID, invoiceRecipientPK, priceSlot, price,
+                Arrays.hashCode(prices), amount);
+    }
+
+    @Override
+    public String toString() {
+        return type + " " + bookingID;
+    }
+}
@@ -0,0 +1,472 @@
+package io.github.samasend.lambdalogic.test.booking.event;
+
+import com.lambdalogic.test.booking.model.Price;
+import io.github.samasend.lambdalogic.test.booking.codec.BookingCodec;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.BufferOverflowException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * An append-only file of {@link BookingEvent}s, from which the totals of the invoice recipients can be rebuilt,
+ * see {@link TotalsReplayer}.
+ * <p>
+ * Every event is identified by its offset, the position of its record in the file. The first event is at
+ * {@link #FIRST_OFFSET}, the next event is appended at {@link #getEndOffset()}. Events are read in batches from any
+ * offset of an event, see {@link #read(long, int)}.
+ * <p>
+ * Every record is framed by its length and a CRC32 checksum, like the records of
+ * {@link io.github.samasend.lambdalogic.test.booking.journal.TotalsJournal}. A record that was written partially when
+ * the process stopped is discarded when the log is opened. The events are written compactly with the variable length
+ * numbers and prices of {@link BookingCodec}.
+ * <p>
+ * This class is thread-safe.
+ */
+public class BookingEventLog implements AutoCloseable {
+
+    private static final int MAGIC = 0x4245564C; // "BEVL"
+
+    private static final int VERSION = 1;
+
+    private static final int HEADER_SIZE = 8;
+
+    /**
+     * the size of the length and checksum in front of every record
+     */
+    private static final int FRAME_SIZE = 8;
+
+    /**
+     * records are at most this large, longer lengths are treated as corrupt
+     */
+    private static final int MAX_RECORD_SIZE = 1 << 20;
+
+    /**
+     * the number of bytes read at once
+     */
+    private static final int READ_SIZE = 1 << 16;
+
+    /**
+     * the offset of the first event
+     */
+    public static final long FIRST_OFFSET = HEADER_SIZE;
+
+    /**
+     * flags of the prices and the paid amount of a {@link BookingEvent.Type#CREATED} event,
+     * the prices use one bit each in the order of {@link BookingEvent.PriceSlot}
+     */
+    private static final int PAID_AMOUNT = 1 << 4;
+
+    private static final int RECIPIENT = 1 << 5;
+
+    /**
+     * A batch of events read from the log
+     */
+    public static final class Batch {
+
+        private final List<BookingEvent> events;
+
+        private final long nextOffset;
+
+        private Batch(final List<BookingEvent> events, final long nextOffset) {
+            this.events = events;
+            this.nextOffset = nextOffset;
+        }
+
+        /**
+         * @return the events in the order of the log, empty at the end of the log
+         */
+        public List<BookingEvent> getEvents() {
+            return events;
+        }
+
+        /**
+         * @return the offset of the event after the batch
+         */
+        public long getNextOffset() {
+            return nextOffset;
+        }
+    }
+
+    private final FileChannel channel;
+
+    /**
+     * encodes the prices, only used with the lock of the log
+     */
+    private final BookingCodec codec = new BookingCodec();
+
+    private ByteBuffer encodeBuffer = ByteBuffer.allocate(256);
+
+    private long endOffset;
+
+    private boolean closed = false;
+
+    private BookingEventLog(final FileChannel channel, final long endOffset) {
+        this.channel = channel;
+        this.endOffset = endOffset;
+    }
+
+    /**
+     * Open a log file and drop a record at its end that has only been written partially.
+     * A missing or empty file starts an empty log.
+     *
+     * @param file the log file
+     * @return the log
+     * @throws IOException if the file cannot be read or written or is not a log file
+     */
+    public static BookingEventLog open(final Path file) throws IOException {
+        final FileChannel channel = FileChannel.open(file,
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            final long size = channel.size();
+            if (size < HEADER_SIZE) {
+                final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+                header.putInt(MAGIC).putInt(VERSION).flip();
+                channel.truncate(0);
+                while (header.hasRemaining()) {
+                    channel.write(header, header.position());
+                }
+                channel.force(false);
+                return new BookingEventLog(channel, FIRST_OFFSET);
+            }
+
+            final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            readFully(channel, header, 0);
+            header.flip();
+            if (header.getInt() != MAGIC || header.getInt() != VERSION) {
+                throw new IOException("Not an event log file of version " + VERSION + ": " + file);
+            }
+
+            final BookingEventLog log = new BookingEventLog(channel, size);
+            final long validEnd = log.scan();
+            if (validEnd < size) {
+                channel.truncate(validEnd);
+                log.endOffset = validEnd;
+            }
+            return log;
+        }
+        catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Append an event and force it to the disk
+     *
+     * @param event the event
+     * @return the offset after the event
+     * @throws IOException if the log cannot be written
+     */
+    public long append(final BookingEvent event) throws IOException {
+        return append(Collections.singletonList(event));
+    }
+
+    /**
+     * Append events with a single write and force them to the disk once
+     *
+     * @param events the events
+     * @return the offset after the events
+     * @throws IOException if the log cannot be written
+     */
+    public synchronized long append(final Collection<BookingEvent> events) throws IOException {
+        checkOpen();
+        final ByteBuffer[] records = new ByteBuffer[events.size()];
+        long remaining = 0;
+        int i = 0;
+        for (final BookingEvent event : events) {
+            records[i] = encode(event);
+            remaining += records[i].remaining();
+            i++;
+        }
+
+        channel.position(endOffset);
+        while (remaining > 0) {
+            remaining -= channel.write(records);
+        }
+        channel.force(false);
+        endOffset = channel.position();
+        return endOffset;
+    }
+
+    /**
+     * Read the events starting at an offset
+     *
+     * @param offset    the offset of an event or the end offset
+     * @param maxEvents the maximum number of events
+     * @return the events, at most maxEvents
+     * @throws IOException if the log cannot be read or there is no event at the offset
+     */
+    public synchronized Batch read(final long offset, final int maxEvents) throws IOException {
+        checkOpen();
+        if (maxEvents < 1) {
+            throw new IllegalArgumentException("Parameter 'maxEvents' must be positive.");
+        }
+        if (offset < FIRST_OFFSET || offset > endOffset) {
+            throw new IOException("There is no event at offset " + offset + ".");
+        }
+
+        final List<BookingEvent> events = new ArrayList<>(Math.min(maxEvents, 1024));
+        long position = offset;
+        ByteBuffer buffer = ByteBuffer.allocate(0);
+        while (events.size() < maxEvents && position < endOffset) {
+            ByteBuffer payload = nextPayload(buffer);
+            if (payload == null) {
+                // the next record is not in the buffer, read the next part of the file
+                buffer = readAt(position, buffer.capacity());
+                payload = nextPayload(buffer);
+                if (payload == null) {
+                    throw new IOException("The event log is corrupt at offset " + position + ".");
+                }
+            }
+            try {
+                events.add(decode(payload));
+            }
+            catch (BufferUnderflowException | IllegalArgumentException e) {
+                throw new IOException("The event log is corrupt at offset " + position + ".", e);
+            }
+            position += FRAME_SIZE + payload.capacity();
+        }
+        return new Batch(Collections.unmodifiableList(events), position);
+    }
+
+    /**
+     * @return the offset after the last event, where the next event will be appended
+     */
+    public synchronized long getEndOffset() {
+        return endOffset;
+    }
+
+    /**
+     * Close the log file, the events are already on the disk
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (!closed) {
+            closed = true;
+            channel.close();
+        }
+    }
+
+    private void checkOpen() throws IOException {
+        if (closed) {
+            throw new IOException("The event log has been closed.");
+        }
+    }
+
+    /**
+     * @return the offset after the last complete and valid record
+     */
+    private long scan() throws IOException {
+        long position = FIRST_OFFSET;
+        ByteBuffer buffer = ByteBuffer.allocate(0);
+        while (position < endOffset) {
+            ByteBuffer payload = nextPayload(buffer);
+            if (payload == null) {
+                buffer = readAt(position, buffer.capacity());
+                payload = nextPayload(buffer);
+                if (payload == null) {
+                    return position;
+                }
+            }
+            position += FRAME_SIZE + payload.capacity();
+        }
+        return position;
+    }
+
+    /**
+     * Read the file from a position up to the end offset, at least the whole record at the position if it is there
+     *
+     * @param capacity the capacity of the current buffer, it is reused if possible
+     */
+    private ByteBuffer readAt(final long position, final int capacity) throws IOException {
+        final long available = endOffset - position;
+        int size = (int) Math.min(available, READ_SIZE);
+        if (size >= FRAME_SIZE) {
+            final ByteBuffer frame = ByteBuffer.allocate(FRAME_SIZE);
+            readFully(channel, frame, position);
+            final int length = frame.getInt(0);
+            if (length >= 0 && length <= MAX_RECORD_SIZE && FRAME_SIZE + length <= available) {
+                size = Math.max(size, FRAME_SIZE + length);
+            }
+        }
+        final ByteBuffer buffer = ByteBuffer.allocate(Math.max(size, capacity));
+        buffer.limit(size);
+        readFully(channel, buffer, position);
+        buffer.flip();
+        return buffer;
+    }
+
+    private static void readFully(final FileChannel channel, final ByteBuffer buffer, final long position)
+            throws IOException {
+        long current = position;
+        while (buffer.hasRemaining()) {
+            final int read = channel.read(buffer, current);
+            if (read < 0) {
+                throw new IOException("Unexpected end of the event log at offset " + current + ".");
+            }
+            current += read;
+        }
+    }
+
+    /**
+     * @return the payload of the next complete and valid record in the buffer, or null if there is none
+     */
+    private static ByteBuffer nextPayload(final ByteBuffer buffer) {
+        if (buffer.remaining() < FRAME_SIZE) {
+            return null;
+        }
+        final int start = buffer.position();
+        final int length = buffer.getInt(start);
+        final int checksum = buffer.getInt(start + 4);
+        if (length < 0 || length > MAX_RECORD_SIZE || length > buffer.remaining() - FRAME_SIZE) {
+            return null;
+        }
+        final ByteBuffer payload = buffer.duplicate();
+        payload.position(start + FRAME_SIZE).limit(start + FRAME_SIZE + length);
+        if (crc(payload.duplicate()) != checksum) {
+            return null;
+        }
+        buffer.position(start + FRAME_SIZE + length);
+        return payload.slice();
+    }
+
+    private static int crc(final ByteBuffer payload) {
+        final CRC32 crc = new CRC32();
+        crc.update(payload);
+        return (int) crc.getValue();
+    }
+
+    // *************************************************************************
+    // * Encoding
+    // *
+
+    /**
+     * @return the event framed by its length and checksum
+     */
+    private ByteBuffer encode(final BookingEvent event) {
+        while (true) {
+            encodeBuffer.clear();
+            try {
+                encodeBuffer.position(FRAME_SIZE);
+                encodePayload(event, encodeBuffer);
+                break;
+            }
+            catch (BufferOverflowException e) {
+                encodeBuffer = ByteBuffer.allocate(encodeBuffer.capacity() * 2);
+            }
+        }
+        encodeBuffer.flip();
+        final int length = encodeBuffer.limit() - FRAME_SIZE;
+        final ByteBuffer payload = encodeBuffer.duplicate();
+        payload.position(FRAME_SIZE);
+        encodeBuffer.putInt(0, length).putInt(4, crc(payload));
+
+        final ByteBuffer record = ByteBuffer.allocate(encodeBuffer.limit());
+        record.put(encodeBuffer).flip();
+        return record;
+    }
+
+    private void encodePayload(final BookingEvent event, final ByteBuffer buffer) {
+        buffer.put((byte) event.getType().ordinal());
+        BookingCodec.putVarLong(buffer, event.getBookingID());
+        switch (event.getType()) {
+            case CREATED:
+                final Price[] prices = event.getPrices();
+                int flags = 0;
+                for (int i = 0; i < prices.length; i++) {
+                    flags |= prices[i] != null ? 1 << i : 0;
+                }
+                flags |= event.getAmount() != null ? PAID_AMOUNT : 0;
+                flags |= event.getInvoiceRecipientPK() != null ? RECIPIENT : 0;
+                buffer.put((byte) flags);
+                if (event.getInvoiceRecipientPK() != null) {
+                    BookingCodec.putVarLong(buffer, event.getInvoiceRecipientPK());
+                }
+                for (final Price price : prices) {
+                    if (price != null) {
+                        codec.encode(price, buffer);
+                    }
+                }
+                if (event.getAmount() != null) {
+                    BookingCodec.putDecimal(buffer, event.getAmount());
+                }
+                break;
+            case PRICE_CHANGED:
+            case CANCELLED:
+                buffer.put((byte) event.getPriceSlot().ordinal());
+                buffer.put((byte) (event.getPrice() != null ? 1 : 0));
+                if (event.getPrice() != null) {
+                    codec.encode(event.getPrice(), buffer);
+                }
+                break;
+            case PAID:
+                BookingCodec.putDecimal(buffer, event.getAmount());
+                break;
+            case RECIPIENT_REASSIGNED:
+                buffer.put((byte) (event.getInvoiceRecipientPK() != null ? 1 : 0));
+                if (event.getInvoiceRecipientPK() != null) {
+                    BookingCodec.putVarLong(buffer, event.getInvoiceRecipientPK());
+                }
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown event type " + event.getType());
+        }
+    }
+
+    private BookingEvent decode(final ByteBuffer payload) {
+        final int type = payload.get();
+        if (type < 0 || type >= BookingEvent.Type.values().length) {
+            throw new IllegalArgumentException("Unknown event type " + type);
+        }
+        final long bookingID = BookingCodec.getVarLong(payload);
+        final BookingEvent event;
+        switch (BookingEvent.Type.values()[type]) {
+            case CREATED:
+                final int flags = payload.get();
+                final Long recipientPK = (flags & RECIPIENT) != 0 ? BookingCodec.getVarLong(payload) : null;
+                final Price[] prices = new Price[BookingEvent.PriceSlot.values().length];
+                for (int i = 0; i < prices.length; i++) {
+                    prices[i] = (flags & 1 << i) != 0 ? codec.decodePrice(payload).freeze() : null;
+                }
+                final BigDecimal paidAmount = (flags & PAID_AMOUNT) != 0 ? BookingCodec.getDecimal(payload) : null;
+                event = BookingEvent.created(bookingID, recipientPK, prices, paidAmount);
+                break;
+            case PRICE_CHANGED:
+            case CANCELLED:
+                final int slot = payload.get();
+                if (slot < 0 || slot >= BookingEvent.PriceSlot.values().length) {
+                    throw new IllegalArgumentException("Unknown price " + slot);
+                }
+                final Price price = payload.get() != 0 ? codec.decodePrice(payload).freeze() : null;
+                event = type == BookingEvent.Type.CANCELLED.ordinal()
+                        ? BookingEvent.cancelled(bookingID, price)
+                        : BookingEvent.priceChanged(bookingID, BookingEvent.PriceSlot.values()[slot], price);
+                break;
+            case PAID:
+                event = BookingEvent.paid(bookingID, BookingCodec.getDecimal(payload));
+                break;
+            default:
+                event = BookingEvent.recipientReassigned(bookingID,
+                        payload.get() != 0 ? BookingCodec.getVarLong(payload) : null);
+                break;
+        }
+        if (payload.hasRemaining()) {
+            throw new IllegalArgumentException("Unexpected bytes after event " + event);
+        }
+        return event;
+    }
+
+    // *
+    // * Encoding
+    // *************************************************************************
+}
@@ -0,0 +1,477 @@
+package io.github.samasend.lambdalogic.test.booking.event;
+
+import com.lambdalogic.test.booking.exception.InconsistentCurrenciesException;
+import com.lambdalogic.test.booking.model.CurrencyAmount;
+import com.lambdalogic.test.booking.model.Price;
+import io.github.samasend.lambdalogic.test.booking.BookingAmounts;
+import io.github.samasend.lambdalogic.test.booking.BookingsCurrencyAmountsEvaluator;
+import io.github.samasend.lambdalogic.test.booking.EvaluationResult;
+import io.github.samasend.lambdalogic.test.booking.codec.BookingCodec;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.BufferOverflowException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.zip.CRC32;
+
+/**
+ * Rebuilds the totals of all invoice recipients by replaying a {@link BookingEventLog}.
+ * <p>
+ * The replayer keeps the state of every booking that matters for the totals (invoice recipient, prices and paid
+ * amount) and the unrounded totals of every invoice recipient. An event takes the booking out of the totals of its
+ * recipient, changes it and adds it again, so replaying costs time proportional to the number of events. The events
+ * are read and applied in batches; the offset of the replayer only moves at the end of a batch.
+ * <p>
+ * A replay starts at an offset of the log, usually {@link BookingEventLog#FIRST_OFFSET}. Events of bookings that have
+ * not been created since that offset are skipped and counted, see {@link #getSkippedEvents()}. The state and offset
+ * can be written to a checkpoint file, see {@link #checkpoint(Path)}, and {@link #resume(Path)} continues where the
+ * checkpoint was written.
+ * <p>
+ * The results are the same as the ones of {@link BookingsCurrencyAmountsEvaluator} for the bookings the events
+ * describe. Like in {@link io.github.samasend.lambdalogic.test.booking.payment.PaymentLedger}, the relevant bookings of
+ * every recipient are counted per currency, and different currencies lead to an
+ * {@link InconsistentCurrenciesException}.
+ * <p>
+ * The replayer is not thread-safe.
+ */
+public class TotalsReplayer {
+
+    /**
+     * the default number of events read and applied at once
+     */
+    public static final int DEFAULT_BATCH_SIZE = 4_096;
+
+    private static final int CHECKPOINT_MAGIC = 0x4243504B; // "BCPK"
+
+    private static final int VERSION = 1;
+
+    private static final Comparator<String> CURRENCY_ORDER = Comparator.nullsFirst(Comparator.naturalOrder());
+
+    /**
+     * The values of a booking that matter for the totals
+     */
+    private static final class BookingState {
+
+        private Long invoiceRecipientPK;
+
+        private final Price[] prices = new Price[BookingEvent.PriceSlot.values().length];
+
+        private BigDecimal paidAmount;
+
+        private String getCurrency() {
+            // like Booking.getCurrency(), a missing main price has no currency
+            return prices[0] == null ? null : prices[0].getCurrency();
+        }
+    }
+
+    /**
+     * The unrounded totals of the bookings of one invoice recipient
+     */
+    private static final class RecipientTotals {
+
+        private BigDecimal totalAmount = BigDecimal.ZERO;
+
+        private BigDecimal paidAmount = BigDecimal.ZERO;
+
+        /**
+         * the number of relevant bookings per currency, the currency may be null
+         */
+        private final Map<String, Integer> relevantBookings = new HashMap<>(2);
+
+        private void countRelevant(final String currency, final int delta) {
+            relevantBookings.compute(currency, (key, count) -> {
+                final int newCount = (count == null ? 0 : count) + delta;
+                return newCount == 0 ? null : newCount;
+            });
+        }
+
+        private EvaluationResult toResult() throws InconsistentCurrenciesException {
+            if (relevantBookings.isEmpty()) {
+                return EvaluationResult.EMPTY;
+            }
+            if (relevantBookings.size() > 1) {
+                final SortedSet<String> currencies = new TreeSet<>(CURRENCY_ORDER);
+                currencies.addAll(relevantBookings.keySet());
+                throw new InconsistentCurrenciesException(currencies.first(), currencies.last());
+            }
+
+            final String currency = relevantBookings.keySet().iterator().next();
+            return new EvaluationResult(
+                    new CurrencyAmount(totalAmount, currency),
+                    new CurrencyAmount(paidAmount, currency),
+                    new CurrencyAmount(totalAmount.subtract(paidAmount), currency));
+        }
+    }
+
+    private final Map<Long, BookingState> bookings = new HashMap<>();
+
+    private final Map<Long, RecipientTotals> recipientTotals = new HashMap<>();
+
+    private final BookingAmounts.DecimalReader reader = new BookingAmounts.DecimalReader();
+
+    private long offset;
+
+    private long appliedEvents = 0;
+
+    private long skippedEvents = 0;
+
+    /**
+     * Create a replayer for a whole log
+     */
+    public TotalsReplayer() {
+        this(BookingEventLog.FIRST_OFFSET);
+    }
+
+    /**
+     * Create a replayer that starts at an offset of a log without any bookings
+     *
+     * @param offset the offset of the first event to replay
+     */
+    public TotalsReplayer(final long offset) {
+        if (offset < BookingEventLog.FIRST_OFFSET) {
+            throw new IllegalArgumentException("Parameter 'offset' must be at least " + BookingEventLog.FIRST_OFFSET + ".");
+        }
+        this.offset = offset;
+    }
+
+    /**
+     * Replay the events from the offset of the replayer to the end of the log in batches of
+     * {@link #DEFAULT_BATCH_SIZE} events
+     *
+     * @see #replay(BookingEventLog, int)
+     */
+    public long replay(final BookingEventLog log) throws IOException {
+        return replay(log, DEFAULT_BATCH_SIZE);
+    }
+
+    /**
+     * Replay the events from the offset of the replayer to the end of the log
+     *
+     * @param log       the log
+     * @param batchSize the number of events read and applied at once
+     * @return the number of events that have been replayed
+     * @throws IOException if the log cannot be read, the events of the batches before have been applied
+     */
+    public long replay(final BookingEventLog log, final int batchSize) throws IOException {
+        long replayed = 0;
+        while (true) {
+            final BookingEventLog.Batch batch = log.read(offset, batchSize);
+            if (batch.getEvents().isEmpty()) {
+                return replayed;
+            }
+            for (final BookingEvent event : batch.getEvents()) {
+                apply(event);
+            }
+            replayed += batch.getEvents().size();
+            offset = batch.getNextOffset();
+        }
+    }
+
+    /**
+     * Apply a single event, the offset of the replayer is not changed
+     *
+     * @param event the event
+     */
+    public void apply(final BookingEvent event) {
+        appliedEvents++;
+        if (event.getType() == BookingEvent.Type.CREATED) {
+            final BookingState previous = bookings.get(event.getBookingID());
+            if (previous != null) {
+                // a booking that is created again replaces the old one
+                remove(previous);
+            }
+            final BookingState booking = new BookingState();
+            booking.invoiceRecipientPK = event.getInvoiceRecipientPK();
+            System.arraycopy(event.getPrices(), 0, booking.prices, 0, booking.prices.length);
+            booking.paidAmount = event.getAmount();
+            bookings.put(event.getBookingID(), booking);
+            add(booking);
+            return;
+        }
+
+        final BookingState booking = bookings.get(event.getBookingID());
+        if (booking == null) {
+            skippedEvents++;
+            return;
+        }
+
+        remove(booking);
+        switch (event.getType()) {
+            case PRICE_CHANGED:
+                booking.prices[event.getPriceSlot().ordinal()] = event.getPrice();
+                break;
+            case PAID:
+                booking.paidAmount = booking.paidAmount == null
+                        ? event.getAmount()
+                        : booking.paidAmount.add(event.getAmount());
+                break;
+            case CANCELLED:
+                final Price mainPrice = booking.prices[0];
+                if (mainPrice != null && mainPrice.getAmount().signum() != 0) {
+                    final Price cancelledPrice = new Price();
+                    cancelledPrice.copyFrom(mainPrice);
+                    cancelledPrice.setAmount(BigDecimal.ZERO);
+                    booking.prices[0] = cancelledPrice.freeze();
+                }
+                booking.prices[1] = null;
+                booking.prices[2] = null;
+                booking.prices[3] = event.getPrice();
+                break;
+            case RECIPIENT_REASSIGNED:
+                booking.invoiceRecipientPK = event.getInvoiceRecipientPK();
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown event type " + event.getType());
+        }
+        add(booking);
+    }
+
+    private void add(final BookingState booking) {
+        if (booking.invoiceRecipientPK == null || !reader.read(booking.prices, booking.paidAmount)) {
+            return;
+        }
+        final RecipientTotals totals = recipientTotals.computeIfAbsent(booking.invoiceRecipientPK,
+                pk -> new RecipientTotals());
+        totals.totalAmount = totals.totalAmount.add(reader.getTotalAmountGross());
+        if (booking.paidAmount != null) {
+            totals.paidAmount = totals.paidAmount.add(booking.paidAmount);
+        }
+        totals.countRelevant(booking.getCurrency(), 1);
+    }
+
+    private void remove(final BookingState booking) {
+        if (booking.invoiceRecipientPK == null || !reader.read(booking.prices, booking.paidAmount)) {
+            return;
+        }
+        final RecipientTotals totals = recipientTotals.get(booking.invoiceRecipientPK);
+        totals.countRelevant(booking.getCurrency(), -1);
+        if (totals.relevantBookings.isEmpty()) {
+            // the sums are exact, without relevant bookings they are 0
+            recipientTotals.remove(booking.invoiceRecipientPK);
+            return;
+        }
+        totals.totalAmount = totals.totalAmount.subtract(reader.getTotalAmountGross());
+        if (booking.paidAmount != null) {
+            totals.paidAmount = totals.paidAmount.subtract(booking.paidAmount);
+        }
+    }
+
+    /**
+     * Get the rounded totals of an invoice recipient
+     *
+     * @param recipientPK the PK of the invoice recipient
+     * @return the totals, {@link EvaluationResult#EMPTY} if the recipient has no relevant bookings
+     * @throws InconsistentCurrenciesException if the relevant bookings of the recipient have different currencies
+     */
+    public EvaluationResult getTotals(final long recipientPK) throws InconsistentCurrenciesException {
+        final RecipientTotals totals = recipientTotals.get(recipientPK);
+        return totals == null ? EvaluationResult.EMPTY : totals.toResult();
+    }
+
+    /**
+     * @return the PKs of all invoice recipients with relevant bookings, in ascending order
+     */
+    public Set<Long> getRecipientPKs() {
+        return Collections.unmodifiableSet(new TreeSet<>(recipientTotals.keySet()));
+    }
+
+    /**
+     * @return the offset of the next event to replay
+     */
+    public long getOffset() {
+        return offset;
+    }
+
+    /**
+     * @return the number of bookings that have been created
+     */
+    public int getBookingCount() {
+        return bookings.size();
+    }
+
+    /**
+     * @return the number of events that have been applied, including the skipped ones
+     */
+    public long getAppliedEvents() {
+        return appliedEvents;
+    }
+
+    /**
+     * @return the number of events of bookings that have not been created
+     */
+    public long getSkippedEvents() {
+        return skippedEvents;
+    }
+
+    // *************************************************************************
+    // * Checkpoints
+    // *
+
+    /**
+     * Write the offset and the state of all bookings to a checkpoint file. The file is forced to the disk and then
+     * replaced atomically, so a checkpoint that was written before stays valid if writing fails or the system crashes.
+     *
+     * @param file the checkpoint file
+     * @throws IOException if the file cannot be written
+     */
+    public void checkpoint(final Path file) throws IOException {
+        final BookingCodec codec = new BookingCodec();
+        ByteBuffer buffer = ByteBuffer.allocate(64 + 32 * bookings.size());
+        while (true) {
+            try {
+                encode(codec, buffer);
+                break;
+            }
+            catch (BufferOverflowException e) {
+                buffer = ByteBuffer.allocate(buffer.capacity() * 2);
+            }
+        }
+        final CRC32 crc = new CRC32();
+        crc.update(buffer.array(), 0, buffer.position());
+        final byte[] bytes = new byte[buffer.position() + Integer.BYTES];
+        System.arraycopy(buffer.array(), 0, bytes, 0, buffer.position());
+        ByteBuffer.wrap(bytes).putInt(buffer.position(), (int) crc.getValue());
+
+        final Path temporaryFile = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporaryFile, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            final ByteBuffer content = ByteBuffer.wrap(bytes);
+            while (content.hasRemaining()) {
+                channel.write(content);
+            }
+            channel.force(true);
+        }
+        Files.move(temporaryFile, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        forceDirectory(file.toAbsolutePath().getParent());
+    }
+
+    /**
+     * Make the renamed checkpoint durable. Not every platform can open a directory, there the file system is trusted.
+     */
+    private static void forceDirectory(final Path directory) throws IOException {
+        final FileChannel channel;
+        try {
+            channel = FileChannel.open(directory, StandardOpenOption.READ);
+        }
+        catch (IOException e) {
+            return;
+        }
+        try (channel) {
+            channel.force(true);
+        }
+    }
+
+    /**
+     * Continue a replay where a checkpoint has been written
+     *
+     * @param file the checkpoint file
+     * @return the replayer with the state of the checkpoint, a new replayer for the whole log if there is no
+     * checkpoint file
+     * @throws IOException if the file cannot be read or is corrupt
+     */
+    public static TotalsReplayer resume(final Path file) throws IOException {
+        final byte[] bytes;
+        try {
+            bytes = Files.readAllBytes(file);
+        }
+        catch (NoSuchFileException e) {
+            return new TotalsReplayer();
+        }
+
+        final CRC32 crc = new CRC32();
+        final int length = bytes.length - Integer.BYTES;
+        if (length >= 0) {
+            crc.update(bytes, 0, length);
+        }
+        if (length < 0 || ByteBuffer.wrap(bytes).getInt(length) != (int) crc.getValue()) {
+            throw new IOException("The checkpoint " + file + " is corrupt.");
+        }
+        try {
+            return decode(ByteBuffer.wrap(bytes, 0, length));
+        }
+        catch (BufferUnderflowException | IllegalArgumentException e) {
+            throw new IOException("The checkpoint " + file + " is corrupt.", e);
+        }
+    }
+
+    private void encode(final BookingCodec codec, final ByteBuffer buffer) {
+        buffer.putInt(CHECKPOINT_MAGIC).putInt(VERSION);
+        buffer.putLong(offset);
+        BookingCodec.putVarLong(buffer, appliedEvents);
+        BookingCodec.putVarLong(buffer, skippedEvents);
+        BookingCodec.putVarLong(buffer, bookings.size());
+        for (final Map.Entry<Long, BookingState> entry : bookings.entrySet()) {
+            final BookingState booking = entry.getValue();
+            BookingCodec.putVarLong(buffer, entry.getKey());
+            int flags = 0;
+            for (int i = 0; i < booking.prices.length; i++) {
+                flags |= booking.prices[i] != null ? 1 << i : 0;
+            }
+            flags |= booking.paidAmount != null ? 1 << 4 : 0;
+            flags |= booking.invoiceRecipientPK != null ? 1 << 5 : 0;
+            buffer.put((byte) flags);
+            if (booking.invoiceRecipientPK != null) {
+                BookingCodec.putVarLong(buffer, booking.invoiceRecipientPK);
+            }
+            for (final Price price : booking.prices) {
+                if (price != null) {
+                    codec.encode(price, buffer);
+                }
+            }
+            if (booking.paidAmount != null) {
+                BookingCodec.putDecimal(buffer, booking.paidAmount);
+            }
+        }
+    }
+
+    private static TotalsReplayer decode(final ByteBuffer buffer) {
+        if (buffer.getInt() != CHECKPOINT_MAGIC || buffer.getInt() != VERSION) {
+            throw new IllegalArgumentException("Not a checkpoint of version " + VERSION + ".");
+        }
+        final TotalsReplayer replayer = new TotalsReplayer(buffer.getLong());
+        replayer.appliedEvents = BookingCodec.getVarLong(buffer);
+        replayer.skippedEvents = BookingCodec.getVarLong(buffer);
+        final long bookingCount = BookingCodec.getVarLong(buffer);
+        final BookingCodec codec = new BookingCodec();
+        for (long i = 0; i < bookingCount; i++) {
+            final long bookingID = BookingCodec.getVarLong(buffer);
+            final int flags = buffer.get();
+            final BookingState booking = new BookingState();
+            if ((flags & 1 << 5) != 0) {
+                booking.invoiceRecipientPK = BookingCodec.getVarLong(buffer);
+            }
+            for (int j = 0; j < booking.prices.length; j++) {
+                if ((flags & 1 << j) != 0) {
+                    booking.prices[j] = codec.decodePrice(buffer).freeze();
+                }
+            }
+            if ((flags & 1 << 4) != 0) {
+                booking.paidAmount = BookingCodec.getDecimal(buffer);
+            }
+            replayer.bookings.put(bookingID, booking);
+            replayer.add(booking);
+        }
+        if (buffer.hasRemaining()) {
+            throw new IllegalArgumentException("Unexpected bytes after the last booking");
+        }
+        return replayer;
+    }
+
+    // *
+    // * Checkpoints
+    // *************************************************************************
+}
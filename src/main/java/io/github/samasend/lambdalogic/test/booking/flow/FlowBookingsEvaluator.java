@@ -0,0 +1,120 @@
+package io.github.samasend.lambdalogic.test.booking.flow;
+
+import com.lambdalogic.test.booking.exception.InconsistentCurrenciesException;
+import com.lambdalogic.test.booking.model.Booking;
+import io.github.samasend.lambdalogic.test.booking.EvaluationResult;
+import io.github.samasend.lambdalogic.test.booking.TotalsAccumulator;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Flow;
+
+/**
+ * Adds up the total amount, the paid amount and open amount of the {@link Booking}s of a {@link Flow.Publisher}.
+ * <p>
+ * The bookings are requested in batches of a fixed size, the next batch is requested when the current one has been
+ * received. No booking is kept after it has been added to the running totals.
+ * <p>
+ * Only bookings of the given invoice recipient are added, bookings whose amount and paid amount are both 0 are
+ * ignored. As soon as a relevant booking has a different currency, the subscription is cancelled and the result
+ * completes with an {@link InconsistentCurrenciesException}.
+ * <p>
+ * An instance can only subscribe to a single publisher once.
+ */
+public class FlowBookingsEvaluator implements Flow.Subscriber<Booking> {
+
+    private final long invoiceRecipientID;
+
+    private final int batchSize;
+
+    private final TotalsAccumulator accumulator = new TotalsAccumulator();
+
+    private final CompletableFuture<EvaluationResult> result = new CompletableFuture<>();
+
+    private Flow.Subscription subscription = null;
+
+    /**
+     * number of bookings still to receive of the current batch
+     */
+    private int pending = 0;
+
+    private long receivedBookings = 0;
+
+    /**
+     * @param invoiceRecipientID - the PK of the person who is the booking's invoice recipient
+     * @param batchSize          - the number of bookings to request at once
+     */
+    public FlowBookingsEvaluator(final long invoiceRecipientID, final int batchSize) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("Parameter 'batchSize' must be positive.");
+        }
+        this.invoiceRecipientID = invoiceRecipientID;
+        this.batchSize = batchSize;
+    }
+
+    @Override
+    public void onSubscribe(final Flow.Subscription subscription) {
+        if (this.subscription != null) {
+            subscription.cancel();
+            return;
+        }
+
+        this.subscription = subscription;
+        requestBatch();
+    }
+
+    @Override
+    public void onNext(final Booking booking) {
+        if (result.isDone()) {
+            return;
+        }
+
+        receivedBookings++;
+        pending--;
+
+        final Long invoiceRecipientPK = booking.getInvoiceRecipientPK();
+        if (invoiceRecipientPK != null && invoiceRecipientPK == invoiceRecipientID) {
+            try {
+                accumulator.add(booking);
+            }
+            catch (InconsistentCurrenciesException e) {
+                // the result is proven, there is no need to read any further
+                subscription.cancel();
+                result.completeExceptionally(e);
+                return;
+            }
+        }
+
+        if (pending == 0) {
+            requestBatch();
+        }
+    }
+
+    @Override
+    public void onError(final Throwable throwable) {
+        result.completeExceptionally(throwable);
+    }
+
+    @Override
+    public void onComplete() {
+        result.complete(accumulator.toResult());
+    }
+
+    private void requestBatch() {
+        pending = batchSize;
+        subscription.request(batchSize);
+    }
+
+    /**
+     * @return a future of the totals, that completes when the publisher has completed
+     */
+    public CompletableFuture<EvaluationResult> getResult() {
+        return result.copy();
+    }
+
+    /**
+     * @return the number of bookings received so far, including bookings of other invoice recipients
+     */
+    public long getReceivedBookings() {
+        return receivedBookings;
+    }
+}
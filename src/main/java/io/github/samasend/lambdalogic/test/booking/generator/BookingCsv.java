@@ -0,0 +1,305 @@
+package io.github.samasend.lambdalogic.test.booking.generator;
+
+import com.lambdalogic.test.booking.model.Booking;
+import com.lambdalogic.test.booking.model.Price;
+import io.github.samasend.lambdalogic.test.booking.BookingAmounts;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Writes and reads {@link Booking}s as lines of semicolon separated values.
+ * <p>
+ * The first line is the {@link #HEADER}. Every further line is a booking with these columns:
+ * the ID, the booking date and cancelation date in milliseconds since the epoch, the PKs of the invoice recipient,
+ * the offering and the benefit recipients (separated by spaces), the paid amount and four columns for each price
+ * (amount, currency, tax rate and whether it is gross) in the order main price, additional price 1 and 2 and
+ * cancel fee. Null values are empty columns.
+ * <p>
+ * Amounts are written with {@link BigDecimal#toPlainString()}, so reading a file results in equal bookings.
+ * Prices that are not set are written as empty columns, see {@link Booking#getPrices()}.
+ */
+public final class BookingCsv {
+
+    public static final String HEADER = "id;bookingDate;cancelationDate;invoiceRecipientPK;offeringPK;"
+            + "benefitRecipientPKs;paidAmount;"
+            + "mainAmount;mainCurrency;mainTaxRate;mainGross;"
+            + "add1Amount;add1Currency;add1TaxRate;add1Gross;"
+            + "add2Amount;add2Currency;add2TaxRate;add2Gross;"
+            + "cancelFeeAmount;cancelFeeCurrency;cancelFeeTaxRate;cancelFeeGross";
+
+    private static final char SEPARATOR = ';';
+
+    private static final int COLUMNS = 23;
+
+    private BookingCsv() {
+    }
+
+
+    /**
+     * Write bookings including the header line
+     *
+     * @param bookings the bookings, they are written while the stream is consumed
+     * @param writer   the writer, it is not closed
+     * @throws IOException if writing fails
+     */
+    public static void write(Stream<Booking> bookings, Writer writer) throws IOException {
+        writer.write(HEADER);
+        writer.write('\n');
+
+        final StringBuilder line = new StringBuilder(256);
+        final BookingAmounts.DecimalReader amounts = new BookingAmounts.DecimalReader();
+        for (Iterator<Booking> iterator = bookings.iterator(); iterator.hasNext(); ) {
+            line.setLength(0);
+            appendBooking(line, iterator.next(), amounts);
+            line.append('\n');
+            writer.append(line);
+        }
+    }
+
+
+    /**
+     * Read all bookings of a file
+     *
+     * @param file a file written by {@link #write(Stream, Writer)}
+     * @return the bookings in the order of the file
+     * @throws IOException if the file cannot be read
+     * @throws IllegalArgumentException if the file is not valid
+     */
+    public static List<Booking> read(Path file) throws IOException {
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            return read(reader).collect(Collectors.toList());
+        }
+        catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+
+    /**
+     * Read bookings lazily
+     *
+     * @param reader a reader of the data written by {@link #write(Stream, Writer)}, it is not closed
+     * @return the bookings, they are read while the stream is consumed,
+     * errors while reading are thrown as {@link UncheckedIOException}
+     * @throws IOException if the header cannot be read
+     * @throws IllegalArgumentException if the header or a line is not valid
+     */
+    public static Stream<Booking> read(BufferedReader reader) throws IOException {
+        readHeader(reader);
+        return reader.lines().map(BookingCsv::parseBooking);
+    }
+
+
+    /**
+     * Read the bookings of one invoice recipient lazily.
+     * <p>
+     * Only the invoice recipient column of a line is read before the line is filtered, the other columns are parsed
+     * for the bookings of the recipient only. Lines of other recipients are therefore not validated.
+     *
+     * @param reader             a reader of the data written by {@link #write(Stream, Writer)}, it is not closed
+     * @param invoiceRecipientPK the PK of the invoice recipient
+     * @return the bookings of the recipient, see {@link #read(BufferedReader)}
+     * @throws IOException if the header cannot be read
+     * @throws IllegalArgumentException if the header or a line of the recipient is not valid
+     */
+    public static Stream<Booking> read(BufferedReader reader, long invoiceRecipientPK) throws IOException {
+        readHeader(reader);
+        return reader.lines()
+                .filter(line -> hasInvoiceRecipient(line, invoiceRecipientPK))
+                .map(BookingCsv::parseBooking);
+    }
+
+
+    private static void readHeader(BufferedReader reader) throws IOException {
+        final String header = reader.readLine();
+        if (!HEADER.equals(header)) {
+            throw new IllegalArgumentException("missing header: " + header);
+        }
+    }
+
+
+    /**
+     * @return whether the invoice recipient column of a line is the PK, {@code true} if the column cannot be read,
+     * so that parsing the line reports the error
+     */
+    private static boolean hasInvoiceRecipient(String line, long invoiceRecipientPK) {
+        int start = 0;
+        for (int i = 0; i < 3; i++) {
+            start = line.indexOf(SEPARATOR, start) + 1;
+            if (start == 0) {
+                return true;
+            }
+        }
+        final int end = line.indexOf(SEPARATOR, start);
+        if (end < 0) {
+            return true;
+        }
+        if (end == start) {
+            // no invoice recipient
+            return false;
+        }
+        try {
+            return Long.parseLong(line, start, end, 10) == invoiceRecipientPK;
+        }
+        catch (NumberFormatException e) {
+            return true;
+        }
+    }
+
+
+    /**
+     * @param amounts reads the paid amount without creating a missing one like {@link Booking#getPaidAmount()}
+     */
+    private static void appendBooking(StringBuilder line, Booking booking, BookingAmounts.DecimalReader amounts) {
+        line.append(toString(booking.getID())).append(SEPARATOR);
+        line.append(toString(booking.getBookingDate())).append(SEPARATOR);
+        line.append(toString(booking.getCancelationDate())).append(SEPARATOR);
+        line.append(toString(booking.getInvoiceRecipientPK())).append(SEPARATOR);
+        line.append(toString(booking.getOfferingPK())).append(SEPARATOR);
+
+        final List<Long> benefitRecipientPKs = booking.getBenefitRecipientPKs();
+        for (int i = 0; i < benefitRecipientPKs.size(); i++) {
+            if (i > 0) {
+                line.append(' ');
+            }
+            line.append(toString(benefitRecipientPKs.get(i)));
+        }
+        line.append(SEPARATOR);
+
+        amounts.read(booking);
+        line.append(toString(amounts.getPaidAmount()));
+        for (Price price : booking.getPrices()) {
+            line.append(SEPARATOR);
+            appendPrice(line, price);
+        }
+    }
+
+
+    private static void appendPrice(StringBuilder line, Price price) {
+        if (price == null) {
+            line.append(SEPARATOR).append(SEPARATOR).append(SEPARATOR);
+            return;
+        }
+
+        final String currency = price.getCurrency();
+        if (currency != null && (currency.indexOf(SEPARATOR) >= 0 || currency.indexOf('\n') >= 0)) {
+            throw new IllegalArgumentException("currency must not contain separators: " + currency);
+        }
+        line.append(toString(price.getAmount())).append(SEPARATOR);
+        line.append(currency == null ? "" : currency).append(SEPARATOR);
+        line.append(toString(price.getTaxRate())).append(SEPARATOR);
+        line.append(price.isGross());
+    }
+
+
+    private static Booking parseBooking(String line) {
+        final String[] columns = split(line);
+        final Booking booking = new Booking();
+        booking.setID(parseLong(columns[0]));
+        booking.setBookingDate(parseDate(columns[1]));
+        booking.setCancelationDate(parseDate(columns[2]));
+        booking.setInvoiceRecipientPK(parseLong(columns[3]));
+        booking.setOfferingPK(parseLong(columns[4]));
+
+        final List<Long> benefitRecipientPKs = new ArrayList<>();
+        if (!columns[5].isEmpty()) {
+            for (String pk : columns[5].split(" ")) {
+                benefitRecipientPKs.add(parseLong(pk));
+            }
+        }
+        booking.setBenefitRecipientPKs(benefitRecipientPKs);
+
+        booking.setPaidAmount(parseDecimal(columns[6]));
+        booking.setMainPrice(parsePrice(columns, 7));
+        booking.setAdd1Price(parsePrice(columns, 11));
+        booking.setAdd2Price(parsePrice(columns, 15));
+        booking.setCancelFeePrice(parsePrice(columns, 19));
+        return booking;
+    }
+
+
+    private static Price parsePrice(String[] columns, int offset) {
+        if (columns[offset].isEmpty() && columns[offset + 3].isEmpty()) {
+            return null;
+        }
+
+        return new Price(
+                parseDecimal(columns[offset]),
+                columns[offset + 1].isEmpty() ? null : columns[offset + 1],
+                parseDecimal(columns[offset + 2]),
+                Boolean.parseBoolean(columns[offset + 3]));
+    }
+
+
+    private static String[] split(String line) {
+        final String[] columns = new String[COLUMNS];
+        int start = 0;
+        for (int i = 0; i < COLUMNS - 1; i++) {
+            final int end = line.indexOf(SEPARATOR, start);
+            if (end < 0) {
+                throw new IllegalArgumentException("expected " + COLUMNS + " columns: " + line);
+            }
+            columns[i] = line.substring(start, end);
+            start = end + 1;
+        }
+        if (line.indexOf(SEPARATOR, start) >= 0) {
+            throw new IllegalArgumentException("expected " + COLUMNS + " columns: " + line);
+        }
+        columns[COLUMNS - 1] = line.substring(start);
+        return columns;
+    }
+
+
+    private static String toString(Long value) {
+        return value == null ? "" : value.toString();
+    }
+
+
+    private static String toString(Date value) {
+        return value == null ? "" : Long.toString(value.getTime());
+    }
+
+
+    private static String toString(BigDecimal value) {
+        return value == null ? "" : value.toPlainString();
+    }
+
+
+    private static Long parseLong(String value) {
+        try {
+            return value.isEmpty() ? null : Long.valueOf(value);
+        }
+        catch (NumberFormatException e) {
+            throw new IllegalArgumentException("invalid number: " + value, e);
+        }
+    }
+
+
+    private static Date parseDate(String value) {
+        final Long millis = parseLong(value);
+        return millis == null ? null : new Date(millis);
+    }
+
+
+    private static BigDecimal parseDecimal(String value) {
+        try {
+            return value.isEmpty() ? null : new BigDecimal(value);
+        }
+        catch (NumberFormatException e) {
+            throw new IllegalArgumentException("invalid amount: " + value, e);
+        }
+    }
+}
@@ -0,0 +1,450 @@
+package io.github.samasend.lambdalogic.test.booking.generator;
+
+import com.lambdalogic.test.booking.model.Booking;
+import com.lambdalogic.test.booking.model.Price;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.SplittableRandom;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Generates reproducible populations of {@link Booking}s for load tests and benchmarks.
+ * <p>
+ * The generated bookings only depend on the seed and the settings, so the same generator settings always lead to the
+ * same bookings. The bookings are generated lazily, so large populations can be streamed without holding them in
+ * memory, see {@link #stream()} and {@link #write(Path)}.
+ * <p>
+ * The shape of the population is controlled by the setters, which can be chained:
+ * <ul>
+ * <li>the number of invoice recipients, whose PKs are 1 to {@link #setRecipientCount(int) recipientCount},</li>
+ * <li>the number of bookings per recipient, which follows a Zipf distribution: the recipient with the PK {@code k}
+ * gets bookings proportional to {@code 1 / k^s}, see {@link #setZipfExponent(double)},</li>
+ * <li>the share of gross bookings and the mix of tax rates,</li>
+ * <li>the share of bookings with only a main price, the others get additional prices,</li>
+ * <li>the share of cancelled bookings, which get a cancel fee instead of their main price,</li>
+ * <li>the shares of fully and partially paid bookings,</li>
+ * <li>the currency mix: every recipient books in a single currency chosen by weight,
+ * except a share of recipients who have bookings in several currencies.</li>
+ * </ul>
+ * All shares are probabilities between 0 and 1.
+ * <p>
+ * The generator is not thread-safe, but every call of {@link #stream()} starts from the seed again.
+ */
+public class BookingGenerator {
+
+    private static final BigDecimal MIN_AMOUNT = new BigDecimal("5.00");
+
+    private static final BigDecimal MAX_AMOUNT = new BigDecimal("2000.00");
+
+    /**
+     * the bookings are spread over the year before this date
+     */
+    private static final long BASE_DATE_MILLIS = 1_577_836_800_000L; // 2020-01-01T00:00:00Z
+
+    private static final long DAY_MILLIS = 86_400_000L;
+
+    private long seed = 0;
+
+    private int bookingCount = 10_000;
+
+    private int recipientCount = 1_000;
+
+    private double zipfExponent = 1.0;
+
+    private int offeringCount = 100;
+
+    private double grossShare = 0.5;
+
+    private BigDecimal[] taxRates = {new BigDecimal("19"), new BigDecimal("7"), BigDecimal.ZERO};
+
+    private double[] taxRateWeights = {0.7, 0.2, 0.1};
+
+    private double mainPriceOnlyShare = 0.7;
+
+    private double cancellationShare = 0.05;
+
+    private double paidShare = 0.5;
+
+    private double partiallyPaidShare = 0.2;
+
+    private String[] currencies = {"EUR"};
+
+    private double[] currencyWeights = {1.0};
+
+    private double mixedCurrencyRecipientShare = 0.0;
+
+
+    /**
+     * @param seed the seed of the random numbers, the same seed leads to the same bookings
+     */
+    public BookingGenerator setSeed(long seed) {
+        this.seed = seed;
+        return this;
+    }
+
+
+    /**
+     * @param bookingCount the total number of bookings
+     */
+    public BookingGenerator setBookingCount(int bookingCount) {
+        if (bookingCount < 0) {
+            throw new IllegalArgumentException("bookingCount must not be negative: " + bookingCount);
+        }
+        this.bookingCount = bookingCount;
+        return this;
+    }
+
+
+    /**
+     * @param recipientCount the number of invoice recipients, their PKs are 1 to recipientCount
+     */
+    public BookingGenerator setRecipientCount(int recipientCount) {
+        if (recipientCount < 1) {
+            throw new IllegalArgumentException("recipientCount must be positive: " + recipientCount);
+        }
+        this.recipientCount = recipientCount;
+        return this;
+    }
+
+
+    /**
+     * @param zipfExponent the exponent {@code s} of the Zipf distribution of bookings per recipient,
+     *                     0 distributes the bookings evenly, larger values concentrate them on the first recipients
+     */
+    public BookingGenerator setZipfExponent(double zipfExponent) {
+        if (!(zipfExponent >= 0) || Double.isInfinite(zipfExponent)) {
+            throw new IllegalArgumentException("zipfExponent must not be negative: " + zipfExponent);
+        }
+        this.zipfExponent = zipfExponent;
+        return this;
+    }
+
+
+    /**
+     * @param offeringCount the number of offerings, their PKs are 1 to offeringCount
+     */
+    public BookingGenerator setOfferingCount(int offeringCount) {
+        if (offeringCount < 1) {
+            throw new IllegalArgumentException("offeringCount must be positive: " + offeringCount);
+        }
+        this.offeringCount = offeringCount;
+        return this;
+    }
+
+
+    /**
+     * @param grossShare the share of bookings whose prices are gross, the others are net
+     */
+    public BookingGenerator setGrossShare(double grossShare) {
+        this.grossShare = checkShare("grossShare", grossShare);
+        return this;
+    }
+
+
+    /**
+     * Set the mix of tax rates
+     *
+     * @param taxRates the tax rates, 19 means 19%
+     * @param weights  the relative frequency of each tax rate
+     */
+    public BookingGenerator setTaxRates(BigDecimal[] taxRates, double[] weights) {
+        checkWeights("taxRates", taxRates.length, weights);
+        this.taxRates = taxRates.clone();
+        this.taxRateWeights = weights.clone();
+        return this;
+    }
+
+
+    /**
+     * @param mainPriceOnlyShare the share of bookings without additional prices
+     */
+    public BookingGenerator setMainPriceOnlyShare(double mainPriceOnlyShare) {
+        this.mainPriceOnlyShare = checkShare("mainPriceOnlyShare", mainPriceOnlyShare);
+        return this;
+    }
+
+
+    /**
+     * @param cancellationShare the share of cancelled bookings
+     */
+    public BookingGenerator setCancellationShare(double cancellationShare) {
+        this.cancellationShare = checkShare("cancellationShare", cancellationShare);
+        return this;
+    }
+
+
+    /**
+     * Set the shares of paid bookings, the remaining bookings are not paid at all
+     *
+     * @param paidShare          the share of fully paid bookings
+     * @param partiallyPaidShare the share of partially paid bookings
+     */
+    public BookingGenerator setPaymentShares(double paidShare, double partiallyPaidShare) {
+        checkShare("paidShare", paidShare);
+        checkShare("partiallyPaidShare", partiallyPaidShare);
+        if (paidShare + partiallyPaidShare > 1) {
+            throw new IllegalArgumentException("paidShare and partiallyPaidShare must not exceed 1 together");
+        }
+        this.paidShare = paidShare;
+        this.partiallyPaidShare = partiallyPaidShare;
+        return this;
+    }
+
+
+    /**
+     * Set the mix of currencies
+     *
+     * @param currencies the currencies
+     * @param weights    the relative frequency of each currency among the recipients
+     */
+    public BookingGenerator setCurrencies(String[] currencies, double[] weights) {
+        checkWeights("currencies", currencies.length, weights);
+        if (currencies.length > Byte.MAX_VALUE) {
+            throw new IllegalArgumentException("at most " + Byte.MAX_VALUE + " currencies are supported");
+        }
+        this.currencies = currencies.clone();
+        this.currencyWeights = weights.clone();
+        return this;
+    }
+
+
+    /**
+     * @param mixedCurrencyRecipientShare the share of recipients whose bookings have different currencies,
+     *                                    which makes their evaluation fail
+     */
+    public BookingGenerator setMixedCurrencyRecipientShare(double mixedCurrencyRecipientShare) {
+        this.mixedCurrencyRecipientShare = checkShare("mixedCurrencyRecipientShare", mixedCurrencyRecipientShare);
+        return this;
+    }
+
+
+    private static double checkShare(String name, double share) {
+        if (!(share >= 0 && share <= 1)) {
+            throw new IllegalArgumentException(name + " must be between 0 and 1: " + share);
+        }
+        return share;
+    }
+
+
+    private static void checkWeights(String name, int length, double[] weights) {
+        if (length == 0 || length != weights.length) {
+            throw new IllegalArgumentException(name + " need one weight each and must not be empty");
+        }
+        double sum = 0;
+        for (double weight : weights) {
+            if (!(weight >= 0)) {
+                throw new IllegalArgumentException("the weights of " + name + " must not be negative");
+            }
+            sum += weight;
+        }
+        if (!(sum > 0) || Double.isInfinite(sum)) {
+            throw new IllegalArgumentException("the weights of " + name + " must not all be 0");
+        }
+    }
+
+
+    /**
+     * @return the generated bookings in a new list
+     */
+    public List<Booking> generate() {
+        return stream().collect(Collectors.toList());
+    }
+
+
+    /**
+     * @return a sequential stream of the generated bookings, which are generated while the stream is consumed
+     */
+    public Stream<Booking> stream() {
+        return StreamSupport.stream(
+                Spliterators.spliterator(new BookingIterator(), bookingCount,
+                        Spliterator.ORDERED | Spliterator.NONNULL | Spliterator.IMMUTABLE),
+                false);
+    }
+
+
+    /**
+     * Write the generated bookings to a file in the format of {@link BookingCsv}.
+     * The bookings are written while they are generated.
+     *
+     * @param file the file, it is overwritten if it exists
+     * @throws IOException if the file cannot be written
+     */
+    public void write(Path file) throws IOException {
+        try (Writer writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            BookingCsv.write(stream(), writer);
+        }
+    }
+
+
+    /**
+     * @return the cumulative distribution of the weights, the last value is exactly 1
+     */
+    private static double[] cumulate(double[] weights) {
+        final double[] cumulated = new double[weights.length];
+        double sum = 0;
+        for (int i = 0; i < weights.length; i++) {
+            sum += weights[i];
+            cumulated[i] = sum;
+        }
+        for (int i = 0; i < cumulated.length; i++) {
+            cumulated[i] /= sum;
+        }
+        cumulated[cumulated.length - 1] = 1;
+        return cumulated;
+    }
+
+
+    /**
+     * @return the index of the first cumulated value above a random number between 0 and 1
+     */
+    private static int pick(double[] cumulated, SplittableRandom random) {
+        final int index = Arrays.binarySearch(cumulated, random.nextDouble());
+        // nextDouble() is below 1 and the last value is 1, so the insertion point is always in range
+        return index >= 0 ? index + 1 : -index - 1;
+    }
+
+
+    /**
+     * Generates the bookings of one {@link #stream()} call from the seed
+     */
+    private final class BookingIterator implements Iterator<Booking> {
+
+        private final SplittableRandom random = new SplittableRandom(seed);
+
+        private final double[] recipientDistribution;
+
+        private final double[] taxRateDistribution = cumulate(taxRateWeights);
+
+        private final double[] currencyDistribution = cumulate(currencyWeights);
+
+        /**
+         * the index of the currency of each recipient, -1 for recipients with mixed currencies
+         */
+        private final byte[] recipientCurrencies = new byte[recipientCount];
+
+        private int generated = 0;
+
+        private BookingIterator() {
+            final double[] recipientWeights = new double[recipientCount];
+            for (int i = 0; i < recipientCount; i++) {
+                recipientWeights[i] = 1 / Math.pow(i + 1, zipfExponent);
+            }
+            recipientDistribution = cumulate(recipientWeights);
+
+            // the currencies do not depend on the bookings per recipient, so draw them from their own random numbers
+            final SplittableRandom currencyRandom = random.split();
+            for (int i = 0; i < recipientCount; i++) {
+                recipientCurrencies[i] = currencyRandom.nextDouble() < mixedCurrencyRecipientShare
+                        ? -1
+                        : (byte) pick(currencyDistribution, currencyRandom);
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return generated < bookingCount;
+        }
+
+        @Override
+        public Booking next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            generated++;
+
+            final int recipient = pick(recipientDistribution, random);
+            final String currency = recipientCurrencies[recipient] < 0
+                    ? currencies[pick(currencyDistribution, random)]
+                    : currencies[recipientCurrencies[recipient]];
+            final boolean gross = random.nextDouble() < grossShare;
+
+            final Price mainPrice = nextPrice(currency, gross);
+            Price add1Price = null;
+            Price add2Price = null;
+            if (random.nextDouble() >= mainPriceOnlyShare) {
+                add1Price = nextPrice(currency, gross);
+                if (random.nextBoolean()) {
+                    add2Price = nextPrice(currency, gross);
+                }
+            }
+
+            final Date bookingDate = new Date(BASE_DATE_MILLIS - random.nextLong(365 * DAY_MILLIS));
+            Date cancelationDate = null;
+            Price cancelFeePrice = null;
+            if (random.nextDouble() < cancellationShare) {
+                cancelationDate = new Date(bookingDate.getTime() + random.nextLong(30 * DAY_MILLIS));
+
+                // the cancel fee replaces the prices, it is a part of the main price
+                cancelFeePrice = new Price(
+                        mainPrice.getAmount().multiply(BigDecimal.valueOf(random.nextInt(10, 101), 2)),
+                        currency, mainPrice.getTaxRate(), gross);
+                mainPrice.setAmount(BigDecimal.ZERO);
+                add1Price = null;
+                add2Price = null;
+            }
+
+            return new Booking(
+                    (long) generated,
+                    mainPrice, add1Price, add2Price, cancelFeePrice,
+                    nextPaidAmount(mainPrice, add1Price, add2Price, cancelFeePrice),
+                    bookingDate, cancelationDate,
+                    Collections.singletonList((long) recipient + 1),
+                    (long) recipient + 1,
+                    (long) random.nextInt(offeringCount) + 1);
+        }
+
+        private Price nextPrice(String currency, boolean gross) {
+            // amounts are spread evenly on a logarithmic scale, small amounts are more frequent than large ones
+            final double logMin = Math.log(MIN_AMOUNT.doubleValue());
+            final double logMax = Math.log(MAX_AMOUNT.doubleValue());
+            final BigDecimal amount = BigDecimal.valueOf(Math.exp(random.nextDouble(logMin, logMax)))
+                    .setScale(2, RoundingMode.HALF_UP);
+            return new Price(amount, currency, taxRates[pick(taxRateDistribution, random)], gross);
+        }
+
+        /**
+         * @return the paid amount, a part of the rounded total amount gross of the prices, or null if nothing has been paid
+         */
+        private BigDecimal nextPaidAmount(Price... prices) {
+            final double payment = random.nextDouble();
+            if (payment < paidShare) {
+                return getTotalAmountGross(prices);
+            }
+            if (payment < paidShare + partiallyPaidShare) {
+                return getTotalAmountGross(prices)
+                        .multiply(BigDecimal.valueOf(random.nextInt(1, 100), 2))
+                        .setScale(2, RoundingMode.HALF_UP);
+            }
+            return null;
+        }
+
+        /**
+         * Unlike {@link Booking#getTotalAmountGross()} this does not create the missing prices of a booking.
+         */
+        private BigDecimal getTotalAmountGross(Price... prices) {
+            BigDecimal total = BigDecimal.ZERO;
+            for (Price price : prices) {
+                if (price != null) {
+                    total = total.add(price.getAmountGross());
+                }
+            }
+            return total;
+        }
+    }
+}
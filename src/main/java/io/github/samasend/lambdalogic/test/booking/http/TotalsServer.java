@@ -0,0 +1,512 @@
+package io.github.samasend.lambdalogic.test.booking.http;
+
+import com.lambdalogic.test.booking.IBookingsCurrencyAmountsEvaluator;
+import com.lambdalogic.test.booking.exception.InconsistentCurrenciesException;
+import com.lambdalogic.test.booking.model.CurrencyAmount;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import io.github.samasend.lambdalogic.test.booking.BookingsCurrencyAmountsEvaluator;
+import io.github.samasend.lambdalogic.test.booking.EvaluationResult;
+import io.github.samasend.lambdalogic.test.booking.cache.VersionedBookingList;
+import io.github.samasend.lambdalogic.test.booking.generator.BookingCsv;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+
+/**
+ * Serves the totals of the invoice recipients of an in-memory {@link VersionedBookingList} over HTTP, built on the
+ * HTTP server of the JDK.
+ * <p>
+ * {@code GET /totals?recipient=<PK>} answers with the totals as JSON:
+ * {@code {"recipient":1,"version":3,"totalAmount":"12.00","totalPaidAmount":"2.00","totalOpenAmount":"10.00",
+ * "currency":"EUR"}}, the amounts are null if the recipient has no relevant bookings. Different currencies are
+ * answered with status 409 and {@code {"recipient":1,"version":3,"error":"<message>"}}, an invalid request with
+ * status 400 and a full worker pool with status 503.
+ * <p>
+ * The results are computed by {@link BookingsCurrencyAmountsEvaluator}s on a bounded pool of worker threads, every
+ * worker uses its own evaluator. Results are cached per recipient together with the version of the bookings they
+ * have been computed for, and concurrent requests for the same recipient and version are coalesced into one
+ * calculation. Unlike {@link io.github.samasend.lambdalogic.test.booking.async.AsyncBookingsEvaluator}, which
+ * coalesces by the identity of the list, a request never gets a result of an older version.
+ * <p>
+ * The bookings must only be changed with {@link #update(Consumer)}, which waits for the running calculations and
+ * drops the cached results. The number of cached results is bounded; when the bound is reached, further results are
+ * not cached until the next update.
+ * <p>
+ * This class is thread-safe.
+ */
+public class TotalsServer implements AutoCloseable {
+
+    public static final String PATH = "/totals";
+
+    public static final int DEFAULT_MAX_CACHED_RESULTS = 100_000;
+
+    private static final String RECIPIENT_PARAMETER = "recipient=";
+
+    /**
+     * A queued, running or completed calculation of the totals of a recipient
+     */
+    private static final class Calculation {
+
+        /**
+         * the version the calculation has been requested for
+         */
+        private final long version;
+
+        /**
+         * the version the calculation has been run on, it is newer than {@link #version} if the bookings have been
+         * updated while the calculation was queued; it is set before the future is completed
+         */
+        private volatile long computedVersion;
+
+        private final CompletableFuture<EvaluationResult> future = new CompletableFuture<>();
+
+        private Calculation(final long version) {
+            this.version = version;
+            this.computedVersion = version;
+        }
+    }
+
+    private final VersionedBookingList bookings;
+
+    /**
+     * guards the bookings: calculations read them, updates write them
+     */
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /**
+     * the version of the bookings, only changed with the write lock
+     */
+    private volatile long version;
+
+    /**
+     * the calculations per recipient, the ones of older versions are replaced when they are requested
+     */
+    private final ConcurrentMap<Long, Calculation> calculations = new ConcurrentHashMap<>();
+
+    private final int maxCachedResults;
+
+    private final ThreadPoolExecutor workers;
+
+    /**
+     * One evaluator per worker thread
+     */
+    private final ThreadLocal<IBookingsCurrencyAmountsEvaluator> evaluators =
+            ThreadLocal.withInitial(BookingsCurrencyAmountsEvaluator::new);
+
+    private final LongAdder requestCount = new LongAdder();
+
+    private final LongAdder calculationCount = new LongAdder();
+
+    private final LongAdder cacheHitCount = new LongAdder();
+
+    private final LongAdder coalescedCount = new LongAdder();
+
+    private final LongAdder rejectedCount = new LongAdder();
+
+    private HttpServer server;
+
+    /**
+     * Create a server with up to {@link #DEFAULT_MAX_CACHED_RESULTS} cached results
+     *
+     * @see #TotalsServer(VersionedBookingList, int, int, int)
+     */
+    public TotalsServer(final VersionedBookingList bookings, final int threads, final int queueCapacity) {
+        this(bookings, threads, queueCapacity, DEFAULT_MAX_CACHED_RESULTS);
+    }
+
+    /**
+     * @param bookings         the bookings, from now on they must only be changed with {@link #update(Consumer)}
+     * @param threads          the number of worker threads
+     * @param queueCapacity    the maximum number of calculations waiting for a worker thread
+     * @param maxCachedResults the maximum number of cached results
+     */
+    public TotalsServer(final VersionedBookingList bookings, final int threads, final int queueCapacity,
+                        final int maxCachedResults) {
+        if (bookings == null) {
+            throw new IllegalArgumentException("Parameter 'bookings' must not be null.");
+        }
+        if (maxCachedResults < 0) {
+            throw new IllegalArgumentException("Parameter 'maxCachedResults' must not be negative.");
+        }
+        this.bookings = bookings;
+        this.version = bookings.getVersion();
+        this.maxCachedResults = maxCachedResults;
+        this.workers = new ThreadPoolExecutor(
+                threads, threads,
+                0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                new WorkerThreadFactory(),
+                new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    /**
+     * Start serving
+     *
+     * @param address the address to listen on, port 0 picks a free port
+     * @return this server
+     * @throws IOException if the server cannot listen on the address
+     */
+    public synchronized TotalsServer start(final InetSocketAddress address) throws IOException {
+        if (server != null) {
+            throw new IllegalStateException("The server has already been started.");
+        }
+        server = HttpServer.create(address, 0);
+        server.createContext(PATH, this::handle);
+        // the handlers only look up the cache or hand the calculation to a worker, they run on the dispatcher thread
+        server.setExecutor(null);
+        server.start();
+        return this;
+    }
+
+    /**
+     * @return the address the server listens on
+     */
+    public synchronized InetSocketAddress getAddress() {
+        if (server == null) {
+            throw new IllegalStateException("The server has not been started.");
+        }
+        return server.getAddress();
+    }
+
+    /**
+     * Change the bookings. Waits until the running calculations are finished, and no calculation starts while the
+     * bookings are changed. The cached results are dropped afterwards.
+     *
+     * @param change changes the list or its bookings, it does not need to call
+     *               {@link VersionedBookingList#markModified()}
+     */
+    public void update(final Consumer<? super VersionedBookingList> change) {
+        lock.writeLock().lock();
+        try {
+            change.accept(bookings);
+            bookings.markModified();
+            version = bookings.getVersion();
+            calculations.clear();
+        }
+        finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Get the totals of a recipient from the cache, from a running calculation or from a new calculation
+     *
+     * @param recipientPK the PK of the invoice recipient
+     * @return a future of the totals, which completes exceptionally with an {@link InconsistentCurrenciesException}
+     * or a {@link RejectedExecutionException} if the worker pool is full; the totals may be of a newer version
+     * than the one at the time of the request, but never of an older one
+     */
+    public CompletableFuture<EvaluationResult> getTotals(final long recipientPK) {
+        // callers must not be able to complete or cancel the future shared by coalesced requests
+        return getCalculation(recipientPK).future.copy();
+    }
+
+    private Calculation getCalculation(final long recipientPK) {
+        requestCount.increment();
+        final long currentVersion = version;
+
+        final Calculation existing = calculations.get(recipientPK);
+        if (existing != null && existing.version == currentVersion) {
+            if (existing.future.isDone()) {
+                cacheHitCount.increment();
+            }
+            else {
+                coalescedCount.increment();
+            }
+            return existing;
+        }
+
+        final Calculation calculation = new Calculation(currentVersion);
+        final Calculation inFlight = calculations.compute(recipientPK,
+                (pk, current) -> current != null && current.version == currentVersion ? current : calculation);
+        if (inFlight != calculation) {
+            coalescedCount.increment();
+            return inFlight;
+        }
+
+        try {
+            workers.execute(() -> calculate(recipientPK, calculation));
+        }
+        catch (RejectedExecutionException e) {
+            rejectedCount.increment();
+            calculations.remove(recipientPK, calculation);
+            calculation.future.completeExceptionally(e);
+        }
+        return calculation;
+    }
+
+    private void calculate(final long recipientPK, final Calculation calculation) {
+        calculationCount.increment();
+        EvaluationResult result = null;
+        Throwable failure = null;
+        lock.readLock().lock();
+        try {
+            // the bookings may have been updated since the calculation has been requested
+            calculation.computedVersion = version;
+            final IBookingsCurrencyAmountsEvaluator evaluator = evaluators.get();
+            evaluator.calculate(bookings, recipientPK);
+            result = EvaluationResult.of(evaluator);
+        }
+        catch (InconsistentCurrenciesException | RuntimeException | Error e) {
+            // an Error must complete the calculation as well, otherwise later requests would be coalesced with it
+            failure = e;
+        }
+        finally {
+            lock.readLock().unlock();
+        }
+
+        // a completed calculation stays in the map as cached result, unless the cache is full, it has been run on
+        // a newer version than its own or it failed otherwise
+        if (calculations.size() > maxCachedResults
+                || calculation.computedVersion != calculation.version
+                || (failure != null && !(failure instanceof InconsistentCurrenciesException))) {
+            calculations.remove(recipientPK, calculation);
+        }
+        if (failure == null) {
+            calculation.future.complete(result);
+        }
+        else {
+            calculation.future.completeExceptionally(failure);
+            if (failure instanceof Error) {
+                throw (Error) failure;
+            }
+        }
+    }
+
+    // *************************************************************************
+    // * HTTP
+    // *
+
+    private void handle(final HttpExchange exchange) throws IOException {
+        if (!PATH.equals(exchange.getRequestURI().getPath())) {
+            respond(exchange, HttpURLConnection.HTTP_NOT_FOUND, "{\"error\":\"not found\"}");
+            return;
+        }
+        if (!"GET".equals(exchange.getRequestMethod())) {
+            exchange.getResponseHeaders().set("Allow", "GET");
+            respond(exchange, HttpURLConnection.HTTP_BAD_METHOD, "{\"error\":\"method not allowed\"}");
+            return;
+        }
+
+        final Long recipientPK = parseRecipient(exchange.getRequestURI().getRawQuery());
+        if (recipientPK == null) {
+            respond(exchange, HttpURLConnection.HTTP_BAD_REQUEST, "{\"error\":\"missing or invalid recipient\"}");
+            return;
+        }
+
+        final Calculation calculation = getCalculation(recipientPK);
+        // the shared future is only observed, the answer carries the version the totals have been computed on
+        calculation.future.whenComplete((result, failure) -> {
+            try {
+                if (failure == null) {
+                    respond(exchange, HttpURLConnection.HTTP_OK,
+                            toJson(recipientPK, calculation.computedVersion, result));
+                }
+                else if (failure instanceof InconsistentCurrenciesException) {
+                    respond(exchange, HttpURLConnection.HTTP_CONFLICT,
+                            toJson(recipientPK, calculation.computedVersion, failure.getMessage()));
+                }
+                else if (failure instanceof RejectedExecutionException) {
+                    respond(exchange, HttpURLConnection.HTTP_UNAVAILABLE, "{\"error\":\"too many requests\"}");
+                }
+                else {
+                    respond(exchange, HttpURLConnection.HTTP_INTERNAL_ERROR, "{\"error\":\"internal error\"}");
+                }
+            }
+            catch (IOException e) {
+                // the client has gone away
+                exchange.close();
+            }
+        });
+    }
+
+    /**
+     * @param query the raw query of the request
+     * @return the recipient PK of the query, null if it is missing or not a number
+     */
+    private static Long parseRecipient(final String query) {
+        if (query == null) {
+            return null;
+        }
+        for (final String parameter : query.split("&")) {
+            if (parameter.startsWith(RECIPIENT_PARAMETER)) {
+                try {
+                    return Long.parseLong(parameter.substring(RECIPIENT_PARAMETER.length()));
+                }
+                catch (NumberFormatException e) {
+                    return null;
+                }
+            }
+        }
+        return null;
+    }
+
+    private static void respond(final HttpExchange exchange, final int status, final String json) throws IOException {
+        final byte[] body = json.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream output = exchange.getResponseBody()) {
+            output.write(body);
+        }
+    }
+
+    static String toJson(final long recipientPK, final long version, final EvaluationResult result) {
+        final StringBuilder json = new StringBuilder(160);
+        json.append("{\"recipient\":").append(recipientPK).append(",\"version\":").append(version);
+        appendAmount(json, "totalAmount", result.getTotalAmount());
+        appendAmount(json, "totalPaidAmount", result.getTotalPaidAmount());
+        appendAmount(json, "totalOpenAmount", result.getTotalOpenAmount());
+        json.append(",\"currency\":");
+        appendString(json, result.isEmpty() ? null : result.getTotalAmount().getCurrency());
+        return json.append('}').toString();
+    }
+
+    static String toJson(final long recipientPK, final long version, final String error) {
+        final StringBuilder json = new StringBuilder(160);
+        json.append("{\"recipient\":").append(recipientPK).append(",\"version\":").append(version)
+                .append(",\"error\":");
+        appendString(json, error);
+        return json.append('}').toString();
+    }
+
+    private static void appendAmount(final StringBuilder json, final String name, final CurrencyAmount amount) {
+        json.append(",\"").append(name).append("\":");
+        // as string, so clients do not round the amounts to doubles
+        appendString(json, amount == null ? null : amount.getAmount().toPlainString());
+    }
+
+    private static void appendString(final StringBuilder json, final String value) {
+        if (value == null) {
+            json.append("null");
+            return;
+        }
+        json.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            final char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                json.append('\\').append(c);
+            }
+            else if (c < 0x20) {
+                json.append(String.format("\\u%04x", (int) c));
+            }
+            else {
+                json.append(c);
+            }
+        }
+        json.append('"');
+    }
+
+    // *
+    // * HTTP
+    // *************************************************************************
+
+    /**
+     * @return the number of requests for totals
+     */
+    public long getRequestCount() {
+        return requestCount.sum();
+    }
+
+    /**
+     * @return the number of calculations that have been run
+     */
+    public long getCalculationCount() {
+        return calculationCount.sum();
+    }
+
+    /**
+     * @return the number of requests answered from the cache
+     */
+    public long getCacheHitCount() {
+        return cacheHitCount.sum();
+    }
+
+    /**
+     * @return the number of requests that joined a queued or running calculation
+     */
+    public long getCoalescedCount() {
+        return coalescedCount.sum();
+    }
+
+    /**
+     * @return the number of requests rejected because the worker pool was full
+     */
+    public long getRejectedCount() {
+        return rejectedCount.sum();
+    }
+
+    /**
+     * @return the version of the bookings
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * Stop serving and shut down the worker pool, queued calculations are still completed
+     */
+    @Override
+    public synchronized void close() {
+        if (server != null) {
+            server.stop(0);
+        }
+        workers.shutdown();
+    }
+
+    /**
+     * Serve the bookings of a CSV file, see {@link BookingCsv}.
+     * <p>
+     * Usage: {@code <bookings.csv> [port] [threads]}, by default port 8080 and one thread per processor
+     */
+    public static void main(final String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("Usage: <bookings.csv> [port] [threads]");
+            System.exit(2);
+        }
+        final VersionedBookingList bookings = new VersionedBookingList(BookingCsv.read(Paths.get(args[0])));
+        final int port = args.length > 1 ? Integer.parseInt(args[1]) : 8080;
+        final int threads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+        final TotalsServer server = new TotalsServer(bookings, threads, 16 * threads)
+                .start(new InetSocketAddress(port));
+        System.out.println("Serving " + bookings.size() + " bookings at http://localhost:"
+                + server.getAddress().getPort() + PATH + "?recipient=<PK>");
+    }
+
+    /**
+     * Creates named daemon threads, so a forgotten {@link #close()} does not keep the JVM alive
+     */
+    private static final class WorkerThreadFactory implements ThreadFactory {
+
+        private static final AtomicInteger POOL_NUMBER = new AtomicInteger();
+
+        private final int poolNumber = POOL_NUMBER.incrementAndGet();
+
+        private final AtomicInteger threadNumber = new AtomicInteger();
+
+        @Override
+        public Thread newThread(final Runnable runnable) {
+            final Thread thread = new Thread(
+                    runnable, "totals-server-" + poolNumber + "-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
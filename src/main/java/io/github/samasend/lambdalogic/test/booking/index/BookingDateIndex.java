@@ -0,0 +1,437 @@
+package io.github.samasend.lambdalogic.test.booking.index;
+
+import com.lambdalogic.test.booking.exception.InconsistentCurrenciesException;
+import com.lambdalogic.test.booking.model.Booking;
+import com.lambdalogic.test.booking.model.CurrencyAmount;
+import io.github.samasend.lambdalogic.test.booking.BookingAmounts;
+import io.github.samasend.lambdalogic.test.booking.BookingsCurrencyAmountsEvaluator;
+import io.github.samasend.lambdalogic.test.booking.EvaluationResult;
+import io.github.samasend.lambdalogic.test.booking.ScaledAmounts;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+import static io.github.samasend.lambdalogic.test.booking.ScaledAmounts.NOT_SCALED;
+
+/**
+ * Answers totals of the bookings of an invoice recipient within a range of booking dates in {@code O(log n)}.
+ * <p>
+ * The bookings of every invoice recipient are ordered by their booking date. Fenwick trees (binary indexed trees)
+ * over this order hold the unrounded total amounts gross and the paid amounts as fixed-point longs with a scale of
+ * {@value #SCALE}, the open amounts are their difference. The totals of a range of dates are the difference of two
+ * prefix sums, and the change of a single booking, e.g. a payment, updates {@code O(log n)} nodes.
+ * <p>
+ * The results are the same as the ones of {@link BookingsCurrencyAmountsEvaluator} for the bookings of the range:
+ * bookings whose amount and paid amount are both 0 are ignored and different currencies of the relevant bookings
+ * lead to an {@link InconsistentCurrenciesException}. For that purpose the relevant bookings of every currency are
+ * counted by a Fenwick tree, too. Bookings without invoice recipient are not indexed, bookings without booking date
+ * are ordered before all others.
+ * <p>
+ * The set of bookings is fixed when the index is built, but the amounts of a booking can change, see
+ * {@link #update(Booking)}. Amounts must fit into the fixed-point longs, that is at most 2 decimal places for amounts
+ * and tax rates, and totals below 9,223,372 million.
+ * <p>
+ * The index is not thread-safe.
+ */
+public class BookingDateIndex {
+
+    /**
+     * the scale of the fixed-point longs: 2 decimal places of the amounts plus 4 of the tax rate factor
+     */
+    public static final int SCALE = 6;
+
+    private static final Comparator<String> CURRENCY_ORDER = Comparator.nullsFirst(Comparator.naturalOrder());
+
+    /**
+     * A Fenwick tree of longs over positions 0 to size - 1
+     */
+    private static final class FenwickTree {
+
+        /**
+         * the nodes, node i (1-based) holds the sum of the positions i - (i & -i) to i - 1
+         */
+        private final long[] tree;
+
+        private FenwickTree(final long[] values) {
+            tree = new long[values.length + 1];
+            System.arraycopy(values, 0, tree, 1, values.length);
+            // build in O(n) by pushing every node into its parent
+            for (int i = 1; i < tree.length; i++) {
+                final int parent = i + (i & -i);
+                if (parent < tree.length) {
+                    tree[parent] = Math.addExact(tree[parent], tree[i]);
+                }
+            }
+        }
+
+        private void add(final int position, final long delta) {
+            for (int i = position + 1; i < tree.length; i += i & -i) {
+                tree[i] += delta;
+            }
+        }
+
+        /**
+         * Check that {@link #add(int, long)} does not overflow any node, without changing a node
+         *
+         * @throws ArithmeticException if a node would overflow
+         */
+        private void checkAdd(final int position, final long delta) {
+            for (int i = position + 1; i < tree.length; i += i & -i) {
+                Math.addExact(tree[i], delta);
+            }
+        }
+
+        /**
+         * @return the sum of the positions 0 to end - 1
+         */
+        private long prefixSum(final int end) {
+            long sum = 0;
+            for (int i = end; i > 0; i -= i & -i) {
+                sum += tree[i];
+            }
+            return sum;
+        }
+
+        private long rangeSum(final int start, final int end) {
+            return prefixSum(end) - prefixSum(start);
+        }
+    }
+
+    /**
+     * The bookings of one invoice recipient ordered by booking date
+     */
+    private static final class RecipientIndex {
+
+        private final long[] dates;
+
+        /**
+         * the values of every position, needed to compute the deltas of an update
+         */
+        private final long[] totalAmounts;
+
+        private final long[] paidAmounts;
+
+        /**
+         * the index of the currency in {@link #currencies} of every relevant position, -1 if it is not relevant
+         */
+        private final int[] currencyIndexes;
+
+        private final FenwickTree totalAmountTree;
+
+        private final FenwickTree paidAmountTree;
+
+        private final List<String> currencies = new ArrayList<>(1);
+
+        /**
+         * the number of relevant bookings of each currency of {@link #currencies}
+         */
+        private final List<FenwickTree> currencyCountTrees = new ArrayList<>(1);
+
+        /**
+         * whether the trees have been built, afterwards new currencies get their own tree right away
+         */
+        private boolean built = false;
+
+        private RecipientIndex(final List<Booking> bookings, final Map<Booking, Position> positions,
+                               final AmountReader reader) {
+            bookings.sort(Comparator.comparingLong(BookingDateIndex::dateOf));
+
+            final int size = bookings.size();
+            dates = new long[size];
+            totalAmounts = new long[size];
+            paidAmounts = new long[size];
+            currencyIndexes = new int[size];
+            for (int i = 0; i < size; i++) {
+                final Booking booking = bookings.get(i);
+                dates[i] = dateOf(booking);
+                reader.read(booking);
+                totalAmounts[i] = reader.totalAmount;
+                paidAmounts[i] = reader.paidAmount;
+                currencyIndexes[i] = reader.isRelevant() ? currencyIndex(BookingAmounts.getCurrency(booking)) : -1;
+                positions.put(booking, new Position(this, i));
+            }
+
+            totalAmountTree = new FenwickTree(totalAmounts);
+            paidAmountTree = new FenwickTree(paidAmounts);
+            for (int c = 0; c < currencies.size(); c++) {
+                final long[] counts = new long[size];
+                for (int i = 0; i < size; i++) {
+                    counts[i] = currencyIndexes[i] == c ? 1 : 0;
+                }
+                currencyCountTrees.add(new FenwickTree(counts));
+            }
+            built = true;
+        }
+
+        private int currencyIndex(final String currency) {
+            final int index = currencies.indexOf(currency);
+            if (index >= 0) {
+                return index;
+            }
+            currencies.add(currency);
+            if (built) {
+                currencyCountTrees.add(new FenwickTree(new long[dates.length]));
+            }
+            return currencies.size() - 1;
+        }
+
+        /**
+         * @return the first position whose date is not before the given date
+         */
+        private int positionOf(final long date) {
+            int low = 0;
+            int high = dates.length;
+            while (low < high) {
+                final int middle = (low + high) >>> 1;
+                if (dates[middle] < date) {
+                    low = middle + 1;
+                }
+                else {
+                    high = middle;
+                }
+            }
+            return low;
+        }
+
+        private void update(final int position, final AmountReader reader, final String currency) {
+            // check every node on the update paths before changing anything, so an overflow leaves the index unchanged
+            final long totalDelta;
+            final long paidDelta;
+            try {
+                totalDelta = Math.subtractExact(reader.totalAmount, totalAmounts[position]);
+                paidDelta = Math.subtractExact(reader.paidAmount, paidAmounts[position]);
+                totalAmountTree.checkAdd(position, totalDelta);
+                paidAmountTree.checkAdd(position, paidDelta);
+            }
+            catch (ArithmeticException e) {
+                throw new IllegalArgumentException("totals do not fit into fixed-point longs", e);
+            }
+            final int currencyIndex = reader.isRelevant() ? currencyIndex(currency) : -1;
+
+            totalAmountTree.add(position, totalDelta);
+            paidAmountTree.add(position, paidDelta);
+            totalAmounts[position] = reader.totalAmount;
+            paidAmounts[position] = reader.paidAmount;
+
+            if (currencyIndexes[position] != currencyIndex) {
+                if (currencyIndexes[position] >= 0) {
+                    currencyCountTrees.get(currencyIndexes[position]).add(position, -1);
+                }
+                if (currencyIndex >= 0) {
+                    currencyCountTrees.get(currencyIndex).add(position, 1);
+                }
+                currencyIndexes[position] = currencyIndex;
+            }
+        }
+
+        private EvaluationResult getTotals(final int start, final int end) throws InconsistentCurrenciesException {
+            final SortedSet<String> rangeCurrencies = new TreeSet<>(CURRENCY_ORDER);
+            for (int c = 0; c < currencies.size(); c++) {
+                if (currencyCountTrees.get(c).rangeSum(start, end) > 0) {
+                    rangeCurrencies.add(currencies.get(c));
+                }
+            }
+            if (rangeCurrencies.isEmpty()) {
+                return EvaluationResult.EMPTY;
+            }
+            if (rangeCurrencies.size() > 1) {
+                throw new InconsistentCurrenciesException(rangeCurrencies.first(), rangeCurrencies.last());
+            }
+
+            final String currency = rangeCurrencies.first();
+            final BigDecimal total = ScaledAmounts.toBigDecimal(totalAmountTree.rangeSum(start, end), SCALE);
+            final BigDecimal paid = ScaledAmounts.toBigDecimal(paidAmountTree.rangeSum(start, end), SCALE);
+            return new EvaluationResult(
+                    new CurrencyAmount(total, currency),
+                    new CurrencyAmount(paid, currency),
+                    new CurrencyAmount(total.subtract(paid), currency));
+        }
+    }
+
+    /**
+     * The position of a booking in the index of its invoice recipient
+     */
+    private static final class Position {
+
+        private final RecipientIndex recipientIndex;
+
+        private final int position;
+
+        private Position(final RecipientIndex recipientIndex, final int position) {
+            this.recipientIndex = recipientIndex;
+            this.position = position;
+        }
+    }
+
+    /**
+     * Reads the amounts of a booking as fixed-point longs
+     */
+    private static final class AmountReader extends BookingAmounts.Reader {
+
+        private long totalAmount;
+
+        private long paidAmount;
+
+        @Override
+        protected void reset() {
+            totalAmount = 0;
+            paidAmount = 0;
+        }
+
+        @Override
+        protected void addGrossAmount(final BigDecimal amount) {
+            addTotalAmount(ScaledAmounts.toScaled(amount, SCALE), amount);
+        }
+
+        @Override
+        protected void addNetAmount(final BigDecimal amount, final BigDecimal taxRateDiv100Add1) {
+            addTotalAmount(ScaledAmounts.multiply(
+                    ScaledAmounts.toScaled(amount, 2),
+                    ScaledAmounts.toScaled(taxRateDiv100Add1, SCALE - 2)), amount);
+        }
+
+        private void addTotalAmount(final long scaled, final BigDecimal amount) {
+            try {
+                totalAmount = Math.addExact(totalAmount, checkScaled(scaled, amount));
+            }
+            catch (ArithmeticException e) {
+                throw new IllegalArgumentException("total amount does not fit into a fixed-point long", e);
+            }
+        }
+
+        @Override
+        protected void setPaidAmount(final BigDecimal paidAmount) {
+            this.paidAmount = checkScaled(ScaledAmounts.toScaled(paidAmount, SCALE), paidAmount);
+        }
+
+        private static long checkScaled(final long scaled, final BigDecimal amount) {
+            if (scaled == NOT_SCALED) {
+                throw new IllegalArgumentException("amount does not fit into a fixed-point long: " + amount);
+            }
+            return scaled;
+        }
+    }
+
+    private final Map<Long, RecipientIndex> recipientIndexes = new HashMap<>();
+
+    /**
+     * the positions of the bookings, by identity because bookings do not implement equals
+     */
+    private final Map<Booking, Position> positions = new IdentityHashMap<>();
+
+    private final AmountReader reader = new AmountReader();
+
+    /**
+     * reads the paid amount of a booking without creating a missing one
+     */
+    private final BookingAmounts.DecimalReader paidAmountReader = new BookingAmounts.DecimalReader();
+
+    /**
+     * Build the index of a set of bookings in {@code O(n log n)}
+     *
+     * @param bookings the bookings
+     * @throws IllegalArgumentException if an amount does not fit into a fixed-point long
+     */
+    public BookingDateIndex(final List<Booking> bookings) {
+        final Map<Long, List<Booking>> bookingsPerRecipient = new HashMap<>();
+        for (final Booking booking : bookings) {
+            if (booking.getInvoiceRecipientPK() != null) {
+                bookingsPerRecipient.computeIfAbsent(booking.getInvoiceRecipientPK(), pk -> new ArrayList<>()).add(booking);
+            }
+        }
+        for (final Map.Entry<Long, List<Booking>> entry : bookingsPerRecipient.entrySet()) {
+            recipientIndexes.put(entry.getKey(), new RecipientIndex(entry.getValue(), positions, reader));
+        }
+    }
+
+    /**
+     * Get the totals of the bookings of an invoice recipient within a range of booking dates
+     *
+     * @param recipientPK the PK of the invoice recipient
+     * @param from        the first booking date of the range, null for no lower bound
+     * @param to          the booking date after the range (exclusive), null for no upper bound
+     * @return the totals, {@link EvaluationResult#EMPTY} if there are no relevant bookings in the range
+     * @throws InconsistentCurrenciesException if the relevant bookings in the range have different currencies
+     */
+    public EvaluationResult getTotals(final long recipientPK, final Date from, final Date to)
+            throws InconsistentCurrenciesException {
+        final RecipientIndex recipientIndex = recipientIndexes.get(recipientPK);
+        if (recipientIndex == null) {
+            return EvaluationResult.EMPTY;
+        }
+
+        final int start = from == null ? 0 : recipientIndex.positionOf(from.getTime());
+        final int end = to == null ? recipientIndex.dates.length : recipientIndex.positionOf(to.getTime());
+        if (start >= end) {
+            return EvaluationResult.EMPTY;
+        }
+        return recipientIndex.getTotals(start, end);
+    }
+
+    /**
+     * Get the totals of the bookings of an invoice recipient up to and including a booking date,
+     * e.g. the open amount of a statement as of that date
+     *
+     * @param recipientPK the PK of the invoice recipient
+     * @param date        the last booking date
+     * @return the totals, {@link EvaluationResult#EMPTY} if there are no relevant bookings until that date
+     * @throws InconsistentCurrenciesException if the relevant bookings have different currencies
+     */
+    public EvaluationResult getTotalsAsOf(final long recipientPK, final Date date)
+            throws InconsistentCurrenciesException {
+        Objects.requireNonNull(date, "date");
+        return getTotals(recipientPK, null, date.getTime() == Long.MAX_VALUE ? null : new Date(date.getTime() + 1));
+    }
+
+    /**
+     * Read the amounts of a booking again after they have been changed, e.g. after a payment has been recorded.
+     * The invoice recipient and the booking date of the booking must not have been changed.
+     *
+     * @param booking a booking that has been indexed
+     * @throws IllegalArgumentException if the booking has not been indexed or its amounts do not fit
+     */
+    public void update(final Booking booking) {
+        final Position position = positions.get(booking);
+        if (position == null) {
+            throw new IllegalArgumentException("The booking has not been indexed.");
+        }
+        reader.read(booking);
+        position.recipientIndex.update(position.position, reader, BookingAmounts.getCurrency(booking));
+    }
+
+    /**
+     * Set the paid amount of a booking and update the index
+     *
+     * @param booking    a booking that has been indexed
+     * @param paidAmount the new paid amount
+     * @see #update(Booking)
+     */
+    public void recordPayment(final Booking booking, final BigDecimal paidAmount) {
+        if (!positions.containsKey(booking)) {
+            throw new IllegalArgumentException("The booking has not been indexed.");
+        }
+        paidAmountReader.read(booking);
+        final BigDecimal previousPaidAmount = paidAmountReader.getPaidAmount();
+        booking.setPaidAmount(paidAmount);
+        try {
+            update(booking);
+        }
+        catch (RuntimeException e) {
+            booking.setPaidAmount(previousPaidAmount);
+            throw e;
+        }
+    }
+
+    private static long dateOf(final Booking booking) {
+        return booking.getBookingDate() == null ? Long.MIN_VALUE : booking.getBookingDate().getTime();
+    }
+}
@@ -0,0 +1,148 @@
+package io.github.samasend.lambdalogic.test.booking.intern;
+
+import com.lambdalogic.test.booking.model.Booking;
+import com.lambdalogic.test.booking.model.Price;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Shares equal {@link Price}s between {@link Booking}s while they are loaded, so that every distinct combination of
+ * amount, currency, tax rate and gross flag is kept only once.
+ * <p>
+ * The shared prices are frozen, see {@link Price#freeze()}, so they are never changed for one booking only. The price
+ * getters of a booking, e.g. {@link Booking#getMainPrice()}, replace a frozen price by a mutable copy before they
+ * return it, so the bookings can be changed like any other. {@link Booking#getPrices()} and
+ * {@link Booking#accumulateInto(com.lambdalogic.test.booking.model.AmountAccumulator)} read the shared prices.
+ * <p>
+ * The canonical prices are kept in a concurrent map, which is bounded: when it has reached its maximum size, new
+ * prices are still frozen, but not shared anymore. Interning is thread-safe, so parallel loaders can share one
+ * interner.
+ */
+public class PriceInterner {
+
+    /**
+     * the default maximum number of distinct prices
+     */
+    public static final int DEFAULT_MAX_SIZE = 65_536;
+
+    /**
+     * the canonical prices, frozen, so their hash codes never change
+     */
+    private final ConcurrentMap<Price, Price> prices = new ConcurrentHashMap<>();
+
+    private final int maxSize;
+
+    private final LongAdder hitCount = new LongAdder();
+
+    private final LongAdder missCount = new LongAdder();
+
+    /**
+     * Create an interner for up to {@link #DEFAULT_MAX_SIZE} distinct prices
+     */
+    public PriceInterner() {
+        this(DEFAULT_MAX_SIZE);
+    }
+
+    /**
+     * @param maxSize the maximum number of distinct prices that are shared
+     */
+    public PriceInterner(final int maxSize) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("Parameter 'maxSize' must be positive.");
+        }
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Get the shared frozen price equal to a price
+     *
+     * @param price the price, it is not changed
+     * @return the shared price, a new frozen copy if there is no room for another shared price, null for null
+     */
+    public Price intern(final Price price) {
+        if (price == null) {
+            return null;
+        }
+
+        final Price canonical = prices.get(price);
+        if (canonical != null) {
+            hitCount.increment();
+            return canonical;
+        }
+        missCount.increment();
+
+        final Price copy = new Price();
+        copy.copyFrom(price);
+        copy.freeze();
+        if (prices.size() >= maxSize) {
+            return copy;
+        }
+        final Price previous = prices.putIfAbsent(copy, copy);
+        return previous == null ? copy : previous;
+    }
+
+    /**
+     * Replace the prices of a booking by the shared ones, without creating missing prices
+     *
+     * @param booking the booking to change
+     * @return the booking
+     */
+    public Booking intern(final Booking booking) {
+        final Price[] bookingPrices = booking.getPrices();
+        booking.setMainPrice(intern(bookingPrices[0]));
+        booking.setAdd1Price(intern(bookingPrices[1]));
+        booking.setAdd2Price(intern(bookingPrices[2]));
+        booking.setCancelFeePrice(intern(bookingPrices[3]));
+        return booking;
+    }
+
+    /**
+     * Replace all frozen prices of a booking by mutable copies at once, e.g. before the booking is handed to code that
+     * keeps references to its prices
+     *
+     * @param booking the booking to change
+     * @return the booking
+     */
+    public static Booking detach(final Booking booking) {
+        final Price[] bookingPrices = booking.getPrices();
+        booking.setMainPrice(detach(bookingPrices[0]));
+        booking.setAdd1Price(detach(bookingPrices[1]));
+        booking.setAdd2Price(detach(bookingPrices[2]));
+        booking.setCancelFeePrice(detach(bookingPrices[3]));
+        return booking;
+    }
+
+    private static Price detach(final Price price) {
+        return price == null ? null : price.toMutable();
+    }
+
+    /**
+     * @return the number of shared prices
+     */
+    public int size() {
+        return prices.size();
+    }
+
+    /**
+     * @return the number of prices that have been replaced by an existing shared price
+     */
+    public long getHitCount() {
+        return hitCount.sum();
+    }
+
+    /**
+     * @return the number of prices that had no shared price yet
+     */
+    public long getMissCount() {
+        return missCount.sum();
+    }
+
+    /**
+     * Forget all shared prices, the prices of the bookings interned so far stay frozen
+     */
+    public void clear() {
+        prices.clear();
+    }
+}
@@ -0,0 +1,262 @@
+package io.github.samasend.lambdalogic.test.booking.invoice;
+
+import com.lambdalogic.test.booking.exception.InconsistentCurrenciesException;
+import com.lambdalogic.test.booking.model.Booking;
+import com.lambdalogic.test.booking.model.Price;
+import io.github.samasend.lambdalogic.test.booking.BookingsCurrencyAmountsEvaluator;
+import io.github.samasend.lambdalogic.test.booking.EvaluationResult;
+import io.github.samasend.lambdalogic.test.booking.TotalsAccumulator;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.nio.channels.Channels;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.stream.Stream;
+
+/**
+ * Renders the invoices of a batch run: one invoice per invoice recipient with one line per price of its
+ * {@link Booking}s and the totals, streamed to a {@link Writer} in the order of the recipients.
+ * <p>
+ * The bookings must be ordered by the PK of their invoice recipient, e.g. by the query that reads them. Only the
+ * bookings of one recipient are kept while they are read, so the memory needed does not depend on the number of
+ * recipients. Bookings without invoice recipient are skipped.
+ * <p>
+ * Each booking is read once: its amounts are added to a {@link TotalsAccumulator} and, if it is relevant, its
+ * prices are rendered as lines. Bookings whose amount and paid amount are both 0 are left out, like in
+ * {@link BookingsCurrencyAmountsEvaluator}, so the totals are the ones of the evaluator. The gross amount of a line is
+ * rounded for display, the totals are not the sum of the lines but rounded once.
+ * <p>
+ * With an {@link Executor} the invoices of up to {@code maxInFlight} recipients are rendered in parallel, and written
+ * in the order of the recipients as soon as they are done. To write to a channel, wrap it with
+ * {@link Channels#newWriter(java.nio.channels.WritableByteChannel, java.nio.charset.Charset)}.
+ * <p>
+ * The output consists of lines of semicolon separated values, the first column is the type of the line:
+ * <pre>
+ * invoice;recipientPK
+ * line;bookingID;price;amount;currency;taxRate;gross|net;amountGross
+ * paid;bookingID;paidAmount
+ * total;totalAmount;totalPaidAmount;totalOpenAmount;currency
+ * end
+ * </pre>
+ * The price is one of {@code main}, {@code add1}, {@code add2} or {@code cancelFee}. Instead of the total, an invoice
+ * whose relevant bookings have different currencies has a single line {@code error;message} and no other lines.
+ * <p>
+ * A pipeline can run several batches one after the other, but not concurrently.
+ */
+public class InvoicePipeline {
+
+    /**
+     * the names of the prices in the order of {@link Booking#getPrices()}
+     */
+    private static final String[] PRICE_NAMES = {"main", "add1", "add2", "cancelFee"};
+
+    private static final char SEPARATOR = ';';
+
+    /**
+     * renders the invoices in parallel, null to render them in the calling thread
+     */
+    private final Executor executor;
+
+    private final int maxInFlight;
+
+    /**
+     * Create a pipeline that renders the invoices one after the other in the calling thread
+     */
+    public InvoicePipeline() {
+        this.executor = null;
+        this.maxInFlight = 1;
+    }
+
+    /**
+     * Create a pipeline that renders invoices in parallel
+     *
+     * @param executor    runs the rendering of the invoices
+     * @param maxInFlight the maximum number of recipients read but not written yet, this bounds the memory needed
+     */
+    public InvoicePipeline(final Executor executor, final int maxInFlight) {
+        if (executor == null) {
+            throw new IllegalArgumentException("Parameter 'executor' must not be null.");
+        }
+        if (maxInFlight < 1) {
+            throw new IllegalArgumentException("Parameter 'maxInFlight' must be positive.");
+        }
+        this.executor = executor;
+        this.maxInFlight = maxInFlight;
+    }
+
+    /**
+     * Render the invoices of a stream of bookings
+     *
+     * @param bookings the bookings, ordered by invoice recipient
+     * @param writer   receives the invoices, it is not closed
+     * @return the number of invoices written
+     * @throws IOException              if writing fails
+     * @throws IllegalArgumentException if the bookings are not ordered by invoice recipient
+     * @see #run(Iterator, Writer)
+     */
+    public long run(final Stream<Booking> bookings, final Writer writer) throws IOException {
+        return run(bookings.iterator(), writer);
+    }
+
+    /**
+     * Render the invoices of the bookings of an iterator
+     *
+     * @param bookings the bookings, ordered by invoice recipient
+     * @param writer   receives the invoices, it is not closed
+     * @return the number of invoices written
+     * @throws IOException              if writing fails
+     * @throws IllegalArgumentException if the bookings are not ordered by invoice recipient, the invoices of the
+     *                                  recipients before have been written in that case
+     */
+    public long run(final Iterator<Booking> bookings, final Writer writer) throws IOException {
+        final Deque<CompletableFuture<StringBuilder>> inFlight = new ArrayDeque<>(maxInFlight);
+        long invoices = 0;
+        try {
+            Long recipientPK = null;
+            List<Booking> recipientBookings = new ArrayList<>();
+            while (bookings.hasNext()) {
+                final Booking booking = bookings.next();
+                final Long bookingRecipientPK = booking.getInvoiceRecipientPK();
+                if (bookingRecipientPK == null) {
+                    continue;
+                }
+
+                if (recipientPK != null && !recipientPK.equals(bookingRecipientPK)) {
+                    if (bookingRecipientPK < recipientPK) {
+                        throw new IllegalArgumentException("The bookings are not ordered by invoice recipient: "
+                                + bookingRecipientPK + " after " + recipientPK);
+                    }
+                    submit(recipientPK, recipientBookings, inFlight, writer);
+                    invoices++;
+                    recipientBookings = new ArrayList<>();
+                }
+                recipientPK = bookingRecipientPK;
+                recipientBookings.add(booking);
+            }
+
+            if (recipientPK != null) {
+                submit(recipientPK, recipientBookings, inFlight, writer);
+                invoices++;
+            }
+            while (!inFlight.isEmpty()) {
+                write(inFlight.removeFirst(), writer);
+            }
+            return invoices;
+        }
+        finally {
+            // after an error the invoices still in flight are not needed anymore
+            for (final CompletableFuture<StringBuilder> invoice : inFlight) {
+                invoice.cancel(false);
+            }
+        }
+    }
+
+    /**
+     * Render the invoice of a recipient, or hand it to the {@link #executor} and write the oldest invoices in flight
+     * until there is room for it
+     */
+    private void submit(final long recipientPK, final List<Booking> recipientBookings,
+                        final Deque<CompletableFuture<StringBuilder>> inFlight, final Writer writer) throws IOException {
+        if (executor == null) {
+            writer.append(render(recipientPK, recipientBookings));
+            return;
+        }
+
+        while (inFlight.size() >= maxInFlight) {
+            write(inFlight.removeFirst(), writer);
+        }
+        inFlight.addLast(CompletableFuture.supplyAsync(() -> render(recipientPK, recipientBookings), executor));
+    }
+
+    private static void write(final CompletableFuture<StringBuilder> invoice, final Writer writer) throws IOException {
+        final StringBuilder rendered;
+        try {
+            rendered = invoice.join();
+        }
+        catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+        writer.append(rendered);
+    }
+
+    /**
+     * Render the invoice of a recipient
+     *
+     * @param recipientPK the PK of the invoice recipient
+     * @param bookings    the bookings of the recipient
+     * @return the lines of the invoice
+     */
+    static StringBuilder render(final long recipientPK, final List<Booking> bookings) {
+        final StringBuilder invoice = new StringBuilder(128 + 64 * bookings.size());
+        invoice.append("invoice").append(SEPARATOR).append(recipientPK).append('\n');
+        final int header = invoice.length();
+
+        final TotalsAccumulator accumulator = new TotalsAccumulator();
+        try {
+            for (final Booking booking : bookings) {
+                if (accumulator.add(booking)) {
+                    appendLines(invoice, booking, accumulator.getLastPaidAmount());
+                }
+            }
+        }
+        catch (InconsistentCurrenciesException e) {
+            invoice.setLength(header);
+            invoice.append("error").append(SEPARATOR).append(e.getMessage()).append('\n');
+            return invoice.append("end\n");
+        }
+
+        final EvaluationResult totals = accumulator.toResult();
+        if (!totals.isEmpty()) {
+            invoice.append("total").append(SEPARATOR)
+                    .append(totals.getTotalAmount().getAmount().toPlainString()).append(SEPARATOR)
+                    .append(totals.getTotalPaidAmount().getAmount().toPlainString()).append(SEPARATOR)
+                    .append(totals.getTotalOpenAmount().getAmount().toPlainString()).append(SEPARATOR)
+                    .append(toString(accumulator.getCurrency())).append('\n');
+        }
+        return invoice.append("end\n");
+    }
+
+    /**
+     * Append a line for every price of a booking and one for its paid amount, without creating missing prices
+     *
+     * @param paidAmount the paid amount of the booking as read by the {@link TotalsAccumulator}, may be null
+     */
+    private static void appendLines(final StringBuilder invoice, final Booking booking, final BigDecimal paidAmount) {
+        final Price[] prices = booking.getPrices();
+        for (int i = 0; i < prices.length; i++) {
+            final Price price = prices[i];
+            if (price == null || price.getAmount() == null) {
+                continue;
+            }
+            invoice.append("line").append(SEPARATOR)
+                    .append(toString(booking.getID())).append(SEPARATOR)
+                    .append(PRICE_NAMES[i]).append(SEPARATOR)
+                    .append(price.getAmount().toPlainString()).append(SEPARATOR)
+                    .append(toString(price.getCurrency())).append(SEPARATOR)
+                    .append(price.getTaxRate().toPlainString()).append(SEPARATOR)
+                    .append(price.isGross() ? "gross" : "net").append(SEPARATOR)
+                    .append(price.getAmountGross().toPlainString()).append('\n');
+        }
+
+        if (paidAmount != null && paidAmount.signum() != 0) {
+            invoice.append("paid").append(SEPARATOR)
+                    .append(toString(booking.getID())).append(SEPARATOR)
+                    .append(paidAmount.toPlainString()).append('\n');
+        }
+    }
+
+    private static String toString(final Object value) {
+        return value == null ? "" : value.toString();
+    }
+}
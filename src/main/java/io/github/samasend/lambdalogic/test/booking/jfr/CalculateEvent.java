@@ -0,0 +1,23 @@
+package io.github.samasend.lambdalogic.test.booking.jfr;
+
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * One call of BookingsCurrencyAmountsEvaluator.calculate.
+ */
+@Name("io.github.samasend.lambdalogic.Calculate")
+@Label("Booking Evaluation")
+@Description("One call of BookingsCurrencyAmountsEvaluator.calculate")
+public class CalculateEvent extends EvaluatorEvent {
+
+    /**
+     * Create a new event and begin the time measurement if the event is enabled
+     *
+     * @return the new event
+     */
+    public static CalculateEvent beginCalculate() {
+        return (CalculateEvent) new CalculateEvent().start();
+    }
+}
@@ -0,0 +1,23 @@
+package io.github.samasend.lambdalogic.test.booking.jfr;
+
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Check that all relevant bookings have the same currency.
+ */
+@Name("io.github.samasend.lambdalogic.CurrencyCheck")
+@Label("Booking Currency Check")
+@Description("Check that all relevant bookings have the same currency")
+public class CurrencyCheckEvent extends EvaluatorEvent {
+
+    /**
+     * Create a new event and begin the time measurement if the event is enabled
+     *
+     * @return the new event
+     */
+    public static CurrencyCheckEvent beginCurrencyCheck() {
+        return (CurrencyCheckEvent) new CurrencyCheckEvent().start();
+    }
+}
@@ -0,0 +1,88 @@
+package io.github.samasend.lambdalogic.test.booking.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.StackTrace;
+
+/**
+ * Base class of the Flight Recorder events of the booking evaluator.
+ * <p>
+ * Every event carries the invoice recipient, the booking counts and the outcome of the measured code.
+ * Events are only started and committed if they are enabled in the running recording,
+ * so they cost (almost) nothing when recording is off.
+ */
+@Category({"LambdaLogic", "Booking Evaluator"})
+@StackTrace(false)
+public abstract class EvaluatorEvent extends Event {
+
+    /**
+     * outcome of a successful calculation with relevant bookings
+     */
+    public static final String SUCCESS = "success";
+
+    /**
+     * outcome of a calculation without relevant bookings
+     */
+    public static final String EMPTY = "empty";
+
+    /**
+     * outcome of a calculation that found bookings with different currencies
+     */
+    public static final String INCONSISTENT_CURRENCY = "inconsistent currency";
+
+    /**
+     * outcome of a calculation that failed with any other exception
+     */
+    public static final String ERROR = "error";
+
+    @Label("Invoice Recipient")
+    @Description("PK of the invoice recipient whose bookings are evaluated")
+    long invoiceRecipientID;
+
+    @Label("Bookings")
+    @Description("Number of bookings handled by this step")
+    int bookings;
+
+    @Label("Relevant Bookings")
+    @Description("Number of bookings of the invoice recipient with a non zero amount or paid amount")
+    int relevantBookings;
+
+    @Label("Outcome")
+    String outcome;
+
+    /**
+     * Begin the time measurement if the event is enabled
+     *
+     * @return {@code this}
+     */
+    protected EvaluatorEvent start() {
+        if (isEnabled()) {
+            begin();
+        }
+        return this;
+    }
+
+    /**
+     * Commit the event if it is enabled and passes the threshold of the recording
+     *
+     * @param invoiceRecipientID the PK of the invoice recipient
+     * @param bookings           the number of bookings handled by this step
+     * @param relevantBookings   the number of relevant bookings
+     * @param outcome            one of {@link #SUCCESS}, {@link #EMPTY}, {@link #INCONSISTENT_CURRENCY} or
+     *                           {@link #ERROR}
+     */
+    public void finish(long invoiceRecipientID, int bookings, int relevantBookings, String outcome) {
+        if (isEnabled()) {
+            end();
+            if (shouldCommit()) {
+                this.invoiceRecipientID = invoiceRecipientID;
+                this.bookings = bookings;
+                this.relevantBookings = relevantBookings;
+                this.outcome = outcome;
+                commit();
+            }
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package io.github.samasend.lambdalogic.test.booking.jfr;
+
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Selection of the relevant bookings of the invoice recipient.
+ */
+@Name("io.github.samasend.lambdalogic.Filter")
+@Label("Booking Filter")
+@Description("Selection of the relevant bookings of the invoice recipient")
+public class FilterEvent extends EvaluatorEvent {
+
+    /**
+     * Create a new event and begin the time measurement if the event is enabled
+     *
+     * @return the new event
+     */
+    public static FilterEvent beginFilter() {
+        return (FilterEvent) new FilterEvent().start();
+    }
+}
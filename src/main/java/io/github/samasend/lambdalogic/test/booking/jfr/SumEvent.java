@@ -0,0 +1,23 @@
+package io.github.samasend.lambdalogic.test.booking.jfr;
+
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Adding up the total, paid and open amount of the relevant bookings.
+ */
+@Name("io.github.samasend.lambdalogic.Sum")
+@Label("Booking Sum")
+@Description("Adding up the total, paid and open amount of the relevant bookings")
+public class SumEvent extends EvaluatorEvent {
+
+    /**
+     * Create a new event and begin the time measurement if the event is enabled
+     *
+     * @return the new event
+     */
+    public static SumEvent beginSum() {
+        return (SumEvent) new SumEvent().start();
+    }
+}
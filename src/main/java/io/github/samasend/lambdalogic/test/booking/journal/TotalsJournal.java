@@ -0,0 +1,760 @@
+package io.github.samasend.lambdalogic.test.booking.journal;
+
+import com.lambdalogic.test.booking.exception.InconsistentCurrenciesException;
+import com.lambdalogic.test.booking.model.Booking;
+import com.lambdalogic.test.booking.model.CurrencyAmount;
+import io.github.samasend.lambdalogic.test.booking.BookingAmounts;
+import io.github.samasend.lambdalogic.test.booking.BookingsCurrencyAmountsEvaluator;
+import io.github.samasend.lambdalogic.test.booking.EvaluationResult;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.CRC32;
+
+/**
+ * Keeps the running totals of all invoice recipients and persists them, so they survive a restart without
+ * evaluating every {@link Booking} again.
+ * <p>
+ * Every change is appended to a journal as a delta of one recipient's totals: the unrounded total amount gross,
+ * the paid amount and the number of relevant bookings. From time to time all totals are written to a compact
+ * snapshot and the journal starts again. {@link #open(Path)} rebuilds the totals from the latest snapshot and the
+ * journal written after it.
+ * <p>
+ * Appends are group-committed: the deltas of all threads that append at the same time are written in one batch
+ * and forced to the disk once. An append returns after its delta is durable.
+ * <p>
+ * The directory contains the files {@code snapshot-<n>.bin} and {@code journal-<n>.bin}, the journal holds the
+ * deltas after the snapshot with the same number. Every record is framed by its length and a CRC32 checksum,
+ * a record that was written partially when the process stopped is discarded when the journal is opened.
+ * <p>
+ * The totals are not rounded until they are read, see {@link #getTotals(long)}, so they are the same as the results
+ * of {@link BookingsCurrencyAmountsEvaluator} for the bookings that have been appended. The relevant bookings of every
+ * recipient are counted per currency, so removing the bookings of a second currency resolves a conflict again.
+ * <p>
+ * This class is thread-safe.
+ */
+public class TotalsJournal implements AutoCloseable {
+
+    /**
+     * the number of journal records after which a snapshot is written by default
+     */
+    public static final int DEFAULT_SNAPSHOT_INTERVAL = 100_000;
+
+    private static final int JOURNAL_MAGIC = 0x424A524E; // "BJRN"
+
+    private static final int SNAPSHOT_MAGIC = 0x42534E50; // "BSNP"
+
+    private static final int VERSION = 2;
+
+    private static final int HEADER_SIZE = 8;
+
+    /**
+     * records are at most this large, longer lengths are treated as corrupt
+     */
+    private static final int MAX_RECORD_SIZE = 1 << 20;
+
+    private static final Comparator<String> CURRENCY_ORDER = Comparator.nullsFirst(Comparator.naturalOrder());
+
+    private static final Pattern SNAPSHOT_FILE = Pattern.compile("snapshot-(\\d+)\\.bin");
+
+    /**
+     * The unrounded totals of one invoice recipient
+     */
+    private static final class RecipientTotals {
+
+        private BigDecimal totalAmount = BigDecimal.ZERO;
+
+        private BigDecimal paidAmount = BigDecimal.ZERO;
+
+        /**
+         * the number of relevant bookings per currency, the currency may be null
+         */
+        private final Map<String, Integer> relevantBookings = new HashMap<>(2);
+
+        private void apply(final String currency, final BigDecimal totalDelta, final BigDecimal paidDelta,
+                           final int countDelta) {
+            totalAmount = totalAmount.add(totalDelta);
+            paidAmount = paidAmount.add(paidDelta);
+            countRelevant(currency, countDelta);
+        }
+
+        private void countRelevant(final String currency, final int delta) {
+            if (delta == 0) {
+                return;
+            }
+            relevantBookings.compute(currency, (key, count) -> {
+                final int newCount = (count == null ? 0 : count) + delta;
+                return newCount == 0 ? null : newCount;
+            });
+        }
+    }
+
+    private final Path directory;
+
+    private final int snapshotInterval;
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private final Condition committed = lock.newCondition();
+
+    private final Map<Long, RecipientTotals> totals;
+
+    private long snapshotNumber;
+
+    private FileChannel journal;
+
+    private int journalRecords;
+
+    /**
+     * the encoded records that have not been written yet
+     */
+    private List<ByteBuffer> pending = new ArrayList<>();
+
+    /**
+     * the sequence number of the last appended record
+     */
+    private long appended = 0;
+
+    /**
+     * the sequence number of the last durable record
+     */
+    private long durable = 0;
+
+    /**
+     * whether a thread is writing a batch, it is the leader of the group commit
+     */
+    private boolean writing = false;
+
+    private IOException writeFailure;
+
+    private boolean closed = false;
+
+    private TotalsJournal(final Path directory, final int snapshotInterval, final long snapshotNumber,
+                          final Map<Long, RecipientTotals> totals, final FileChannel journal, final int journalRecords) {
+        this.directory = directory;
+        this.snapshotInterval = snapshotInterval;
+        this.snapshotNumber = snapshotNumber;
+        this.totals = totals;
+        this.journal = journal;
+        this.journalRecords = journalRecords;
+    }
+
+    /**
+     * Open a journal with the {@link #DEFAULT_SNAPSHOT_INTERVAL}
+     *
+     * @see #open(Path, int)
+     */
+    public static TotalsJournal open(final Path directory) throws IOException {
+        return open(directory, DEFAULT_SNAPSHOT_INTERVAL);
+    }
+
+    /**
+     * Open the journal of a directory and rebuild the totals from its latest snapshot and journal.
+     * An empty or missing directory starts an empty journal.
+     *
+     * @param directory        the directory of the journal files
+     * @param snapshotInterval the number of journal records after which a snapshot is written
+     * @return the journal
+     * @throws IOException if the files cannot be read or written or a snapshot is corrupt
+     */
+    public static TotalsJournal open(final Path directory, final int snapshotInterval) throws IOException {
+        if (snapshotInterval < 1) {
+            throw new IllegalArgumentException("snapshotInterval must be positive: " + snapshotInterval);
+        }
+        Files.createDirectories(directory);
+
+        long snapshotNumber = 0;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "snapshot-*.bin")) {
+            for (final Path file : files) {
+                final Matcher matcher = SNAPSHOT_FILE.matcher(file.getFileName().toString());
+                if (matcher.matches()) {
+                    snapshotNumber = Math.max(snapshotNumber, Long.parseLong(matcher.group(1)));
+                }
+            }
+        }
+
+        final Map<Long, RecipientTotals> totals = snapshotNumber == 0
+                ? new HashMap<>()
+                : readSnapshot(snapshotFile(directory, snapshotNumber));
+
+        final Path journalFile = journalFile(directory, snapshotNumber);
+        final FileChannel journal = FileChannel.open(journalFile,
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            final int journalRecords = replayJournal(journal, totals);
+            final TotalsJournal totalsJournal =
+                    new TotalsJournal(directory, snapshotInterval, snapshotNumber, totals, journal, journalRecords);
+            totalsJournal.deleteOldFiles();
+            return totalsJournal;
+        }
+        catch (IOException | RuntimeException e) {
+            journal.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Add a booking to the totals of its invoice recipient
+     *
+     * @param booking the booking
+     * @return {@code true} if the booking was relevant and has been appended,
+     * {@code false} if it has no invoice recipient or its amount and paid amount are both 0
+     * @throws IOException if the journal cannot be written
+     */
+    public boolean add(final Booking booking) throws IOException {
+        return appendBooking(booking, false);
+    }
+
+    /**
+     * Remove a booking that has been added before from the totals of its invoice recipient
+     *
+     * @param booking the booking with the values it had when it was added
+     * @return {@code true} if the booking was relevant and has been appended as negative delta
+     * @throws IOException if the journal cannot be written
+     */
+    public boolean remove(final Booking booking) throws IOException {
+        return appendBooking(booking, true);
+    }
+
+    private boolean appendBooking(final Booking booking, final boolean remove) throws IOException {
+        final Long recipientPK = booking.getInvoiceRecipientPK();
+        if (recipientPK == null) {
+            return false;
+        }
+
+        final BookingAmounts.DecimalReader delta = new BookingAmounts.DecimalReader();
+        if (!delta.read(booking)) {
+            return false;
+        }
+
+        final String currency = BookingAmounts.getCurrency(booking);
+        if (remove) {
+            append(recipientPK, currency, delta.getTotalAmountGross().negate(), delta.getPaidAmountOrZero().negate(), -1);
+        }
+        else {
+            append(recipientPK, currency, delta.getTotalAmountGross(), delta.getPaidAmountOrZero(), 1);
+        }
+        return true;
+    }
+
+    /**
+     * Append a delta of the totals of an invoice recipient and wait until it is durable
+     *
+     * @param recipientPK       the PK of the invoice recipient
+     * @param currency          the currency of the amounts
+     * @param totalAmountDelta  the change of the unrounded total amount gross
+     * @param paidAmountDelta   the change of the paid amount
+     * @param bookingCountDelta the change of the number of relevant bookings
+     * @throws IOException if the journal cannot be written, the totals have been changed anyway
+     */
+    public void append(final long recipientPK, final String currency, final BigDecimal totalAmountDelta,
+                       final BigDecimal paidAmountDelta, final int bookingCountDelta) throws IOException {
+        final ByteBuffer record = encode(recipientPK, currency, totalAmountDelta, paidAmountDelta, bookingCountDelta);
+
+        lock.lock();
+        try {
+            checkOpen();
+            totals.computeIfAbsent(recipientPK, pk -> new RecipientTotals())
+                    .apply(currency, totalAmountDelta, paidAmountDelta, bookingCountDelta);
+            pending.add(record);
+            final long sequence = ++appended;
+
+            commit(sequence);
+
+            if (journalRecords >= snapshotInterval) {
+                writeSnapshot();
+            }
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Wait until a record is durable. If no other thread is writing, the current thread writes all pending records.
+     * Must be called with the lock held.
+     */
+    private void commit(final long sequence) throws IOException {
+        while (durable < sequence) {
+            if (writeFailure != null) {
+                throw new IOException("The journal could not be written.", writeFailure);
+            }
+            if (writing) {
+                committed.awaitUninterruptibly();
+                continue;
+            }
+
+            // become the leader and write the batch without holding the lock, so others can add to the next batch
+            final List<ByteBuffer> batch = pending;
+            final long batchSequence = appended;
+            pending = new ArrayList<>();
+            writing = true;
+            lock.unlock();
+            try {
+                write(batch);
+            }
+            catch (IOException e) {
+                lock.lock();
+                writeFailure = e;
+                writing = false;
+                committed.signalAll();
+                throw e;
+            }
+            lock.lock();
+            journalRecords += batch.size();
+            durable = batchSequence;
+            writing = false;
+            committed.signalAll();
+        }
+    }
+
+    private void write(final List<ByteBuffer> batch) throws IOException {
+        final ByteBuffer[] buffers = batch.toArray(new ByteBuffer[0]);
+        long remaining = 0;
+        for (final ByteBuffer buffer : buffers) {
+            remaining += buffer.remaining();
+        }
+        while (remaining > 0) {
+            remaining -= journal.write(buffers);
+        }
+        journal.force(false);
+    }
+
+    /**
+     * Write a snapshot of all totals and start a new journal after it
+     *
+     * @throws IOException if the snapshot cannot be written
+     */
+    public void snapshot() throws IOException {
+        lock.lock();
+        try {
+            checkOpen();
+            writeSnapshot();
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Must be called with the lock held.
+     */
+    private void writeSnapshot() throws IOException {
+        // the snapshot must contain exactly the records of the journal it replaces: while the lock is released to
+        // write a batch, other threads apply their deltas to the totals, so their records must be written as well
+        while (writing || durable != appended) {
+            if (writing) {
+                committed.awaitUninterruptibly();
+            }
+            else {
+                commit(appended);
+            }
+        }
+
+        final long number = snapshotNumber + 1;
+        final Path file = snapshotFile(directory, number);
+        final Path temporaryFile = directory.resolve(file.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporaryFile,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            final List<ByteBuffer> buffers = new ArrayList<>(totals.size() + 1);
+            buffers.add(header(SNAPSHOT_MAGIC));
+            for (final Map.Entry<Long, RecipientTotals> entry : totals.entrySet()) {
+                buffers.add(encode(entry.getKey(), entry.getValue()));
+            }
+            buffers.add(frame(new byte[0]));
+            final ByteBuffer[] array = buffers.toArray(new ByteBuffer[0]);
+            long remaining = 0;
+            for (final ByteBuffer buffer : array) {
+                remaining += buffer.remaining();
+            }
+            while (remaining > 0) {
+                remaining -= channel.write(array);
+            }
+            channel.force(true);
+        }
+        Files.move(temporaryFile, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        forceDirectory(directory);
+
+        // from now on the snapshot is used, the old journal is not needed any more
+        final FileChannel newJournal = FileChannel.open(journalFile(directory, number),
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        writeHeader(newJournal);
+        forceDirectory(directory);
+        journal.close();
+        journal = newJournal;
+        journalRecords = 0;
+        snapshotNumber = number;
+        deleteOldFiles();
+    }
+
+    private void deleteOldFiles() throws IOException {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+            for (final Path file : files) {
+                final String name = file.getFileName().toString();
+                final boolean current = name.equals(snapshotFile(directory, snapshotNumber).getFileName().toString())
+                        || name.equals(journalFile(directory, snapshotNumber).getFileName().toString());
+                if (!current && (name.startsWith("snapshot-") || name.startsWith("journal-"))) {
+                    Files.delete(file);
+                }
+            }
+        }
+    }
+
+    /**
+     * Get the rounded totals of an invoice recipient
+     *
+     * @param recipientPK the PK of the invoice recipient
+     * @return the totals, {@link EvaluationResult#EMPTY} if the recipient has no relevant bookings
+     * @throws InconsistentCurrenciesException if the relevant bookings of the recipient have different currencies
+     */
+    public EvaluationResult getTotals(final long recipientPK) throws InconsistentCurrenciesException {
+        final String currency;
+        final BigDecimal totalAmount;
+        final BigDecimal paidAmount;
+        lock.lock();
+        try {
+            final RecipientTotals recipientTotals = totals.get(recipientPK);
+            if (recipientTotals == null) {
+                return EvaluationResult.EMPTY;
+            }
+            final Map<String, Integer> relevantBookings = recipientTotals.relevantBookings;
+            if (relevantBookings.isEmpty()) {
+                return EvaluationResult.EMPTY;
+            }
+            if (relevantBookings.size() > 1) {
+                final SortedSet<String> currencies = new TreeSet<>(CURRENCY_ORDER);
+                currencies.addAll(relevantBookings.keySet());
+                throw new InconsistentCurrenciesException(currencies.first(), currencies.last());
+            }
+            currency = relevantBookings.keySet().iterator().next();
+            totalAmount = recipientTotals.totalAmount;
+            paidAmount = recipientTotals.paidAmount;
+        }
+        finally {
+            lock.unlock();
+        }
+
+        return new EvaluationResult(
+                new CurrencyAmount(totalAmount, currency),
+                new CurrencyAmount(paidAmount, currency),
+                new CurrencyAmount(totalAmount.subtract(paidAmount), currency));
+    }
+
+    /**
+     * @return the PKs of all invoice recipients that have totals, in ascending order
+     */
+    public Set<Long> getRecipientPKs() {
+        lock.lock();
+        try {
+            return Collections.unmodifiableSet(new TreeSet<>(totals.keySet()));
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return the number of records in the current journal, after the latest snapshot
+     */
+    public int getJournalRecords() {
+        lock.lock();
+        try {
+            return journalRecords;
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    private void checkOpen() throws IOException {
+        if (closed) {
+            throw new IOException("The journal has been closed.");
+        }
+    }
+
+    /**
+     * Wait until the pending records are written and close the journal.
+     * The totals are not written to a snapshot, they are rebuilt from the journal when it is opened again.
+     */
+    @Override
+    public void close() throws IOException {
+        lock.lock();
+        try {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            try {
+                commit(appended);
+            }
+            finally {
+                journal.close();
+            }
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    // *************************************************************************
+    // * Files
+    // *
+
+    private static Path snapshotFile(final Path directory, final long number) {
+        return directory.resolve("snapshot-" + number + ".bin");
+    }
+
+    private static Path journalFile(final Path directory, final long number) {
+        return directory.resolve("journal-" + number + ".bin");
+    }
+
+    /**
+     * Make the renamed and created files of a directory durable. Not every platform can open a directory,
+     * there the file system is trusted.
+     */
+    private static void forceDirectory(final Path directory) throws IOException {
+        final FileChannel channel;
+        try {
+            channel = FileChannel.open(directory, StandardOpenOption.READ);
+        }
+        catch (IOException e) {
+            return;
+        }
+        try (channel) {
+            channel.force(true);
+        }
+    }
+
+    private static ByteBuffer header(final int magic) {
+        final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(magic).putInt(VERSION).flip();
+        return header;
+    }
+
+    private static void writeHeader(final FileChannel channel) throws IOException {
+        final ByteBuffer header = header(JOURNAL_MAGIC);
+        channel.position(0);
+        while (header.hasRemaining()) {
+            channel.write(header);
+        }
+        channel.force(false);
+    }
+
+    private static void readHeader(final DataInputStream input, final int magic) throws IOException {
+        if (input.readInt() != magic || input.readInt() != VERSION) {
+            throw new IOException("Not a journal file of version " + VERSION + ".");
+        }
+    }
+
+    private static Map<Long, RecipientTotals> readSnapshot(final Path file) throws IOException {
+        final Map<Long, RecipientTotals> totals = new HashMap<>();
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            readHeader(input, SNAPSHOT_MAGIC);
+            while (true) {
+                final byte[] payload = readRecord(input);
+                if (payload == null) {
+                    throw new IOException("The snapshot " + file + " is corrupt.");
+                }
+                if (payload.length == 0) {
+                    return totals;
+                }
+                final DataInputStream record = new DataInputStream(new ByteArrayInputStream(payload));
+                final long recipientPK = record.readLong();
+                final RecipientTotals recipientTotals = new RecipientTotals();
+                recipientTotals.totalAmount = readDecimal(record);
+                recipientTotals.paidAmount = readDecimal(record);
+                final int currencies = record.readInt();
+                for (int i = 0; i < currencies; i++) {
+                    final String currency = readString(record);
+                    recipientTotals.countRelevant(currency, record.readInt());
+                }
+                totals.put(recipientPK, recipientTotals);
+            }
+        }
+    }
+
+    /**
+     * Apply the records of a journal and truncate it after the last valid record
+     *
+     * @return the number of records
+     */
+    private static int replayJournal(final FileChannel channel, final Map<Long, RecipientTotals> totals)
+            throws IOException {
+        if (channel.size() < HEADER_SIZE) {
+            channel.truncate(0);
+            writeHeader(channel);
+            return 0;
+        }
+
+        channel.position(0);
+        // the stream is not closed, that would close the channel
+        final DataInputStream input = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel)));
+        readHeader(input, JOURNAL_MAGIC);
+
+        int records = 0;
+        long validEnd = HEADER_SIZE;
+        byte[] payload;
+        while ((payload = readRecord(input)) != null) {
+            final DataInputStream record = new DataInputStream(new ByteArrayInputStream(payload));
+            final long recipientPK = record.readLong();
+            final String currency = readString(record);
+            final BigDecimal totalDelta = readDecimal(record);
+            final BigDecimal paidDelta = readDecimal(record);
+            final int countDelta = record.readInt();
+            totals.computeIfAbsent(recipientPK, pk -> new RecipientTotals())
+                    .apply(currency, totalDelta, paidDelta, countDelta);
+
+            records++;
+            validEnd += 8 + payload.length;
+        }
+
+        // drop a record that has only been written partially
+        channel.truncate(validEnd);
+        channel.position(validEnd);
+        return records;
+    }
+
+    /**
+     * @return the payload of the next record, or null if there is none or it is incomplete or corrupt
+     */
+    private static byte[] readRecord(final DataInputStream input) throws IOException {
+        try {
+            final int length = input.readInt();
+            final int checksum = input.readInt();
+            if (length < 0 || length > MAX_RECORD_SIZE) {
+                return null;
+            }
+            final byte[] payload = new byte[length];
+            input.readFully(payload);
+            return crc(payload) == checksum ? payload : null;
+        }
+        catch (EOFException e) {
+            return null;
+        }
+    }
+
+    // *
+    // * Files
+    // *************************************************************************
+
+    // *************************************************************************
+    // * Encoding
+    // *
+
+    private static ByteBuffer encode(final long recipientPK, final String currency, final BigDecimal totalDelta,
+                                     final BigDecimal paidDelta, final int countDelta) {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        try (DataOutputStream output = new DataOutputStream(bytes)) {
+            output.writeLong(recipientPK);
+            writeString(output, currency);
+            writeDecimal(output, totalDelta);
+            writeDecimal(output, paidDelta);
+            output.writeInt(countDelta);
+        }
+        catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return frame(bytes.toByteArray());
+    }
+
+    private static ByteBuffer encode(final long recipientPK, final RecipientTotals recipientTotals) {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        try (DataOutputStream output = new DataOutputStream(bytes)) {
+            output.writeLong(recipientPK);
+            writeDecimal(output, recipientTotals.totalAmount);
+            writeDecimal(output, recipientTotals.paidAmount);
+            output.writeInt(recipientTotals.relevantBookings.size());
+            for (final Map.Entry<String, Integer> entry : recipientTotals.relevantBookings.entrySet()) {
+                writeString(output, entry.getKey());
+                output.writeInt(entry.getValue());
+            }
+        }
+        catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return frame(bytes.toByteArray());
+    }
+
+    /**
+     * @return the payload prefixed with its length and checksum
+     */
+    private static ByteBuffer frame(final byte[] payload) {
+        final ByteBuffer buffer = ByteBuffer.allocate(8 + payload.length);
+        buffer.putInt(payload.length).putInt(crc(payload)).put(payload).flip();
+        return buffer;
+    }
+
+    private static int crc(final byte[] payload) {
+        final CRC32 crc = new CRC32();
+        crc.update(payload);
+        return (int) crc.getValue();
+    }
+
+    private static void writeString(final DataOutputStream output, final String value) throws IOException {
+        if (value == null) {
+            output.writeInt(-1);
+            return;
+        }
+        final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        output.writeInt(bytes.length);
+        output.write(bytes);
+    }
+
+    private static String readString(final DataInputStream input) throws IOException {
+        final int length = input.readInt();
+        if (length < 0) {
+            return null;
+        }
+        final byte[] bytes = new byte[length];
+        input.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void writeDecimal(final DataOutputStream output, final BigDecimal value) throws IOException {
+        final byte[] unscaled = value.unscaledValue().toByteArray();
+        output.writeInt(value.scale());
+        output.writeInt(unscaled.length);
+        output.write(unscaled);
+    }
+
+    private static BigDecimal readDecimal(final DataInputStream input) throws IOException {
+        final int scale = input.readInt();
+        final byte[] unscaled = new byte[input.readInt()];
+        input.readFully(unscaled);
+        return new BigDecimal(new BigInteger(unscaled), scale);
+    }
+
+    // *
+    // * Encoding
+    // *************************************************************************
+}
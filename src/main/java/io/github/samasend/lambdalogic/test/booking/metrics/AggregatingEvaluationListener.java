@@ -0,0 +1,142 @@
+package io.github.samasend.lambdalogic.test.booking.metrics;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * An {@link EvaluationListener} that adds up the metrics of all calculations.
+ * <p>
+ * All counters are {@link LongAdder}s, so a single instance can be shared by the evaluators of many threads without
+ * locking. The wall times are counted in a histogram with fixed buckets, see {@link #getLatencyBucketBoundsMicros()}.
+ * <p>
+ * The values are read without a global lock, so a snapshot taken during concurrent calculations is not necessarily
+ * consistent across different counters.
+ */
+public class AggregatingEvaluationListener implements EvaluationListener {
+
+    /**
+     * The inclusive upper bounds of the latency buckets in microseconds.
+     * <p>
+     * A last bucket without upper bound follows, that counts all slower calculations.
+     */
+    private static final long[] LATENCY_BUCKET_BOUNDS_MICROS = {
+            10, 50, 100, 500, 1_000, 5_000, 10_000, 50_000, 100_000, 500_000, 1_000_000
+    };
+
+    private final LongAdder calculations = new LongAdder();
+
+    private final LongAdder scannedBookings = new LongAdder();
+
+    private final LongAdder matchedBookings = new LongAdder();
+
+    private final LongAdder zeroSkippedBookings = new LongAdder();
+
+    private final LongAdder currencyConflicts = new LongAdder();
+
+    private final LongAdder totalNanos = new LongAdder();
+
+    private final LongAdder[] latencyBuckets = new LongAdder[LATENCY_BUCKET_BOUNDS_MICROS.length + 1];
+
+    public AggregatingEvaluationListener() {
+        for (int i = 0; i < latencyBuckets.length; i++) {
+            latencyBuckets[i] = new LongAdder();
+        }
+    }
+
+    @Override
+    public void evaluated(int scanned, int matched, int zeroSkipped, boolean inconsistentCurrencies, long elapsedNanos) {
+        calculations.increment();
+        scannedBookings.add(scanned);
+        matchedBookings.add(matched);
+        zeroSkippedBookings.add(zeroSkipped);
+        if (inconsistentCurrencies) {
+            currencyConflicts.increment();
+        }
+        totalNanos.add(elapsedNanos);
+        latencyBuckets[bucketOf(elapsedNanos)].increment();
+    }
+
+    /**
+     * Find the histogram bucket of a wall time
+     *
+     * @param elapsedNanos the wall time in nanoseconds
+     * @return the index of the first bucket whose upper bound is not exceeded
+     */
+    private static int bucketOf(long elapsedNanos) {
+        final long micros = TimeUnit.NANOSECONDS.toMicros(elapsedNanos);
+        int index = Arrays.binarySearch(LATENCY_BUCKET_BOUNDS_MICROS, micros);
+        return index >= 0 ? index : -index - 1;
+    }
+
+    public long getCalculations() {
+        return calculations.sum();
+    }
+
+    public long getScannedBookings() {
+        return scannedBookings.sum();
+    }
+
+    public long getMatchedBookings() {
+        return matchedBookings.sum();
+    }
+
+    public long getZeroSkippedBookings() {
+        return zeroSkippedBookings.sum();
+    }
+
+    public long getCurrencyConflicts() {
+        return currencyConflicts.sum();
+    }
+
+    public long getTotalNanos() {
+        return totalNanos.sum();
+    }
+
+    /**
+     * Return the inclusive upper bounds of the latency buckets in microseconds.
+     *
+     * @return a copy of the bucket bounds, ordered ascending
+     */
+    public static long[] getLatencyBucketBoundsMicros() {
+        return LATENCY_BUCKET_BOUNDS_MICROS.clone();
+    }
+
+    /**
+     * Return the number of calculations per latency bucket.
+     *
+     * @return an array with one more element than {@link #getLatencyBucketBoundsMicros()},
+     * the last one counts the calculations slower than the largest bound
+     */
+    public long[] getLatencyHistogram() {
+        final long[] result = new long[latencyBuckets.length];
+        for (int i = 0; i < latencyBuckets.length; i++) {
+            result[i] = latencyBuckets[i].sum();
+        }
+        return result;
+    }
+
+    /**
+     * Set all counters to 0.
+     */
+    public void reset() {
+        calculations.reset();
+        scannedBookings.reset();
+        matchedBookings.reset();
+        zeroSkippedBookings.reset();
+        currencyConflicts.reset();
+        totalNanos.reset();
+        for (LongAdder bucket : latencyBuckets) {
+            bucket.reset();
+        }
+    }
+
+    public String toString() {
+        return "calculations: " + getCalculations()
+                + ", scanned: " + getScannedBookings()
+                + ", matched: " + getMatchedBookings()
+                + ", zero skipped: " + getZeroSkippedBookings()
+                + ", currency conflicts: " + getCurrencyConflicts()
+                + ", total ms: " + TimeUnit.NANOSECONDS.toMillis(getTotalNanos());
+    }
+}
@@ -0,0 +1,36 @@
+package io.github.samasend.lambdalogic.test.booking.metrics;
+
+import com.lambdalogic.test.booking.IBookingsCurrencyAmountsEvaluator;
+import com.lambdalogic.test.booking.exception.InconsistentCurrenciesException;
+
+import java.util.List;
+
+/**
+ * Receives the metrics of every {@link IBookingsCurrencyAmountsEvaluator#calculate(List, Long)} call.
+ * <p>
+ * Implementations are called on the thread that calculates, so they should return quickly.
+ * They must be thread-safe if they are shared between evaluators.
+ */
+@FunctionalInterface
+public interface EvaluationListener {
+
+    /**
+     * A listener that ignores all metrics.
+     * <p>
+     * Evaluators skip the whole instrumentation (even the time measurement) when they are given this listener.
+     */
+    EvaluationListener NONE = (scanned, matched, zeroSkipped, inconsistentCurrencies, elapsedNanos) -> {
+    };
+
+    /**
+     * Called after a calculation has been finished, successfully or not.
+     *
+     * @param scanned                - number of bookings in the given list
+     * @param matched                - number of bookings belonging to the invoice recipient
+     * @param zeroSkipped            - number of matched bookings ignored because their amount and paid amount are 0
+     * @param inconsistentCurrencies - {@code true} if an {@link InconsistentCurrenciesException} has been thrown
+     * @param elapsedNanos           - wall time of the calculation in nanoseconds
+     */
+    void evaluated(int scanned, int matched, int zeroSkipped, boolean inconsistentCurrencies, long elapsedNanos);
+
+}
@@ -0,0 +1,582 @@
+package io.github.samasend.lambdalogic.test.booking.offheap;
+
+import com.lambdalogic.test.booking.exception.InconsistentCurrenciesException;
+import com.lambdalogic.test.booking.model.Booking;
+import com.lambdalogic.test.booking.model.CurrencyAmount;
+import com.lambdalogic.test.booking.model.Price;
+import io.github.samasend.lambdalogic.test.booking.BookingAmounts;
+import io.github.samasend.lambdalogic.test.booking.BookingsCurrencyAmountsEvaluator;
+import io.github.samasend.lambdalogic.test.booking.EvaluationResult;
+import io.github.samasend.lambdalogic.test.booking.ScaledAmounts;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+import static io.github.samasend.lambdalogic.test.booking.ScaledAmounts.NOT_SCALED;
+
+/**
+ * Stores the amounts of very many {@link Booking}s outside of the Java heap.
+ * <p>
+ * Every booking is a record of {@value #RECORD_SIZE} bytes: the PK of the invoice recipient, a currency ID, flags,
+ * the amount and a tax rate code of each of the four prices and the paid amount. Amounts are stored as cents in
+ * {@code long}s, currencies and tax rates as IDs of dictionaries that stay on the heap, because there are only a few
+ * of them. All other values of the bookings are not stored.
+ * <p>
+ * The records are kept in segments of a fixed number of records. The segments are either direct
+ * {@link ByteBuffer}s, see {@link #allocateDirect(int)}, or parts of a file that are mapped into memory,
+ * see {@link #map(Path, int)}. A mapped store keeps its records when it is closed and opened again.
+ * <p>
+ * Bookings can be appended and their paid amount can be updated in place. {@link #evaluate(long)} scans all records
+ * and returns the same results as {@link BookingsCurrencyAmountsEvaluator} for the same bookings, except that
+ * bookings without invoice recipient are skipped.
+ * <p>
+ * The store is not thread-safe.
+ */
+public class OffHeapBookingStore implements AutoCloseable {
+
+    public static final int RECORD_SIZE = 64;
+
+    private static final int PRICE_COUNT = 4;
+
+    // the layout of a record
+    private static final int RECIPIENT_OFFSET = 0;
+    private static final int CURRENCY_OFFSET = 8;
+    private static final int FLAGS_OFFSET = 12;
+    private static final int PAID_OFFSET = 16;
+    private static final int AMOUNTS_OFFSET = 24;
+    private static final int TAX_RATES_OFFSET = AMOUNTS_OFFSET + 8 * PRICE_COUNT;
+
+    // the flags of a record, bits 0 to 3 mark the prices that are set, bits 8 to 11 the gross prices
+    private static final int GROSS_SHIFT = 8;
+    private static final int NO_RECIPIENT_FLAG = 1 << 5;
+    /**
+     * the paid amount is not {@link BigDecimal#ZERO}, which includes 0.00 like the evaluator does
+     */
+    private static final int PAID_FLAG = 1 << 6;
+
+    /**
+     * the scale of the stored amounts
+     */
+    private static final int AMOUNT_SCALE = 2;
+
+    /**
+     * the scale of the stored tax rate factors (1 + tax rate / 100), a tax rate has at most 2 decimal places
+     */
+    private static final int FACTOR_SCALE = 4;
+
+    private static final int FILE_MAGIC = 0x424F4853; // "BOHS"
+
+    /**
+     * a mapped file starts with a header of one record size: magic number, records per segment and size
+     */
+    private static final int HEADER_SIZE = RECORD_SIZE;
+
+    private final int recordsPerSegment;
+
+    private final int segmentShift;
+
+    private final List<ByteBuffer> segments = new ArrayList<>();
+
+    /**
+     * the file channel of a mapped store, null for direct buffers
+     */
+    private final FileChannel channel;
+
+    private final MappedByteBuffer header;
+
+    /**
+     * the writer of the dictionary file of a mapped store
+     */
+    private final BufferedWriter dictionaryWriter;
+
+    private final Map<String, Integer> currencyIDs = new HashMap<>();
+
+    private final List<String> currencies = new ArrayList<>();
+
+    private final Map<BigDecimal, Integer> taxRateCodes = new HashMap<>();
+
+    private final List<BigDecimal> taxRates = new ArrayList<>();
+
+    /**
+     * the tax rate factors as scaled longs of the scale {@link #FACTOR_SCALE}, indexed by tax rate code
+     */
+    private long[] scaledTaxRateFactors = new long[16];
+
+    private int size = 0;
+
+    private OffHeapBookingStore(final int recordsPerSegment, final FileChannel channel, final MappedByteBuffer header,
+                                final BufferedWriter dictionaryWriter) {
+        if (recordsPerSegment < 1 || Integer.bitCount(recordsPerSegment) != 1
+                || (long) recordsPerSegment * RECORD_SIZE > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("recordsPerSegment must be a power of 2 below 2^25: " + recordsPerSegment);
+        }
+        this.recordsPerSegment = recordsPerSegment;
+        this.segmentShift = Integer.numberOfTrailingZeros(recordsPerSegment);
+        this.channel = channel;
+        this.header = header;
+        this.dictionaryWriter = dictionaryWriter;
+    }
+
+    /**
+     * Create a store of direct {@link ByteBuffer}s, its records are lost when it is closed
+     *
+     * @param recordsPerSegment the number of records of a segment, a power of 2
+     */
+    public static OffHeapBookingStore allocateDirect(final int recordsPerSegment) {
+        return new OffHeapBookingStore(recordsPerSegment, null, null, null);
+    }
+
+    /**
+     * Create or open a store whose records are mapped from a file.
+     * <p>
+     * The dictionaries of currencies and tax rates are kept in a text file next to it, whose name ends with
+     * {@code .dict}. Records are persisted by the operating system, {@link #force()} writes them immediately.
+     *
+     * @param file              the file of the records
+     * @param recordsPerSegment the number of records of a segment, a power of 2, it must be the same when an existing
+     *                          file is opened
+     * @throws IOException if the files cannot be read or written or do not belong to a store
+     */
+    public static OffHeapBookingStore map(final Path file, final int recordsPerSegment) throws IOException {
+        final Path dictionaryFile = file.resolveSibling(file.getFileName() + ".dict");
+        final List<String> dictionary = Files.exists(dictionaryFile)
+                ? Files.readAllLines(dictionaryFile, StandardCharsets.UTF_8)
+                : new ArrayList<>();
+
+        final FileChannel channel = FileChannel.open(file,
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        BufferedWriter dictionaryWriter = null;
+        try {
+            final boolean created = channel.size() == 0;
+            final MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE);
+            if (created) {
+                header.putInt(0, FILE_MAGIC);
+                header.putInt(4, recordsPerSegment);
+                header.putLong(8, 0);
+            }
+            else if (header.getInt(0) != FILE_MAGIC || header.getInt(4) != recordsPerSegment) {
+                throw new IOException(file + " is not a booking store with " + recordsPerSegment + " records per segment.");
+            }
+
+            dictionaryWriter = Files.newBufferedWriter(dictionaryFile, StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+            final OffHeapBookingStore store =
+                    new OffHeapBookingStore(recordsPerSegment, channel, header, dictionaryWriter);
+            for (final String line : dictionary) {
+                store.readDictionaryEntry(line);
+            }
+
+            final long size = header.getLong(8);
+            while ((long) store.segments.size() * recordsPerSegment < size) {
+                store.addSegment();
+            }
+            store.size = (int) size;
+            return store;
+        }
+        catch (IOException | RuntimeException e) {
+            if (dictionaryWriter != null) {
+                dictionaryWriter.close();
+            }
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Append the amounts of a booking
+     *
+     * @param booking the booking, missing prices are not created
+     * @return the index of the booking in this store
+     * @throws IllegalArgumentException if an amount has more than 2 decimal places or is too large,
+     *                                  or a tax rate has more than 2 decimal places
+     */
+    public int append(final Booking booking) {
+        final int index = size;
+        final ByteBuffer segment = segmentOf(index);
+        final int offset = offsetOf(index);
+
+        // check all values before anything is written
+        final Price[] prices = booking.getPrices();
+        final long[] amounts = new long[PRICE_COUNT];
+        final int[] taxRates = new int[PRICE_COUNT];
+        int flags = 0;
+        for (int i = 0; i < PRICE_COUNT; i++) {
+            if (prices[i] != null) {
+                flags |= 1 << i;
+                if (prices[i].isGross()) {
+                    flags |= 1 << (GROSS_SHIFT + i);
+                }
+                amounts[i] = toCents(prices[i].getAmount());
+                taxRates[i] = taxRateCode(prices[i].getTaxRate());
+            }
+        }
+        // the paid amount is read without creating it
+        final BookingAmounts.DecimalReader reader = new BookingAmounts.DecimalReader();
+        reader.read(booking);
+        final long paidAmount = toCents(reader.getPaidAmountOrZero());
+        if (BookingAmounts.isPayment(reader.getPaidAmount())) {
+            flags |= PAID_FLAG;
+        }
+        final Long recipientPK = booking.getInvoiceRecipientPK();
+        if (recipientPK == null) {
+            flags |= NO_RECIPIENT_FLAG;
+        }
+        final int currencyID = currencyID(BookingAmounts.getCurrency(booking));
+
+        segment.putLong(offset + RECIPIENT_OFFSET, recipientPK == null ? 0 : recipientPK);
+        segment.putInt(offset + CURRENCY_OFFSET, currencyID);
+        segment.putInt(offset + FLAGS_OFFSET, flags);
+        segment.putLong(offset + PAID_OFFSET, paidAmount);
+        for (int i = 0; i < PRICE_COUNT; i++) {
+            segment.putLong(offset + AMOUNTS_OFFSET + 8 * i, amounts[i]);
+            segment.putShort(offset + TAX_RATES_OFFSET + 2 * i, (short) taxRates[i]);
+        }
+
+        size++;
+        if (header != null) {
+            header.putLong(8, size);
+        }
+        return index;
+    }
+
+    /**
+     * Update the paid amount of a booking in place
+     *
+     * @param index      the index returned by {@link #append(Booking)}
+     * @param paidAmount the new paid amount, null means nothing has been paid
+     */
+    public void setPaidAmount(final int index, final BigDecimal paidAmount) {
+        checkIndex(index);
+        final ByteBuffer segment = segmentOf(index);
+        final int offset = offsetOf(index);
+
+        final long cents = paidAmount == null ? 0 : toCents(paidAmount);
+        int flags = segment.getInt(offset + FLAGS_OFFSET) & ~PAID_FLAG;
+        if (BookingAmounts.isPayment(paidAmount)) {
+            flags |= PAID_FLAG;
+        }
+        segment.putLong(offset + PAID_OFFSET, cents);
+        segment.putInt(offset + FLAGS_OFFSET, flags);
+    }
+
+    /**
+     * @param index the index returned by {@link #append(Booking)}
+     * @return the paid amount of a booking with 2 decimal places
+     */
+    public BigDecimal getPaidAmount(final int index) {
+        checkIndex(index);
+        return ScaledAmounts.toBigDecimal(segmentOf(index).getLong(offsetOf(index) + PAID_OFFSET), AMOUNT_SCALE);
+    }
+
+    /**
+     * @param index the index returned by {@link #append(Booking)}
+     * @return the PK of the invoice recipient of a booking, null if it has none
+     */
+    public Long getInvoiceRecipientPK(final int index) {
+        checkIndex(index);
+        final ByteBuffer segment = segmentOf(index);
+        final int offset = offsetOf(index);
+        return (segment.getInt(offset + FLAGS_OFFSET) & NO_RECIPIENT_FLAG) != 0
+                ? null
+                : segment.getLong(offset + RECIPIENT_OFFSET);
+    }
+
+    /**
+     * Add up the total amount, the paid amount and the open amount of the bookings of an invoice recipient
+     *
+     * @param invoiceRecipientID the PK of the invoice recipient
+     * @return the totals, {@link EvaluationResult#EMPTY} if the recipient has no relevant bookings
+     * @throws InconsistentCurrenciesException if the relevant bookings of the recipient have different currencies
+     */
+    public EvaluationResult evaluate(final long invoiceRecipientID) throws InconsistentCurrenciesException {
+        // the total amount has the scale of amount times factor, the paid amount the scale of the amounts
+        final ScaledSum totalAmount = new ScaledSum(AMOUNT_SCALE + FACTOR_SCALE);
+        final ScaledSum paidAmount = new ScaledSum(AMOUNT_SCALE);
+        final long grossFactor = ScaledAmounts.toScaled(BigDecimal.ONE, FACTOR_SCALE);
+        final BitSet currencyIDs = new BitSet();
+        int currencyID = -1;
+
+        for (int segmentIndex = 0; segmentIndex < segments.size(); segmentIndex++) {
+            final ByteBuffer segment = segments.get(segmentIndex);
+            final int records = Math.min(recordsPerSegment, size - segmentIndex * recordsPerSegment);
+            for (int record = 0; record < records; record++) {
+                final int offset = record * RECORD_SIZE;
+                final int flags = segment.getInt(offset + FLAGS_OFFSET);
+                if ((flags & NO_RECIPIENT_FLAG) != 0 || segment.getLong(offset + RECIPIENT_OFFSET) != invoiceRecipientID) {
+                    continue;
+                }
+
+                boolean relevant = (flags & PAID_FLAG) != 0;
+                for (int i = 0; i < PRICE_COUNT && !relevant; i++) {
+                    relevant = segment.getLong(offset + AMOUNTS_OFFSET + 8 * i) != 0;
+                }
+                if (!relevant) {
+                    continue;
+                }
+
+                currencyID = segment.getInt(offset + CURRENCY_OFFSET);
+                currencyIDs.set(currencyID);
+
+                for (int i = 0; i < PRICE_COUNT; i++) {
+                    if ((flags & (1 << i)) != 0) {
+                        final long amount = segment.getLong(offset + AMOUNTS_OFFSET + 8 * i);
+                        final long factor = (flags & (1 << (GROSS_SHIFT + i))) != 0
+                                ? grossFactor
+                                : scaledTaxRateFactors[segment.getShort(offset + TAX_RATES_OFFSET + 2 * i)];
+                        totalAmount.add(ScaledAmounts.multiply(amount, factor), amount, factor);
+                    }
+                }
+                paidAmount.add(segment.getLong(offset + PAID_OFFSET));
+            }
+        }
+
+        if (currencyIDs.isEmpty()) {
+            return EvaluationResult.EMPTY;
+        }
+        if (currencyIDs.cardinality() > 1) {
+            // the same currencies as the evaluator reports
+            final SortedSet<String> names = new TreeSet<>();
+            for (int id = currencyIDs.nextSetBit(0); id >= 0; id = currencyIDs.nextSetBit(id + 1)) {
+                names.add(currencies.get(id));
+            }
+            throw new InconsistentCurrenciesException(names.first(), names.last());
+        }
+
+        final String currency = currencies.get(currencyID);
+        final BigDecimal total = totalAmount.toBigDecimal();
+        final BigDecimal paid = paidAmount.toBigDecimal();
+        return new EvaluationResult(
+                new CurrencyAmount(total, currency),
+                new CurrencyAmount(paid, currency),
+                new CurrencyAmount(total.subtract(paid), currency));
+    }
+
+    /**
+     * @return the number of bookings
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Write the records and the size of a mapped store to the file, does nothing for direct buffers
+     */
+    public void force() throws IOException {
+        if (channel == null) {
+            return;
+        }
+        for (final ByteBuffer segment : segments) {
+            ((MappedByteBuffer) segment).force();
+        }
+        header.force();
+        dictionaryWriter.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        segments.clear();
+        if (channel != null) {
+            try {
+                dictionaryWriter.close();
+            }
+            finally {
+                channel.close();
+            }
+        }
+    }
+
+    // *************************************************************************
+    // * Segments
+    // *
+
+    private ByteBuffer segmentOf(final int index) {
+        final int segmentIndex = index >>> segmentShift;
+        while (segmentIndex >= segments.size()) {
+            try {
+                addSegment();
+            }
+            catch (IOException e) {
+                throw new IllegalStateException("The store could not be extended.", e);
+            }
+        }
+        return segments.get(segmentIndex);
+    }
+
+    private int offsetOf(final int index) {
+        return (index & (recordsPerSegment - 1)) * RECORD_SIZE;
+    }
+
+    private void addSegment() throws IOException {
+        final int segmentSize = recordsPerSegment * RECORD_SIZE;
+        if (channel == null) {
+            segments.add(ByteBuffer.allocateDirect(segmentSize));
+        }
+        else {
+            final long position = HEADER_SIZE + (long) segments.size() * segmentSize;
+            segments.add(channel.map(FileChannel.MapMode.READ_WRITE, position, segmentSize));
+        }
+    }
+
+    private void checkIndex(final int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("index " + index + ", size " + size);
+        }
+    }
+
+    // *
+    // * Segments
+    // *************************************************************************
+
+    // *************************************************************************
+    // * Dictionaries
+    // *
+
+    private int currencyID(final String currency) {
+        final Integer id = currencyIDs.get(currency);
+        if (id != null) {
+            return id;
+        }
+        writeDictionaryEntry("C", currency == null ? "" : "=" + currency);
+        return addCurrency(currency);
+    }
+
+    private int addCurrency(final String currency) {
+        final int id = currencies.size();
+        currencies.add(currency);
+        currencyIDs.put(currency, id);
+        return id;
+    }
+
+    private int taxRateCode(final BigDecimal taxRate) {
+        final Integer code = taxRateCodes.get(taxRate);
+        if (code != null) {
+            return code;
+        }
+        if (taxRates.size() > Short.MAX_VALUE) {
+            throw new IllegalArgumentException("too many tax rates");
+        }
+        final long scaledFactor = ScaledAmounts.toScaled(taxRate.movePointLeft(2).add(BigDecimal.ONE), FACTOR_SCALE);
+        if (scaledFactor == NOT_SCALED) {
+            throw new IllegalArgumentException("tax rate with more than 2 decimal places: " + taxRate);
+        }
+        writeDictionaryEntry("T", taxRate.toPlainString());
+        return addTaxRate(taxRate, scaledFactor);
+    }
+
+    private int addTaxRate(final BigDecimal taxRate, final long scaledFactor) {
+        final int code = taxRates.size();
+        taxRates.add(taxRate);
+        taxRateCodes.put(taxRate, code);
+        if (code == scaledTaxRateFactors.length) {
+            scaledTaxRateFactors = Arrays.copyOf(scaledTaxRateFactors, code * 2);
+        }
+        scaledTaxRateFactors[code] = scaledFactor;
+        return code;
+    }
+
+    private void writeDictionaryEntry(final String type, final String value) {
+        if (dictionaryWriter == null) {
+            return;
+        }
+        if (value.indexOf('\n') >= 0 || value.indexOf('\r') >= 0) {
+            throw new IllegalArgumentException("line breaks are not supported: " + value);
+        }
+        try {
+            dictionaryWriter.write(type);
+            dictionaryWriter.write(value);
+            dictionaryWriter.newLine();
+            // the records refer to the entry, so it must not get lost
+            dictionaryWriter.flush();
+        }
+        catch (IOException e) {
+            throw new IllegalStateException("The dictionary could not be written.", e);
+        }
+    }
+
+    private void readDictionaryEntry(final String line) throws IOException {
+        if (line.startsWith("C")) {
+            addCurrency(line.length() == 1 ? null : line.substring(2));
+        }
+        else if (line.startsWith("T")) {
+            final BigDecimal taxRate = new BigDecimal(line.substring(1));
+            addTaxRate(taxRate, ScaledAmounts.toScaled(taxRate.movePointLeft(2).add(BigDecimal.ONE), FACTOR_SCALE));
+        }
+        else {
+            throw new IOException("invalid dictionary entry: " + line);
+        }
+    }
+
+    // *
+    // * Dictionaries
+    // *************************************************************************
+
+    private static long toCents(final BigDecimal amount) {
+        final long cents = ScaledAmounts.toScaled(amount, AMOUNT_SCALE);
+        if (cents == NOT_SCALED) {
+            throw new IllegalArgumentException("amount with more than 2 decimal places or too large: " + amount);
+        }
+        return cents;
+    }
+
+    /**
+     * A sum of scaled longs that continues as {@link BigDecimal} if it overflows
+     */
+    private static final class ScaledSum {
+
+        private final int scale;
+
+        private long scaled = 0;
+
+        private BigDecimal rest = BigDecimal.ZERO;
+
+        private ScaledSum(final int scale) {
+            this.scale = scale;
+        }
+
+        private void add(final long value) {
+            if (ScaledAmounts.overflows(scaled, value)) {
+                rest = rest.add(ScaledAmounts.toBigDecimal(scaled, scale));
+                scaled = value;
+            }
+            else {
+                scaled += value;
+            }
+        }
+
+        /**
+         * Add the product of an amount and a factor
+         *
+         * @param product the product or {@link ScaledAmounts#NOT_SCALED} if it did not fit into a long
+         */
+        private void add(final long product, final long amount, final long factor) {
+            if (product == NOT_SCALED) {
+                rest = rest.add(ScaledAmounts.toBigDecimal(amount, AMOUNT_SCALE)
+                        .multiply(ScaledAmounts.toBigDecimal(factor, FACTOR_SCALE)));
+            }
+            else {
+                add(product);
+            }
+        }
+
+        private BigDecimal toBigDecimal() {
+            final BigDecimal result = ScaledAmounts.toBigDecimal(scaled, scale);
+            return rest.signum() == 0 ? result : result.add(rest);
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package io.github.samasend.lambdalogic.test.booking.payment;
+
+import com.lambdalogic.test.booking.model.Booking;
+
+import java.math.BigDecimal;
+import java.util.Objects;
+
+/**
+ * A payment of a bank statement: an amount that is added to the paid amount of a {@link Booking}.
+ * <p>
+ * Negative amounts reverse earlier payments.
+ * <p>
+ * Instances are immutable.
+ */
+public final class Payment {
+
+    private final long bookingID;
+
+    private final BigDecimal amount;
+
+    /**
+     * @param bookingID the ID of the paid booking, see {@link Booking#getID()}
+     * @param amount    the paid amount
+     */
+    public Payment(final long bookingID, final BigDecimal amount) {
+        if (amount == null) {
+            throw new IllegalArgumentException("Parameter 'amount' must not be null.");
+        }
+        this.bookingID = bookingID;
+        this.amount = amount;
+    }
+
+    public long getBookingID() {
+        return bookingID;
+    }
+
+    public BigDecimal getAmount() {
+        return amount;
+    }
+
+    @Override
+    public boolean equals(final Object other) {
+        if (this == other) {
+            return true;
+        }
+        if (!(other instanceof Payment)) {
+            return false;
+        }
+        final Payment otherPayment = (Payment) other;
+        return bookingID == otherPayment.bookingID && amount.equals(otherPayment.amount);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(bookingID, amount);
+    }
+
+    @Override
+    public String toString() {
+        return "booking " + bookingID + ": " + amount;
+    }
+}
@@ -0,0 +1,212 @@
+package io.github.samasend.lambdalogic.test.booking.payment;
+
+import com.lambdalogic.test.booking.exception.InconsistentCurrenciesException;
+import com.lambdalogic.test.booking.model.Booking;
+import com.lambdalogic.test.booking.model.CurrencyAmount;
+import io.github.samasend.lambdalogic.test.booking.BookingAmounts;
+import io.github.samasend.lambdalogic.test.booking.BookingsCurrencyAmountsEvaluator;
+import io.github.samasend.lambdalogic.test.booking.EvaluationResult;
+
+import java.math.BigDecimal;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+/**
+ * Applies payments to a set of {@link Booking}s and keeps the totals of every invoice recipient up to date,
+ * so a bank statement costs time proportional to its number of payments instead of the number of bookings.
+ * <p>
+ * The unrounded total amount gross and paid amount of every invoice recipient are added up once, when the ledger is
+ * built. A payment adds its amount to the paid amount of the booking and to the paid amount of the booking's invoice
+ * recipient; the open amount is the difference of both. The results are rounded when they are taken.
+ * <p>
+ * The results are the same as the ones of {@link BookingsCurrencyAmountsEvaluator} for the bookings of the recipient.
+ * Bookings whose amount and paid amount are both 0 add nothing to the totals, so a payment that makes such a booking
+ * relevant, or a reversal that makes it irrelevant again, only changes the currencies taken into account: the relevant
+ * bookings of every recipient are counted per currency, and different currencies lead to an
+ * {@link InconsistentCurrenciesException}.
+ * <p>
+ * The set of bookings is fixed when the ledger is built, and their amounts must only be changed through the ledger.
+ * Bookings without invoice recipient can be paid, but have no totals.
+ * <p>
+ * The ledger is not thread-safe.
+ */
+public class PaymentLedger {
+
+    /**
+     * orders the currencies of an {@link InconsistentCurrenciesException} like the evaluator
+     */
+    private static final Comparator<String> CURRENCY_ORDER = Comparator.nullsFirst(Comparator.naturalOrder());
+
+    /**
+     * The unrounded totals of the bookings of one invoice recipient
+     */
+    private static final class RecipientTotals {
+
+        private BigDecimal totalAmount = BigDecimal.ZERO;
+
+        private BigDecimal paidAmount = BigDecimal.ZERO;
+
+        /**
+         * the number of relevant bookings per currency, the currency may be null
+         */
+        private final Map<String, Integer> relevantBookings = new HashMap<>(2);
+
+        private void countRelevant(final String currency, final int delta) {
+            relevantBookings.compute(currency, (key, count) -> {
+                final int newCount = (count == null ? 0 : count) + delta;
+                return newCount == 0 ? null : newCount;
+            });
+        }
+
+        private EvaluationResult toResult() throws InconsistentCurrenciesException {
+            if (relevantBookings.isEmpty()) {
+                return EvaluationResult.EMPTY;
+            }
+            if (relevantBookings.size() > 1) {
+                final SortedSet<String> currencies = new TreeSet<>(CURRENCY_ORDER);
+                currencies.addAll(relevantBookings.keySet());
+                throw new InconsistentCurrenciesException(currencies.first(), currencies.last());
+            }
+
+            final String currency = relevantBookings.keySet().iterator().next();
+            return new EvaluationResult(
+                    new CurrencyAmount(totalAmount, currency),
+                    new CurrencyAmount(paidAmount, currency),
+                    new CurrencyAmount(totalAmount.subtract(paidAmount), currency));
+        }
+    }
+
+    private final Map<Long, Booking> bookings = new HashMap<>();
+
+    private final Map<Long, RecipientTotals> recipientTotals = new HashMap<>();
+
+    private final BookingAmounts.DecimalReader reader = new BookingAmounts.DecimalReader();
+
+    /**
+     * Add up the totals of all invoice recipients of a set of bookings
+     *
+     * @param bookings the bookings, bookings without ID cannot be paid and are ignored
+     * @throws IllegalArgumentException if two bookings have the same ID
+     */
+    public PaymentLedger(final Collection<Booking> bookings) {
+        for (final Booking booking : bookings) {
+            if (booking.getID() == null) {
+                continue;
+            }
+            if (this.bookings.putIfAbsent(booking.getID(), booking) != null) {
+                throw new IllegalArgumentException("Duplicate booking ID " + booking.getID());
+            }
+            if (booking.getInvoiceRecipientPK() == null) {
+                continue;
+            }
+
+            reader.read(booking);
+            final RecipientTotals totals = recipientTotals.computeIfAbsent(
+                    booking.getInvoiceRecipientPK(), pk -> new RecipientTotals());
+            totals.totalAmount = totals.totalAmount.add(reader.getTotalAmountGross());
+            if (reader.getPaidAmount() != null) {
+                totals.paidAmount = totals.paidAmount.add(reader.getPaidAmount());
+            }
+            if (reader.isRelevant()) {
+                totals.countRelevant(BookingAmounts.getCurrency(booking), 1);
+            }
+        }
+    }
+
+    /**
+     * Get the current totals of the bookings of an invoice recipient
+     *
+     * @param recipientPK the PK of the invoice recipient
+     * @return the totals, {@link EvaluationResult#EMPTY} if there are no relevant bookings
+     * @throws InconsistentCurrenciesException if the relevant bookings have different currencies
+     */
+    public EvaluationResult getTotals(final long recipientPK) throws InconsistentCurrenciesException {
+        final RecipientTotals totals = recipientTotals.get(recipientPK);
+        return totals == null ? EvaluationResult.EMPTY : totals.toResult();
+    }
+
+    /**
+     * Apply the payments of a bank statement in the given order.
+     * <p>
+     * The amount of each payment is added to the paid amount of its booking, see
+     * {@link Booking#setPaidAmount(BigDecimal)}, and to the paid amount of the booking's invoice recipient.
+     * Only the payments are visited, not the other bookings.
+     * <p>
+     * All booking IDs are checked first, so unknown bookings leave all bookings unchanged. A recipient whose relevant
+     * bookings have different currencies does not stop the statement, the payments have been made anyway: its outcome
+     * carries the {@link InconsistentCurrenciesException}, and the other recipients still get their totals.
+     *
+     * @param payments the payments
+     * @return the outcomes of the invoice recipients whose bookings have been paid, in the order of their first
+     * payment
+     * @throws IllegalArgumentException if a payment refers to an unknown booking, no payment has been applied in that
+     *                                  case
+     */
+    public Map<Long, RecipientOutcome> applyPayments(final Collection<Payment> payments) {
+        for (final Payment payment : payments) {
+            if (!bookings.containsKey(payment.getBookingID())) {
+                throw new IllegalArgumentException("Unknown booking ID " + payment.getBookingID());
+            }
+        }
+
+        final Map<Long, RecipientTotals> paidRecipients = new LinkedHashMap<>();
+        for (final Payment payment : payments) {
+            final Booking booking = bookings.get(payment.getBookingID());
+            final RecipientTotals totals = apply(booking, payment.getAmount());
+            if (totals != null) {
+                paidRecipients.putIfAbsent(booking.getInvoiceRecipientPK(), totals);
+            }
+        }
+
+        final Map<Long, RecipientOutcome> outcomes = new LinkedHashMap<>();
+        for (final Map.Entry<Long, RecipientTotals> entry : paidRecipients.entrySet()) {
+            RecipientOutcome outcome;
+            try {
+                outcome = RecipientOutcome.of(entry.getValue().toResult());
+            }
+            catch (InconsistentCurrenciesException e) {
+                outcome = RecipientOutcome.failed(e);
+            }
+            outcomes.put(entry.getKey(), outcome);
+        }
+        return outcomes;
+    }
+
+    /**
+     * Add a payment to a booking and to the totals of its invoice recipient
+     *
+     * @return the totals of the invoice recipient, null if the booking has none
+     */
+    private RecipientTotals apply(final Booking booking, final BigDecimal amount) {
+        reader.read(booking);
+        final BigDecimal paidAmount = reader.getPaidAmount() == null ? amount : reader.getPaidAmount().add(amount);
+        booking.setPaidAmount(paidAmount);
+
+        if (booking.getInvoiceRecipientPK() == null) {
+            return null;
+        }
+
+        final RecipientTotals totals = recipientTotals.get(booking.getInvoiceRecipientPK());
+        totals.paidAmount = totals.paidAmount.add(amount);
+
+        // a booking without amount is only relevant while it has a payment
+        final boolean wasRelevant = reader.isRelevant();
+        final boolean relevant = reader.isRelevant(paidAmount);
+        if (wasRelevant != relevant) {
+            totals.countRelevant(BookingAmounts.getCurrency(booking), relevant ? 1 : -1);
+        }
+        return totals;
+    }
+
+    /**
+     * @return the number of bookings that can be paid
+     */
+    public int size() {
+        return bookings.size();
+    }
+}
@@ -0,0 +1,74 @@
+package io.github.samasend.lambdalogic.test.booking.payment;
+
+import com.lambdalogic.test.booking.exception.InconsistentCurrenciesException;
+import io.github.samasend.lambdalogic.test.booking.EvaluationResult;
+
+/**
+ * The outcome of a bank statement for one invoice recipient, see {@link PaymentLedger#applyPayments(java.util.Collection)}:
+ * either the new totals of the recipient or the {@link InconsistentCurrenciesException} that prevents them.
+ * <p>
+ * Instances are immutable.
+ */
+public final class RecipientOutcome {
+
+    private final EvaluationResult totals;
+
+    private final InconsistentCurrenciesException exception;
+
+    private RecipientOutcome(final EvaluationResult totals, final InconsistentCurrenciesException exception) {
+        this.totals = totals;
+        this.exception = exception;
+    }
+
+    /**
+     * @param totals the new totals of the recipient
+     * @return a successful outcome
+     */
+    public static RecipientOutcome of(final EvaluationResult totals) {
+        if (totals == null) {
+            throw new IllegalArgumentException("Parameter 'totals' must not be null.");
+        }
+        return new RecipientOutcome(totals, null);
+    }
+
+    /**
+     * @param exception the reason why the recipient has no totals
+     * @return a failed outcome
+     */
+    public static RecipientOutcome failed(final InconsistentCurrenciesException exception) {
+        if (exception == null) {
+            throw new IllegalArgumentException("Parameter 'exception' must not be null.");
+        }
+        return new RecipientOutcome(null, exception);
+    }
+
+    /**
+     * @return {@code true} if the recipient has totals
+     */
+    public boolean isSuccess() {
+        return exception == null;
+    }
+
+    /**
+     * @return the new totals of the recipient
+     * @throws InconsistentCurrenciesException if the relevant bookings of the recipient have different currencies
+     */
+    public EvaluationResult getTotals() throws InconsistentCurrenciesException {
+        if (exception != null) {
+            throw exception;
+        }
+        return totals;
+    }
+
+    /**
+     * @return the reason why the recipient has no totals, null if it has some
+     */
+    public InconsistentCurrenciesException getException() {
+        return exception;
+    }
+
+    @Override
+    public String toString() {
+        return isSuccess() ? totals.toString() : exception.toString();
+    }
+}
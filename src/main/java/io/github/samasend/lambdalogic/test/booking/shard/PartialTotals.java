@@ -0,0 +1,344 @@
+package io.github.samasend.lambdalogic.test.booking.shard;
+
+import com.lambdalogic.test.booking.exception.InconsistentCurrenciesException;
+import com.lambdalogic.test.booking.model.Booking;
+import com.lambdalogic.test.booking.model.CurrencyAmount;
+import io.github.samasend.lambdalogic.test.booking.BookingAmounts;
+import io.github.samasend.lambdalogic.test.booking.BookingsCurrencyAmountsEvaluator;
+import io.github.samasend.lambdalogic.test.booking.EvaluationResult;
+import io.github.samasend.lambdalogic.test.booking.codec.BookingCodec;
+
+import java.math.BigDecimal;
+import java.nio.BufferOverflowException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * The unrounded totals of a shard of a booking set for one invoice recipient, which can be merged with the totals of
+ * the other shards, e.g. of other processes, into the result of a single {@link BookingsCurrencyAmountsEvaluator} run.
+ * <p>
+ * The totals hold the unrounded total amount gross and paid amount of the relevant bookings, the open amount is their
+ * difference. Rounding only takes place in {@link #toResult()}, so the result does not depend on how the bookings
+ * were split. The booking counters are the ones reported to an
+ * {@link io.github.samasend.lambdalogic.test.booking.metrics.EvaluationListener}.
+ * <p>
+ * The evaluator reports the first two distinct currencies of the relevant bookings in an
+ * {@link InconsistentCurrenciesException}, so the totals keep those as well. {@link #merge(PartialTotals)} is
+ * associative, but not commutative: merging the shards in the order of the booking list gives the same exception as
+ * the evaluator, merging them in any order gives the same amounts.
+ * <p>
+ * Instances are immutable. They are written with a compact binary format, see {@link #encode(ByteBuffer)}.
+ */
+public final class PartialTotals {
+
+    /**
+     * The totals of no bookings
+     */
+    public static final PartialTotals EMPTY = new PartialTotals(
+            BigDecimal.ZERO, BigDecimal.ZERO, Collections.emptyList(), 0, 0, 0);
+
+    private static final Comparator<String> CURRENCY_ORDER = Comparator.nullsFirst(Comparator.naturalOrder());
+
+    private final BigDecimal totalAmount;
+
+    private final BigDecimal paidAmount;
+
+    /**
+     * the first two distinct currencies of the relevant bookings, in the order of the bookings
+     */
+    private final List<String> currencies;
+
+    private final long scannedBookings;
+
+    private final long matchedBookings;
+
+    private final long relevantBookings;
+
+    private PartialTotals(final BigDecimal totalAmount, final BigDecimal paidAmount, final List<String> currencies,
+                          final long scannedBookings, final long matchedBookings, final long relevantBookings) {
+        this.totalAmount = totalAmount;
+        this.paidAmount = paidAmount;
+        this.currencies = currencies;
+        this.scannedBookings = scannedBookings;
+        this.matchedBookings = matchedBookings;
+        this.relevantBookings = relevantBookings;
+    }
+
+    /**
+     * Add up the bookings of a shard
+     *
+     * @param bookings           the bookings of the shard
+     * @param invoiceRecipientID the PK of the invoice recipient, bookings of other recipients are ignored
+     * @return the totals of the shard
+     */
+    public static PartialTotals of(final Iterable<Booking> bookings, final long invoiceRecipientID) {
+        return of(bookings.iterator(), invoiceRecipientID);
+    }
+
+    /**
+     * Add up the bookings of a shard in a single pass.
+     * <p>
+     * Unlike the evaluator, reading does not stop at a second currency, so the counters are complete.
+     *
+     * @param bookings           the bookings of the shard
+     * @param invoiceRecipientID the PK of the invoice recipient, bookings of other recipients are ignored
+     * @return the totals of the shard
+     */
+    public static PartialTotals of(final Iterator<Booking> bookings, final long invoiceRecipientID) {
+        final BookingAmounts.DecimalReader reader = new BookingAmounts.DecimalReader();
+        BigDecimal totalAmount = BigDecimal.ZERO;
+        BigDecimal paidAmount = BigDecimal.ZERO;
+        final List<String> currencies = new ArrayList<>(2);
+        long scannedBookings = 0;
+        long matchedBookings = 0;
+        long relevantBookings = 0;
+
+        while (bookings.hasNext()) {
+            final Booking booking = bookings.next();
+            scannedBookings++;
+
+            // same filter as the evaluator
+            if ((long) booking.getInvoiceRecipientPK() != invoiceRecipientID) {
+                continue;
+            }
+            matchedBookings++;
+
+            if (!reader.read(booking)) {
+                continue;
+            }
+            relevantBookings++;
+            totalAmount = totalAmount.add(reader.getTotalAmountGross());
+            paidAmount = paidAmount.add(reader.getPaidAmountOrZero());
+            addCurrency(currencies, BookingAmounts.getCurrency(booking));
+        }
+
+        return new PartialTotals(totalAmount, paidAmount, Collections.unmodifiableList(currencies),
+                scannedBookings, matchedBookings, relevantBookings);
+    }
+
+    /**
+     * Add a currency to the first two distinct currencies
+     */
+    private static void addCurrency(final List<String> currencies, final String currency) {
+        if (currencies.size() < 2 && !currencies.contains(currency)) {
+            currencies.add(currency);
+        }
+    }
+
+    /**
+     * Merge the totals of this shard with the ones of the following shard
+     *
+     * @param next the totals of the bookings following the ones of this shard
+     * @return the totals of both shards
+     */
+    public PartialTotals merge(final PartialTotals next) {
+        final List<String> mergedCurrencies = new ArrayList<>(currencies);
+        for (final String currency : next.currencies) {
+            addCurrency(mergedCurrencies, currency);
+        }
+        return new PartialTotals(
+                totalAmount.add(next.totalAmount),
+                paidAmount.add(next.paidAmount),
+                Collections.unmodifiableList(mergedCurrencies),
+                scannedBookings + next.scannedBookings,
+                matchedBookings + next.matchedBookings,
+                relevantBookings + next.relevantBookings);
+    }
+
+    /**
+     * Round the totals, like {@link BookingsCurrencyAmountsEvaluator} at the end of a calculation
+     *
+     * @return the totals, {@link EvaluationResult#EMPTY} if there are no relevant bookings
+     * @throws InconsistentCurrenciesException if the relevant bookings have different currencies
+     */
+    public EvaluationResult toResult() throws InconsistentCurrenciesException {
+        if (currencies.isEmpty()) {
+            return EvaluationResult.EMPTY;
+        }
+        if (currencies.size() > 1) {
+            final String first = currencies.get(0);
+            final String second = currencies.get(1);
+            if (CURRENCY_ORDER.compare(first, second) < 0) {
+                throw new InconsistentCurrenciesException(first, second);
+            }
+            throw new InconsistentCurrenciesException(second, first);
+        }
+
+        final String currency = currencies.get(0);
+        return new EvaluationResult(
+                new CurrencyAmount(totalAmount, currency),
+                new CurrencyAmount(paidAmount, currency),
+                new CurrencyAmount(getOpenAmount(), currency));
+    }
+
+    /**
+     * @return the unrounded total amount gross of the relevant bookings
+     */
+    public BigDecimal getTotalAmount() {
+        return totalAmount;
+    }
+
+    /**
+     * @return the unrounded paid amount of the relevant bookings
+     */
+    public BigDecimal getPaidAmount() {
+        return paidAmount;
+    }
+
+    /**
+     * @return the unrounded open amount of the relevant bookings
+     */
+    public BigDecimal getOpenAmount() {
+        return totalAmount.subtract(paidAmount);
+    }
+
+    /**
+     * @return the first two distinct currencies of the relevant bookings, in the order of the bookings
+     */
+    public List<String> getCurrencies() {
+        return currencies;
+    }
+
+    public long getScannedBookings() {
+        return scannedBookings;
+    }
+
+    public long getMatchedBookings() {
+        return matchedBookings;
+    }
+
+    public long getRelevantBookings() {
+        return relevantBookings;
+    }
+
+    // *************************************************************************
+    // * Wire format
+    // *
+
+    /**
+     * Write the totals at the position of a buffer: the counters as variable length longs, the number of currencies
+     * as byte, each currency as length + 1 and UTF-8 bytes (0 for null), the amounts as decimals of
+     * {@link BookingCodec#putDecimal(ByteBuffer, BigDecimal)}
+     *
+     * @param buffer the buffer
+     * @throws BufferOverflowException if the totals do not fit into the buffer
+     */
+    public void encode(final ByteBuffer buffer) {
+        BookingCodec.putVarLong(buffer, scannedBookings);
+        BookingCodec.putVarLong(buffer, matchedBookings);
+        BookingCodec.putVarLong(buffer, relevantBookings);
+        buffer.put((byte) currencies.size());
+        for (final String currency : currencies) {
+            if (currency == null) {
+                BookingCodec.putVarLong(buffer, 0);
+            }
+            else {
+                final byte[] bytes = currency.getBytes(StandardCharsets.UTF_8);
+                BookingCodec.putVarLong(buffer, bytes.length + 1);
+                buffer.put(bytes);
+            }
+        }
+        BookingCodec.putDecimal(buffer, totalAmount);
+        BookingCodec.putDecimal(buffer, paidAmount);
+    }
+
+    /**
+     * Read totals written by {@link #encode(ByteBuffer)}
+     *
+     * @param buffer the buffer
+     * @return the totals
+     * @throws BufferUnderflowException if the buffer does not contain the whole totals
+     */
+    public static PartialTotals decode(final ByteBuffer buffer) {
+        final long scannedBookings = BookingCodec.getVarLong(buffer);
+        final long matchedBookings = BookingCodec.getVarLong(buffer);
+        final long relevantBookings = BookingCodec.getVarLong(buffer);
+        final int currencyCount = buffer.get();
+        if (currencyCount < 0 || currencyCount > 2) {
+            throw new IllegalArgumentException("invalid number of currencies " + currencyCount);
+        }
+        final List<String> currencies = new ArrayList<>(currencyCount);
+        for (int i = 0; i < currencyCount; i++) {
+            final int length = (int) BookingCodec.getVarLong(buffer) - 1;
+            if (length == -1) {
+                currencies.add(null);
+                continue;
+            }
+            if (length < 0 || length > buffer.remaining()) {
+                throw new BufferUnderflowException();
+            }
+            final byte[] bytes = new byte[length];
+            buffer.get(bytes);
+            currencies.add(new String(bytes, StandardCharsets.UTF_8));
+        }
+        final BigDecimal totalAmount = BookingCodec.getDecimal(buffer);
+        final BigDecimal paidAmount = BookingCodec.getDecimal(buffer);
+        return new PartialTotals(totalAmount, paidAmount, Collections.unmodifiableList(currencies),
+                scannedBookings, matchedBookings, relevantBookings);
+    }
+
+    /**
+     * @return the totals in the format of {@link #encode(ByteBuffer)}
+     */
+    public byte[] toBytes() {
+        // the currencies are short, larger amounts are rare
+        ByteBuffer buffer = ByteBuffer.allocate(128);
+        while (true) {
+            try {
+                encode(buffer);
+                final byte[] bytes = new byte[buffer.position()];
+                buffer.flip();
+                buffer.get(bytes);
+                return bytes;
+            }
+            catch (BufferOverflowException e) {
+                buffer = ByteBuffer.allocate(buffer.capacity() * 2);
+            }
+        }
+    }
+
+    /**
+     * @param bytes totals in the format of {@link #encode(ByteBuffer)}
+     * @return the totals
+     */
+    public static PartialTotals fromBytes(final byte[] bytes) {
+        return decode(ByteBuffer.wrap(bytes));
+    }
+
+    @Override
+    public boolean equals(final Object other) {
+        if (this == other) {
+            return true;
+        }
+        if (!(other instanceof PartialTotals)) {
+            return false;
+        }
+        final PartialTotals otherTotals = (PartialTotals) other;
+        return totalAmount.compareTo(otherTotals.totalAmount) == 0
+                && paidAmount.compareTo(otherTotals.paidAmount) == 0
+                && currencies.equals(otherTotals.currencies)
+                && scannedBookings == otherTotals.scannedBookings
+                && matchedBookings == otherTotals.matchedBookings
+                && relevantBookings == otherTotals.relevantBookings;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(totalAmount.stripTrailingZeros(), paidAmount.stripTrailingZeros(), currencies,
+                scannedBookings, matchedBookings, relevantBookings);
+    }
+
+    @Override
+    public String toString() {
+        return "total: " + totalAmount.toPlainString() + ", paid: " + paidAmount.toPlainString()
+                + ", currencies: " + currencies + ", bookings: " + relevantBookings + "/" + matchedBookings + "/"
+                + scannedBookings;
+    }
+}
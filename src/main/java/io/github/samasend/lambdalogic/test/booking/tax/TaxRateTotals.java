@@ -0,0 +1,87 @@
+package io.github.samasend.lambdalogic.test.booking.tax;
+
+import com.lambdalogic.test.booking.model.CurrencyAmount;
+
+import java.math.BigDecimal;
+import java.util.Objects;
+
+/**
+ * The net, tax and gross totals of all prices with the same currency and tax rate, a line of a {@link TaxReport}.
+ * <p>
+ * The net amount plus the tax amount is always the gross amount.
+ * <p>
+ * {@link CurrencyAmount} is mutable, so the amounts are copied when they are returned. Instances are immutable.
+ */
+public final class TaxRateTotals {
+
+    private final String currency;
+
+    private final BigDecimal taxRate;
+
+    private final BigDecimal netAmount;
+
+    private final BigDecimal taxAmount;
+
+    private final BigDecimal grossAmount;
+
+    TaxRateTotals(final String currency, final BigDecimal taxRate, final BigDecimal netAmount,
+                  final BigDecimal grossAmount) {
+        this.currency = currency;
+        this.taxRate = taxRate;
+        this.netAmount = netAmount;
+        this.taxAmount = grossAmount.subtract(netAmount);
+        this.grossAmount = grossAmount;
+    }
+
+    /**
+     * @return the currency of the prices, may be null
+     */
+    public String getCurrency() {
+        return currency;
+    }
+
+    /**
+     * @return the tax rate of the prices, 19 means 19% like {@link com.lambdalogic.test.booking.model.Price#getTaxRate()}
+     */
+    public BigDecimal getTaxRate() {
+        return taxRate;
+    }
+
+    public CurrencyAmount getNetAmount() {
+        return new CurrencyAmount(netAmount, currency);
+    }
+
+    public CurrencyAmount getTaxAmount() {
+        return new CurrencyAmount(taxAmount, currency);
+    }
+
+    public CurrencyAmount getGrossAmount() {
+        return new CurrencyAmount(grossAmount, currency);
+    }
+
+    @Override
+    public boolean equals(final Object other) {
+        if (this == other) {
+            return true;
+        }
+        if (!(other instanceof TaxRateTotals)) {
+            return false;
+        }
+        final TaxRateTotals otherTotals = (TaxRateTotals) other;
+        return Objects.equals(currency, otherTotals.currency)
+                && taxRate.compareTo(otherTotals.taxRate) == 0
+                && netAmount.equals(otherTotals.netAmount)
+                && grossAmount.equals(otherTotals.grossAmount);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(currency, taxRate.stripTrailingZeros(), netAmount, grossAmount);
+    }
+
+    @Override
+    public String toString() {
+        return taxRate.toPlainString() + "% " + currency
+                + " net: " + netAmount + ", tax: " + taxAmount + ", gross: " + grossAmount;
+    }
+}
@@ -0,0 +1,220 @@
+package io.github.samasend.lambdalogic.test.booking.tax;
+
+import com.lambdalogic.test.booking.model.Booking;
+import com.lambdalogic.test.booking.model.Price;
+import io.github.samasend.lambdalogic.test.booking.ScaledAmounts;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static io.github.samasend.lambdalogic.test.booking.ScaledAmounts.NOT_SCALED;
+
+/**
+ * Adds up the net, tax and gross amounts of the prices of {@link Booking}s per currency and tax rate, per invoice
+ * recipient and overall, e.g. for a VAT return.
+ * <p>
+ * Every booking is read once, with all four of its prices. Each combination of currency and tax rate gets a small
+ * integer id when it is seen first, so the totals of a recipient are arrays indexed by that id. Tax rates are compared
+ * by value, 19 and 19.00 are the same rate.
+ * <p>
+ * The amounts follow {@link Price#getAmountNet()} and {@link Price#getAmountTax()}, but they are rounded once per
+ * tax rate instead of once per price, so rounding errors are not added up. For that purpose the amounts of the gross
+ * prices and of the net prices of a tax rate are added up separately, exactly. With the tax rate factor
+ * {@code f = 1 + taxRate / 100} the totals are
+ * <ul>
+ * <li>gross: the gross amounts plus the net amounts times {@code f}, rounded once</li>
+ * <li>net: the net amounts plus the gross amounts divided by {@code f}, rounded once</li>
+ * <li>tax: gross minus net, like {@link Price#getAmountTax()} of a gross price</li>
+ * </ul>
+ * Unlike the totals of the evaluators, zero prices and paid amounts play no role: a price of 0 adds a line with
+ * zero amounts, the paid amounts are ignored. Bookings without invoice recipient are only part of the overall totals.
+ * <p>
+ * The report is not thread-safe.
+ */
+public class TaxReport {
+
+    /**
+     * orders the lines of a report by currency and tax rate
+     */
+    private static final Comparator<TaxRateTotals> LINE_ORDER = Comparator
+            .comparing(TaxRateTotals::getCurrency, Comparator.nullsFirst(Comparator.naturalOrder()))
+            .thenComparing(TaxRateTotals::getTaxRate);
+
+    /**
+     * The exact sums of the gross and net prices per id, as cents that fall back to {@link BigDecimal}s on overflow
+     */
+    private static final class Sums {
+
+        private long[] grossCents = new long[0];
+
+        private long[] netCents = new long[0];
+
+        /**
+         * the parts of the sums that did not fit into the cents, null if there are none
+         */
+        private BigDecimal[] rests = null;
+
+        private boolean[] used = new boolean[0];
+
+        private void add(final int id, final BigDecimal amount, final boolean gross) {
+            if (id >= used.length) {
+                final int length = Math.max(id + 1, used.length * 2);
+                grossCents = Arrays.copyOf(grossCents, length);
+                netCents = Arrays.copyOf(netCents, length);
+                used = Arrays.copyOf(used, length);
+                if (rests != null) {
+                    rests = Arrays.copyOf(rests, 2 * length);
+                }
+            }
+            used[id] = true;
+
+            final long[] cents = gross ? grossCents : netCents;
+            final long scaled = ScaledAmounts.toScaled(amount, 2);
+            if (scaled != NOT_SCALED && !ScaledAmounts.overflows(cents[id], scaled)) {
+                cents[id] += scaled;
+                return;
+            }
+
+            if (rests == null) {
+                rests = new BigDecimal[2 * used.length];
+            }
+            final int rest = 2 * id + (gross ? 0 : 1);
+            rests[rest] = rests[rest] == null ? amount : rests[rest].add(amount);
+        }
+
+        private BigDecimal sum(final int id, final boolean gross) {
+            final BigDecimal cents = BigDecimal.valueOf(gross ? grossCents[id] : netCents[id], 2);
+            final BigDecimal rest = rests == null ? null : rests[2 * id + (gross ? 0 : 1)];
+            return rest == null ? cents : cents.add(rest);
+        }
+    }
+
+    /**
+     * the ids of the combinations of currency and tax rate, the rates as given by the prices
+     */
+    private final Map<String, Map<BigDecimal, Integer>> ids = new HashMap<>();
+
+    /**
+     * the ids of the combinations of currency and tax rate, the rates without trailing zeros
+     */
+    private final Map<String, Map<BigDecimal, Integer>> normalizedIds = new HashMap<>();
+
+    private final List<String> currencies = new ArrayList<>();
+
+    private final List<BigDecimal> taxRates = new ArrayList<>();
+
+    private final Sums totalSums = new Sums();
+
+    private final Map<Long, Sums> recipientSums = new HashMap<>();
+
+    /**
+     * Create a report of a set of bookings
+     *
+     * @param bookings the bookings
+     * @return the report
+     */
+    public static TaxReport of(final Iterable<Booking> bookings) {
+        final TaxReport report = new TaxReport();
+        for (final Booking booking : bookings) {
+            report.add(booking);
+        }
+        return report;
+    }
+
+    /**
+     * Add the prices of a booking, without creating its missing prices
+     *
+     * @param booking the booking
+     */
+    public void add(final Booking booking) {
+        final Sums sums = booking.getInvoiceRecipientPK() == null
+                ? null
+                : recipientSums.computeIfAbsent(booking.getInvoiceRecipientPK(), pk -> new Sums());
+
+        for (final Price price : booking.getPrices()) {
+            if (price == null || price.getAmount() == null) {
+                continue;
+            }
+            final int id = idOf(price.getCurrency(), price.getTaxRate());
+            totalSums.add(id, price.getAmount(), price.isGross());
+            if (sums != null) {
+                sums.add(id, price.getAmount(), price.isGross());
+            }
+        }
+    }
+
+    /**
+     * @return the id of a combination of currency and tax rate, a new one if it has not been seen before
+     */
+    private int idOf(final String currency, final BigDecimal taxRate) {
+        final Map<BigDecimal, Integer> currencyIds = ids.computeIfAbsent(currency, key -> new HashMap<>());
+        final Integer id = currencyIds.get(taxRate);
+        if (id != null) {
+            return id;
+        }
+
+        // a new scale of a known rate gets the id of that rate
+        final int newId = normalizedIds.computeIfAbsent(currency, key -> new HashMap<>())
+                .computeIfAbsent(taxRate.stripTrailingZeros(), key -> {
+                    currencies.add(currency);
+                    taxRates.add(taxRate);
+                    return taxRates.size() - 1;
+                });
+        currencyIds.put(taxRate, newId);
+        return newId;
+    }
+
+    /**
+     * @return the totals of all bookings per currency and tax rate, ordered by currency and tax rate
+     */
+    public List<TaxRateTotals> getTotals() {
+        return toLines(totalSums);
+    }
+
+    /**
+     * @param recipientPK the PK of an invoice recipient
+     * @return the totals of the bookings of the invoice recipient per currency and tax rate, ordered by currency and
+     * tax rate, an empty list if the recipient has no bookings
+     */
+    public List<TaxRateTotals> getTotals(final long recipientPK) {
+        final Sums sums = recipientSums.get(recipientPK);
+        return sums == null ? Collections.emptyList() : toLines(sums);
+    }
+
+    /**
+     * @return the PKs of the invoice recipients of the bookings
+     */
+    public Set<Long> getRecipientPKs() {
+        return Collections.unmodifiableSet(recipientSums.keySet());
+    }
+
+    private List<TaxRateTotals> toLines(final Sums sums) {
+        final List<TaxRateTotals> lines = new ArrayList<>();
+        for (int id = 0; id < sums.used.length; id++) {
+            if (!sums.used[id]) {
+                continue;
+            }
+
+            final BigDecimal taxRate = taxRates.get(id);
+            final BigDecimal factor = taxRate.divide(Price.BD_100).add(BigDecimal.ONE);
+            final BigDecimal grossPrices = sums.sum(id, true);
+            final BigDecimal netPrices = sums.sum(id, false);
+
+            // rounded once per tax rate, the division through the factor is the only inexact operation
+            final BigDecimal gross = grossPrices.add(netPrices.multiply(factor)).setScale(2, RoundingMode.HALF_UP);
+            final BigDecimal net = netPrices.add(grossPrices.divide(factor, 2, RoundingMode.HALF_UP))
+                    .setScale(2, RoundingMode.HALF_UP);
+            lines.add(new TaxRateTotals(currencies.get(id), taxRate, net, gross));
+        }
+        lines.sort(LINE_ORDER);
+        return lines;
+    }
+}
@@ -0,0 +1,117 @@
+package io.github.samasend.lambdalogic.test.booking;
+
+import com.lambdalogic.test.booking.model.Booking;
+import com.lambdalogic.test.booking.model.CurrencyAmount;
+import com.lambdalogic.test.booking.model.Price;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static io.github.samasend.lambdalogic.test.booking.TestBookings.*;
+import static java.math.BigDecimal.*;
+import static org.junit.Assert.*;
+
+public class AgingBucketsTest {
+
+    private static final long DAY = 86_400_000L;
+
+    private static final Date REFERENCE_DATE = new Date(1_700_000_000_000L);
+
+    @Test(expected = Test.None.class)
+    public void bucketsOfDefaultAging() {
+        AgingBuckets buckets = AgingBuckets.DEFAULT;
+
+        assertEquals(4, buckets.getBucketCount());
+        assertEquals(0, buckets.bucketOf(-1));
+        assertEquals(0, buckets.bucketOf(0));
+        assertEquals(0, buckets.bucketOf(30));
+        assertEquals(1, buckets.bucketOf(31));
+        assertEquals(2, buckets.bucketOf(90));
+        assertEquals(3, buckets.bucketOf(91));
+
+        assertEquals(0, buckets.bucketOf(daysAgo(30), REFERENCE_DATE.getTime()));
+        // only whole days count
+        assertEquals(0, buckets.bucketOf(new Date(daysAgo(31).getTime() + 1), REFERENCE_DATE.getTime()));
+        assertEquals(1, buckets.bucketOf(daysAgo(31), REFERENCE_DATE.getTime()));
+        assertEquals(3, buckets.bucketOf(null, REFERENCE_DATE.getTime()));
+
+        assertEquals("0-30, 31-60, 61-90, 90+", buckets.toString());
+        assertEquals(new AgingBuckets(30, 60, 90), buckets);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectDescendingBounds() {
+        new AgingBuckets(60, 30);
+    }
+
+    @Test(expected = Test.None.class)
+    public void splitOpenAmountByAge() throws Exception {
+        List<Booking> bookings = Arrays.asList(
+                getBooking(MY_INVOICE_RECIPIENT_ID, new Price(new BigDecimal("0.10"), "€", new BigDecimal(19), false), null, daysAgo(1)),
+                getBooking(MY_INVOICE_RECIPIENT_ID, new Price(new BigDecimal("0.10"), "€", new BigDecimal(19), false), null, daysAgo(2)),
+                getBooking(MY_INVOICE_RECIPIENT_ID, new Price(TEN, "€", ZERO, true), ONE, daysAgo(45)),
+                getBooking(OTHER_INVOICE_RECIPIENT_ID, new Price(TEN, "€", ZERO, true), null, daysAgo(45)),
+                getBooking(MY_INVOICE_RECIPIENT_ID, new Price(TEN, "€", ZERO, true), TEN, daysAgo(100)),
+                getBooking(MY_INVOICE_RECIPIENT_ID, new Price(ONE, "€", ZERO, true), null, null)
+        );
+
+        BookingsCurrencyAmountsEvaluator evaluator = new BookingsCurrencyAmountsEvaluator();
+        evaluator.setAging(AgingBuckets.DEFAULT, REFERENCE_DATE);
+        evaluator.calculate(bookings, MY_INVOICE_RECIPIENT_ID);
+
+        assertEquals(Arrays.asList(
+                new CurrencyAmount(new BigDecimal("0.24"), "€"),
+                new CurrencyAmount(new BigDecimal("9"), "€"),
+                new CurrencyAmount(ZERO, "€"),
+                new CurrencyAmount(ONE, "€")
+        ), evaluator.getAgedOpenAmounts());
+
+        // the same as a calculation per bucket, also for the single pass over an iterator
+        assertEquals(calculatePerBucket(bookings, AgingBuckets.DEFAULT), evaluator.getAgedOpenAmounts());
+        List<CurrencyAmount> listResult = evaluator.getAgedOpenAmounts();
+        evaluator.calculate(bookings.iterator(), MY_INVOICE_RECIPIENT_ID);
+        assertEquals(listResult, evaluator.getAgedOpenAmounts());
+        assertEquals(new CurrencyAmount(new BigDecimal("10.24"), "€"), evaluator.getTotalOpenAmount());
+    }
+
+    @Test(expected = Test.None.class)
+    public void noAgedOpenAmountsWithoutAgingOrBookings() throws Exception {
+        List<Booking> bookings = Arrays.asList(
+                getBooking(MY_INVOICE_RECIPIENT_ID, new Price(TEN, "€", ZERO, true), null, daysAgo(1)));
+
+        BookingsCurrencyAmountsEvaluator evaluator = new BookingsCurrencyAmountsEvaluator();
+        evaluator.calculate(bookings, MY_INVOICE_RECIPIENT_ID);
+        assertNull(evaluator.getAgedOpenAmounts());
+
+        evaluator.setAging(new AgingBuckets(7), REFERENCE_DATE);
+        evaluator.calculate(bookings, MY_INVOICE_RECIPIENT_ID);
+        assertEquals(2, evaluator.getAgedOpenAmounts().size());
+
+        evaluator.calculate(bookings, OTHER_INVOICE_RECIPIENT_ID);
+        assertNull(evaluator.getAgedOpenAmounts());
+    }
+
+    private List<CurrencyAmount> calculatePerBucket(List<Booking> bookings, AgingBuckets buckets) throws Exception {
+        List<CurrencyAmount> result = new ArrayList<>();
+        BookingsCurrencyAmountsEvaluator evaluator = new BookingsCurrencyAmountsEvaluator();
+        for (int bucket = 0; bucket < buckets.getBucketCount(); bucket++) {
+            final int b = bucket;
+            evaluator.calculate(bookings.stream()
+                    .filter(booking -> buckets.bucketOf(booking.getBookingDate(), REFERENCE_DATE.getTime()) == b)
+                    .collect(Collectors.toList()), MY_INVOICE_RECIPIENT_ID);
+            result.add(evaluator.getTotalOpenAmount() == null
+                    ? new CurrencyAmount(ZERO, "€")
+                    : evaluator.getTotalOpenAmount());
+        }
+        return result;
+    }
+
+    private static Date daysAgo(int days) {
+        return new Date(REFERENCE_DATE.getTime() - days * DAY);
+    }
+}
@@ -11,6 +11,7 @@ import java.math.BigDecimal;
 import java.util.*;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
+import java.util.stream.Stream;
 
 import static java.math.BigDecimal.*;
 import static org.junit.Assert.*;
@@ -216,6 +217,53 @@ public class BookingsCurrencyAmountsEvaluatorTest {
         assertEquals(evaluator.getTotalPaidAmount(), expectedPaid);
     }
 
+    @Test(expected = Test.None.class)
+    public void calculateStreamLikeList() throws InconsistentCurrenciesException {
+        BookingsCurrencyAmountsEvaluator listEvaluator = new BookingsCurrencyAmountsEvaluator();
+        BookingsCurrencyAmountsEvaluator streamEvaluator = new BookingsCurrencyAmountsEvaluator();
+
+        List<Booking> bookings = IntStream.rangeClosed(1, 100)
+                .mapToObj(i -> getBooking(i % 3 == 0 ? OTHER_INVOICE_RECIPIENT_ID : MY_INVOICE_RECIPIENT_ID,
+                        new Price(new BigDecimal("0.10"), "€", new BigDecimal(19), i % 2 == 0), new BigDecimal("0.05")))
+                .peek(booking -> booking.setAdd2Price(new Price(ONE, "€", new BigDecimal("7"), false)))
+                .collect(Collectors.toList());
+
+        listEvaluator.calculate(bookings, MY_INVOICE_RECIPIENT_ID);
+
+        streamEvaluator.calculate(bookings.stream(), MY_INVOICE_RECIPIENT_ID);
+        assertEquals(listEvaluator.getTotalAmount(), streamEvaluator.getTotalAmount());
+        assertEquals(listEvaluator.getTotalPaidAmount(), streamEvaluator.getTotalPaidAmount());
+        assertEquals(listEvaluator.getTotalOpenAmount(), streamEvaluator.getTotalOpenAmount());
+
+        streamEvaluator.calculate(bookings.spliterator(), MY_INVOICE_RECIPIENT_ID);
+        assertEquals(listEvaluator.getTotalAmount(), streamEvaluator.getTotalAmount());
+
+        streamEvaluator.calculate(Collections.emptyIterator(), MY_INVOICE_RECIPIENT_ID);
+        assertNull(streamEvaluator.getTotalAmount());
+        assertNull(streamEvaluator.getTotalPaidAmount());
+        assertNull(streamEvaluator.getTotalOpenAmount());
+    }
+
+    @Test(expected = Test.None.class)
+    public void stopReadingAtInconsistentCurrencies() {
+        BookingsCurrencyAmountsEvaluator evaluator = new BookingsCurrencyAmountsEvaluator();
+
+        List<Booking> read = new ArrayList<>();
+        Iterator<Booking> bookings = Stream.iterate(0, i -> i + 1)
+                .map(i -> getBooking(MY_INVOICE_RECIPIENT_ID, new Price(TEN, i == 3 ? "ብር" : "€", ZERO, true)))
+                .peek(read::add)
+                .iterator();
+
+        try {
+            evaluator.calculate(bookings, MY_INVOICE_RECIPIENT_ID);
+            fail("Should NOT reach here");
+        }
+        catch (InconsistentCurrenciesException e) {
+            assertEquals(4, read.size());
+            assertNull(evaluator.getTotalAmount());
+        }
+    }
+
     protected Booking getBooking(Long invoiceRecipientID, Price mainPrice) {
         return getBooking(invoiceRecipientID, mainPrice, null);
     }
@@ -0,0 +1,138 @@
+package io.github.samasend.lambdalogic.test.booking;
+
+import com.lambdalogic.test.booking.exception.InconsistentCurrenciesException;
+import com.lambdalogic.test.booking.model.Booking;
+import com.lambdalogic.test.booking.model.Price;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static io.github.samasend.lambdalogic.test.booking.TestBookings.*;
+import static org.junit.Assert.*;
+
+/**
+ * Allocation budget of the hot path of {@link BookingsCurrencyAmountsEvaluator#calculate}.
+ * <p>
+ * The allocated bytes of the current thread are measured for lists of several sizes. The bytes per booking are the
+ * slope between the smallest and the largest list, so the constant allocations of a call (results, events, ...)
+ * are not counted. The test fails if the slope exceeds the budget.
+ * <p>
+ * The budgets can be configured by the system properties {@value #LIST_BUDGET_PROPERTY} and
+ * {@value #ITERATOR_BUDGET_PROPERTY} in bytes per booking.
+ */
+public class EvaluatorAllocationTest {
+
+    static final String LIST_BUDGET_PROPERTY = "booking.allocation.budget.list";
+
+    static final String ITERATOR_BUDGET_PROPERTY = "booking.allocation.budget.iterator";
+
+    /**
+     * the list path keeps a list of the relevant bookings, that is a reference and some spare capacity per booking
+     */
+    private static final double DEFAULT_LIST_BUDGET = 32;
+
+    /**
+     * the iterator path does not keep any booking
+     */
+    private static final double DEFAULT_ITERATOR_BUDGET = 1;
+
+    private static final int[] SIZES = {1_000, 10_000, 100_000};
+
+    private static final int WARM_UP_ITERATIONS = 100;
+
+    private static final int MEASURE_ITERATIONS = 5;
+
+    private static final long INVOICE_RECIPIENT_ID = 1L;
+
+    @FunctionalInterface
+    private interface Calculation {
+        void calculate(BookingsCurrencyAmountsEvaluator evaluator, List<Booking> bookings)
+                throws InconsistentCurrenciesException;
+    }
+
+    private com.sun.management.ThreadMXBean threadMXBean;
+
+    @Before
+    public void setUp() {
+        final ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+        threadMXBean = (com.sun.management.ThreadMXBean) bean;
+        Assume.assumeTrue(threadMXBean.isThreadAllocatedMemorySupported());
+        threadMXBean.setThreadAllocatedMemoryEnabled(true);
+    }
+
+    @Test(expected = Test.None.class)
+    public void calculateListWithinBudget() throws Exception {
+        final double bytesPerBooking = measureBytesPerBooking(
+                (evaluator, bookings) -> evaluator.calculate(bookings, INVOICE_RECIPIENT_ID));
+        assertWithinBudget("calculate(List, Long)", bytesPerBooking, LIST_BUDGET_PROPERTY, DEFAULT_LIST_BUDGET);
+    }
+
+    @Test(expected = Test.None.class)
+    public void calculateIteratorWithinBudget() throws Exception {
+        final double bytesPerBooking = measureBytesPerBooking(
+                (evaluator, bookings) -> evaluator.calculate(bookings.iterator(), INVOICE_RECIPIENT_ID));
+        assertWithinBudget("calculate(Iterator, Long)", bytesPerBooking, ITERATOR_BUDGET_PROPERTY,
+                DEFAULT_ITERATOR_BUDGET);
+    }
+
+    private static void assertWithinBudget(String path, double bytesPerBooking, String property, double defaultBudget) {
+        final double budget = Double.parseDouble(System.getProperty(property, String.valueOf(defaultBudget)));
+        assertTrue(String.format("%s allocates %.2f bytes per booking, the budget (%s) is %.2f",
+                path, bytesPerBooking, property, budget), bytesPerBooking <= budget);
+    }
+
+    /**
+     * @return the allocated bytes per booking, the slope between the smallest and the largest list
+     */
+    private double measureBytesPerBooking(Calculation calculation) throws InconsistentCurrenciesException {
+        final BookingsCurrencyAmountsEvaluator evaluator = new BookingsCurrencyAmountsEvaluator();
+        final long[] allocatedBytes = new long[SIZES.length];
+
+        for (int i = 0; i < SIZES.length; i++) {
+            final List<Booking> bookings = getBookings(SIZES[i]);
+
+            // let the JIT compile the hot path, so escape analysis is applied
+            for (int j = 0; j < WARM_UP_ITERATIONS; j++) {
+                calculation.calculate(evaluator, bookings);
+            }
+
+            // the minimum ignores one-off allocations like deoptimizations
+            allocatedBytes[i] = Long.MAX_VALUE;
+            for (int j = 0; j < MEASURE_ITERATIONS; j++) {
+                final long threadID = Thread.currentThread().getId();
+                final long before = threadMXBean.getThreadAllocatedBytes(threadID);
+                calculation.calculate(evaluator, bookings);
+                allocatedBytes[i] = Math.min(allocatedBytes[i], threadMXBean.getThreadAllocatedBytes(threadID) - before);
+            }
+            assertNotNull(evaluator.getTotalAmount());
+        }
+
+        final int last = SIZES.length - 1;
+        return (double) (allocatedBytes[last] - allocatedBytes[0]) / (SIZES[last] - SIZES[0]);
+    }
+
+    /**
+     * @return net and gross bookings, three of four for the invoice recipient, some of them without amounts
+     */
+    private List<Booking> getBookings(int size) {
+        final Random random = new Random(size);
+        final List<Booking> bookings = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            final Price price = i % 10 == 0
+                    ? new Price(BigDecimal.ZERO, "€", BigDecimal.ZERO, true)
+                    : new Price(BigDecimal.valueOf(random.nextInt(100_000), 2), "€", BigDecimal.valueOf(19),
+                    random.nextBoolean());
+            final BigDecimal paidAmount = i % 3 == 0 ? BigDecimal.valueOf(random.nextInt(1_000), 2) : null;
+            bookings.add(getBooking(i % 4 == 0 ? 2L : INVOICE_RECIPIENT_ID, price, paidAmount));
+        }
+        return bookings;
+    }
+}
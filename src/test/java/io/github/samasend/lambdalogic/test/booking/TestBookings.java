@@ -0,0 +1,62 @@
+package io.github.samasend.lambdalogic.test.booking;
+
+import com.lambdalogic.test.booking.model.Booking;
+import com.lambdalogic.test.booking.model.Price;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Creates the {@link Booking}s of the tests.
+ * <p>
+ * Bookings get consecutive IDs, starting far above the small IDs that tests assign themselves, so a failing test
+ * can be reproduced with the same IDs.
+ */
+public final class TestBookings {
+
+    public static final long MY_INVOICE_RECIPIENT_ID = 10001L;
+    public static final long OTHER_INVOICE_RECIPIENT_ID = 10002L;
+
+    public static final long OFFERING_PK = 500L;
+
+    private static final AtomicLong NEXT_ID = new AtomicLong(1_000_000L);
+
+    private TestBookings() {
+    }
+
+    /**
+     * @return a booking ID that has not been returned before
+     */
+    public static long nextID() {
+        return NEXT_ID.getAndIncrement();
+    }
+
+    public static Booking getBooking(Long invoiceRecipientID, Price mainPrice) {
+        return getBooking(invoiceRecipientID, mainPrice, null);
+    }
+
+    public static Booking getBooking(Long invoiceRecipientID, Price mainPrice, BigDecimal paidAmount) {
+        return getBooking(invoiceRecipientID, mainPrice, paidAmount, new Date());
+    }
+
+    public static Booking getBooking(Long invoiceRecipientID, Price mainPrice, BigDecimal paidAmount, Date bookingDate) {
+        return getBooking(nextID(), invoiceRecipientID, mainPrice, paidAmount, bookingDate);
+    }
+
+    public static Booking getBooking(Long id, Long invoiceRecipientID, Price mainPrice, BigDecimal paidAmount) {
+        return getBooking(id, invoiceRecipientID, mainPrice, paidAmount, new Date());
+    }
+
+    public static Booking getBooking(Long id, Long invoiceRecipientID, Price mainPrice, BigDecimal paidAmount,
+                                     Date bookingDate) {
+        return new Booking(
+                id,
+                mainPrice, null, null, null, paidAmount,
+                bookingDate, null,
+                Arrays.asList(100L, 101L, 102L),
+                invoiceRecipientID,
+                OFFERING_PK);
+    }
+}
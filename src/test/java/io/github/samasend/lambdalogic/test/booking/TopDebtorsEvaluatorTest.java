@@ -0,0 +1,113 @@
+package io.github.samasend.lambdalogic.test.booking;
+
+import com.lambdalogic.test.booking.model.Booking;
+import com.lambdalogic.test.booking.model.CurrencyAmount;
+import com.lambdalogic.test.booking.model.Price;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.util.*;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static io.github.samasend.lambdalogic.test.booking.TestBookings.*;
+import static java.math.BigDecimal.*;
+import static org.junit.Assert.*;
+
+public class TopDebtorsEvaluatorTest {
+
+    @Test(expected = Test.None.class)
+    public void selectLargestOpenAmounts() {
+        TopDebtorsEvaluator evaluator = new TopDebtorsEvaluator();
+
+        List<Booking> bookings = IntStream.rangeClosed(1, 100)
+                .mapToObj(i -> getBooking((long) i, new Price(new BigDecimal(i), "€", ZERO, true), null))
+                .collect(Collectors.toList());
+        Collections.shuffle(bookings, new Random(42));
+
+        Map<String, List<TopDebtorsEvaluator.Debtor>> result = evaluator.calculate(bookings, 3);
+
+        assertEquals(Collections.singleton("€"), result.keySet());
+        assertEquals(Arrays.asList(100L, 99L, 98L), recipients(result.get("€")));
+        assertEquals(new CurrencyAmount(new BigDecimal("100"), "€"), result.get("€").get(0).getOpenAmount());
+    }
+
+    @Test(expected = Test.None.class)
+    public void addUpOpenAmountsPerRecipient() {
+        TopDebtorsEvaluator evaluator = new TopDebtorsEvaluator();
+
+        List<Booking> bookings = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            bookings.add(getBooking(1L, new Price(new BigDecimal("0.10"), "€", new BigDecimal(19), false), null));
+        }
+        bookings.add(getBooking(2L, new Price(new BigDecimal("1.18"), "€", ZERO, true), null));
+        bookings.add(getBooking(3L, new Price(new BigDecimal("5"), "€", ZERO, true), new BigDecimal("4")));
+
+        List<TopDebtorsEvaluator.Debtor> debtors = evaluator.calculate(bookings, 10).get("€");
+
+        // 10 times 0.10 € net is 1.19 € gross, not 1.20 €
+        assertEquals(Arrays.asList(1L, 2L, 3L), recipients(debtors));
+        assertEquals(new CurrencyAmount(new BigDecimal("1.19"), "€"), debtors.get(0).getOpenAmount());
+        assertEquals(new CurrencyAmount(ONE, "€"), debtors.get(2).getOpenAmount());
+    }
+
+    @Test(expected = Test.None.class)
+    public void groupByCurrency() {
+        TopDebtorsEvaluator evaluator = new TopDebtorsEvaluator();
+
+        Map<String, List<TopDebtorsEvaluator.Debtor>> result = evaluator.calculate(Arrays.asList(
+                getBooking(1L, new Price(TEN, "ብር", ZERO, true), null),
+                getBooking(2L, new Price(ONE, "€", ZERO, true), null),
+                getBooking(1L, new Price(ONE, "€", ZERO, true), null),
+                getBooking(3L, new Price(TEN, "€", ZERO, true), null)
+        ), 2);
+
+        assertEquals(Arrays.asList("ብር", "€"), new ArrayList<>(result.keySet()));
+        assertEquals(Collections.singletonList(1L), recipients(result.get("ብር")));
+
+        // equal open amounts are ordered by recipient
+        assertEquals(Arrays.asList(3L, 1L), recipients(result.get("€")));
+    }
+
+    @Test(expected = Test.None.class)
+    public void ignorePaidAndZeroBookings() {
+        TopDebtorsEvaluator evaluator = new TopDebtorsEvaluator();
+
+        Map<String, List<TopDebtorsEvaluator.Debtor>> result = evaluator.calculate(Arrays.asList(
+                getBooking(1L, new Price(TEN, "€", ZERO, true), TEN),
+                getBooking(2L, new Price(ZERO, "€", ZERO, true), ZERO),
+                getBooking(3L, new Price(TEN, "€", ZERO, true), ONE),
+                getBooking(null, new Price(TEN, "€", ZERO, true), null)
+        ), 5);
+
+        assertEquals(Collections.singletonList(3L), recipients(result.get("€")));
+        assertTrue(evaluator.calculate(new ArrayList<>(), 5).isEmpty());
+        assertTrue(evaluator.calculate(Collections.singletonList(
+                getBooking(3L, new Price(TEN, "€", ZERO, true), null)), 0).isEmpty());
+    }
+
+    @Test(expected = Test.None.class)
+    public void leaveBookingsUnchanged() {
+        Booking unpaid = getBooking(1L, new Price(TEN, "€", ZERO, true), null);
+        Booking withoutPrice = getBooking(2L, null, ONE);
+
+        Map<String, List<TopDebtorsEvaluator.Debtor>> result =
+                new TopDebtorsEvaluator().calculate(Arrays.asList(unpaid, withoutPrice), 5);
+
+        assertEquals(Collections.singletonList(1L), recipients(result.get("€")));
+        assertNull(withoutPrice.getPrices()[0]);
+
+        BookingAmounts.DecimalReader reader = new BookingAmounts.DecimalReader();
+        reader.read(unpaid);
+        assertNull(reader.getPaidAmount());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectNegativeLimit() {
+        new TopDebtorsEvaluator().calculate(new ArrayList<>(), -1);
+    }
+
+    private static List<Long> recipients(List<TopDebtorsEvaluator.Debtor> debtors) {
+        return debtors.stream().map(TopDebtorsEvaluator.Debtor::getInvoiceRecipientPK).collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,115 @@
+package io.github.samasend.lambdalogic.test.booking;
+
+import com.lambdalogic.test.booking.model.AmountAccumulator;
+import com.lambdalogic.test.booking.model.Booking;
+import com.lambdalogic.test.booking.model.CurrencyAmount;
+import com.lambdalogic.test.booking.model.Price;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+
+import static java.math.BigDecimal.*;
+import static org.junit.Assert.*;
+
+public class TotalsAccumulatorTest {
+
+    @Test(expected = Test.None.class)
+    public void addNetAndGrossPrices() throws Exception {
+        TotalsAccumulator accumulator = new TotalsAccumulator();
+
+        for (int i = 0; i < 10; i++) {
+            assertTrue(accumulator.add(getBooking(new Price(new BigDecimal("0.10"), "€", new BigDecimal(19), false), null)));
+        }
+        assertTrue(accumulator.add(getBooking(new Price(new BigDecimal("2.50"), "€", ZERO, true), new BigDecimal("1.00"))));
+
+        EvaluationResult result = accumulator.toResult();
+        assertEquals(11, accumulator.getBookingCount());
+        assertEquals(new CurrencyAmount(new BigDecimal("3.69"), "€"), result.getTotalAmount());
+        assertEquals(new CurrencyAmount(ONE, "€"), result.getTotalPaidAmount());
+        assertEquals(new CurrencyAmount(new BigDecimal("2.69"), "€"), result.getTotalOpenAmount());
+    }
+
+    @Test(expected = Test.None.class)
+    public void fallBackToBigDecimal() throws Exception {
+        TotalsAccumulator accumulator = new TotalsAccumulator();
+
+        // too many decimal places and too large for a scaled long
+        accumulator.add(getBooking(new Price(new BigDecimal("0.0000001"), "€", ZERO, true), null));
+        accumulator.add(getBooking(new Price(new BigDecimal("9000000000000000000"), "€", ZERO, true), null));
+        accumulator.add(getBooking(new Price(new BigDecimal("9000000000000.00"), "€", ZERO, true), null));
+        accumulator.add(getBooking(new Price(new BigDecimal("9000000000000.00"), "€", ZERO, true), null));
+
+        assertEquals(new CurrencyAmount(new BigDecimal("9000018000000000000.00"), "€"),
+                accumulator.toResult().getTotalAmount());
+    }
+
+    @Test(expected = Test.None.class)
+    public void doNotCreateMissingPrices() throws Exception {
+        TotalsAccumulator accumulator = new TotalsAccumulator();
+        Booking booking = getBooking(new Price(ZERO, "€", ZERO, true), ZERO);
+
+        assertFalse(accumulator.isRelevant(booking));
+        assertFalse(accumulator.add(booking));
+
+        // the getters would create the missing prices, so count the prices read instead
+        int[] prices = new int[1];
+        booking.accumulateInto(new AmountAccumulator() {
+            @Override
+            public void addPrice(BigDecimal amount, BigDecimal taxRateDiv100Add1, boolean gross) {
+                prices[0]++;
+            }
+
+            @Override
+            public void addPaidAmount(BigDecimal paidAmount) {
+            }
+        });
+        assertEquals(1, prices[0]);
+        assertSame(EvaluationResult.EMPTY, accumulator.toResult());
+    }
+
+    @Test(expected = Test.None.class)
+    public void addBookingWithoutMainPrice() throws Exception {
+        TotalsAccumulator accumulator = new TotalsAccumulator();
+        Booking booking = getBooking(null, ONE);
+
+        assertTrue(accumulator.add(booking));
+        assertNull(accumulator.getCurrency());
+        // the currency has been read without creating the main price
+        assertNull(booking.getPrices()[0]);
+    }
+
+    @Test(expected = Test.None.class)
+    public void keepThePaidAmountOfTheLastBooking() throws Exception {
+        TotalsAccumulator accumulator = new TotalsAccumulator();
+
+        assertTrue(accumulator.add(getBooking(new Price(TEN, "€", ZERO, true), new BigDecimal("1.50"))));
+        assertEquals(new BigDecimal("1.50"), accumulator.getLastPaidAmount());
+
+        assertTrue(accumulator.add(getBooking(new Price(TEN, "€", ZERO, true), null)));
+        assertNull(accumulator.getLastPaidAmount());
+
+        assertFalse(accumulator.isRelevant(getBooking(new Price(ZERO, "€", ZERO, true), ZERO)));
+        assertSame(ZERO, accumulator.getLastPaidAmount());
+    }
+
+    @Test(expected = Test.None.class)
+    public void readAmountsWithTheRulesOfTheEvaluator() {
+        BookingAmounts.DecimalReader reader = new BookingAmounts.DecimalReader();
+
+        assertTrue(reader.read(getBooking(new Price(new BigDecimal("0.10"), "€", new BigDecimal(19), false), null)));
+        // the gross amount of a net price is not rounded
+        assertEquals(new BigDecimal("0.1190"), reader.getTotalAmountGross());
+        assertNull(reader.getPaidAmount());
+
+        // only an unscaled 0 is no payment
+        assertFalse(reader.read(getBooking(new Price(ZERO, "€", ZERO, true), ZERO)));
+        assertTrue(reader.isRelevant(new BigDecimal("0.00")));
+        assertTrue(reader.read(getBooking(new Price(ZERO, "€", ZERO, true), new BigDecimal("0.00"))));
+        assertEquals(0, reader.getTotalAmountGross().signum());
+        assertFalse(reader.read(new Price[]{null, null, null, null}, null));
+    }
+
+    protected Booking getBooking(Price mainPrice, BigDecimal paidAmount) {
+        return TestBookings.getBooking(1L, mainPrice, paidAmount);
+    }
+}
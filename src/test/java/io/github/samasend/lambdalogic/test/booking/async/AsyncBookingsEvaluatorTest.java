@@ -0,0 +1,280 @@
+package io.github.samasend.lambdalogic.test.booking.async;
+
+import com.lambdalogic.test.booking.IBookingsCurrencyAmountsEvaluator;
+import com.lambdalogic.test.booking.exception.InconsistentCurrenciesException;
+import com.lambdalogic.test.booking.model.Booking;
+import com.lambdalogic.test.booking.model.CurrencyAmount;
+import com.lambdalogic.test.booking.model.Price;
+import io.github.samasend.lambdalogic.test.booking.BookingsCurrencyAmountsEvaluator;
+import io.github.samasend.lambdalogic.test.booking.EvaluationResult;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static io.github.samasend.lambdalogic.test.booking.TestBookings.*;
+import static java.math.BigDecimal.*;
+import static org.junit.Assert.*;
+
+public class AsyncBookingsEvaluatorTest {
+
+    /**
+     * An evaluator that waits until the test opens the gate, so requests stay in flight
+     */
+    private static class GatedEvaluator extends BookingsCurrencyAmountsEvaluator {
+
+        private final CountDownLatch started;
+
+        private final CountDownLatch gate;
+
+        private final AtomicInteger calculations;
+
+        GatedEvaluator(CountDownLatch started, CountDownLatch gate, AtomicInteger calculations) {
+            this.started = started;
+            this.gate = gate;
+            this.calculations = calculations;
+        }
+
+        @Override
+        public void calculate(List<Booking> bookingList, Long invoiceRecipientID) throws InconsistentCurrenciesException {
+            calculations.incrementAndGet();
+            started.countDown();
+            try {
+                gate.await();
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            super.calculate(bookingList, invoiceRecipientID);
+        }
+    }
+
+    @Test(expected = Test.None.class)
+    public void calculateInBackground() throws Exception {
+        try (AsyncBookingsEvaluator evaluator = new AsyncBookingsEvaluator(2, 10, RejectionPolicy.ABORT)) {
+            List<Booking> bookings = Arrays.asList(
+                    getBooking(MY_INVOICE_RECIPIENT_ID, new Price(TEN, "€", ZERO, true), ONE),
+                    getBooking(OTHER_INVOICE_RECIPIENT_ID, new Price(ONE, "€", ZERO, true), null)
+            );
+
+            EvaluationResult result = evaluator.calculate(bookings, MY_INVOICE_RECIPIENT_ID).get(10, TimeUnit.SECONDS);
+
+            assertEquals(new CurrencyAmount(TEN, "€"), result.getTotalAmount());
+            assertEquals(new CurrencyAmount(ONE, "€"), result.getTotalPaidAmount());
+            assertEquals(new CurrencyAmount(new BigDecimal("9"), "€"), result.getTotalOpenAmount());
+
+            assertTrue(evaluator.calculate(bookings, 42L).get(10, TimeUnit.SECONDS).isEmpty());
+        }
+    }
+
+    @Test(expected = Test.None.class)
+    public void failWithInconsistentCurrencies() throws Exception {
+        try (AsyncBookingsEvaluator evaluator = new AsyncBookingsEvaluator(1, 10, RejectionPolicy.ABORT)) {
+            CompletableFuture<EvaluationResult> future = evaluator.calculate(Arrays.asList(
+                    getBooking(MY_INVOICE_RECIPIENT_ID, new Price(TEN, "€", ZERO, true), null),
+                    getBooking(MY_INVOICE_RECIPIENT_ID, new Price(TEN, "ብር", ZERO, true), null)
+            ), MY_INVOICE_RECIPIENT_ID);
+
+            try {
+                future.get(10, TimeUnit.SECONDS);
+                fail("Should NOT reach here");
+            }
+            catch (ExecutionException e) {
+                assertTrue(e.getCause() instanceof InconsistentCurrenciesException);
+            }
+            assertEquals(0, evaluator.getInFlightRequests());
+        }
+    }
+
+    @Test(expected = Test.None.class)
+    public void failWithError() throws Exception {
+        AtomicInteger calculations = new AtomicInteger();
+        AsyncBookingsEvaluator evaluator = new AsyncBookingsEvaluator(Runnable::run, () -> new BookingsCurrencyAmountsEvaluator() {
+            @Override
+            public void calculate(List<Booking> bookingList, Long invoiceRecipientID) throws InconsistentCurrenciesException {
+                if (calculations.incrementAndGet() == 1) {
+                    throw new StackOverflowError();
+                }
+                super.calculate(bookingList, invoiceRecipientID);
+            }
+        });
+        List<Booking> bookings = bookings();
+
+        try {
+            evaluator.calculate(bookings, MY_INVOICE_RECIPIENT_ID);
+            fail("Should NOT reach here");
+        }
+        catch (StackOverflowError e) {
+            // the error is passed on to the thread that ran the request
+        }
+        assertEquals(0, evaluator.getInFlightRequests());
+
+        // the failed request is not coalesced with the next one
+        assertFalse(evaluator.calculate(bookings, MY_INVOICE_RECIPIENT_ID).get().isEmpty());
+        assertEquals(2, calculations.get());
+    }
+
+    @Test(expected = Test.None.class)
+    public void completeFutureOnError() throws Exception {
+        try (AsyncBookingsEvaluator evaluator = new AsyncBookingsEvaluator(1, 10, RejectionPolicy.ABORT, () -> {
+            throw new OutOfMemoryError();
+        })) {
+            try {
+                evaluator.calculate(bookings(), MY_INVOICE_RECIPIENT_ID).get(10, TimeUnit.SECONDS);
+                fail("Should NOT reach here");
+            }
+            catch (ExecutionException e) {
+                assertTrue(e.getCause() instanceof OutOfMemoryError);
+            }
+            assertEquals(0, evaluator.getInFlightRequests());
+        }
+    }
+
+    @Test(expected = Test.None.class)
+    public void coalesceIdenticalRequests() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch gate = new CountDownLatch(1);
+        AtomicInteger calculations = new AtomicInteger();
+
+        try (AsyncBookingsEvaluator evaluator = new AsyncBookingsEvaluator(
+                2, 10, RejectionPolicy.ABORT, () -> new GatedEvaluator(started, gate, calculations))) {
+
+            List<Booking> bookings = Collections.singletonList(
+                    getBooking(MY_INVOICE_RECIPIENT_ID, new Price(TEN, "€", ZERO, true), null));
+
+            CompletableFuture<EvaluationResult> first = evaluator.calculate(bookings, MY_INVOICE_RECIPIENT_ID);
+            assertTrue(started.await(10, TimeUnit.SECONDS));
+
+            CompletableFuture<EvaluationResult> second = evaluator.calculate(bookings, MY_INVOICE_RECIPIENT_ID);
+            assertEquals(1, evaluator.getInFlightRequests());
+
+            // cancelling a coalesced future must not affect the others
+            evaluator.calculate(bookings, MY_INVOICE_RECIPIENT_ID).cancel(true);
+
+            gate.countDown();
+
+            assertEquals(first.get(10, TimeUnit.SECONDS), second.get(10, TimeUnit.SECONDS));
+            assertEquals(1, calculations.get());
+
+            // a completed request is calculated again
+            evaluator.calculate(bookings, MY_INVOICE_RECIPIENT_ID).get(10, TimeUnit.SECONDS);
+            assertEquals(2, calculations.get());
+        }
+    }
+
+    @Test(expected = Test.None.class)
+    public void abortWhenQueueIsFull() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch gate = new CountDownLatch(1);
+        AtomicInteger calculations = new AtomicInteger();
+
+        try (AsyncBookingsEvaluator evaluator = new AsyncBookingsEvaluator(
+                1, 1, RejectionPolicy.ABORT, () -> new GatedEvaluator(started, gate, calculations))) {
+
+            CompletableFuture<EvaluationResult> running = evaluator.calculate(bookings(), MY_INVOICE_RECIPIENT_ID);
+            assertTrue(started.await(10, TimeUnit.SECONDS));
+            CompletableFuture<EvaluationResult> queued = evaluator.calculate(bookings(), MY_INVOICE_RECIPIENT_ID);
+            CompletableFuture<EvaluationResult> rejected = evaluator.calculate(bookings(), MY_INVOICE_RECIPIENT_ID);
+
+            assertRejected(rejected);
+
+            gate.countDown();
+            assertFalse(running.get(10, TimeUnit.SECONDS).isEmpty());
+            assertFalse(queued.get(10, TimeUnit.SECONDS).isEmpty());
+        }
+    }
+
+    @Test(expected = Test.None.class)
+    public void discardOldestWhenQueueIsFull() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch gate = new CountDownLatch(1);
+        AtomicInteger calculations = new AtomicInteger();
+
+        try (AsyncBookingsEvaluator evaluator = new AsyncBookingsEvaluator(
+                1, 1, RejectionPolicy.DISCARD_OLDEST, () -> new GatedEvaluator(started, gate, calculations))) {
+
+            CompletableFuture<EvaluationResult> running = evaluator.calculate(bookings(), MY_INVOICE_RECIPIENT_ID);
+            assertTrue(started.await(10, TimeUnit.SECONDS));
+            CompletableFuture<EvaluationResult> oldest = evaluator.calculate(bookings(), MY_INVOICE_RECIPIENT_ID);
+            CompletableFuture<EvaluationResult> newest = evaluator.calculate(bookings(), MY_INVOICE_RECIPIENT_ID);
+
+            assertRejected(oldest);
+
+            gate.countDown();
+            assertFalse(running.get(10, TimeUnit.SECONDS).isEmpty());
+            assertFalse(newest.get(10, TimeUnit.SECONDS).isEmpty());
+            assertEquals(0, evaluator.getInFlightRequests());
+        }
+    }
+
+    @Test(expected = Test.None.class)
+    public void callerRunsWhenQueueIsFull() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch gate = new CountDownLatch(1);
+        AtomicInteger calculations = new AtomicInteger();
+        Thread caller = Thread.currentThread();
+
+        try (AsyncBookingsEvaluator evaluator = new AsyncBookingsEvaluator(
+                1, 1, RejectionPolicy.CALLER_RUNS, () -> Thread.currentThread() == caller
+                ? new BookingsCurrencyAmountsEvaluator()
+                : new GatedEvaluator(started, gate, calculations))) {
+
+            evaluator.calculate(bookings(), MY_INVOICE_RECIPIENT_ID);
+            assertTrue(started.await(10, TimeUnit.SECONDS));
+            evaluator.calculate(bookings(), MY_INVOICE_RECIPIENT_ID);
+
+            // the worker is still blocked, so the queue is full and the calling thread runs the request itself
+            CompletableFuture<EvaluationResult> callerRuns = evaluator.calculate(bookings(), MY_INVOICE_RECIPIENT_ID);
+
+            assertTrue(callerRuns.isDone());
+            assertFalse(callerRuns.get().isEmpty());
+            assertEquals(1, calculations.get());
+        }
+        finally {
+            gate.countDown();
+        }
+    }
+
+    @Test(expected = Test.None.class)
+    public void rejectAfterClose() {
+        AsyncBookingsEvaluator evaluator = new AsyncBookingsEvaluator(1, 1, RejectionPolicy.CALLER_RUNS);
+        evaluator.close();
+
+        assertRejected(evaluator.calculate(bookings(), MY_INVOICE_RECIPIENT_ID));
+    }
+
+    @Test(expected = Test.None.class)
+    public void runOnGivenExecutor() throws Exception {
+        List<IBookingsCurrencyAmountsEvaluator> created = new CopyOnWriteArrayList<>();
+        AsyncBookingsEvaluator evaluator = new AsyncBookingsEvaluator(Runnable::run, () -> {
+            IBookingsCurrencyAmountsEvaluator delegate = new BookingsCurrencyAmountsEvaluator();
+            created.add(delegate);
+            return delegate;
+        });
+
+        assertFalse(evaluator.calculate(bookings(), MY_INVOICE_RECIPIENT_ID).get().isEmpty());
+        assertFalse(evaluator.calculate(bookings(), MY_INVOICE_RECIPIENT_ID).get().isEmpty());
+
+        // one evaluator per thread
+        assertEquals(1, created.size());
+    }
+
+    private static void assertRejected(CompletableFuture<EvaluationResult> future) {
+        try {
+            future.get(10, TimeUnit.SECONDS);
+            fail("Should NOT reach here");
+        }
+        catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof RejectedExecutionException);
+        }
+        catch (InterruptedException | TimeoutException e) {
+            fail(e.toString());
+        }
+    }
+
+    private List<Booking> bookings() {
+        return Collections.singletonList(getBooking(MY_INVOICE_RECIPIENT_ID, new Price(TEN, "€", ZERO, true), null));
+    }
+}
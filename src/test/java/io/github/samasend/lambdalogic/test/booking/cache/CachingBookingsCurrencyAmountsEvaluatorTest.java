@@ -0,0 +1,185 @@
+package io.github.samasend.lambdalogic.test.booking.cache;
+
+import com.lambdalogic.test.booking.exception.InconsistentCurrenciesException;
+import com.lambdalogic.test.booking.model.Booking;
+import com.lambdalogic.test.booking.model.CurrencyAmount;
+import com.lambdalogic.test.booking.model.Price;
+import io.github.samasend.lambdalogic.test.booking.BookingsCurrencyAmountsEvaluator;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.util.*;
+
+import static io.github.samasend.lambdalogic.test.booking.TestBookings.*;
+import static java.math.BigDecimal.*;
+import static org.junit.Assert.*;
+
+public class CachingBookingsCurrencyAmountsEvaluatorTest {
+
+    /**
+     * Counts the calculations that reach the actual evaluator
+     */
+    private static class CountingEvaluator extends BookingsCurrencyAmountsEvaluator {
+
+        private int calculations = 0;
+
+        @Override
+        public void calculate(List<Booking> bookingList, Long invoiceRecipientID) throws InconsistentCurrenciesException {
+            calculations++;
+            super.calculate(bookingList, invoiceRecipientID);
+        }
+    }
+
+    @Test(expected = Test.None.class)
+    public void cacheUnchangedBookings() throws InconsistentCurrenciesException {
+        CountingEvaluator delegate = new CountingEvaluator();
+        CachingBookingsCurrencyAmountsEvaluator evaluator = new CachingBookingsCurrencyAmountsEvaluator(delegate, 10);
+
+        VersionedBookingList bookings = new VersionedBookingList(Arrays.asList(
+                getBooking(MY_INVOICE_RECIPIENT_ID, new Price(TEN, "€", ZERO, true), ONE),
+                getBooking(OTHER_INVOICE_RECIPIENT_ID, new Price(ONE, "€", ZERO, true), null)
+        ));
+
+        for (int i = 0; i < 3; i++) {
+            evaluator.calculate(bookings, MY_INVOICE_RECIPIENT_ID);
+
+            assertEquals(new CurrencyAmount(TEN, "€"), evaluator.getTotalAmount());
+            assertEquals(new CurrencyAmount(ONE, "€"), evaluator.getTotalPaidAmount());
+            assertEquals(new CurrencyAmount(new BigDecimal("9"), "€"), evaluator.getTotalOpenAmount());
+        }
+
+        evaluator.calculate(bookings, OTHER_INVOICE_RECIPIENT_ID);
+        assertEquals(new CurrencyAmount(ONE, "€"), evaluator.getTotalAmount());
+
+        assertEquals(2, delegate.calculations);
+        assertEquals(2, evaluator.getHitCount());
+        assertEquals(2, evaluator.getMissCount());
+        assertEquals(2, evaluator.size());
+    }
+
+    @Test(expected = Test.None.class)
+    public void invalidateAllResultsOfChangedList() throws InconsistentCurrenciesException {
+        CountingEvaluator delegate = new CountingEvaluator();
+        CachingBookingsCurrencyAmountsEvaluator evaluator = new CachingBookingsCurrencyAmountsEvaluator(delegate, 10);
+
+        Booking booking = getBooking(MY_INVOICE_RECIPIENT_ID, new Price(TEN, "€", ZERO, true), null);
+        VersionedBookingList bookings = new VersionedBookingList(Collections.singletonList(booking));
+
+        evaluator.calculate(bookings, MY_INVOICE_RECIPIENT_ID);
+        evaluator.calculate(bookings, OTHER_INVOICE_RECIPIENT_ID);
+
+        // a modified booking is only noticed after markModified()
+        booking.setPaidAmount(ONE);
+        bookings.markModified();
+
+        evaluator.calculate(bookings, MY_INVOICE_RECIPIENT_ID);
+        assertEquals(new CurrencyAmount(ONE, "€"), evaluator.getTotalPaidAmount());
+        assertEquals(2, evaluator.getInvalidationCount());
+        assertEquals(1, evaluator.size());
+
+        bookings.add(getBooking(MY_INVOICE_RECIPIENT_ID, new Price(ONE, "€", ZERO, true), null));
+
+        evaluator.calculate(bookings, MY_INVOICE_RECIPIENT_ID);
+        assertEquals(new CurrencyAmount(new BigDecimal("11"), "€"), evaluator.getTotalAmount());
+        assertEquals(4, delegate.calculations);
+        assertEquals(0, evaluator.getHitCount());
+    }
+
+    @Test(expected = Test.None.class)
+    public void evictLeastRecentlyUsed() throws InconsistentCurrenciesException {
+        CountingEvaluator delegate = new CountingEvaluator();
+        CachingBookingsCurrencyAmountsEvaluator evaluator = new CachingBookingsCurrencyAmountsEvaluator(delegate, 2);
+
+        VersionedBookingList bookings = new VersionedBookingList(Collections.singletonList(
+                getBooking(MY_INVOICE_RECIPIENT_ID, new Price(TEN, "€", ZERO, true), null)));
+
+        evaluator.calculate(bookings, 1L);
+        evaluator.calculate(bookings, 2L);
+        evaluator.calculate(bookings, 1L);
+        evaluator.calculate(bookings, 3L);
+
+        assertEquals(2, evaluator.size());
+        assertEquals(1, evaluator.getEvictionCount());
+
+        // 2 has been evicted, 1 is still cached
+        evaluator.calculate(bookings, 1L);
+        assertEquals(2, evaluator.getHitCount());
+        evaluator.calculate(bookings, 2L);
+        assertEquals(4, evaluator.getMissCount());
+
+        // the evicted results must not break the invalidation
+        bookings.markModified();
+        evaluator.calculate(bookings, 2L);
+        assertEquals(5, evaluator.getMissCount());
+        assertEquals(1, evaluator.size());
+    }
+
+    @Test(expected = Test.None.class)
+    public void passThroughOtherLists() throws InconsistentCurrenciesException {
+        CountingEvaluator delegate = new CountingEvaluator();
+        CachingBookingsCurrencyAmountsEvaluator evaluator = new CachingBookingsCurrencyAmountsEvaluator(delegate, 10);
+
+        List<Booking> bookings = Collections.singletonList(
+                getBooking(MY_INVOICE_RECIPIENT_ID, new Price(TEN, "€", ZERO, true), null));
+
+        evaluator.calculate(bookings, MY_INVOICE_RECIPIENT_ID);
+        evaluator.calculate(bookings, MY_INVOICE_RECIPIENT_ID);
+
+        assertEquals(new CurrencyAmount(TEN, "€"), evaluator.getTotalAmount());
+        assertEquals(2, delegate.calculations);
+        assertEquals(0, evaluator.size());
+
+        evaluator.calculate(new ArrayList<>(), MY_INVOICE_RECIPIENT_ID);
+        assertNull(evaluator.getTotalAmount());
+        assertNull(evaluator.getTotalPaidAmount());
+        assertNull(evaluator.getTotalOpenAmount());
+    }
+
+    @Test(expected = Test.None.class)
+    public void doNotCacheInconsistentCurrencies() {
+        CountingEvaluator delegate = new CountingEvaluator();
+        CachingBookingsCurrencyAmountsEvaluator evaluator = new CachingBookingsCurrencyAmountsEvaluator(delegate, 10);
+
+        VersionedBookingList bookings = new VersionedBookingList(Arrays.asList(
+                getBooking(MY_INVOICE_RECIPIENT_ID, new Price(TEN, "€", ZERO, true), null),
+                getBooking(MY_INVOICE_RECIPIENT_ID, new Price(TEN, "ብር", ZERO, true), null)
+        ));
+
+        for (int i = 0; i < 2; i++) {
+            try {
+                evaluator.calculate(bookings, MY_INVOICE_RECIPIENT_ID);
+                fail("Should NOT reach here");
+            }
+            catch (InconsistentCurrenciesException e) {
+                assertNull(evaluator.getTotalAmount());
+            }
+        }
+
+        assertEquals(2, delegate.calculations);
+        assertEquals(0, evaluator.size());
+        assertEquals(0, evaluator.getListCount());
+    }
+
+    @Test(expected = Test.None.class)
+    public void forgetChangedListWhenDelegateFails() throws InconsistentCurrenciesException {
+        CachingBookingsCurrencyAmountsEvaluator evaluator =
+                new CachingBookingsCurrencyAmountsEvaluator(new CountingEvaluator(), 10);
+
+        VersionedBookingList bookings = new VersionedBookingList(Collections.singletonList(
+                getBooking(MY_INVOICE_RECIPIENT_ID, new Price(TEN, "€", ZERO, true), null)));
+        evaluator.calculate(bookings, MY_INVOICE_RECIPIENT_ID);
+        assertEquals(1, evaluator.getListCount());
+
+        bookings.add(getBooking(MY_INVOICE_RECIPIENT_ID, new Price(TEN, "ብር", ZERO, true), null));
+        try {
+            evaluator.calculate(bookings, MY_INVOICE_RECIPIENT_ID);
+            fail("Should NOT reach here");
+        }
+        catch (InconsistentCurrenciesException e) {
+            assertEquals(1, evaluator.getInvalidationCount());
+        }
+
+        assertEquals(0, evaluator.size());
+        assertEquals(0, evaluator.getListCount());
+    }
+}
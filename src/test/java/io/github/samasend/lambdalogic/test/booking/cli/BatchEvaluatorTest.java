@@ -0,0 +1,149 @@
+package io.github.samasend.lambdalogic.test.booking.cli;
+
+import com.lambdalogic.test.booking.exception.InconsistentCurrenciesException;
+import com.lambdalogic.test.booking.model.Booking;
+import io.github.samasend.lambdalogic.test.booking.BookingsCurrencyAmountsEvaluator;
+import io.github.samasend.lambdalogic.test.booking.EvaluationResult;
+import io.github.samasend.lambdalogic.test.booking.codec.BookingCodec;
+import io.github.samasend.lambdalogic.test.booking.generator.BookingCsv;
+import io.github.samasend.lambdalogic.test.booking.generator.BookingGenerator;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.*;
+
+public class BatchEvaluatorTest {
+
+    private Path directory;
+
+    private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+    private final ByteArrayOutputStream err = new ByteArrayOutputStream();
+
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("cli");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+        }
+    }
+
+    @Test(expected = Test.None.class)
+    public void evaluateCsvAndBinaryFiles() throws Exception {
+        List<Booking> bookings = new BookingGenerator().setSeed(48).setBookingCount(5_000).setRecipientCount(50)
+                .setCurrencies(new String[]{"EUR", "USD"}, new double[]{0.9, 0.1})
+                .setMixedCurrencyRecipientShare(0.1)
+                .generate();
+
+        Path csv = directory.resolve("bookings.csv");
+        try (Writer writer = Files.newBufferedWriter(csv, StandardCharsets.UTF_8)) {
+            BookingCsv.write(bookings.stream(), writer);
+        }
+        Path binary = directory.resolve("bookings.bin");
+        try (FileChannel channel = FileChannel.open(binary, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            BookingCodec codec = new BookingCodec();
+            ByteBuffer buffer = ByteBuffer.allocate(1 << 20);
+            for (Booking booking : bookings) {
+                codec.encode(booking, buffer);
+            }
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+
+        Path csvTotals = directory.resolve("csv-totals.csv");
+        assertEquals(0, run("--input", csv.toString(), "--output", csvTotals.toString()));
+        Path binaryTotals = directory.resolve("binary-totals.csv");
+        assertEquals(0, run("--input", binary.toString(), "--output", binaryTotals.toString(), "--runs", "3"));
+
+        List<String> expected = new ArrayList<>();
+        expected.add(BatchEvaluator.RESULT_HEADER);
+        BookingsCurrencyAmountsEvaluator evaluator = new BookingsCurrencyAmountsEvaluator();
+        int conflicts = 0;
+        for (long recipient = 1; recipient <= 50; recipient++) {
+            try {
+                evaluator.calculate(bookings, recipient);
+                EvaluationResult result = EvaluationResult.of(evaluator);
+                expected.add(recipient + ";" + result.getTotalAmount().getAmount()
+                        + ";" + result.getTotalPaidAmount().getAmount()
+                        + ";" + result.getTotalOpenAmount().getAmount()
+                        + ";" + result.getTotalAmount().getCurrency());
+            }
+            catch (InconsistentCurrenciesException e) {
+                expected.add(recipient + ";error;" + e.getMessage());
+                conflicts++;
+            }
+        }
+        assertEquals(expected, Files.readAllLines(csvTotals, StandardCharsets.UTF_8));
+        assertEquals(expected, Files.readAllLines(binaryTotals, StandardCharsets.UTF_8));
+
+        String report = out.toString("UTF-8");
+        assertTrue(report, report.contains("bookings: 5000 (0 without invoice recipient), recipients: 50, runs: 3"));
+        assertTrue(report, report.contains("bookings/s"));
+        assertTrue(report, report.contains("peak heap"));
+        // the counts are the ones of one run, no matter how many runs there are
+        String[] counts = Arrays.stream(report.split("\\R")).filter(line -> line.startsWith("relevant bookings")).toArray(String[]::new);
+        assertEquals(2, counts.length);
+        assertEquals(counts[0], counts[1]);
+        assertTrue(report, counts[0].endsWith("currency conflicts: " + conflicts));
+        assertTrue(report, report.contains("evaluate"));
+
+        // only the bookings of one recipient are parsed or decoded
+        long recipientBookings = bookings.stream().filter(booking -> booking.getInvoiceRecipientPK() == 7L).count();
+        for (Path input : new Path[]{csv, binary}) {
+            Path recipientTotals = directory.resolve("recipient-totals.csv");
+            out.reset();
+            assertEquals(0, run("--input", input.toString(), "--output", recipientTotals.toString(), "--recipient", "7"));
+            assertEquals(Arrays.asList(BatchEvaluator.RESULT_HEADER, expected.get(7)),
+                    Files.readAllLines(recipientTotals, StandardCharsets.UTF_8));
+            report = out.toString("UTF-8");
+            assertTrue(report, report.contains("bookings: " + recipientBookings + " (0 without invoice recipient), recipients: 1"));
+        }
+        Path emptyTotals = directory.resolve("empty-totals.csv");
+        assertEquals(0, run("--input", binary.toString(), "--output", emptyTotals.toString(), "--recipient", "51"));
+        assertEquals(Arrays.asList(BatchEvaluator.RESULT_HEADER, "51;;;;"),
+                Files.readAllLines(emptyTotals, StandardCharsets.UTF_8));
+    }
+
+    @Test(expected = Test.None.class)
+    public void rejectInvalidArguments() throws Exception {
+        assertEquals(2, run("--output", "totals.csv"));
+        assertEquals(2, run("--input", "bookings.csv", "--format", "xml"));
+        assertEquals(2, run("--input", "bookings.csv", "--runs", "0"));
+        assertEquals(2, run("--input", "bookings.csv", "--recipient", "x"));
+        assertEquals(2, run("--input"));
+        assertEquals(1, run("--input", directory.resolve("missing.csv").toString()));
+
+        // a binary file that ends within a record
+        Path binary = directory.resolve("bookings.bin");
+        Files.write(binary, new byte[]{0, 0, 0, 10, 1});
+        assertEquals(1, run("--input", binary.toString()));
+        assertTrue(err.toString("UTF-8").contains("incomplete"));
+    }
+
+    private int run(String... args) throws Exception {
+        return BatchEvaluator.run(args, new PrintStream(out, true, "UTF-8"), new PrintStream(err, true, "UTF-8"));
+    }
+}
@@ -0,0 +1,177 @@
+package io.github.samasend.lambdalogic.test.booking.codec;
+
+import com.lambdalogic.test.booking.model.Booking;
+import com.lambdalogic.test.booking.model.CurrencyAmount;
+import com.lambdalogic.test.booking.model.Price;
+import io.github.samasend.lambdalogic.test.booking.BookingsCurrencyAmountsEvaluator;
+import io.github.samasend.lambdalogic.test.booking.EvaluationResult;
+import io.github.samasend.lambdalogic.test.booking.generator.BookingCsv;
+import io.github.samasend.lambdalogic.test.booking.generator.BookingGenerator;
+import org.junit.Test;
+
+import java.io.StringWriter;
+import java.math.BigDecimal;
+import java.nio.BufferOverflowException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+import static java.math.BigDecimal.*;
+import static org.junit.Assert.*;
+
+public class BookingCodecTest {
+
+    @Test(expected = Test.None.class)
+    public void roundTripGeneratedBookings() throws Exception {
+        List<Booking> bookings = new BookingGenerator().setSeed(6).setBookingCount(5_000)
+                .setCurrencies(new String[]{"EUR", "USD", "ብር"}, new double[]{0.8, 0.15, 0.05})
+                .setMixedCurrencyRecipientShare(0.1)
+                .generate();
+
+        BookingCodec codec = new BookingCodec();
+        ByteBuffer buffer = ByteBuffer.allocate(1 << 20);
+        for (Booking booking : bookings) {
+            codec.encode(booking, buffer);
+        }
+        // typical bookings take less than 64 bytes
+        assertTrue(buffer.position() < 64 * bookings.size());
+
+        buffer.flip();
+        BookingCodec decoder = new BookingCodec();
+        List<Booking> decoded = new ArrayList<>();
+        while (buffer.hasRemaining()) {
+            decoded.add(decoder.decode(buffer));
+        }
+
+        assertEquals(toCsv(bookings), toCsv(decoded));
+    }
+
+    @Test(expected = Test.None.class)
+    public void roundTripUnusualValues() throws Exception {
+        Booking booking = new Booking(
+                null,
+                new Price(new BigDecimal("-12345678901234567890.12"), null, new BigDecimal("19.5"), false),
+                null,
+                new Price(ONE, "USD", null, true),
+                new Price(new BigDecimal("0.01"), "€", new BigDecimal("7.00"), true),
+                new BigDecimal("1E+3"),
+                new Date(-1), null,
+                Arrays.asList(Long.MIN_VALUE, -1L, 0L, Long.MAX_VALUE),
+                null,
+                Long.MIN_VALUE);
+
+        BookingCodec codec = new BookingCodec();
+        ByteBuffer buffer = ByteBuffer.allocate(256);
+        int length = codec.encode(booking, buffer);
+        assertEquals(length, buffer.position());
+        buffer.flip();
+
+        assertNull(codec.peekInvoiceRecipientPK(buffer));
+        assertEquals(0, buffer.position());
+        Booking decoded = codec.decode(buffer);
+        assertFalse(buffer.hasRemaining());
+
+        assertEquals(toCsv(Arrays.asList(booking)), toCsv(Arrays.asList(decoded)));
+        assertEquals(booking.getMainPrice(), decoded.getMainPrice());
+        assertEquals(new BigDecimal("1E+3"), decoded.getPaidAmount());
+    }
+
+    @Test(expected = Test.None.class)
+    public void roundTripPriceAndCurrencyAmount() {
+        BookingCodec codec = new BookingCodec();
+        ByteBuffer buffer = ByteBuffer.allocate(64);
+        Price price = new Price(new BigDecimal("0.10"), "€", new BigDecimal(19), false);
+        codec.encode(price, buffer);
+        codec.encode(new CurrencyAmount(new BigDecimal("9.12"), null), buffer);
+        buffer.flip();
+
+        assertEquals(price, codec.decodePrice(buffer));
+        CurrencyAmount currencyAmount = codec.decodeCurrencyAmount(buffer);
+        assertEquals(new BigDecimal("9.12"), currencyAmount.getAmount());
+        assertNull(currencyAmount.getCurrency());
+    }
+
+    @Test(expected = Test.None.class)
+    public void keepPositionOnPartialRecords() {
+        Booking booking = new BookingGenerator().setSeed(6).setBookingCount(1).generate().get(0);
+        BookingCodec codec = new BookingCodec();
+
+        ByteBuffer small = ByteBuffer.allocate(8);
+        try {
+            codec.encode(booking, small);
+            fail("Should NOT reach here");
+        }
+        catch (BufferOverflowException e) {
+            assertEquals(0, small.position());
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(256);
+        int length = codec.encode(booking, buffer);
+        buffer.flip();
+        buffer.limit(length - 1);
+        try {
+            codec.decode(buffer);
+            fail("Should NOT reach here");
+        }
+        catch (BufferUnderflowException e) {
+            assertEquals(0, buffer.position());
+        }
+
+        buffer.limit(length);
+        assertEquals(booking.getInvoiceRecipientPK(), codec.peekInvoiceRecipientPK(buffer));
+        codec.skip(buffer);
+        assertFalse(buffer.hasRemaining());
+    }
+
+    @Test(expected = Test.None.class)
+    public void decodeOnlyOneRecipient() throws Exception {
+        List<Booking> bookings = new BookingGenerator().setSeed(50).setBookingCount(5_000).setRecipientCount(100)
+                .generate();
+        bookings.get(0).setInvoiceRecipientPK(null);
+        bookings.get(1).setInvoiceRecipientPK(Long.MIN_VALUE);
+        bookings.get(2).setInvoiceRecipientPK(-7L);
+
+        BookingCodec codec = new BookingCodec();
+        ByteBuffer buffer = ByteBuffer.allocate(1 << 20);
+        for (Booking booking : bookings) {
+            assertEquals(booking.getPrices()[0].getCurrency(), peekCurrency(codec, booking));
+            codec.encode(booking, buffer);
+        }
+        buffer.flip();
+
+        for (long recipient : new long[]{-7L, Long.MIN_VALUE, 1L, 7L, 100L, 101L}) {
+            List<Booking> expected = new ArrayList<>();
+            for (Booking booking : bookings) {
+                if (booking.getInvoiceRecipientPK() != null && booking.getInvoiceRecipientPK() == recipient) {
+                    expected.add(booking);
+                }
+            }
+
+            List<Booking> decoded = new ArrayList<>();
+            codec.decodeAll(buffer.duplicate(), recipient).forEachRemaining(decoded::add);
+            assertEquals(toCsv(expected), toCsv(decoded));
+
+            BookingsCurrencyAmountsEvaluator evaluator = new BookingsCurrencyAmountsEvaluator();
+            evaluator.calculate(expected, recipient);
+            EvaluationResult result = EvaluationResult.of(evaluator);
+            evaluator.calculate(codec.decodeAll(buffer.duplicate(), recipient), recipient);
+            assertEquals(result, EvaluationResult.of(evaluator));
+        }
+    }
+
+    private static String peekCurrency(BookingCodec codec, Booking booking) {
+        ByteBuffer buffer = ByteBuffer.allocate(256);
+        codec.encode(booking, buffer);
+        buffer.flip();
+        return codec.peekCurrency(buffer);
+    }
+
+    private static String toCsv(List<Booking> bookings) throws Exception {
+        StringWriter writer = new StringWriter();
+        BookingCsv.write(bookings.stream(), writer);
+        return writer.toString();
+    }
+}
@@ -0,0 +1,135 @@
+package io.github.samasend.lambdalogic.test.booking.concurrent;
+
+import com.lambdalogic.test.booking.exception.InconsistentCurrenciesException;
+import com.lambdalogic.test.booking.model.Booking;
+import com.lambdalogic.test.booking.model.Price;
+import io.github.samasend.lambdalogic.test.booking.BookingsCurrencyAmountsEvaluator;
+import io.github.samasend.lambdalogic.test.booking.EvaluationResult;
+import io.github.samasend.lambdalogic.test.booking.generator.BookingGenerator;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static io.github.samasend.lambdalogic.test.booking.TestBookings.*;
+import static java.math.BigDecimal.*;
+import static org.junit.Assert.*;
+
+public class StripedTotalsAccumulatorTest {
+
+    @Test(expected = Test.None.class)
+    public void addConcurrentlyLikeSequentially() throws Exception {
+        List<Booking> bookings = new BookingGenerator()
+                .setSeed(11)
+                .setBookingCount(40_000)
+                .setRecipientCount(3)
+                .setGrossShare(0.3)
+                .generate();
+
+        BookingsCurrencyAmountsEvaluator evaluator = new BookingsCurrencyAmountsEvaluator();
+        evaluator.calculate(bookings, 1L);
+
+        StripedTotalsAccumulator accumulator = new StripedTotalsAccumulator(1L, 4);
+        int threads = 8;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<Integer>> futures = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                int first = i;
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    int added = 0;
+                    for (int j = first; j < bookings.size(); j += threads) {
+                        if (accumulator.add(bookings.get(j))) {
+                            added++;
+                        }
+                    }
+                    return added;
+                }));
+            }
+            start.countDown();
+
+            int added = 0;
+            for (Future<Integer> future : futures) {
+                added += future.get(30, TimeUnit.SECONDS);
+            }
+            assertEquals(added, accumulator.getBookingCount());
+        }
+        finally {
+            executor.shutdownNow();
+        }
+
+        EvaluationResult result = accumulator.snapshot();
+        assertEquals(evaluator.getTotalAmount(), result.getTotalAmount());
+        assertEquals(evaluator.getTotalPaidAmount(), result.getTotalPaidAmount());
+        assertEquals(evaluator.getTotalOpenAmount(), result.getTotalOpenAmount());
+    }
+
+    @Test(expected = Test.None.class)
+    public void roundOnlyTheMergedTotals() throws Exception {
+        StripedTotalsAccumulator accumulator = new StripedTotalsAccumulator(1L, 16);
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            threads.add(new Thread(() -> {
+                try {
+                    accumulator.add(getBooking(1L, new Price(new BigDecimal("0.10"), "€", new BigDecimal(19), false), null));
+                }
+                catch (InconsistentCurrenciesException e) {
+                    throw new IllegalStateException(e);
+                }
+            }));
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        // 10 times 0.119 € is 1.19 €, not 10 times 0.12 €
+        assertEquals(new BigDecimal("1.19"), accumulator.snapshot().getTotalAmount().getAmount());
+        assertEquals(16, accumulator.getStripeCount());
+    }
+
+    @Test(expected = Test.None.class)
+    public void recordFirstConflictingCurrencies() throws Exception {
+        StripedTotalsAccumulator accumulator = new StripedTotalsAccumulator(1L, 2);
+
+        assertTrue(accumulator.add(getBooking(1L, new Price(ONE, "USD", ZERO, true), null)));
+        assertFalse(accumulator.add(getBooking(2L, new Price(ONE, "EUR", ZERO, true), null)));
+        assertFalse(accumulator.add(getBooking(1L, new Price(ZERO, "EUR", ZERO, true), null)));
+        assertNull(accumulator.getConflict());
+        assertFalse(accumulator.snapshot().isEmpty());
+
+        try {
+            accumulator.add(getBooking(1L, new Price(ONE, "EUR", ZERO, true), null));
+            fail();
+        }
+        catch (InconsistentCurrenciesException e) {
+            assertEquals(e.getMessage(), accumulator.getConflict().getMessage());
+        }
+        try {
+            accumulator.add(getBooking(1L, new Price(ONE, "CHF", ZERO, true), null));
+            fail();
+        }
+        catch (InconsistentCurrenciesException expected) {
+        }
+
+        try {
+            accumulator.snapshot();
+            fail();
+        }
+        catch (InconsistentCurrenciesException e) {
+            // the first conflict is kept, the currencies are ordered like the ones of the evaluator
+            assertEquals(new InconsistentCurrenciesException("EUR", "USD").getMessage(), e.getMessage());
+        }
+        assertEquals(1, accumulator.getBookingCount());
+    }
+}
@@ -0,0 +1,262 @@
+package io.github.samasend.lambdalogic.test.booking.event;
+
+import com.lambdalogic.test.booking.exception.InconsistentCurrenciesException;
+import com.lambdalogic.test.booking.model.Booking;
+import com.lambdalogic.test.booking.model.CurrencyAmount;
+import com.lambdalogic.test.booking.model.Price;
+import io.github.samasend.lambdalogic.test.booking.BookingsCurrencyAmountsEvaluator;
+import io.github.samasend.lambdalogic.test.booking.EvaluationResult;
+import io.github.samasend.lambdalogic.test.booking.generator.BookingGenerator;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import static io.github.samasend.lambdalogic.test.booking.TestBookings.*;
+import static java.math.BigDecimal.*;
+import static org.junit.Assert.*;
+
+public class TotalsReplayerTest {
+
+    private Path directory;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("events");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+        }
+    }
+
+    @Test(expected = Test.None.class)
+    public void replayLikeEvaluator() throws Exception {
+        List<Booking> bookings = new ArrayList<>();
+        List<BookingEvent> events = generateEvents(bookings, 3_000, 5_000);
+
+        try (BookingEventLog log = BookingEventLog.open(directory.resolve("events.bin"))) {
+            for (int from = 0; from < events.size(); from += 1_000) {
+                log.append(events.subList(from, Math.min(from + 1_000, events.size())));
+            }
+
+            TotalsReplayer replayer = new TotalsReplayer();
+            assertEquals(events.size(), replayer.replay(log, 100));
+            assertEquals(log.getEndOffset(), replayer.getOffset());
+            assertEquals(0, replayer.replay(log, 100));
+            assertEquals(0, replayer.getSkippedEvents());
+
+            assertSameTotals(bookings, replayer);
+        }
+    }
+
+    @Test(expected = Test.None.class)
+    public void resumeAtCheckpoint() throws Exception {
+        List<Booking> bookings = new ArrayList<>();
+        List<BookingEvent> events = generateEvents(bookings, 1_000, 2_000);
+        Path logFile = directory.resolve("events.bin");
+        Path checkpoint = directory.resolve("checkpoint.bin");
+
+        try (BookingEventLog log = BookingEventLog.open(logFile)) {
+            log.append(events.subList(0, 1_500));
+            TotalsReplayer replayer = TotalsReplayer.resume(checkpoint);
+            assertEquals(1_500, replayer.replay(log, 64));
+            replayer.checkpoint(checkpoint);
+        }
+
+        // the log grows while the replaying service is down
+        try (BookingEventLog log = BookingEventLog.open(logFile)) {
+            log.append(events.subList(1_500, events.size()));
+        }
+
+        try (BookingEventLog log = BookingEventLog.open(logFile)) {
+            TotalsReplayer replayer = TotalsReplayer.resume(checkpoint);
+            assertEquals(1_500, replayer.getAppliedEvents());
+            assertEquals(events.size() - 1_500, replayer.replay(log));
+            assertEquals(events.size(), replayer.getAppliedEvents());
+
+            assertSameTotals(bookings, replayer);
+        }
+    }
+
+    @Test(expected = Test.None.class)
+    public void replayFromOffset() throws Exception {
+        try (BookingEventLog log = BookingEventLog.open(directory.resolve("events.bin"))) {
+            log.append(BookingEvent.created(getBooking(1L, 1L, new Price(TEN, "€", ZERO, true), null)));
+            long offset = log.append(BookingEvent.created(getBooking(2L, 1L, new Price(TEN, "€", ZERO, true), null)));
+            log.append(Arrays.asList(
+                    BookingEvent.created(getBooking(3L, 1L, new Price(ONE, "€", new BigDecimal(19), false), ONE)),
+                    BookingEvent.paid(1L, TEN),
+                    BookingEvent.paid(3L, new BigDecimal("0.19")),
+                    BookingEvent.recipientReassigned(2L, 2L)));
+
+            TotalsReplayer replayer = new TotalsReplayer(offset);
+            assertEquals(4, replayer.replay(log, 2));
+            assertEquals(2, replayer.getSkippedEvents());
+            assertEquals(1, replayer.getBookingCount());
+
+            EvaluationResult totals = replayer.getTotals(1L);
+            assertEquals(new CurrencyAmount(new BigDecimal("1.19"), "€"), totals.getTotalAmount());
+            assertEquals(new CurrencyAmount(new BigDecimal("1.19"), "€"), totals.getTotalPaidAmount());
+            assertEquals(EvaluationResult.EMPTY, replayer.getTotals(2L));
+
+            try {
+                log.read(offset + 1, 1);
+                fail("Should NOT reach here");
+            }
+            catch (IOException e) {
+                // expected, there is no event at this offset
+            }
+        }
+    }
+
+    @Test(expected = Test.None.class)
+    public void discardPartiallyWrittenEvent() throws Exception {
+        Path file = directory.resolve("events.bin");
+        BookingEvent created = BookingEvent.created(getBooking(1L, 1L, new Price(TEN, "€", ZERO, true), ONE));
+        BookingEvent cancelled = BookingEvent.cancelled(1L, new Price(ONE, "€", ZERO, true));
+        long end;
+        try (BookingEventLog log = BookingEventLog.open(file)) {
+            end = log.append(created);
+            log.append(cancelled);
+        }
+
+        // cut off the end of the last record, as if the process stopped while writing it
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - 3);
+        }
+
+        try (BookingEventLog log = BookingEventLog.open(file)) {
+            assertEquals(end, log.getEndOffset());
+            assertEquals(Arrays.asList(created), log.read(BookingEventLog.FIRST_OFFSET, 10).getEvents());
+
+            // the log continues after the last valid event
+            log.append(cancelled);
+            TotalsReplayer replayer = new TotalsReplayer();
+            replayer.replay(log);
+            assertEquals(new CurrencyAmount(new BigDecimal("0.00"), "€"), replayer.getTotals(1L).getTotalOpenAmount());
+        }
+
+        // garbage is not a log
+        Files.write(file, new byte[]{1, 2, 3, 4, 5, 6, 7, 8, 9});
+        try {
+            BookingEventLog.open(file).close();
+            fail("Should NOT reach here");
+        }
+        catch (IOException e) {
+            // expected
+        }
+    }
+
+    /**
+     * Create the bookings and change them with random events, the bookings are changed like the events describe
+     */
+    private static List<BookingEvent> generateEvents(List<Booking> bookings, int bookingCount, int changeCount) {
+        bookings.addAll(new BookingGenerator().setSeed(47).setBookingCount(bookingCount).setRecipientCount(40)
+                .setCurrencies(new String[]{"EUR", "USD"}, new double[]{0.9, 0.1})
+                .setMixedCurrencyRecipientShare(0.1)
+                .generate());
+        List<BookingEvent> events = new ArrayList<>();
+        for (Booking booking : bookings) {
+            events.add(BookingEvent.created(booking));
+        }
+
+        Random random = new Random(47);
+        for (int i = 0; i < changeCount; i++) {
+            Booking booking = bookings.get(random.nextInt(bookings.size()));
+            long id = booking.getID();
+            switch (random.nextInt(4)) {
+                case 0:
+                    BookingEvent.PriceSlot slot = BookingEvent.PriceSlot.values()[random.nextInt(4)];
+                    // the evaluator cannot compare a missing currency, the main price is never removed
+                    Price price = slot != BookingEvent.PriceSlot.MAIN && random.nextInt(5) == 0 ? null : new Price(
+                            BigDecimal.valueOf(random.nextInt(100_000), 2), booking.getCurrency(),
+                            new BigDecimal(random.nextBoolean() ? 19 : 7), random.nextBoolean());
+                    events.add(BookingEvent.priceChanged(id, slot, price));
+                    Price[] prices = booking.getPrices();
+                    prices[slot.ordinal()] = price == null ? null : copy(price);
+                    setPrices(booking, prices);
+                    break;
+                case 1:
+                    BigDecimal amount = BigDecimal.valueOf(random.nextInt(20_000) - 2_000, 2);
+                    events.add(BookingEvent.paid(id, amount));
+                    booking.setPaidAmount(booking.getPaidAmount().add(amount));
+                    break;
+                case 2:
+                    Price cancelFee = new Price(BigDecimal.valueOf(random.nextInt(5_000), 2), booking.getCurrency(),
+                            ZERO, true);
+                    events.add(BookingEvent.cancelled(id, cancelFee));
+                    if (booking.getPrices()[0] != null) {
+                        booking.getMainPrice().setAmount(ZERO);
+                    }
+                    booking.setAdd1Price(null);
+                    booking.setAdd2Price(null);
+                    booking.setCancelFeePrice(copy(cancelFee));
+                    break;
+                default:
+                    Long recipient = random.nextInt(20) == 0 ? null : 1L + random.nextInt(40);
+                    events.add(BookingEvent.recipientReassigned(id, recipient));
+                    booking.setInvoiceRecipientPK(recipient);
+                    break;
+            }
+        }
+        return events;
+    }
+
+    private static Price copy(Price price) {
+        Price copy = new Price();
+        copy.copyFrom(price);
+        return copy;
+    }
+
+    private static void setPrices(Booking booking, Price[] prices) {
+        booking.setMainPrice(prices[0]);
+        booking.setAdd1Price(prices[1]);
+        booking.setAdd2Price(prices[2]);
+        booking.setCancelFeePrice(prices[3]);
+    }
+
+    private static void assertSameTotals(List<Booking> bookings, TotalsReplayer replayer) throws Exception {
+        // the evaluator does not accept bookings without invoice recipient
+        List<Booking> assigned = new ArrayList<>();
+        for (Booking booking : bookings) {
+            if (booking.getInvoiceRecipientPK() != null) {
+                assigned.add(booking);
+            }
+        }
+        int conflicts = 0;
+        for (long recipient = 1; recipient <= 40; recipient++) {
+            BookingsCurrencyAmountsEvaluator evaluator = new BookingsCurrencyAmountsEvaluator();
+            try {
+                evaluator.calculate(assigned, recipient);
+            }
+            catch (InconsistentCurrenciesException expected) {
+                conflicts++;
+                try {
+                    replayer.getTotals(recipient);
+                    fail("Should NOT reach here");
+                }
+                catch (InconsistentCurrenciesException e) {
+                    assertEquals(expected.getMessage(), e.getMessage());
+                }
+                continue;
+            }
+            assertEquals(EvaluationResult.of(evaluator), replayer.getTotals(recipient));
+        }
+        assertTrue(conflicts > 0);
+    }
+}
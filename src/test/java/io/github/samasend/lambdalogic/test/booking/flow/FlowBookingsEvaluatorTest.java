@@ -0,0 +1,158 @@
+package io.github.samasend.lambdalogic.test.booking.flow;
+
+import com.lambdalogic.test.booking.exception.InconsistentCurrenciesException;
+import com.lambdalogic.test.booking.model.Booking;
+import com.lambdalogic.test.booking.model.CurrencyAmount;
+import com.lambdalogic.test.booking.model.Price;
+import io.github.samasend.lambdalogic.test.booking.EvaluationResult;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static io.github.samasend.lambdalogic.test.booking.TestBookings.*;
+import static java.math.BigDecimal.*;
+import static org.junit.Assert.*;
+
+public class FlowBookingsEvaluatorTest {
+
+    /**
+     * A synchronous publisher that records the requested demand
+     */
+    private static class ListPublisher implements Flow.Publisher<Booking> {
+
+        private final Iterator<Booking> bookings;
+
+        private final List<Long> requests = new ArrayList<>();
+
+        private boolean cancelled = false;
+
+        ListPublisher(List<Booking> bookings) {
+            this.bookings = bookings.iterator();
+        }
+
+        @Override
+        public void subscribe(Flow.Subscriber<? super Booking> subscriber) {
+            subscriber.onSubscribe(new Flow.Subscription() {
+
+                private long demand = 0;
+
+                private boolean emitting = false;
+
+                @Override
+                public void request(long n) {
+                    requests.add(n);
+                    demand += n;
+                    if (emitting) {
+                        return;
+                    }
+                    emitting = true;
+                    while (demand > 0 && !cancelled && bookings.hasNext()) {
+                        demand--;
+                        subscriber.onNext(bookings.next());
+                    }
+                    if (!cancelled && !bookings.hasNext()) {
+                        cancelled = true;
+                        subscriber.onComplete();
+                    }
+                    emitting = false;
+                }
+
+                @Override
+                public void cancel() {
+                    cancelled = true;
+                }
+            });
+        }
+    }
+
+    @Test(expected = Test.None.class)
+    public void addUpInBatches() throws Exception {
+        List<Booking> bookings = IntStream.range(0, 10)
+                .mapToObj(i -> getBooking(i % 2 == 0 ? MY_INVOICE_RECIPIENT_ID : OTHER_INVOICE_RECIPIENT_ID,
+                        new Price(new BigDecimal("0.10"), "€", new BigDecimal(19), false), null))
+                .collect(Collectors.toList());
+
+        ListPublisher publisher = new ListPublisher(bookings);
+        FlowBookingsEvaluator evaluator = new FlowBookingsEvaluator(MY_INVOICE_RECIPIENT_ID, 3);
+        publisher.subscribe(evaluator);
+
+        EvaluationResult result = evaluator.getResult().get(10, TimeUnit.SECONDS);
+
+        // 5 times 0.10 € net is 0.595 € gross
+        assertEquals(new CurrencyAmount(new BigDecimal("0.60"), "€"), result.getTotalAmount());
+        assertEquals(new CurrencyAmount(ZERO, "€"), result.getTotalPaidAmount());
+        assertEquals(new CurrencyAmount(new BigDecimal("0.60"), "€"), result.getTotalOpenAmount());
+
+        assertEquals(Arrays.asList(3L, 3L, 3L, 3L), publisher.requests);
+        assertEquals(10, evaluator.getReceivedBookings());
+    }
+
+    @Test(expected = Test.None.class)
+    public void stopAtInconsistentCurrencies() throws Exception {
+        List<Booking> bookings = new ArrayList<>();
+        bookings.add(getBooking(MY_INVOICE_RECIPIENT_ID, new Price(TEN, "€", ZERO, true), null));
+        bookings.add(getBooking(MY_INVOICE_RECIPIENT_ID, new Price(TEN, "ብር", ZERO, true), null));
+        for (int i = 0; i < 100; i++) {
+            bookings.add(getBooking(MY_INVOICE_RECIPIENT_ID, new Price(TEN, "€", ZERO, true), null));
+        }
+
+        ListPublisher publisher = new ListPublisher(bookings);
+        FlowBookingsEvaluator evaluator = new FlowBookingsEvaluator(MY_INVOICE_RECIPIENT_ID, 10);
+        publisher.subscribe(evaluator);
+
+        try {
+            evaluator.getResult().get(10, TimeUnit.SECONDS);
+            fail("Should NOT reach here");
+        }
+        catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof InconsistentCurrenciesException);
+        }
+
+        assertTrue(publisher.cancelled);
+        assertEquals(2, evaluator.getReceivedBookings());
+        assertEquals(Collections.singletonList(10L), publisher.requests);
+    }
+
+    @Test(expected = Test.None.class)
+    public void subscribeToSubmissionPublisher() throws Exception {
+        FlowBookingsEvaluator evaluator = new FlowBookingsEvaluator(MY_INVOICE_RECIPIENT_ID, 2);
+
+        try (SubmissionPublisher<Booking> publisher = new SubmissionPublisher<>()) {
+            publisher.subscribe(evaluator);
+            for (int i = 0; i < 100; i++) {
+                publisher.submit(getBooking(MY_INVOICE_RECIPIENT_ID, new Price(ONE, "€", ZERO, true), ONE));
+            }
+            publisher.submit(getBooking(MY_INVOICE_RECIPIENT_ID, new Price(ZERO, "ብር", ZERO, true), ZERO));
+        }
+
+        EvaluationResult result = evaluator.getResult().get(10, TimeUnit.SECONDS);
+
+        assertEquals(new CurrencyAmount(new BigDecimal("100"), "€"), result.getTotalAmount());
+        assertEquals(new CurrencyAmount(new BigDecimal("100"), "€"), result.getTotalPaidAmount());
+        assertEquals(new CurrencyAmount(ZERO, "€"), result.getTotalOpenAmount());
+    }
+
+    @Test(expected = Test.None.class)
+    public void completeEmptyAndPropagateErrors() throws Exception {
+        FlowBookingsEvaluator evaluator = new FlowBookingsEvaluator(MY_INVOICE_RECIPIENT_ID, 5);
+        new ListPublisher(new ArrayList<>()).subscribe(evaluator);
+        assertTrue(evaluator.getResult().get(10, TimeUnit.SECONDS).isEmpty());
+
+        FlowBookingsEvaluator failing = new FlowBookingsEvaluator(MY_INVOICE_RECIPIENT_ID, 5);
+        try (SubmissionPublisher<Booking> publisher = new SubmissionPublisher<>()) {
+            publisher.subscribe(failing);
+            publisher.closeExceptionally(new IllegalStateException("cursor closed"));
+        }
+        try {
+            failing.getResult().get(10, TimeUnit.SECONDS);
+            fail("Should NOT reach here");
+        }
+        catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+    }
+}
@@ -0,0 +1,151 @@
+package io.github.samasend.lambdalogic.test.booking.generator;
+
+import com.lambdalogic.test.booking.exception.InconsistentCurrenciesException;
+import com.lambdalogic.test.booking.model.Booking;
+import com.lambdalogic.test.booking.model.Price;
+import io.github.samasend.lambdalogic.test.booking.BookingAmounts;
+import io.github.samasend.lambdalogic.test.booking.BookingsCurrencyAmountsEvaluator;
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static io.github.samasend.lambdalogic.test.booking.TestBookings.*;
+import static org.junit.Assert.*;
+
+public class BookingGeneratorTest {
+
+    @Test(expected = Test.None.class)
+    public void sameSeedSameBookings() throws Exception {
+        BookingGenerator generator = new BookingGenerator().setSeed(42).setBookingCount(1_000);
+
+        String first = toCsv(generator.generate());
+        assertEquals(first, toCsv(generator.generate()));
+        assertEquals(first, toCsv(new BookingGenerator().setSeed(42).setBookingCount(1_000).generate()));
+        assertNotEquals(first, toCsv(generator.setSeed(43).generate()));
+    }
+
+    @Test(expected = Test.None.class)
+    public void followShape() {
+        List<Booking> bookings = new BookingGenerator()
+                .setSeed(7)
+                .setBookingCount(20_000)
+                .setRecipientCount(100)
+                .setZipfExponent(1.2)
+                .setGrossShare(0.25)
+                .setMainPriceOnlyShare(1)
+                .setCancellationShare(0.1)
+                .setPaymentShares(0.5, 0)
+                .generate();
+
+        assertEquals(20_000, bookings.size());
+
+        Map<Long, Long> bookingsPerRecipient = bookings.stream()
+                .collect(Collectors.groupingBy(Booking::getInvoiceRecipientPK, Collectors.counting()));
+        assertTrue(bookingsPerRecipient.keySet().stream().allMatch(pk -> pk >= 1 && pk <= 100));
+        assertTrue(bookingsPerRecipient.get(1L) > 5 * bookingsPerRecipient.get(10L));
+
+        assertShare(0.25, bookings.stream().filter(Booking::isGross).count(), bookings.size());
+        assertShare(0.1, bookings.stream().filter(Booking::isCanceled).count(), bookings.size());
+        assertShare(0.5, bookings.stream().filter(booking -> booking.getPaidAmount().signum() != 0).count(), bookings.size());
+        assertTrue(bookings.stream().allMatch(booking -> booking.getPrices()[1] == null));
+        assertTrue(bookings.stream().filter(Booking::isCanceled).allMatch(booking -> booking.getPrices()[3] != null));
+    }
+
+    @Test(expected = Test.None.class)
+    public void keepRecipientCurrencies() throws Exception {
+        List<Booking> bookings = new BookingGenerator()
+                .setSeed(1)
+                .setRecipientCount(20)
+                .setCurrencies(new String[]{"EUR", "USD"}, new double[]{1, 1})
+                .setPaymentShares(0.2, 0.5)
+                .generate();
+
+        BookingsCurrencyAmountsEvaluator evaluator = new BookingsCurrencyAmountsEvaluator();
+        for (long recipient = 1; recipient <= 20; recipient++) {
+            evaluator.calculate(bookings, recipient);
+        }
+        assertEquals(2, bookings.stream().map(Booking::getCurrency).distinct().count());
+
+        // a paid amount never exceeds the amount of its booking
+        assertTrue(bookings.stream().allMatch(booking -> booking.getOpenAmount().signum() >= 0));
+    }
+
+    @Test(expected = InconsistentCurrenciesException.class)
+    public void mixCurrenciesOfRecipients() throws Exception {
+        List<Booking> bookings = new BookingGenerator()
+                .setRecipientCount(1)
+                .setCurrencies(new String[]{"EUR", "USD"}, new double[]{1, 1})
+                .setMixedCurrencyRecipientShare(1)
+                .generate();
+
+        new BookingsCurrencyAmountsEvaluator().calculate(bookings, 1L);
+    }
+
+    @Test(expected = Test.None.class)
+    public void writeAndReadFile() throws Exception {
+        BookingGenerator generator = new BookingGenerator().setSeed(3).setBookingCount(500).setMainPriceOnlyShare(0.2);
+        Path file = Files.createTempFile("bookings", ".csv");
+        try {
+            generator.write(file);
+            List<Booking> bookings = BookingCsv.read(file);
+
+            assertEquals(toCsv(generator.generate()), toCsv(bookings));
+
+            BookingsCurrencyAmountsEvaluator expected = new BookingsCurrencyAmountsEvaluator();
+            expected.calculate(generator.generate(), 1L);
+            BookingsCurrencyAmountsEvaluator actual = new BookingsCurrencyAmountsEvaluator();
+            actual.calculate(bookings, 1L);
+            assertEquals(expected.getTotalAmount(), actual.getTotalAmount());
+            assertEquals(expected.getTotalOpenAmount(), actual.getTotalOpenAmount());
+        }
+        finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test(expected = Test.None.class)
+    public void keepMissingValues() throws Exception {
+        Booking booking = getBooking(null, new Price(BigDecimal.TEN, null, null, false), null);
+        booking.setCancelFeePrice(new Price(BigDecimal.ONE, null, new BigDecimal("7"), false));
+
+        String csv = toCsv(Collections.singletonList(booking));
+        List<Booking> bookings = BookingCsv.read(new BufferedReader(new StringReader(csv))).collect(Collectors.toList());
+
+        assertEquals(csv, toCsv(bookings));
+        assertNull(bookings.get(0).getInvoiceRecipientPK());
+        assertNull(bookings.get(0).getPrices()[1]);
+        assertEquals(new BigDecimal("7"), bookings.get(0).getPrices()[3].getTaxRate());
+
+        // a missing paid amount is an empty column and stays missing
+        assertTrue(csv.contains(";100 101 102;;10.00;"));
+        BookingAmounts.DecimalReader reader = new BookingAmounts.DecimalReader();
+        reader.read(booking);
+        assertNull(reader.getPaidAmount());
+        reader.read(bookings.get(0));
+        assertNull(reader.getPaidAmount());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectInvalidShare() {
+        new BookingGenerator().setPaymentShares(0.6, 0.6);
+    }
+
+    private static void assertShare(double expected, long count, int total) {
+        assertEquals(expected, (double) count / total, 0.02);
+    }
+
+    private static String toCsv(List<Booking> bookings) throws Exception {
+        StringWriter writer = new StringWriter();
+        BookingCsv.write(bookings.stream(), writer);
+        return writer.toString();
+    }
+}
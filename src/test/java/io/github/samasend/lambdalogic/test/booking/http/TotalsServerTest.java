@@ -0,0 +1,243 @@
+package io.github.samasend.lambdalogic.test.booking.http;
+
+import com.lambdalogic.test.booking.exception.InconsistentCurrenciesException;
+import com.lambdalogic.test.booking.model.Booking;
+import com.lambdalogic.test.booking.model.Price;
+import io.github.samasend.lambdalogic.test.booking.BookingsCurrencyAmountsEvaluator;
+import io.github.samasend.lambdalogic.test.booking.EvaluationResult;
+import io.github.samasend.lambdalogic.test.booking.cache.VersionedBookingList;
+import io.github.samasend.lambdalogic.test.booking.generator.BookingGenerator;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static io.github.samasend.lambdalogic.test.booking.TestBookings.*;
+import static java.math.BigDecimal.*;
+import static org.junit.Assert.*;
+
+public class TotalsServerTest {
+
+    @Test(expected = Test.None.class)
+    public void serveTotals() throws Exception {
+        List<Booking> generated = new BookingGenerator().setSeed(49).setBookingCount(2_000).setRecipientCount(20)
+                .setCurrencies(new String[]{"EUR", "USD"}, new double[]{0.9, 0.1})
+                .setMixedCurrencyRecipientShare(0.2)
+                .generate();
+        VersionedBookingList bookings = new VersionedBookingList(generated);
+
+        try (TotalsServer server = new TotalsServer(bookings, 4, 64).start(new InetSocketAddress("localhost", 0))) {
+            BookingsCurrencyAmountsEvaluator evaluator = new BookingsCurrencyAmountsEvaluator();
+            boolean conflict = false;
+            long consistent = 0;
+            for (long recipient = 1; recipient <= 20; recipient++) {
+                try {
+                    evaluator.calculate(generated, recipient);
+                    String expected = TotalsServer.toJson(recipient, server.getVersion(), EvaluationResult.of(evaluator));
+                    assertEquals(expected, get(server, "/totals?recipient=" + recipient, 200));
+                    consistent = recipient;
+                }
+                catch (InconsistentCurrenciesException e) {
+                    conflict = true;
+                    assertEquals(TotalsServer.toJson(recipient, server.getVersion(), e.getMessage()),
+                            get(server, "/totals?recipient=" + recipient, 409));
+                }
+            }
+            assertTrue(conflict);
+
+            // the second request of every recipient is answered from the cache
+            get(server, "/totals?recipient=" + consistent, 200);
+            assertEquals(20, server.getCalculationCount());
+            assertEquals(1, server.getCacheHitCount());
+
+            assertTrue(get(server, "/totals?recipient=999", 200).contains("\"totalAmount\":null"));
+            get(server, "/totals", 400);
+            get(server, "/totals?recipient=x", 400);
+            get(server, "/totalsx?recipient=1", 404);
+        }
+    }
+
+    @Test(expected = Test.None.class)
+    public void coalesceRequestsAndDropCacheOnUpdate() throws Exception {
+        VersionedBookingList bookings = new VersionedBookingList(Arrays.asList(
+                getBooking(1L, new Price(TEN, "€", ZERO, true), ONE)));
+
+        try (TotalsServer server = new TotalsServer(bookings, 2, 8)) {
+            assertEquals(new BigDecimal("9.00"), server.getTotals(1L).get().getTotalOpenAmount().getAmount());
+
+            // hold back the calculations while the bookings are changed
+            CountDownLatch updating = new CountDownLatch(1);
+            CountDownLatch release = new CountDownLatch(1);
+            Thread updater = new Thread(() -> server.update(list -> {
+                updating.countDown();
+                await(release);
+                list.add(getBooking(1L, new Price(ONE, "€", ZERO, true), null));
+            }));
+            updater.start();
+            assertTrue(updating.await(10, TimeUnit.SECONDS));
+
+            // the cached result is still valid until the update is done
+            assertEquals(new BigDecimal("9.00"), server.getTotals(1L).get().getTotalOpenAmount().getAmount());
+            assertEquals(1, server.getCacheHitCount());
+
+            release.countDown();
+            updater.join();
+
+            long cacheHits = server.getCacheHitCount();
+            List<CompletableFuture<EvaluationResult>> futures = new ArrayList<>();
+            for (int i = 0; i < 20; i++) {
+                futures.add(server.getTotals(1L));
+            }
+            for (CompletableFuture<EvaluationResult> future : futures) {
+                assertEquals(new BigDecimal("10.00"), future.get().getTotalOpenAmount().getAmount());
+            }
+            assertEquals(2, server.getCalculationCount());
+            // one calculation for the new version, the other requests joined it or found its result
+            assertEquals(19, server.getCoalescedCount() + server.getCacheHitCount() - cacheHits);
+        }
+    }
+
+    @Test(expected = Test.None.class)
+    public void rejectWhenWorkersAreBusy() throws Exception {
+        VersionedBookingList bookings = new VersionedBookingList(Arrays.asList(
+                getBooking(1L, new Price(TEN, "€", ZERO, true), ONE)));
+
+        try (TotalsServer server = new TotalsServer(bookings, 1, 1)) {
+            CountDownLatch updating = new CountDownLatch(1);
+            CountDownLatch release = new CountDownLatch(1);
+            Thread updater = new Thread(() -> server.update(list -> {
+                updating.countDown();
+                await(release);
+            }));
+            updater.start();
+            assertTrue(updating.await(10, TimeUnit.SECONDS));
+
+            // one calculation blocked by the update, one queued, the third does not fit
+            CompletableFuture<EvaluationResult> running = server.getTotals(1L);
+            waitUntilStarted(server);
+            CompletableFuture<EvaluationResult> queued = server.getTotals(2L);
+            try {
+                server.getTotals(3L).get();
+                fail("Should NOT reach here");
+            }
+            catch (ExecutionException e) {
+                assertTrue(e.getCause() instanceof RejectedExecutionException);
+            }
+            assertEquals(1, server.getRejectedCount());
+
+            release.countDown();
+            updater.join();
+            assertEquals(new BigDecimal("9.00"), running.get().getTotalOpenAmount().getAmount());
+            assertTrue(queued.get().isEmpty());
+        }
+    }
+
+    @Test(expected = Test.None.class)
+    public void answerWithVersionOfCalculation() throws Exception {
+        VersionedBookingList bookings = new VersionedBookingList(new ArrayList<>(Arrays.asList(
+                getBooking(1L, new Price(TEN, "€", ZERO, true), ONE))));
+
+        try (TotalsServer server = new TotalsServer(bookings, 1, 1).start(new InetSocketAddress("localhost", 0))) {
+            CountDownLatch updating = new CountDownLatch(1);
+            CountDownLatch release = new CountDownLatch(1);
+            Thread updater = new Thread(() -> server.update(list -> {
+                updating.countDown();
+                await(release);
+                list.add(getBooking(1L, new Price(ONE, "€", ZERO, true), null));
+            }));
+            updater.start();
+            assertTrue(updating.await(10, TimeUnit.SECONDS));
+
+            // requested before the update is done, calculated after it
+            long requestVersion = server.getVersion();
+            CompletableFuture<String> answer = CompletableFuture.supplyAsync(() -> {
+                try {
+                    return get(server, "/totals?recipient=1", 200);
+                }
+                catch (IOException e) {
+                    throw new IllegalStateException(e);
+                }
+            });
+            waitUntilStarted(server);
+            release.countDown();
+            updater.join();
+
+            assertNotEquals(requestVersion, server.getVersion());
+            BookingsCurrencyAmountsEvaluator evaluator = new BookingsCurrencyAmountsEvaluator();
+            evaluator.calculate(bookings, 1L);
+            assertEquals(TotalsServer.toJson(1L, server.getVersion(), EvaluationResult.of(evaluator)),
+                    answer.get(10, TimeUnit.SECONDS));
+        }
+    }
+
+    @Test(expected = Test.None.class)
+    public void completeCalculationOnError() throws Exception {
+        AtomicBoolean fail = new AtomicBoolean(true);
+        Booking failing = new Booking(1L, new Price(TEN, "€", ZERO, true), null, null, null, null,
+                new Date(), null, Arrays.asList(100L, 101L, 102L), 1L, 1L) {
+            @Override
+            public Long getInvoiceRecipientPK() {
+                if (fail.getAndSet(false)) {
+                    throw new StackOverflowError();
+                }
+                return super.getInvoiceRecipientPK();
+            }
+        };
+        VersionedBookingList bookings = new VersionedBookingList(Arrays.asList(failing));
+
+        try (TotalsServer server = new TotalsServer(bookings, 1, 1).start(new InetSocketAddress("localhost", 0))) {
+            get(server, "/totals?recipient=1", 500);
+
+            // the failed calculation is neither cached nor joined
+            assertEquals(new BigDecimal("10.00"), server.getTotals(1L).get(10, TimeUnit.SECONDS)
+                    .getTotalOpenAmount().getAmount());
+            assertEquals(2, server.getCalculationCount());
+        }
+    }
+
+    private static void waitUntilStarted(TotalsServer server) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (server.getCalculationCount() == 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(1);
+        }
+        assertEquals(1, server.getCalculationCount());
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            assertTrue(latch.await(10, TimeUnit.SECONDS));
+        }
+        catch (InterruptedException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String get(TotalsServer server, String path, int expectedStatus) throws IOException {
+        URL url = new URL("http://localhost:" + server.getAddress().getPort() + path);
+        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        try {
+            assertEquals(expectedStatus, connection.getResponseCode());
+            try (InputStream input = expectedStatus < 400 ? connection.getInputStream() : connection.getErrorStream()) {
+                return new String(input.readAllBytes(), StandardCharsets.UTF_8);
+            }
+        }
+        finally {
+            connection.disconnect();
+        }
+    }
+}
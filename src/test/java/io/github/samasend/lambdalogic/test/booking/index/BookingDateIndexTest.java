@@ -0,0 +1,169 @@
+package io.github.samasend.lambdalogic.test.booking.index;
+
+import com.lambdalogic.test.booking.exception.InconsistentCurrenciesException;
+import com.lambdalogic.test.booking.model.Booking;
+import com.lambdalogic.test.booking.model.CurrencyAmount;
+import com.lambdalogic.test.booking.model.Price;
+import io.github.samasend.lambdalogic.test.booking.BookingAmounts;
+import io.github.samasend.lambdalogic.test.booking.BookingsCurrencyAmountsEvaluator;
+import io.github.samasend.lambdalogic.test.booking.EvaluationResult;
+import io.github.samasend.lambdalogic.test.booking.TestBookings;
+import io.github.samasend.lambdalogic.test.booking.generator.BookingGenerator;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+import static java.math.BigDecimal.*;
+import static org.junit.Assert.*;
+
+public class BookingDateIndexTest {
+
+    private static final long DAY = 86_400_000L;
+
+    @Test(expected = Test.None.class)
+    public void sumDateRangesLikeEvaluator() throws Exception {
+        List<Booking> bookings = new BookingGenerator().setSeed(2).setBookingCount(4_000).setRecipientCount(10).generate();
+        BookingDateIndex index = new BookingDateIndex(bookings);
+
+        long first = bookings.stream().mapToLong(booking -> booking.getBookingDate().getTime()).min().getAsLong();
+        Random random = new Random(2);
+        for (int i = 0; i < 200; i++) {
+            long recipient = 1 + random.nextInt(10);
+            Date from = new Date(first + random.nextInt(365) * DAY);
+            Date to = new Date(from.getTime() + random.nextInt(60) * DAY);
+            assertSameTotals(bookings, recipient, from, to, index.getTotals(recipient, from, to));
+        }
+
+        // sliding windows over the statement dates
+        for (int day = 0; day <= 365; day += 30) {
+            Date date = new Date(first + day * DAY);
+            assertSameTotals(bookings, 3L, null, new Date(date.getTime() + 1), index.getTotalsAsOf(3L, date));
+        }
+        assertSameTotals(bookings, 1L, null, null, index.getTotals(1L, null, null));
+        assertTrue(index.getTotals(99L, null, null).isEmpty());
+    }
+
+    @Test(expected = Test.None.class)
+    public void recordPayments() throws Exception {
+        Booking january = getBooking(1L, new Price(new BigDecimal("0.10"), "€", new BigDecimal(19), false), null, 0);
+        Booking february = getBooking(1L, new Price(TEN, "€", ZERO, true), null, 31);
+        Booking empty = getBooking(1L, new Price(ZERO, "€", ZERO, true), null, 40);
+        BookingDateIndex index = new BookingDateIndex(Arrays.asList(february, empty, january));
+
+        index.recordPayment(february, new BigDecimal("4.00"));
+        EvaluationResult totals = index.getTotals(1L, null, null);
+        assertEquals(new CurrencyAmount(new BigDecimal("10.12"), "€"), totals.getTotalAmount());
+        assertEquals(new CurrencyAmount(new BigDecimal("6.12"), "€"), totals.getTotalOpenAmount());
+
+        // only the first month
+        assertEquals(new CurrencyAmount(new BigDecimal("0.12"), "€"),
+                index.getTotalsAsOf(1L, new Date(30 * DAY)).getTotalOpenAmount());
+
+        // a payment makes a booking without amount relevant
+        assertTrue(index.getTotals(1L, new Date(35 * DAY), null).isEmpty());
+        index.recordPayment(empty, ONE);
+        assertEquals(new CurrencyAmount(ONE.negate(), "€"), index.getTotals(1L, new Date(35 * DAY), null).getTotalOpenAmount());
+    }
+
+    @Test(expected = Test.None.class)
+    public void detectCurrenciesPerRange() throws Exception {
+        Booking dollars = getBooking(1L, new Price(TEN, "USD", ZERO, true), null, 10);
+        BookingDateIndex index = new BookingDateIndex(Arrays.asList(
+                getBooking(1L, new Price(TEN, "EUR", ZERO, true), null, 0),
+                dollars));
+
+        assertFalse(index.getTotals(1L, null, new Date(5 * DAY)).isEmpty());
+        try {
+            index.getTotals(1L, null, null);
+            fail();
+        }
+        catch (InconsistentCurrenciesException e) {
+            assertEquals(new InconsistentCurrenciesException("EUR", "USD").getMessage(), e.getMessage());
+        }
+
+        // change the currency of a booking after the index has been built
+        dollars.setCurrency("CHF");
+        index.update(dollars);
+        try {
+            index.getTotals(1L, null, null);
+            fail();
+        }
+        catch (InconsistentCurrenciesException e) {
+            assertEquals(new InconsistentCurrenciesException("CHF", "EUR").getMessage(), e.getMessage());
+        }
+        dollars.setCurrency("EUR");
+        index.update(dollars);
+        assertEquals(new CurrencyAmount(new BigDecimal("20"), "EUR"), index.getTotals(1L, null, null).getTotalAmount());
+    }
+
+    @Test(expected = Test.None.class)
+    public void overflowLeavesIndexUnchanged() throws Exception {
+        // 10 large amounts fill the root node of the tree almost up to Long.MAX_VALUE
+        BigDecimal large = new BigDecimal("920000000000");
+        List<Booking> bookings = new ArrayList<>();
+        for (int day = 0; day < 16; day++) {
+            BigDecimal amount = day < 10 ? large : ZERO;
+            bookings.add(getBooking(1L, new Price(amount, "€", ZERO, true), day == 0 ? null : amount, day));
+        }
+        Booking first = bookings.get(0);
+        BookingDateIndex index = new BookingDateIndex(bookings);
+        EvaluationResult firstDay = index.getTotals(1L, null, new Date(DAY));
+        EvaluationResult firstWeek = index.getTotals(1L, null, new Date(8 * DAY));
+
+        // only the root node overflows, the nodes before it on the update path do not
+        first.getMainPrice().setAmount(new BigDecimal("950000000000"));
+        try {
+            index.update(first);
+            fail("Should NOT reach here");
+        }
+        catch (IllegalArgumentException e) {
+            assertEquals(firstDay, index.getTotals(1L, null, new Date(DAY)));
+            assertEquals(firstWeek, index.getTotals(1L, null, new Date(8 * DAY)));
+        }
+        first.getMainPrice().setAmount(large);
+
+        // the paid amounts overflow, a missing paid amount stays missing
+        try {
+            index.recordPayment(first, new BigDecimal("950000000000"));
+            fail("Should NOT reach here");
+        }
+        catch (IllegalArgumentException e) {
+            BookingAmounts.DecimalReader reader = new BookingAmounts.DecimalReader();
+            reader.read(first);
+            assertNull(reader.getPaidAmount());
+            assertEquals(firstDay, index.getTotals(1L, null, new Date(DAY)));
+            assertEquals(firstWeek, index.getTotals(1L, null, new Date(8 * DAY)));
+        }
+
+        index.recordPayment(first, ONE);
+        assertSameTotals(bookings, 1L, null, new Date(8 * DAY), index.getTotals(1L, null, new Date(8 * DAY)));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectUnknownBooking() {
+        new BookingDateIndex(Arrays.asList()).update(getBooking(1L, new Price(TEN, "€", ZERO, true), null, 0));
+    }
+
+    private static void assertSameTotals(List<Booking> bookings, long recipient, Date from, Date to,
+                                         EvaluationResult totals) throws InconsistentCurrenciesException {
+        List<Booking> range = bookings.stream()
+                .filter(booking -> from == null || !booking.getBookingDate().before(from))
+                .filter(booking -> to == null || booking.getBookingDate().before(to))
+                .collect(Collectors.toList());
+        BookingsCurrencyAmountsEvaluator evaluator = new BookingsCurrencyAmountsEvaluator();
+        evaluator.calculate(range, recipient);
+        assertEquals(evaluator.getTotalAmount(), totals.getTotalAmount());
+        assertEquals(evaluator.getTotalPaidAmount(), totals.getTotalPaidAmount());
+        assertEquals(evaluator.getTotalOpenAmount(), totals.getTotalOpenAmount());
+    }
+
+    protected Booking getBooking(Long invoiceRecipientID, Price mainPrice, BigDecimal paidAmount, int day) {
+        return TestBookings.getBooking(invoiceRecipientID, mainPrice, paidAmount, new Date(day * DAY));
+    }
+}
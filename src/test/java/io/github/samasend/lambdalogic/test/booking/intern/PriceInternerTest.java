@@ -0,0 +1,137 @@
+package io.github.samasend.lambdalogic.test.booking.intern;
+
+import com.lambdalogic.test.booking.model.Booking;
+import com.lambdalogic.test.booking.model.Price;
+import io.github.samasend.lambdalogic.test.booking.BookingAmounts;
+import io.github.samasend.lambdalogic.test.booking.BookingsCurrencyAmountsEvaluator;
+import io.github.samasend.lambdalogic.test.booking.EvaluationResult;
+import io.github.samasend.lambdalogic.test.booking.TestBookings;
+import io.github.samasend.lambdalogic.test.booking.codec.BookingCodec;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+
+import static java.math.BigDecimal.*;
+import static org.junit.Assert.*;
+
+public class PriceInternerTest {
+
+    @Test(expected = Test.None.class)
+    public void shareEqualPrices() {
+        PriceInterner interner = new PriceInterner();
+        Booking first = interner.intern(getBooking(new Price(TEN, "€", new BigDecimal(19), true)));
+        Booking second = interner.intern(getBooking(new Price(new BigDecimal("10.00"), "€", new BigDecimal(19), true)));
+
+        assertSame(first.getPrices()[0], second.getPrices()[0]);
+        assertTrue(first.getPrices()[0].isFrozen());
+        assertEquals(new Price(TEN, "€", new BigDecimal(19), true), first.getPrices()[0]);
+        assertEquals(1, interner.size());
+        assertEquals(1, interner.getHitCount());
+
+        // missing prices are not created
+        assertNull(first.getPrices()[1]);
+    }
+
+    @Test(expected = Test.None.class)
+    public void copySharedPricesOnWrite() {
+        PriceInterner interner = new PriceInterner();
+        Booking first = interner.intern(getBooking(new Price(TEN, "€", ZERO, true)));
+        Booking second = interner.intern(getBooking(new Price(TEN, "€", ZERO, true)));
+        Price shared = first.getPrices()[0];
+
+        // reading keeps the shared price
+        assertEquals("€", first.getCurrency());
+        assertTrue(first.isGross());
+        assertEquals(0, TEN.compareTo(BookingAmounts.getTotalAmountGross(first)));
+        assertSame(shared, first.getPrices()[0]);
+
+        // the getter replaces the shared price by a copy that can be changed
+        first.getMainPrice().setAmount(ONE);
+        first.setCurrency("USD");
+        first.setGross(false);
+        assertNotSame(shared, first.getPrices()[0]);
+        assertFalse(first.getPrices()[0].isFrozen());
+        assertEquals(new Price(ONE, "USD", ZERO, false), first.getMainPrice());
+
+        // the other booking still shares the unchanged price
+        assertSame(shared, second.getPrices()[0]);
+        assertEquals(new Price(TEN, "€", ZERO, true), shared);
+        assertEquals("€", second.getCurrency());
+
+        // the shared price itself cannot be changed
+        try {
+            shared.setAmount(ONE);
+            fail("Should NOT reach here");
+        }
+        catch (UnsupportedOperationException e) {
+            assertEquals(new Price(TEN, "€", ZERO, true), shared);
+        }
+
+        PriceInterner.detach(second);
+        assertFalse(second.getPrices()[0].isFrozen());
+        assertEquals(shared, second.getPrices()[0]);
+    }
+
+    @Test(expected = Test.None.class)
+    public void stopSharingWhenFull() {
+        PriceInterner interner = new PriceInterner(1);
+        Price ten = interner.intern(new Price(TEN, "€", ZERO, true));
+        Price one = interner.intern(new Price(ONE, "€", ZERO, true));
+
+        assertTrue(one.isFrozen());
+        assertNotSame(one, interner.intern(new Price(ONE, "€", ZERO, true)));
+        assertSame(ten, interner.intern(new Price(TEN, "€", ZERO, true)));
+        assertEquals(1, interner.size());
+    }
+
+    @Test(expected = Test.None.class)
+    public void decodeSharedPrices() throws Exception {
+        // the bookings of 20 offerings with their prices
+        Random random = new Random(7);
+        List<Booking> bookings = new ArrayList<>();
+        for (int i = 0; i < 2_000; i++) {
+            int offering = random.nextInt(20);
+            bookings.add(new Booking(
+                    (long) i,
+                    new Price(BigDecimal.valueOf(1_000 + offering * 250, 2), "€", new BigDecimal(offering % 2 == 0 ? 19 : 7), offering < 10),
+                    null, null, null, BigDecimal.valueOf(random.nextInt(1_000), 2),
+                    new Date(), null,
+                    Arrays.asList(100L),
+                    1L + random.nextInt(5),
+                    (long) offering));
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(1 << 18);
+        BookingCodec codec = new BookingCodec();
+        for (Booking booking : bookings) {
+            codec.encode(booking, buffer);
+        }
+        buffer.flip();
+
+        PriceInterner interner = new PriceInterner();
+        BookingCodec loader = new BookingCodec(interner);
+        List<Booking> loaded = new ArrayList<>();
+        while (buffer.hasRemaining()) {
+            loaded.add(loader.decode(buffer));
+        }
+
+        assertEquals(20, interner.size());
+        for (long recipient = 1; recipient <= 5; recipient++) {
+            BookingsCurrencyAmountsEvaluator evaluator = new BookingsCurrencyAmountsEvaluator();
+            evaluator.calculate(bookings, recipient);
+            EvaluationResult expected = EvaluationResult.of(evaluator);
+            evaluator.calculate(loaded, recipient);
+            assertEquals(expected, EvaluationResult.of(evaluator));
+        }
+    }
+
+    protected Booking getBooking(Price mainPrice) {
+        return TestBookings.getBooking(1L, mainPrice);
+    }
+}
@@ -0,0 +1,94 @@
+package io.github.samasend.lambdalogic.test.booking.invoice;
+
+import com.lambdalogic.test.booking.model.Booking;
+import com.lambdalogic.test.booking.model.Price;
+import io.github.samasend.lambdalogic.test.booking.BookingAmounts;
+import io.github.samasend.lambdalogic.test.booking.BookingsCurrencyAmountsEvaluator;
+import io.github.samasend.lambdalogic.test.booking.generator.BookingGenerator;
+import org.junit.Test;
+
+import java.io.StringWriter;
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Collectors;
+
+import static io.github.samasend.lambdalogic.test.booking.TestBookings.*;
+import static java.math.BigDecimal.*;
+import static org.junit.Assert.*;
+
+public class InvoicePipelineTest {
+
+    @Test(expected = Test.None.class)
+    public void renderInvoicesInRecipientOrder() throws Exception {
+        List<Booking> bookings = Arrays.asList(
+                getBooking(MY_INVOICE_RECIPIENT_ID, new Price(new BigDecimal("0.10"), "€", new BigDecimal(19), false), null),
+                getBooking(MY_INVOICE_RECIPIENT_ID, new Price(ZERO, "€", ZERO, true), null),
+                getBooking(null, new Price(TEN, "€", ZERO, true), null),
+                getBooking(MY_INVOICE_RECIPIENT_ID, new Price(TEN, "€", ZERO, true), ONE),
+                getBooking(OTHER_INVOICE_RECIPIENT_ID, new Price(TEN, "€", ZERO, true), null),
+                getBooking(OTHER_INVOICE_RECIPIENT_ID, new Price(TEN, "ብር", ZERO, true), null)
+        );
+
+        StringWriter writer = new StringWriter();
+        assertEquals(2, new InvoicePipeline().run(bookings.iterator(), writer));
+
+        String[] lines = writer.toString().split("\n");
+        assertEquals("invoice;10001", lines[0]);
+        assertEquals("line;" + bookings.get(0).getID() + ";main;0.10;€;19;net;0.12", lines[1]);
+        assertEquals("line;" + bookings.get(3).getID() + ";main;10.00;€;0;gross;10.00", lines[2]);
+        assertEquals("paid;" + bookings.get(3).getID() + ";1", lines[3]);
+        assertEquals("total;10.12;1.00;9.12;€", lines[4]);
+        assertEquals("end", lines[5]);
+        assertEquals("invoice;10002", lines[6]);
+        assertTrue(lines[7].startsWith("error;"));
+        assertEquals("end", lines[8]);
+        assertEquals(9, lines.length);
+
+        // unpaid bookings are still unpaid
+        BookingAmounts.DecimalReader reader = new BookingAmounts.DecimalReader();
+        reader.read(bookings.get(0));
+        assertNull(reader.getPaidAmount());
+    }
+
+    @Test(expected = Test.None.class)
+    public void renderInParallelLikeSequential() throws Exception {
+        List<Booking> bookings = new BookingGenerator().setSeed(5).setBookingCount(3_000).setRecipientCount(50)
+                .stream()
+                .sorted(Comparator.comparing(Booking::getInvoiceRecipientPK))
+                .collect(Collectors.toList());
+
+        StringWriter sequential = new StringWriter();
+        long invoices = new InvoicePipeline().run(bookings.stream(), sequential);
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            StringWriter parallel = new StringWriter();
+            assertEquals(invoices, new InvoicePipeline(executor, 3).run(bookings.stream(), parallel));
+            assertEquals(sequential.toString(), parallel.toString());
+        }
+        finally {
+            executor.shutdown();
+        }
+
+        // the totals are the ones of the evaluator
+        BookingsCurrencyAmountsEvaluator evaluator = new BookingsCurrencyAmountsEvaluator();
+        evaluator.calculate(bookings, 1L);
+        assertTrue(sequential.toString().startsWith("invoice;1\n"));
+        assertTrue(sequential.toString().contains("\ntotal;"
+                + evaluator.getTotalAmount().getAmount() + ";"
+                + evaluator.getTotalPaidAmount().getAmount() + ";"
+                + evaluator.getTotalOpenAmount().getAmount() + ";EUR\nend\ninvoice;2\n"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectUnorderedBookings() throws Exception {
+        new InvoicePipeline().run(Arrays.asList(
+                getBooking(OTHER_INVOICE_RECIPIENT_ID, new Price(TEN, "€", ZERO, true), null),
+                getBooking(MY_INVOICE_RECIPIENT_ID, new Price(TEN, "€", ZERO, true), null)
+        ).iterator(), new StringWriter());
+    }
+}
@@ -0,0 +1,110 @@
+package io.github.samasend.lambdalogic.test.booking.jfr;
+
+import com.lambdalogic.test.booking.IBookingsCurrencyAmountsEvaluator;
+import com.lambdalogic.test.booking.exception.InconsistentCurrenciesException;
+import com.lambdalogic.test.booking.model.Booking;
+import com.lambdalogic.test.booking.model.Price;
+import io.github.samasend.lambdalogic.test.booking.BookingsCurrencyAmountsEvaluator;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.stream.Collectors;
+
+import static io.github.samasend.lambdalogic.test.booking.TestBookings.*;
+import static java.math.BigDecimal.*;
+import static org.junit.Assert.*;
+
+public class EvaluatorEventTest {
+
+    @Test(expected = Test.None.class)
+    public void recordSuccessfulCalculation() throws Exception {
+        List<RecordedEvent> events = record(Arrays.asList(
+                getBooking(MY_INVOICE_RECIPIENT_ID, new Price(TEN, "€", ZERO, true)),
+                getBooking(MY_INVOICE_RECIPIENT_ID, new Price(ONE, "€", ZERO, true)),
+                getBooking(OTHER_INVOICE_RECIPIENT_ID, new Price(ONE, "€", ZERO, true))
+        ));
+
+        assertEquals(
+                Arrays.asList("Filter", "CurrencyCheck", "Sum", "Calculate"),
+                events.stream().map(EvaluatorEventTest::name).collect(Collectors.toList()));
+
+        RecordedEvent calculate = events.get(3);
+        assertEquals(MY_INVOICE_RECIPIENT_ID, calculate.getLong("invoiceRecipientID"));
+        assertEquals(3, calculate.getInt("bookings"));
+        assertEquals(2, calculate.getInt("relevantBookings"));
+        assertEquals(EvaluatorEvent.SUCCESS, calculate.getString("outcome"));
+    }
+
+    @Test(expected = Test.None.class)
+    public void recordEmptyCalculation() throws Exception {
+        List<RecordedEvent> events = record(Collections.singletonList(
+                getBooking(OTHER_INVOICE_RECIPIENT_ID, new Price(ONE, "€", ZERO, true))
+        ));
+
+        assertEquals(
+                Arrays.asList("Filter", "Calculate"),
+                events.stream().map(EvaluatorEventTest::name).collect(Collectors.toList()));
+        assertEquals(EvaluatorEvent.EMPTY, events.get(1).getString("outcome"));
+    }
+
+    @Test(expected = Test.None.class)
+    public void recordInconsistentCurrencies() throws Exception {
+        List<RecordedEvent> events = record(Arrays.asList(
+                getBooking(MY_INVOICE_RECIPIENT_ID, new Price(TEN, "€", ZERO, true)),
+                getBooking(MY_INVOICE_RECIPIENT_ID, new Price(ONE, "ብር", ZERO, true))
+        ));
+
+        assertEquals(
+                Arrays.asList("Filter", "CurrencyCheck", "Calculate"),
+                events.stream().map(EvaluatorEventTest::name).collect(Collectors.toList()));
+        assertEquals(EvaluatorEvent.INCONSISTENT_CURRENCY, events.get(1).getString("outcome"));
+        assertEquals(EvaluatorEvent.INCONSISTENT_CURRENCY, events.get(2).getString("outcome"));
+    }
+
+    private static String name(RecordedEvent event) {
+        String name = event.getEventType().getName();
+        return name.substring(name.lastIndexOf('.') + 1);
+    }
+
+    /**
+     * Calculate the bookings of {@link #MY_INVOICE_RECIPIENT_ID} while recording the evaluator events
+     *
+     * @return the recorded events in the order of their end time
+     */
+    private List<RecordedEvent> record(List<Booking> bookings) throws IOException {
+        IBookingsCurrencyAmountsEvaluator evaluator = new BookingsCurrencyAmountsEvaluator();
+        Path file = Files.createTempFile("evaluator", ".jfr");
+
+        try (Recording recording = new Recording()) {
+            for (Class<?> eventClass : Arrays.asList(
+                    CalculateEvent.class, FilterEvent.class, CurrencyCheckEvent.class, SumEvent.class)) {
+                recording.enable(eventClass.getAnnotation(jdk.jfr.Name.class).value()).withoutThreshold();
+            }
+            recording.start();
+
+            try {
+                evaluator.calculate(bookings, MY_INVOICE_RECIPIENT_ID);
+            }
+            catch (InconsistentCurrenciesException e) {
+                // recorded as outcome
+            }
+
+            recording.stop();
+            recording.dump(file);
+
+            return RecordingFile.readAllEvents(file).stream()
+                    .filter(event -> event.getEventType().getName().startsWith("io.github.samasend.lambdalogic."))
+                    .sorted(Comparator.comparing(RecordedEvent::getEndTime))
+                    .collect(Collectors.toList());
+        }
+        finally {
+            Files.deleteIfExists(file);
+        }
+    }
+}
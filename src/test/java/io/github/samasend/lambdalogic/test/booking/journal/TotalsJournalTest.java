@@ -0,0 +1,223 @@
+package io.github.samasend.lambdalogic.test.booking.journal;
+
+import com.lambdalogic.test.booking.exception.InconsistentCurrenciesException;
+import com.lambdalogic.test.booking.model.Booking;
+import com.lambdalogic.test.booking.model.CurrencyAmount;
+import com.lambdalogic.test.booking.model.Price;
+import io.github.samasend.lambdalogic.test.booking.BookingsCurrencyAmountsEvaluator;
+import io.github.samasend.lambdalogic.test.booking.EvaluationResult;
+import io.github.samasend.lambdalogic.test.booking.generator.BookingGenerator;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import static io.github.samasend.lambdalogic.test.booking.TestBookings.*;
+import static java.math.BigDecimal.*;
+import static org.junit.Assert.*;
+
+public class TotalsJournalTest {
+
+    private Path directory;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("journal");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+        }
+    }
+
+    @Test(expected = Test.None.class)
+    public void rebuildTotalsAfterRestart() throws Exception {
+        List<Booking> bookings = new BookingGenerator().setSeed(5).setBookingCount(5_000).setRecipientCount(50).generate();
+
+        try (TotalsJournal journal = TotalsJournal.open(directory, 1_000)) {
+            for (Booking booking : bookings) {
+                journal.add(booking);
+            }
+        }
+
+        try (TotalsJournal journal = TotalsJournal.open(directory, 1_000)) {
+            // snapshots have been written on the way, the journal holds only the tail
+            assertTrue(journal.getJournalRecords() < 1_000);
+            assertEquals(50, journal.getRecipientPKs().size());
+
+            BookingsCurrencyAmountsEvaluator evaluator = new BookingsCurrencyAmountsEvaluator();
+            for (long recipient = 1; recipient <= 50; recipient++) {
+                evaluator.calculate(bookings, recipient);
+                EvaluationResult totals = journal.getTotals(recipient);
+                assertEquals(evaluator.getTotalAmount(), totals.getTotalAmount());
+                assertEquals(evaluator.getTotalPaidAmount(), totals.getTotalPaidAmount());
+                assertEquals(evaluator.getTotalOpenAmount(), totals.getTotalOpenAmount());
+            }
+        }
+
+        try (Stream<Path> files = Files.list(directory)) {
+            assertEquals(2, files.count());
+        }
+    }
+
+    @Test(expected = Test.None.class)
+    public void groupCommitConcurrentAppends() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try (TotalsJournal journal = TotalsJournal.open(directory)) {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                futures.add(executor.submit(() -> {
+                    for (int j = 0; j < 100; j++) {
+                        journal.add(getBooking(1L, new Price(new BigDecimal("0.10"), "€", new BigDecimal(19), false), null));
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get(30, TimeUnit.SECONDS);
+            }
+            assertEquals(800, journal.getJournalRecords());
+        }
+        finally {
+            executor.shutdownNow();
+        }
+
+        try (TotalsJournal journal = TotalsJournal.open(directory)) {
+            // 800 times 0.119 €, rounded once
+            assertEquals(new CurrencyAmount(new BigDecimal("95.20"), "€"), journal.getTotals(1L).getTotalAmount());
+        }
+    }
+
+    @Test(expected = Test.None.class)
+    public void snapshotWhileAppending() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        EvaluationResult live;
+        try (TotalsJournal journal = TotalsJournal.open(directory, 50)) {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                long recipient = i % 2 + 1;
+                futures.add(executor.submit(() -> {
+                    for (int j = 0; j < 2_000; j++) {
+                        journal.add(getBooking(recipient, new Price(ONE, "EUR", ZERO, true), null));
+                        if (j % 500 == 0) {
+                            journal.snapshot();
+                        }
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get(60, TimeUnit.SECONDS);
+            }
+            live = journal.getTotals(1L);
+            assertEquals(new CurrencyAmount(new BigDecimal("8000.00"), "EUR"), live.getTotalAmount());
+            assertEquals(new CurrencyAmount(new BigDecimal("8000.00"), "EUR"), journal.getTotals(2L).getTotalAmount());
+        }
+        finally {
+            executor.shutdownNow();
+        }
+
+        // every record is either in the snapshot or in the journal after it, never in both
+        try (TotalsJournal journal = TotalsJournal.open(directory, 50)) {
+            assertEquals(live, journal.getTotals(1L));
+            assertEquals(new CurrencyAmount(new BigDecimal("8000.00"), "EUR"), journal.getTotals(2L).getTotalAmount());
+        }
+    }
+
+    @Test(expected = Test.None.class)
+    public void discardPartiallyWrittenRecord() throws Exception {
+        try (TotalsJournal journal = TotalsJournal.open(directory)) {
+            journal.add(getBooking(1L, new Price(TEN, "€", ZERO, true), ONE));
+            journal.add(getBooking(1L, new Price(ONE, "€", ZERO, true), null));
+        }
+
+        // cut off the end of the last record, as if the process stopped while writing it
+        Path file = directory.resolve("journal-0.bin");
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - 3);
+        }
+
+        try (TotalsJournal journal = TotalsJournal.open(directory)) {
+            assertEquals(1, journal.getJournalRecords());
+            assertEquals(new CurrencyAmount(new BigDecimal("9"), "€"), journal.getTotals(1L).getTotalOpenAmount());
+
+            // the journal continues after the last valid record
+            journal.add(getBooking(1L, new Price(ONE, "€", ZERO, true), null));
+        }
+        try (TotalsJournal journal = TotalsJournal.open(directory)) {
+            assertEquals(2, journal.getJournalRecords());
+            assertEquals(new CurrencyAmount(new BigDecimal("10"), "€"), journal.getTotals(1L).getTotalOpenAmount());
+        }
+    }
+
+    @Test(expected = Test.None.class)
+    public void removeBookingsAndKeepConflicts() throws Exception {
+        Booking booking = getBooking(1L, new Price(TEN, "€", ZERO, true), null);
+        try (TotalsJournal journal = TotalsJournal.open(directory)) {
+            assertTrue(journal.add(booking));
+            assertTrue(journal.remove(booking));
+            assertFalse(journal.add(getBooking(1L, new Price(ZERO, "€", ZERO, true), null)));
+            assertFalse(journal.add(getBooking(null, new Price(TEN, "€", ZERO, true), null)));
+            assertTrue(journal.getTotals(1L).isEmpty());
+            assertTrue(journal.getTotals(2L).isEmpty());
+
+            journal.add(getBooking(2L, new Price(TEN, "USD", ZERO, true), null));
+            journal.add(getBooking(2L, new Price(TEN, "EUR", ZERO, true), null));
+            journal.snapshot();
+        }
+
+        try (TotalsJournal journal = TotalsJournal.open(directory)) {
+            assertEquals(0, journal.getJournalRecords());
+            journal.getTotals(2L);
+            fail();
+        }
+        catch (InconsistentCurrenciesException e) {
+            assertEquals(new InconsistentCurrenciesException("EUR", "USD").getMessage(), e.getMessage());
+        }
+    }
+
+    @Test(expected = Test.None.class)
+    public void removingConflictingBookingResolvesConflict() throws Exception {
+        Booking euros = getBooking(1L, new Price(TEN, "EUR", ZERO, true), null);
+        Booking dollars = getBooking(1L, new Price(ONE, "USD", ZERO, true), null);
+        try (TotalsJournal journal = TotalsJournal.open(directory)) {
+            journal.add(euros);
+            journal.add(dollars);
+            try {
+                journal.getTotals(1L);
+                fail("Should NOT reach here");
+            }
+            catch (InconsistentCurrenciesException e) {
+                assertEquals(new InconsistentCurrenciesException("EUR", "USD").getMessage(), e.getMessage());
+            }
+            journal.snapshot();
+        }
+
+        // the counts per currency survive the snapshot
+        try (TotalsJournal journal = TotalsJournal.open(directory)) {
+            journal.remove(dollars);
+
+            BookingsCurrencyAmountsEvaluator evaluator = new BookingsCurrencyAmountsEvaluator();
+            evaluator.calculate(Collections.singletonList(euros), 1L);
+            assertEquals(EvaluationResult.of(evaluator), journal.getTotals(1L));
+            assertEquals(new CurrencyAmount(TEN, "EUR"), journal.getTotals(1L).getTotalOpenAmount());
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package io.github.samasend.lambdalogic.test.booking.metrics;
+
+import com.lambdalogic.test.booking.IBookingsCurrencyAmountsEvaluator;
+import com.lambdalogic.test.booking.exception.InconsistentCurrenciesException;
+import com.lambdalogic.test.booking.model.Booking;
+import com.lambdalogic.test.booking.model.Price;
+import io.github.samasend.lambdalogic.test.booking.BookingsCurrencyAmountsEvaluator;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.util.*;
+import java.util.stream.LongStream;
+
+import static io.github.samasend.lambdalogic.test.booking.TestBookings.*;
+import static java.math.BigDecimal.*;
+import static org.junit.Assert.*;
+
+public class AggregatingEvaluationListenerTest {
+
+    @Test(expected = Test.None.class)
+    public void countBookings() throws InconsistentCurrenciesException {
+        AggregatingEvaluationListener listener = new AggregatingEvaluationListener();
+        IBookingsCurrencyAmountsEvaluator evaluator = new BookingsCurrencyAmountsEvaluator(listener);
+
+        List<Booking> bookings = Arrays.asList(
+                getBooking(MY_INVOICE_RECIPIENT_ID, new Price(TEN, "€", ZERO, true), null),
+                getBooking(MY_INVOICE_RECIPIENT_ID, new Price(ZERO, "€", ZERO, true), ZERO),
+                getBooking(OTHER_INVOICE_RECIPIENT_ID, new Price(TEN, "€", ZERO, true), null)
+        );
+
+        evaluator.calculate(bookings, MY_INVOICE_RECIPIENT_ID);
+        evaluator.calculate(bookings, OTHER_INVOICE_RECIPIENT_ID);
+
+        assertEquals(2, listener.getCalculations());
+        assertEquals(6, listener.getScannedBookings());
+        assertEquals(3, listener.getMatchedBookings());
+        assertEquals(1, listener.getZeroSkippedBookings());
+        assertEquals(0, listener.getCurrencyConflicts());
+        assertEquals(2, Arrays.stream(listener.getLatencyHistogram()).sum());
+        assertEquals(AggregatingEvaluationListener.getLatencyBucketBoundsMicros().length + 1,
+                listener.getLatencyHistogram().length);
+    }
+
+    @Test(expected = Test.None.class)
+    public void countCurrencyConflicts() {
+        AggregatingEvaluationListener listener = new AggregatingEvaluationListener();
+        IBookingsCurrencyAmountsEvaluator evaluator = new BookingsCurrencyAmountsEvaluator(listener);
+
+        try {
+            evaluator.calculate(Arrays.asList(
+                    getBooking(MY_INVOICE_RECIPIENT_ID, new Price(TEN, "€", ZERO, true), null),
+                    getBooking(MY_INVOICE_RECIPIENT_ID, new Price(TEN, "ብር", ZERO, true), null)
+            ), MY_INVOICE_RECIPIENT_ID);
+            fail("Should NOT reach here");
+        }
+        catch (InconsistentCurrenciesException e) {
+            // expected
+        }
+
+        assertEquals(1, listener.getCalculations());
+        assertEquals(2, listener.getMatchedBookings());
+        assertEquals(1, listener.getCurrencyConflicts());
+
+        listener.reset();
+
+        assertEquals(0, listener.getCalculations());
+        assertEquals(0, listener.getCurrencyConflicts());
+        assertEquals(0, Arrays.stream(listener.getLatencyHistogram()).sum());
+    }
+
+    @Test(expected = Test.None.class)
+    public void shareBetweenThreads() throws InterruptedException {
+        AggregatingEvaluationListener listener = new AggregatingEvaluationListener();
+
+        List<Booking> bookings = new ArrayList<>();
+        LongStream.range(0, 10).forEach(i ->
+                bookings.add(getBooking(MY_INVOICE_RECIPIENT_ID, new Price(ONE, "€", ZERO, true), null)));
+
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            threads.add(new Thread(() -> {
+                IBookingsCurrencyAmountsEvaluator evaluator = new BookingsCurrencyAmountsEvaluator(listener);
+                for (int j = 0; j < 100; j++) {
+                    try {
+                        evaluator.calculate(bookings, MY_INVOICE_RECIPIENT_ID);
+                    }
+                    catch (InconsistentCurrenciesException e) {
+                        throw new IllegalStateException(e);
+                    }
+                }
+            }));
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(400, listener.getCalculations());
+        assertEquals(4000, listener.getScannedBookings());
+        assertEquals(4000, listener.getMatchedBookings());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectNullListener() {
+        new BookingsCurrencyAmountsEvaluator(null);
+    }
+}
@@ -0,0 +1,121 @@
+package io.github.samasend.lambdalogic.test.booking.offheap;
+
+import com.lambdalogic.test.booking.exception.InconsistentCurrenciesException;
+import com.lambdalogic.test.booking.model.Booking;
+import com.lambdalogic.test.booking.model.CurrencyAmount;
+import com.lambdalogic.test.booking.model.Price;
+import io.github.samasend.lambdalogic.test.booking.BookingsCurrencyAmountsEvaluator;
+import io.github.samasend.lambdalogic.test.booking.EvaluationResult;
+import io.github.samasend.lambdalogic.test.booking.generator.BookingGenerator;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static io.github.samasend.lambdalogic.test.booking.TestBookings.*;
+import static java.math.BigDecimal.*;
+import static org.junit.Assert.*;
+
+public class OffHeapBookingStoreTest {
+
+    @Test(expected = Test.None.class)
+    public void evaluateLikeEvaluator() throws Exception {
+        List<Booking> bookings = new BookingGenerator()
+                .setSeed(9)
+                .setBookingCount(3_000)
+                .setRecipientCount(20)
+                .setMainPriceOnlyShare(0.3)
+                .setTaxRates(new BigDecimal[]{new BigDecimal("19"), new BigDecimal("7.7"), ZERO}, new double[]{1, 1, 1})
+                .generate();
+
+        try (OffHeapBookingStore store = OffHeapBookingStore.allocateDirect(256)) {
+            for (Booking booking : bookings) {
+                store.append(booking);
+            }
+            assertEquals(3_000, store.size());
+
+            assertSameResults(bookings, store, 20);
+        }
+    }
+
+    @Test(expected = Test.None.class)
+    public void updatePaidAmountInPlace() throws Exception {
+        try (OffHeapBookingStore store = OffHeapBookingStore.allocateDirect(1)) {
+            store.append(getBooking(1L, new Price(ZERO, "€", ZERO, true), null));
+            int index = store.append(getBooking(1L, new Price(new BigDecimal("0.10"), "€", new BigDecimal(19), false), null));
+            assertEquals(new CurrencyAmount(new BigDecimal("0.12"), "€"), store.evaluate(1L).getTotalAmount());
+
+            store.setPaidAmount(index, new BigDecimal("0.12"));
+            assertEquals(new BigDecimal("0.12"), store.getPaidAmount(index));
+            assertEquals(new CurrencyAmount(ZERO, "€"), store.evaluate(1L).getTotalOpenAmount());
+
+            // a paid amount of 0.00 makes a booking without amounts relevant, like in the evaluator
+            store.setPaidAmount(0, new BigDecimal("0.00"));
+            store.setPaidAmount(index, null);
+            assertFalse(store.evaluate(1L).isEmpty());
+            store.setPaidAmount(0, null);
+            assertFalse(store.evaluate(1L).isEmpty());
+            assertTrue(store.evaluate(2L).isEmpty());
+        }
+    }
+
+    @Test(expected = InconsistentCurrenciesException.class)
+    public void rejectInconsistentCurrencies() throws Exception {
+        try (OffHeapBookingStore store = OffHeapBookingStore.allocateDirect(16)) {
+            store.append(getBooking(1L, new Price(ONE, "USD", ZERO, true), null));
+            store.append(getBooking(2L, new Price(ONE, "CHF", ZERO, true), null));
+            store.append(getBooking(1L, new Price(ONE, "EUR", ZERO, true), null));
+            store.append(getBooking(null, new Price(ONE, "EUR", ZERO, true), null));
+            store.evaluate(1L);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectTooManyDecimalPlaces() throws Exception {
+        try (OffHeapBookingStore store = OffHeapBookingStore.allocateDirect(16)) {
+            store.append(getBooking(1L, new Price(ONE, "€", ZERO, true), new BigDecimal("0.001")));
+        }
+    }
+
+    @Test(expected = Test.None.class)
+    public void keepMappedRecords() throws Exception {
+        List<Booking> bookings = new BookingGenerator().setSeed(4).setBookingCount(1_000).setRecipientCount(5).generate();
+        Path directory = Files.createTempDirectory("offheap");
+        Path file = directory.resolve("bookings.bin");
+        try {
+            try (OffHeapBookingStore store = OffHeapBookingStore.map(file, 128)) {
+                for (Booking booking : bookings.subList(0, 600)) {
+                    store.append(booking);
+                }
+                store.force();
+            }
+            try (OffHeapBookingStore store = OffHeapBookingStore.map(file, 128)) {
+                assertEquals(600, store.size());
+                for (Booking booking : bookings.subList(600, bookings.size())) {
+                    store.append(booking);
+                }
+                assertSameResults(bookings, store, 5);
+                assertEquals(bookings.get(17).getInvoiceRecipientPK(), store.getInvoiceRecipientPK(17));
+            }
+        }
+        finally {
+            Files.deleteIfExists(file);
+            Files.deleteIfExists(directory.resolve("bookings.bin.dict"));
+            Files.delete(directory);
+        }
+    }
+
+    private static void assertSameResults(List<Booking> bookings, OffHeapBookingStore store, int recipients)
+            throws InconsistentCurrenciesException {
+        BookingsCurrencyAmountsEvaluator evaluator = new BookingsCurrencyAmountsEvaluator();
+        for (long recipient = 1; recipient <= recipients; recipient++) {
+            evaluator.calculate(bookings, recipient);
+            EvaluationResult result = store.evaluate(recipient);
+            assertEquals(evaluator.getTotalAmount(), result.getTotalAmount());
+            assertEquals(evaluator.getTotalPaidAmount(), result.getTotalPaidAmount());
+            assertEquals(evaluator.getTotalOpenAmount(), result.getTotalOpenAmount());
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package io.github.samasend.lambdalogic.test.booking.payment;
+
+import com.lambdalogic.test.booking.exception.InconsistentCurrenciesException;
+import com.lambdalogic.test.booking.model.Booking;
+import com.lambdalogic.test.booking.model.CurrencyAmount;
+import com.lambdalogic.test.booking.model.Price;
+import io.github.samasend.lambdalogic.test.booking.BookingsCurrencyAmountsEvaluator;
+import io.github.samasend.lambdalogic.test.booking.EvaluationResult;
+import io.github.samasend.lambdalogic.test.booking.TestBookings;
+import io.github.samasend.lambdalogic.test.booking.generator.BookingGenerator;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static io.github.samasend.lambdalogic.test.booking.TestBookings.*;
+import static java.math.BigDecimal.*;
+import static org.junit.Assert.*;
+
+public class PaymentLedgerTest {
+
+    @Test(expected = Test.None.class)
+    public void applyStatementLikeEvaluator() throws Exception {
+        List<Booking> bookings = new BookingGenerator().setSeed(3).setBookingCount(3_000).setRecipientCount(20).generate();
+        PaymentLedger ledger = new PaymentLedger(bookings);
+
+        Random random = new Random(3);
+        List<Payment> statement = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            Booking booking = bookings.get(random.nextInt(bookings.size()));
+            statement.add(new Payment(booking.getID(), BigDecimal.valueOf(random.nextInt(10_000) - 1_000, 2)));
+        }
+
+        Map<Long, RecipientOutcome> results = ledger.applyPayments(statement);
+
+        assertFalse(results.isEmpty());
+        for (long recipient = 1; recipient <= 20; recipient++) {
+            BookingsCurrencyAmountsEvaluator evaluator = new BookingsCurrencyAmountsEvaluator();
+            evaluator.calculate(bookings, recipient);
+            EvaluationResult totals = ledger.getTotals(recipient);
+            assertEquals(EvaluationResult.of(evaluator), totals);
+            if (results.containsKey(recipient)) {
+                assertEquals(totals, results.get(recipient).getTotals());
+            }
+        }
+    }
+
+    @Test(expected = Test.None.class)
+    public void paymentsChangeRelevance() throws Exception {
+        Booking euros = getBooking(1L, new Price(new BigDecimal("0.10"), "€", new BigDecimal(19), false), null);
+        Booking empty = getBooking(2L, new Price(ZERO, "ብር", ZERO, true), null);
+        PaymentLedger ledger = new PaymentLedger(Arrays.asList(euros, empty));
+
+        Map<Long, RecipientOutcome> results = ledger.applyPayments(Collections.singletonList(new Payment(1L, new BigDecimal("0.05"))));
+        assertEquals(new CurrencyAmount(new BigDecimal("0.07"), "€"), results.get(MY_INVOICE_RECIPIENT_ID).getTotals().getTotalOpenAmount());
+        assertEquals(new BigDecimal("0.05"), euros.getPaidAmount());
+
+        // paying the booking without amount makes its currency count
+        results = ledger.applyPayments(Collections.singletonList(new Payment(2L, ONE)));
+        assertFalse(results.get(MY_INVOICE_RECIPIENT_ID).isSuccess());
+        assertTrue(results.get(MY_INVOICE_RECIPIENT_ID).getException() instanceof InconsistentCurrenciesException);
+        assertEquals(ONE, empty.getPaidAmount());
+
+        // a reversal makes it irrelevant again
+        results = ledger.applyPayments(Collections.singletonList(new Payment(2L, ONE.negate())));
+        assertEquals(new CurrencyAmount(new BigDecimal("0.07"), "€"), results.get(MY_INVOICE_RECIPIENT_ID).getTotals().getTotalOpenAmount());
+    }
+
+    @Test(expected = Test.None.class)
+    public void mixedCurrenciesDoNotHideOtherRecipients() throws Exception {
+        Booking euros = getBooking(1L, new Price(TEN, "€", ZERO, true), null);
+        Booking birr = getBooking(2L, new Price(TEN, "ብር", ZERO, true), null);
+        Booking other = TestBookings.getBooking(3L, OTHER_INVOICE_RECIPIENT_ID, new Price(TEN, "€", ZERO, true), null);
+        PaymentLedger ledger = new PaymentLedger(Arrays.asList(euros, birr, other));
+
+        Map<Long, RecipientOutcome> results = ledger.applyPayments(Arrays.asList(new Payment(1L, ONE), new Payment(3L, ONE)));
+
+        assertEquals(2, results.size());
+        try {
+            results.get(MY_INVOICE_RECIPIENT_ID).getTotals();
+            fail("Should NOT reach here");
+        }
+        catch (InconsistentCurrenciesException e) {
+            assertSame(e, results.get(MY_INVOICE_RECIPIENT_ID).getException());
+        }
+        assertEquals(ONE, euros.getPaidAmount());
+        assertTrue(results.get(OTHER_INVOICE_RECIPIENT_ID).isSuccess());
+        assertEquals(new CurrencyAmount(new BigDecimal(9), "€"), results.get(OTHER_INVOICE_RECIPIENT_ID).getTotals().getTotalOpenAmount());
+    }
+
+    @Test(expected = Test.None.class)
+    public void rejectUnknownBookingBeforeApplying() throws Exception {
+        Booking booking = getBooking(1L, new Price(TEN, "€", ZERO, true), null);
+        PaymentLedger ledger = new PaymentLedger(Collections.singletonList(booking));
+
+        try {
+            ledger.applyPayments(Arrays.asList(new Payment(1L, ONE), new Payment(42L, ONE)));
+            fail("Should NOT reach here");
+        }
+        catch (IllegalArgumentException e) {
+            assertEquals(0, booking.getPaidAmount().signum());
+            assertEquals(new CurrencyAmount(TEN, "€"), ledger.getTotals(MY_INVOICE_RECIPIENT_ID).getTotalOpenAmount());
+        }
+    }
+
+    protected Booking getBooking(Long id, Price mainPrice, BigDecimal paidAmount) {
+        return TestBookings.getBooking(id, MY_INVOICE_RECIPIENT_ID, mainPrice, paidAmount);
+    }
+}
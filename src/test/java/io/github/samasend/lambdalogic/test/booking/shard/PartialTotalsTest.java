@@ -0,0 +1,116 @@
+package io.github.samasend.lambdalogic.test.booking.shard;
+
+import com.lambdalogic.test.booking.exception.InconsistentCurrenciesException;
+import com.lambdalogic.test.booking.model.Booking;
+import com.lambdalogic.test.booking.model.Price;
+import io.github.samasend.lambdalogic.test.booking.BookingsCurrencyAmountsEvaluator;
+import io.github.samasend.lambdalogic.test.booking.EvaluationResult;
+import io.github.samasend.lambdalogic.test.booking.TestBookings;
+import io.github.samasend.lambdalogic.test.booking.generator.BookingGenerator;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+
+import static java.math.BigDecimal.*;
+import static org.junit.Assert.*;
+
+public class PartialTotalsTest {
+
+    @Test(expected = Test.None.class)
+    public void mergeShardsLikeEvaluator() throws Exception {
+        List<Booking> bookings = new BookingGenerator().setSeed(46).setBookingCount(6_000).setRecipientCount(30)
+                .setCurrencies(new String[]{"EUR", "USD"}, new double[]{0.9, 0.1})
+                .setMixedCurrencyRecipientShare(0.2)
+                .generate();
+
+        for (long recipient = 1; recipient <= 30; recipient++) {
+            PartialTotals merged = PartialTotals.EMPTY;
+            for (int from = 0; from < bookings.size(); from += 1_000) {
+                PartialTotals shard = PartialTotals.of(bookings.subList(from, from + 1_000), recipient);
+                // every shard takes the way over the wire
+                merged = merged.merge(PartialTotals.fromBytes(shard.toBytes()));
+            }
+            assertEquals(bookings.size(), merged.getScannedBookings());
+
+            int[] counts = new int[2];
+            BookingsCurrencyAmountsEvaluator evaluator = new BookingsCurrencyAmountsEvaluator(
+                    (scanned, matched, zeroSkipped, inconsistentCurrencies, elapsedNanos) -> {
+                        counts[0] = matched;
+                        counts[1] = matched - zeroSkipped;
+                    });
+            try {
+                evaluator.calculate(bookings, recipient);
+            }
+            catch (InconsistentCurrenciesException expected) {
+                try {
+                    merged.toResult();
+                    fail("Should NOT reach here");
+                }
+                catch (InconsistentCurrenciesException e) {
+                    assertEquals(expected.getMessage(), e.getMessage());
+                }
+                continue;
+            }
+            assertEquals(EvaluationResult.of(evaluator), merged.toResult());
+            assertEquals(counts[0], merged.getMatchedBookings());
+            assertEquals(counts[1], merged.getRelevantBookings());
+        }
+    }
+
+    @Test(expected = Test.None.class)
+    public void mergeIsAssociative() throws Exception {
+        PartialTotals a = PartialTotals.of(Arrays.asList(
+                getBooking(new Price(new BigDecimal("10.01"), "EUR", new BigDecimal(19), false), null)), 1L);
+        PartialTotals b = PartialTotals.of(Arrays.asList(
+                getBooking(new Price(new BigDecimal("0.03"), "EUR", new BigDecimal(7), false), new BigDecimal("5.00"))), 1L);
+        PartialTotals c = PartialTotals.of(Arrays.asList(
+                getBooking(new Price(new BigDecimal("0.04"), "USD", ZERO, true), null)), 1L);
+
+        assertEquals(a.merge(b).merge(c), a.merge(b.merge(c)));
+        assertEquals(a, a.merge(PartialTotals.EMPTY));
+        assertEquals(a, PartialTotals.EMPTY.merge(a));
+        assertEquals(Arrays.asList("EUR", "USD"), a.merge(b).merge(c).getCurrencies());
+
+        // the gross amounts are rounded once: 11.9119 + 0.0321 = 11.944
+        EvaluationResult result = a.merge(b).toResult();
+        assertEquals(new BigDecimal("11.94"), result.getTotalAmount().getAmount());
+        assertEquals(new BigDecimal("6.94"), result.getTotalOpenAmount().getAmount());
+        assertEquals(new BigDecimal("11.9440"), a.merge(b).getTotalAmount());
+    }
+
+    @Test(expected = Test.None.class)
+    public void encodeUnusualValues() {
+        PartialTotals totals = PartialTotals.of(Arrays.asList(
+                getBooking(new Price(new BigDecimal("-12345678901234567890.12"), null, ZERO, true), null),
+                getBooking(new Price(ONE, "ብር", ZERO, true), new BigDecimal("0.005"))), 1L);
+
+        ByteBuffer buffer = ByteBuffer.allocate(256);
+        totals.encode(buffer);
+        PartialTotals.EMPTY.encode(buffer);
+        buffer.flip();
+
+        PartialTotals decoded = PartialTotals.decode(buffer);
+        assertEquals(totals, decoded);
+        assertEquals(Arrays.asList(null, "ብር"), decoded.getCurrencies());
+        assertEquals(new BigDecimal("0.005"), decoded.getPaidAmount());
+        assertEquals(PartialTotals.EMPTY, PartialTotals.decode(buffer));
+        assertFalse(buffer.hasRemaining());
+    }
+
+    @Test(expected = Test.None.class)
+    public void leaveBookingsUnchanged() throws Exception {
+        Booking booking = getBooking(null, ONE);
+        PartialTotals totals = PartialTotals.of(Arrays.asList(booking), 1L);
+
+        assertNull(booking.getPrices()[0]);
+        assertEquals(1, totals.getRelevantBookings());
+        assertEquals(new BigDecimal("-1.00"), totals.toResult().getTotalOpenAmount().getAmount());
+    }
+
+    protected Booking getBooking(Price mainPrice, BigDecimal paidAmount) {
+        return TestBookings.getBooking(1L, 1L, mainPrice, paidAmount);
+    }
+}
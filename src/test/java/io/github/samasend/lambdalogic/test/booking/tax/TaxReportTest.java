@@ -0,0 +1,87 @@
+package io.github.samasend.lambdalogic.test.booking.tax;
+
+import com.lambdalogic.test.booking.model.Booking;
+import com.lambdalogic.test.booking.model.CurrencyAmount;
+import com.lambdalogic.test.booking.model.Price;
+import io.github.samasend.lambdalogic.test.booking.BookingsCurrencyAmountsEvaluator;
+import io.github.samasend.lambdalogic.test.booking.generator.BookingGenerator;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static io.github.samasend.lambdalogic.test.booking.TestBookings.*;
+import static java.math.BigDecimal.*;
+import static org.junit.Assert.*;
+
+public class TaxReportTest {
+
+    @Test(expected = Test.None.class)
+    public void roundOncePerTaxRate() {
+        List<Booking> bookings = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            // per price the net amount would be 0.08 and the tax 0.02
+            bookings.add(getBooking(MY_INVOICE_RECIPIENT_ID, new Price(new BigDecimal("0.10"), "€", new BigDecimal(19), true)));
+            bookings.add(getBooking(OTHER_INVOICE_RECIPIENT_ID, new Price(new BigDecimal("0.10"), "€", new BigDecimal("19.00"), false)));
+        }
+        bookings.add(getBooking(MY_INVOICE_RECIPIENT_ID, new Price(TEN, "€", new BigDecimal(7), false)));
+
+        TaxReport report = TaxReport.of(bookings);
+
+        List<TaxRateTotals> mine = report.getTotals(MY_INVOICE_RECIPIENT_ID);
+        assertEquals(2, mine.size());
+        assertLine(mine.get(0), "10.00", "0.70", "10.70");
+        assertLine(mine.get(1), "0.84", "0.16", "1.00");
+
+        assertLine(report.getTotals(OTHER_INVOICE_RECIPIENT_ID).get(0), "1.00", "0.19", "1.19");
+
+        // 19 and 19.00 are the same rate
+        List<TaxRateTotals> overall = report.getTotals();
+        assertEquals(2, overall.size());
+        assertLine(overall.get(1), "1.84", "0.35", "2.19");
+        assertTrue(report.getTotals(42L).isEmpty());
+    }
+
+    @Test(expected = Test.None.class)
+    public void separateCurrencies() {
+        TaxReport report = TaxReport.of(Arrays.asList(
+                getBooking(MY_INVOICE_RECIPIENT_ID, new Price(TEN, "USD", new BigDecimal(19), true)),
+                getBooking(MY_INVOICE_RECIPIENT_ID, new Price(TEN, "EUR", new BigDecimal(19), true))));
+
+        List<TaxRateTotals> lines = report.getTotals(MY_INVOICE_RECIPIENT_ID);
+        assertEquals("EUR", lines.get(0).getCurrency());
+        assertEquals("USD", lines.get(1).getCurrency());
+        assertEquals(new CurrencyAmount(new BigDecimal("8.40"), "USD"), lines.get(1).getNetAmount());
+    }
+
+    @Test(expected = Test.None.class)
+    public void grossTotalsMatchEvaluator() throws Exception {
+        List<Booking> bookings = new BookingGenerator().setSeed(4).setBookingCount(2_000).setRecipientCount(10).generate();
+        TaxReport report = TaxReport.of(bookings);
+
+        for (long recipient : report.getRecipientPKs()) {
+            BookingsCurrencyAmountsEvaluator evaluator = new BookingsCurrencyAmountsEvaluator();
+            evaluator.calculate(bookings, recipient);
+
+            List<TaxRateTotals> lines = report.getTotals(recipient);
+            BigDecimal gross = ZERO;
+            for (TaxRateTotals line : lines) {
+                assertEquals(line.getGrossAmount().getAmount(),
+                        line.getNetAmount().getAmount().add(line.getTaxAmount().getAmount()));
+                gross = gross.add(line.getGrossAmount().getAmount());
+            }
+
+            // each tax rate is rounded on its own
+            BigDecimal difference = gross.subtract(evaluator.getTotalAmount().getAmount()).abs();
+            assertTrue(difference.compareTo(new BigDecimal("0.01").multiply(BigDecimal.valueOf(lines.size()))) <= 0);
+        }
+    }
+
+    private static void assertLine(TaxRateTotals line, String net, String tax, String gross) {
+        assertEquals(new BigDecimal(net), line.getNetAmount().getAmount());
+        assertEquals(new BigDecimal(tax), line.getTaxAmount().getAmount());
+        assertEquals(new BigDecimal(gross), line.getGrossAmount().getAmount());
+    }
+}